@@ -0,0 +1,38 @@
+#! /bin/bash
+#  Compile the FuzzyTruck demo and the JMH benchmarks and run them with the
+#  gc profiler, so every result comes with its allocation rate.
+#
+#  Supporting libraries are:
+#
+#			jmh-core and jmh-generator-annprocess 1.37
+#			jopt-simple 5.0.4 and commons-math3 3.6.1 (needed by jmh-core)
+#
+#  They are taken from the local Maven repository; fetch them once with
+#
+#      mvn dependency:get -Dartifact=org.openjdk.jmh:jmh-generator-annprocess:1.37
+#
+#  Any arguments are passed on to JMH, e.g. to run only some benchmarks
+#  with some parameters:
+#
+#      ./RunBenchmarks.sh ConclusionBenchmark -p inference=Kernel
+#
+#  NOTE: run this from the directory it is in (benchmarks)
+
+MavenRepository=${MAVEN_REPOSITORY:-$HOME/.m2/repository}
+FuzzyJJar=../src/examples/fuzzytruckswing/lib/fuzzyJ-OpenSource-2.0.jar
+BuildDirectory=build
+
+JMH=$MavenRepository/org/openjdk/jmh
+Libraries=$JMH/jmh-core/1.37/jmh-core-1.37.jar:$MavenRepository/net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar:$MavenRepository/org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar
+Processor=$JMH/jmh-generator-annprocess/1.37/jmh-generator-annprocess-1.37.jar
+
+rm -rf $BuildDirectory
+mkdir -p $BuildDirectory/classes
+
+# the demo and the benchmarks; the annotation processor writes the
+# generated benchmark classes and the META-INF/BenchmarkList they need
+javac -source 8 -target 8 -d $BuildDirectory/classes \
+        -cp $FuzzyJJar:$Libraries -processorpath $Processor:$Libraries \
+        `find ../src src -name '*.java'` || exit 1
+
+java -cp $BuildDirectory/classes:$FuzzyJJar:$Libraries org.openjdk.jmh.Main -prof gc "$@"
@@ -0,0 +1,63 @@
+package examples.fuzzytruckswing;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// A batch of truck states evaluated by one rule base, state by state with
+// the kernel and all at once with the batch kernel. Scores are per state.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark
+{
+    static final int BATCH = 4096;
+
+    @Param({Fixtures.DEFAULT, Fixtures.RANDOM})
+    String variant;
+
+    @Param({"7", "5"})
+    int length;
+
+    FuzzyKernel kernel;
+    BatchKernel batch;
+    double xpos[] = new double[BATCH], phi[] = new double[BATCH], out[] = new double[BATCH];
+
+    @Setup
+    public void setup()
+    {
+        TruckRules rules = Fixtures.rules(variant);
+        CompiledRules compiled = CompiledRules.compile(rules);
+        kernel = new FuzzyKernel(compiled);
+        batch = new BatchKernel(compiled);
+
+        Random r = new Random(5);
+        for (int i = 0; i < BATCH; i++)
+        {
+            xpos[i] = rules.getMinXpos(length) + (rules.getMaxXpos(length) - rules.getMinXpos(length)) * r.nextDouble();
+            phi[i] = rules.getMinPhi(length) + (rules.getMaxPhi(length) - rules.getMinPhi(length)) * r.nextDouble();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public double[] kernel()
+    {
+        for (int i = 0; i < BATCH; i++)
+            out[i] = kernel.getConclusion(length, xpos[i], phi[i], null);
+        return out;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public double[] batch()
+    {
+        batch.getConclusions(length, xpos, phi, out, BATCH);
+        return out;
+    }
+}
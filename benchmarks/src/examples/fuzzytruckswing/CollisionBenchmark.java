@@ -0,0 +1,92 @@
+package examples.fuzzytruckswing;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Collision tests of truck footprints against the obstacles: the original
+// SAT and the quad vs box test on single pairs, and a whole look ahead
+// check as a linear scan with SAT and through the ObstacleLayout grid,
+// and a SweptFootprint swept through one look ahead, four steps at speed
+// one with a turn of up to 30 degrees.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark
+{
+    static final int TRUCKS = 1024;
+
+    @Param({"1", "4", "100", "1000"})
+    int obstacleCount;
+
+    List<int[]> obstacles;
+    int corners[][][];
+    ObstacleLayout layout;
+    int trucks[][][] = new int[TRUCKS][][];
+    double states[][];
+    SweptFootprint sweep = new SweptFootprint();
+    int next;
+
+    @Setup
+    public void setup()
+    {
+        obstacles = Fixtures.obstacles(obstacleCount);
+        layout = new ObstacleLayout(obstacles);
+        corners = new int[obstacleCount][][];
+        for (int k = 0; k < obstacleCount; k++)
+        {
+            int[] o = obstacles.get(k);
+            corners[k] = new int[][]{{o[0], o[1]}, {o[0] + o[2], o[1]}, {o[0] + o[2], o[1] + o[3]}, {o[0], o[1] + o[3]}};
+        }
+        states = Fixtures.truckStates(TRUCKS);
+        for (int i = 0; i < TRUCKS; i++)
+            trucks[i] = TruckGeometry.computeCoords(states[i][0], states[i][1], states[i][2], 400, 400);
+    }
+
+    @Benchmark
+    public boolean sat()
+    {
+        int i = next++;
+        return TruckGeometry.SAT(trucks[i & (TRUCKS - 1)], corners[i % obstacleCount]);
+    }
+
+    @Benchmark
+    public boolean quadOverlapsBox()
+    {
+        int i = next++;
+        int[] o = obstacles.get(i % obstacleCount);
+        return TruckGeometry.quadOverlapsBox(trucks[i & (TRUCKS - 1)], o[0], o[1], o[0] + o[2], o[1] + o[3]);
+    }
+
+    @Benchmark
+    public int linearScan()
+    {
+        int[][] truck = trucks[next++ & (TRUCKS - 1)];
+        for (int k = 0; k < obstacleCount; k++)
+            if (TruckGeometry.SAT(truck, corners[k]))
+                return k;
+        return -1;
+    }
+
+    @Benchmark
+    public int firstCollision()
+    {
+        return layout.firstCollision(trucks[next++ & (TRUCKS - 1)]);
+    }
+
+    @Benchmark
+    public int sweptFirstContact()
+    {
+        int i = next++;
+        double s[] = states[i & (TRUCKS - 1)];
+        double turn = (i % 61) - 30, heading = (s[2] + turn) * TruckEngine.PIBY180;
+        sweep.set(s[0], s[1], s[2], s[0] + 4 * Math.cos(heading), s[1] - 4 * Math.sin(heading), s[2] + turn, 400,
+                400);
+        return sweep.firstContact(layout);
+    }
+}
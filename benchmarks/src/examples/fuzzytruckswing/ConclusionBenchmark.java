@@ -0,0 +1,63 @@
+package examples.fuzzytruckswing;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// One evaluation of a rule base, the docking one (7 x 5) or the obstacle
+// one (5 x 5), with FuzzyJ, the kernel or a control surface.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConclusionBenchmark
+{
+    static final int INPUTS = 1024;
+
+    @Param({Fixtures.DEFAULT, Fixtures.RANDOM})
+    String variant;
+
+    @Param({"7", "5"})
+    int length;
+
+    @Param({"FuzzyJ", "Kernel", "Surface"})
+    String inference;
+
+    FuzzyController controller;
+    ControlSurface surface;
+    double xpos[] = new double[INPUTS], phi[] = new double[INPUTS];
+    int next;
+
+    @Setup
+    public void setup()
+    {
+        TruckRules rules = Fixtures.rules(variant);
+        rules.updateRules();
+        if (inference.equals("FuzzyJ"))
+            controller = rules;
+        else
+            controller = new FuzzyKernel(rules);
+        if (inference.equals("Surface"))
+            surface = ControlSurface.compile(controller, rules, length, SurfaceController.DEFAULT_RESOLUTION);
+
+        Random r = new Random(5);
+        for (int i = 0; i < INPUTS; i++)
+        {
+            xpos[i] = rules.getMinXpos(length) + (rules.getMaxXpos(length) - rules.getMinXpos(length)) * r.nextDouble();
+            phi[i] = rules.getMinPhi(length) + (rules.getMaxPhi(length) - rules.getMinPhi(length)) * r.nextDouble();
+        }
+    }
+
+    @Benchmark
+    public double getConclusion()
+    {
+        int i = next++ & (INPUTS - 1);
+        if (surface != null)
+            return surface.getValue(xpos[i], phi[i]);
+        return controller.getConclusion(length, xpos[i], phi[i], null);
+    }
+}
@@ -0,0 +1,56 @@
+package examples.fuzzytruckswing;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// One evaluation of a rule base by the kernel with each of its
+// defuzzifiers. DefuzzifierReport puts the cost next to how well the
+// truck parks.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DefuzzifierBenchmark
+{
+    static final int INPUTS = 1024;
+
+    @Param({Fixtures.DEFAULT, Fixtures.RANDOM})
+    String variant;
+
+    @Param({"7", "5"})
+    int length;
+
+    @Param({"0", "1", "2", "3", "4"})
+    int defuzzifier;
+
+    FuzzyKernel kernel;
+    double xpos[] = new double[INPUTS], phi[] = new double[INPUTS];
+    int next;
+
+    @Setup
+    public void setup()
+    {
+        TruckRules rules = Fixtures.rules(variant);
+        kernel = new FuzzyKernel(CompiledRules.compile(rules));
+        kernel.setDefuzzifier(defuzzifier);
+
+        Random r = new Random(5);
+        for (int i = 0; i < INPUTS; i++)
+        {
+            xpos[i] = rules.getMinXpos(length) + (rules.getMaxXpos(length) - rules.getMinXpos(length)) * r.nextDouble();
+            phi[i] = rules.getMinPhi(length) + (rules.getMaxPhi(length) - rules.getMinPhi(length)) * r.nextDouble();
+        }
+    }
+
+    @Benchmark
+    public double getConclusion()
+    {
+        int i = next++ & (INPUTS - 1);
+        return kernel.getConclusion(length, xpos[i], phi[i], null);
+    }
+}
@@ -0,0 +1,107 @@
+package examples.fuzzytruckswing;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The collision path and the obstacle rules at a given density of
+// generated obstacles, the start states and the dock corridor kept clear:
+// engine steps as in EngineBenchmark, with and without clearance steering,
+// the generation itself of a layout of 10000 obstacles on a 4000 by 4000
+// pixel area, building the DistanceField of such a layout, and a
+// PathPlanner search from each start state in turn, made afresh every
+// time rather than taken from the planner's plans.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DensityBenchmark
+{
+    static final int MAX_ITERATIONS = 2000;
+
+    @Param({"0.01", "0.05", "0.2"})
+    double density;
+
+    @Param({"uniform", "log"})
+    String sizes;
+
+    @Param({"false", "true"})
+    boolean clearance;
+
+    TruckEngine engine;
+    int start;
+    long seed;
+    ObstacleLayout large;
+    PathPlanner planner;
+    int planned;
+
+    @Setup
+    public void setup()
+    {
+        ObstacleGenerator generator = generator(17);
+        generator.setDensity(density);
+        for (double s[] : Fixtures.START_STATES)
+            generator.clearStart(s[0], s[1], 4);
+        engine = new TruckEngine(new FuzzyKernel(Fixtures.rules(Fixtures.DEFAULT)));
+        engine.setObstacles(generator.generate());
+        engine.setClearanceSteering(clearance);
+        planner = engine.getObstacles().getPlanner(TruckGeometry.WORLD_WIDTH, TruckGeometry.WORLD_HEIGHT);
+        nextStart();
+        generator = generator(19);
+        generator.setWorldSize(4000, 4000);
+        generator.setCount(10000);
+        large = new ObstacleLayout(generator.generate());
+    }
+
+    ObstacleGenerator generator(long seed)
+    {
+        ObstacleGenerator generator = new ObstacleGenerator(seed);
+        if (sizes.equals("log"))
+            generator.setSizes(4, 120, 4, 40, ObstacleGenerator.LOG_UNIFORM);
+        return generator;
+    }
+
+    void nextStart()
+    {
+        double s[] = Fixtures.START_STATES[start++ % Fixtures.START_STATES.length];
+        engine.setStart(s[0], s[1], s[2]);
+        engine.reset();
+    }
+
+    @Benchmark
+    public boolean step()
+    {
+        if (engine.isComplete() || engine.getIteration() >= MAX_ITERATIONS)
+            nextStart();
+        return engine.step();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public List<int[]> generate10k()
+    {
+        ObstacleGenerator generator = generator(seed++);
+        generator.setWorldSize(4000, 4000);
+        generator.setCount(10000);
+        return generator.generate();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public DistanceField distanceField10k()
+    {
+        return new DistanceField(large);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public double[] plan()
+    {
+        double s[] = Fixtures.START_STATES[planned++ % Fixtures.START_STATES.length];
+        return planner.search(s[0], s[1], s[2]);
+    }
+}
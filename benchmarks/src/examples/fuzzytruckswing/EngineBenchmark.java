@@ -0,0 +1,70 @@
+package examples.fuzzytruckswing;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// The headless simulation: single steps, restarting from the next fixed
+// start state whenever an episode ends, and whole episodes from the fixed
+// start states. With timed the engine also times the phases of every
+// step, as the applet's simulation does.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark
+{
+    static final int MAX_ITERATIONS = 2000;
+
+    @Param({Fixtures.DEFAULT, Fixtures.RANDOM})
+    String variant;
+
+    @Param({"0", "4", "100", "1000"})
+    int obstacleCount;
+
+    @Param({"FuzzyJ", "Kernel"})
+    String inference;
+
+    @Param({"false", "true"})
+    boolean timed;
+
+    TruckEngine engine;
+    int start;
+
+    @Setup
+    public void setup()
+    {
+        TruckRules rules = Fixtures.rules(variant);
+        engine = new TruckEngine(inference.equals("FuzzyJ") ? rules : new FuzzyKernel(rules));
+        engine.setObstacles(Fixtures.obstacles(obstacleCount));
+        if (timed)
+            engine.setTimings(new StepTimings());
+        nextStart();
+    }
+
+    void nextStart()
+    {
+        double s[] = Fixtures.START_STATES[start++ % Fixtures.START_STATES.length];
+        engine.setStart(s[0], s[1], s[2]);
+        engine.reset();
+    }
+
+    @Benchmark
+    public boolean step()
+    {
+        if (engine.isComplete() || engine.getIteration() >= MAX_ITERATIONS)
+            nextStart();
+        return engine.step();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int episode()
+    {
+        nextStart();
+        return engine.runToCompletion(MAX_ITERATIONS);
+    }
+}
@@ -0,0 +1,63 @@
+package examples.fuzzytruckswing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Inputs shared by the benchmarks. Everything is drawn from fixed seeds,
+// so every run measures the same work.
+
+public class Fixtures
+{
+    // the rule matrix variants: the default rules, and random conclusions
+    // with about one rule in eight killed
+    public static final String DEFAULT = "default";
+    public static final String RANDOM = "random";
+
+    public static TruckRules rules(String variant)
+    {
+        if (variant.equals(DEFAULT))
+            return new TruckRules();
+        if (!variant.equals(RANDOM))
+            throw new IllegalArgumentException("Unknown rule variant: " + variant);
+        Random r = new Random(7);
+        String terms[] = TruckRules.changePhiTerms;
+        String conclusions[][] = new String[TruckRules.ROWS][TruckRules.COLUMNS];
+        for (String[] row : conclusions)
+            for (int j = 0; j < row.length; j++)
+                row[j] = r.nextInt(8) == 0 ? " " : terms[r.nextInt(terms.length)];
+        String obsConclusions[][] = new String[TruckRules.DefaultObsConclusions.length][TruckRules.COLUMNS];
+        for (String[] row : obsConclusions)
+            for (int j = 0; j < row.length; j++)
+                row[j] = terms[r.nextInt(terms.length)];
+        TruckRules rules = new TruckRules(conclusions, obsConclusions);
+        rules.updateRules();
+        return rules;
+    }
+
+    // count obstacles scattered over a 400 by 400 view, sized like the
+    // ones the Obstacle button makes
+    public static List<int[]> obstacles(int count)
+    {
+        Random r = new Random(11);
+        List<int[]> list = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            list.add(new int[]{r.nextInt(370), r.nextInt(390), r.nextInt(40) + 20, r.nextInt(5) + 5});
+        return list;
+    }
+
+    // n truck positions {x, y, angle} spread over the canvas
+    public static double[][] truckStates(int n)
+    {
+        Random r = new Random(13);
+        double states[][] = new double[n][];
+        for (int i = 0; i < n; i++)
+            states[i] = new double[]{100 * r.nextDouble(), 100 * r.nextDouble(), -90 + 360 * r.nextDouble()};
+        return states;
+    }
+
+    // the start states the episode benchmarks drive from
+    public static final double START_STATES[][] = {
+            {50, 50, 90}, {20, 60, 0}, {80, 70, 180}, {10, 90, 45},
+            {90, 20, 225}, {35, 80, -45}, {65, 40, 135}, {50, 90, 270}};
+}
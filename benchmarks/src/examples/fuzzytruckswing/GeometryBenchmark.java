@@ -0,0 +1,46 @@
+package examples.fuzzytruckswing;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// The truck corner computations: rounded to whole world units, allocating
+// a fresh array and filling a reused one, and the unrounded footprint the
+// engine tests.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeometryBenchmark
+{
+    static final int STATES = 1024;
+
+    double states[][] = Fixtures.truckStates(STATES);
+    int coords[][] = new int[4][2];
+    double footprint[] = new double[8];
+    int next;
+
+    @Benchmark
+    public int[][] computeCoords()
+    {
+        double s[] = states[next++ & (STATES - 1)];
+        return TruckGeometry.computeCoords(s[0], s[1], s[2], 400, 400);
+    }
+
+    @Benchmark
+    public int[][] computeCoordsInto()
+    {
+        double s[] = states[next++ & (STATES - 1)];
+        return TruckGeometry.computeCoords(s[0], s[1], s[2], 400, 400, coords);
+    }
+
+    @Benchmark
+    public double[] footprint()
+    {
+        double s[] = states[next++ & (STATES - 1)];
+        return TruckGeometry.footprint(4 * s[0], 4 * s[1], s[2] * TruckEngine.PIBY180, footprint);
+    }
+}
@@ -0,0 +1,195 @@
+package examples.fuzzytruckswing;
+
+// FuzzyKernel's inference for many truck states at once. The inputs and
+// the results are columns of doubles, and so is everything in between:
+// the membership of every state in every input set, and the firing height
+// of every output term. Each of those is filled by a short loop over the
+// whole batch with no branches in it, which the JIT can unroll and
+// vectorize. A membership function is evaluated as its first value plus
+// the rise along each of its segments, the input clamped to the segment,
+// so no state needs to search for its segment. Only the defuzzification,
+// whose shape depends on which terms fired, is done state by state, by
+// the same code FuzzyKernel uses, so the results agree with it to within
+// rounding. Rule firings are not reported.
+//
+// Like FuzzyKernel, an instance keeps working storage and must only be
+// used by one thread at a time.
+
+public class BatchKernel
+{
+    CompiledRules compiled;
+    // defuzzifies one state at a time from its heights
+    FuzzyKernel scalar;
+    // the sets of each rule base as segments, see Segments
+    Segments dockingXpos, dockingPhi, obstacleXpos, obstaclePhi;
+
+    // working columns, capacity states long
+    int capacity;
+    double mXpos[][], mPhi[][], height[][];
+
+    public BatchKernel(CompiledRules compiled)
+    {
+        setCompiledRules(compiled);
+    }
+
+    public CompiledRules getCompiledRules()
+    {
+        return compiled;
+    }
+
+    public void setCompiledRules(CompiledRules c)
+    {
+        compiled = c;
+        int d = scalar == null ? FuzzyController.MOMENT : scalar.getDefuzzifier();
+        scalar = new FuzzyKernel(c);
+        scalar.setDefuzzifier(d);
+        dockingXpos = new Segments(c.docking.xposX, c.docking.xposY, c.docking.xposN, c.stride);
+        dockingPhi = new Segments(c.docking.phiX, c.docking.phiY, c.docking.phiN, c.stride);
+        obstacleXpos = new Segments(c.obstacle.xposX, c.obstacle.xposY, c.obstacle.xposN, c.stride);
+        obstaclePhi = new Segments(c.obstacle.phiX, c.obstacle.phiY, c.obstacle.phiN, c.stride);
+        capacity = 0;
+    }
+
+    // see FuzzyKernel.setDefuzzifier
+    public void setDefuzzifier(int d)
+    {
+        scalar.setDefuzzifier(d);
+    }
+
+    // the change of angle for states 0 to n - 1, written to out
+    public void getConclusions(int length, double xpos[], double phi[], double out[], int n)
+    {
+        CompiledRules.Base b = length == FuzzyController.DOCKING ? compiled.docking : compiled.obstacle;
+        Segments xSets = length == FuzzyController.DOCKING ? dockingXpos : obstacleXpos;
+        Segments phiSets = length == FuzzyController.DOCKING ? dockingPhi : obstaclePhi;
+        int terms = b.outN.length;
+        ensureCapacity(n, Math.max(b.columns, b.rows), terms);
+
+        for (int j = 0; j < b.columns; j++)
+            xSets.membership(j, xpos, mXpos[j], n);
+        for (int i = 0; i < b.rows; i++)
+            phiSets.membership(i, phi, mPhi[i], n);
+        for (int t = 0; t < terms; t++)
+        {
+            double h[] = height[t];
+            for (int k = 0; k < n; k++)
+                h[k] = 0;
+        }
+        // every rule raises the height of its term to its firing strength,
+        // or for Sugeno adds its strength to that of its term
+        boolean sum = scalar.getDefuzzifier() == FuzzyController.SUGENO;
+        for (int i = 0; i < b.rows; i++)
+            for (int j = 0; j < b.columns; j++)
+            {
+                int t = b.conclusion[i * b.columns + j];
+                if (t < 0)
+                    continue;
+                double h[] = height[t], mx[] = mXpos[j], mp[] = mPhi[i];
+                if (b.combine == FuzzyController.PRODUCT)
+                {
+                    if (sum)
+                        for (int k = 0; k < n; k++)
+                            h[k] += mx[k] * mp[k];
+                    else
+                        for (int k = 0; k < n; k++)
+                            h[k] = Math.max(h[k], mx[k] * mp[k]);
+                }
+                else if (sum)
+                    for (int k = 0; k < n; k++)
+                        h[k] += Math.min(mx[k], mp[k]);
+                else
+                    for (int k = 0; k < n; k++)
+                        h[k] = Math.max(h[k], Math.min(mx[k], mp[k]));
+            }
+
+        double scalarHeight[] = sum ? scalar.strength : scalar.height;
+        for (int k = 0; k < n; k++)
+        {
+            // FuzzyJ refuses inputs outside the universe of discourse
+            double x = xpos[k], p = phi[k];
+            if (!(x >= b.xMin && x <= b.xMax && p >= b.phiMin && p <= b.phiMax))
+            {
+                out[k] = 0;
+                continue;
+            }
+            for (int t = 0; t < terms; t++)
+                scalarHeight[t] = height[t][k];
+            out[k] = scalar.defuzzify(b);
+        }
+    }
+
+    void ensureCapacity(int n, int sets, int terms)
+    {
+        if (mXpos != null && n <= capacity && mXpos.length >= sets)
+            return;
+        capacity = Math.max(n, 2 * capacity);
+        mXpos = new double[sets][capacity];
+        mPhi = new double[sets][capacity];
+        height = new double[terms][capacity];
+    }
+
+    // Piecewise linear sets as their value at the first point, y0, and
+    // segments from x0 to x1 along which they change by slope per unit.
+    // Set k has segments first[k] to first[k + 1] - 1. A segment where
+    // the set jumps is kept as a step at x0, taken once the input is past
+    // it, as FuzzyKernel.membership does.
+    static class Segments
+    {
+        final double y0[];
+        final int first[];
+        final double x0[], x1[], slope[], step[];
+
+        Segments(double px[], double py[], int pn[], int stride)
+        {
+            int sets = pn.length, count = 0;
+            for (int k = 0; k < sets; k++)
+                count += pn[k] - 1;
+            y0 = new double[sets];
+            first = new int[sets + 1];
+            x0 = new double[count];
+            x1 = new double[count];
+            slope = new double[count];
+            step = new double[count];
+            int s = 0;
+            for (int k = 0; k < sets; k++)
+            {
+                int off = k * stride;
+                y0[k] = py[off];
+                first[k] = s;
+                for (int p = 0; p + 1 < pn[k]; p++, s++)
+                {
+                    x0[s] = px[off + p];
+                    x1[s] = px[off + p + 1];
+                    double dy = py[off + p + 1] - py[off + p];
+                    if (x1[s] == x0[s])
+                        step[s] = dy;
+                    else
+                        slope[s] = dy / (x1[s] - x0[s]);
+                }
+            }
+            first[sets] = s;
+        }
+
+        // membership of in[0..n-1] in set k, written to out
+        void membership(int k, double in[], double out[], int n)
+        {
+            double v = y0[k];
+            for (int i = 0; i < n; i++)
+                out[i] = v;
+            for (int s = first[k]; s < first[k + 1]; s++)
+            {
+                double a = x0[s], c = x1[s];
+                if (a == c)
+                {
+                    double d = step[s];
+                    for (int i = 0; i < n; i++)
+                        out[i] += in[i] > a ? d : 0;
+                    continue;
+                }
+                double m = slope[s];
+                for (int i = 0; i < n; i++)
+                    out[i] += m * (Math.min(Math.max(in[i], a), c) - a);
+            }
+        }
+    }
+}
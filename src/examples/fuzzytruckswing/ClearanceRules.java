@@ -0,0 +1,56 @@
+package examples.fuzzytruckswing;
+
+// A third, small rule base that turns the truck away from an obstacle
+// before it gets to it, where the obstacle rules only take over once the
+// look-ahead finds one in the way. Its inputs are the clearance, the
+// distance in world units from the truck to the nearest obstacle, and the
+// bearing of that obstacle in degrees from the truck's heading, positive
+// to its left:
+//
+//                 Left    Right   Behind
+//     Near        -30     +30     0
+//     Medium      -12     +12     0
+//     Far         0       0       0
+//
+// Each rule fires with the smaller of its two memberships and concludes a
+// change of angle; the conclusions are averaged with the firing strengths
+// as weights, zero-order Sugeno, so the turn grows smoothly from nothing
+// as the truck closes in. An obstacle dead ahead is as much left as
+// right and gets no turn; the obstacle rules see to that one.
+//
+// Nothing is kept between calls, so one instance serves any number of
+// threads.
+
+public class ClearanceRules
+{
+    // the clearance sets, as points and memberships for
+    // FuzzyKernel.membership
+    static final double CLEARANCE_X[][] = {{0, 16}, {0, 16, 48}, {16, 48}};
+    static final double CLEARANCE_Y[][] = {{1, 0}, {0, 1, 0}, {0, 1}};
+    // Left over the bearing; Right is Left of the bearing turned over,
+    // and Behind goes by how far the bearing is from straight ahead
+    static final double LEFT_X[] = {-20, 20, 60, 100}, LEFT_Y[] = {0, 1, 1, 0};
+    static final double BEHIND_X[] = {60, 100}, BEHIND_Y[] = {0, 1};
+    public static final double CONCLUSIONS[][] = {{-30, 30, 0}, {-12, 12, 0}, {0, 0, 0}};
+
+    public static final String CLEARANCE_TERMS[] = {"Near", "Medium", "Far"};
+    public static final String BEARING_TERMS[] = {"Left", "Right", "Behind"};
+
+    // the change of angle for the given clearance in world units and
+    // bearing in degrees, -180 to 180
+    public double getConclusion(double clearance, double bearing)
+    {
+        double left = FuzzyKernel.membership(LEFT_X, LEFT_Y, 0, LEFT_X.length, bearing);
+        double right = FuzzyKernel.membership(LEFT_X, LEFT_Y, 0, LEFT_X.length, -bearing);
+        double behind = FuzzyKernel.membership(BEHIND_X, BEHIND_Y, 0, BEHIND_X.length, Math.abs(bearing));
+        double sum = 0, weighted = 0;
+        for (int i = 0; i < CLEARANCE_X.length; i++)
+        {
+            double m = FuzzyKernel.membership(CLEARANCE_X[i], CLEARANCE_Y[i], 0, CLEARANCE_X[i].length, clearance);
+            double wLeft = Math.min(m, left), wRight = Math.min(m, right), wBehind = Math.min(m, behind);
+            sum += wLeft + wRight + wBehind;
+            weighted += wLeft * CONCLUSIONS[i][0] + wRight * CONCLUSIONS[i][1] + wBehind * CONCLUSIONS[i][2];
+        }
+        return sum > 0 ? weighted / sum : 0;
+    }
+}
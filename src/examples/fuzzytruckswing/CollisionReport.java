@@ -0,0 +1,131 @@
+package examples.fuzzytruckswing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// How well the truck keeps clear of obstacles with the look-ahead test,
+// with the swept footprint, and with the swept footprint and clearance
+// steering or path planning, as the step grows:
+//
+//     java examples.fuzzytruckswing.CollisionReport [episodes]
+//
+// Each episode has a random start state, 500 unless given, and obstacles
+// as the applet's generate button makes them, one to four thin bars clear
+// of the start, the same for every row. Every row runs them all at one truck speed, the
+// distance of a step, with one of the four tests: how many park, leave the
+// canvas or run out of iterations, how many iterations a parked one
+// takes, what a step costs, and how many episodes hit an obstacle, the
+// footprint touching it somewhere on the move from one pose to the next.
+// The hits are found with a SweptFootprint of the report's own. Each
+// layout's DistanceField is built, and its plans made, in the first run of
+// a row, which is not timed, so the steps timed do not include making
+// them.
+
+public class CollisionReport
+{
+    static final int MAX_ITERATIONS = 1000;
+    static final double SPEEDS[] = {1, 2, 3, 4, 6};
+    static final String TESTS[] = {"look-ahead", "swept", "clearance", "planned"};
+
+    public static void main(String args[])
+    {
+        int episodes = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        Random r = new Random(5);
+        List<ObstacleLayout> layouts = new ArrayList<>();
+        double starts[][] = new double[episodes][];
+        for (int k = 0; k < episodes; k++)
+        {
+            starts[k] = new double[]{100 * r.nextDouble(), 100 * r.nextDouble(), -90 + 360 * r.nextDouble()};
+            layouts.add(new ObstacleLayout(obstacles(r.nextLong(), starts[k][0], starts[k][1])));
+        }
+
+        TruckEngine engine = new TruckEngine(new FuzzyKernel(CompiledRules.compile(new TruckRules())));
+        engine.setWorldSize(400, 400);
+        // warm up every test before timing any
+        for (int test = 0; test < TESTS.length; test++)
+        {
+            setTest(engine, test);
+            run(engine, layouts, starts, 2, Math.min(episodes, 100), true);
+        }
+
+        System.out.println(episodes + " episodes, one to four obstacles each, at most " + MAX_ITERATIONS
+                + " iterations");
+        System.out.printf("%5s %-10s %7s %7s %7s %10s %8s %7s%n", "speed", "test", "parked", "left", "stuck",
+                "iterations", "ns/step", "hit");
+        for (double speed : SPEEDS)
+            for (int test = 0; test < TESTS.length; test++)
+            {
+                setTest(engine, test);
+                long result[] = run(engine, layouts, starts, speed, episodes, true);
+                // timed again without looking for hits
+                long start = System.nanoTime();
+                run(engine, layouts, starts, speed, episodes, false);
+                long ns = System.nanoTime() - start;
+                System.out.printf("%5.0f %-10s %6.1f%% %6.1f%% %6.1f%% %10.1f %8.0f %6.1f%%%n", speed,
+                        TESTS[test], 100.0 * result[0] / episodes,
+                        100.0 * result[1] / episodes, 100.0 * (episodes - result[0] - result[1]) / episodes,
+                        result[0] == 0 ? 0 : (double) result[2] / result[0], (double) ns / result[3],
+                        100.0 * result[4] / episodes);
+            }
+    }
+
+    // obstacles as the applet's generate button makes them from the seed
+    // for a truck starting at (x, y)
+    static List<int[]> obstacles(long seed, double x, double y)
+    {
+        ObstacleGenerator generator = new ObstacleGenerator(seed);
+        generator.setCount(new Random(seed).nextInt(4) + 1);
+        generator.clearStart(x, y, 4);
+        return generator.generate();
+    }
+
+    static void setTest(TruckEngine engine, int test)
+    {
+        engine.setSweptCollision(test > 0);
+        engine.setClearanceSteering(test == 2);
+        engine.setPathPlanning(test == 3);
+    }
+
+    // runs the first episodes at the given speed: parked, left, iterations
+    // of the parked ones, steps, and episodes that hit an obstacle if hits
+    // are looked for
+    static long[] run(TruckEngine engine, List<ObstacleLayout> layouts, double starts[][], double speed, int episodes,
+                      boolean hits)
+    {
+        SweptFootprint move = new SweptFootprint();
+        long result[] = new long[5];
+        engine.setTruckSpeed(speed);
+        for (int k = 0; k < episodes; k++)
+        {
+            ObstacleLayout layout = layouts.get(k);
+            engine.setObstacles(layout);
+            engine.setStart(starts[k][0], starts[k][1], starts[k][2]);
+            engine.reset();
+            boolean hit = false;
+            double x = starts[k][0], y = starts[k][1], phi = starts[k][2];
+            while (engine.getIteration() < MAX_ITERATIONS && !engine.isComplete())
+            {
+                engine.step();
+                if (!hits)
+                    continue;
+                move.set(x, y, phi, engine.getXt(), engine.getYt(), engine.getPhit(), 400, 400);
+                hit |= move.firstContact(layout) >= 0;
+                x = engine.getXt();
+                y = engine.getYt();
+                phi = engine.getPhit();
+            }
+            result[3] += engine.getIteration();
+            if (hit)
+                result[4]++;
+            if (engine.isFinished())
+            {
+                result[0]++;
+                result[2] += engine.getIteration();
+            }
+            else if (engine.isDisabled())
+                result[1]++;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,232 @@
+package examples.fuzzytruckswing;
+
+import nrc.fuzzy.FuzzySet;
+
+// The fuzzy sets and rule conclusions of a TruckRules copied into primitive
+// arrays, ready for FuzzyKernel. An instance is never changed after it has
+// been compiled, so one can be shared by any number of kernels on any
+// number of threads. When the rule conclusions are edited only the
+// conclusion indices are compiled again; the sets are shared.
+
+public class CompiledRules
+{
+    // one rule base, i.e. one rule matrix with its input and output sets
+    static class Base
+    {
+        int rows, columns;
+        // universe of discourse of the inputs
+        double xMin, xMax, phiMin, phiMax;
+        // points of the sets; set k has n[k] points at x[k * stride + p], y[k * stride + p]
+        double xposX[], xposY[];
+        int xposN[];
+        double phiX[], phiY[];
+        int phiN[];
+        double outX[], outY[];
+        int outN[];
+        // universe of discourse and highest membership of the output sets
+        double outMin, outMax;
+        double outPeak[];
+        // centre of gravity of each output set, and the middle of where
+        // it is highest
+        double outCentroid[], outCentre[];
+        // term index of the conclusion of rule (i, j) at i * columns + j,
+        // -1 when the rule has been killed
+        int conclusion[];
+        // FuzzyController.MAMDANI or LARSEN, MINIMUM or PRODUCT
+        int executor, combine;
+
+        // a copy sharing the sets, with the conclusions and inference of base
+        Base withConclusions(RuleBase from, RuleBase base, int length)
+        {
+            Base b = new Base();
+            b.rows = rows;
+            b.columns = columns;
+            b.xMin = xMin;
+            b.xMax = xMax;
+            b.phiMin = phiMin;
+            b.phiMax = phiMax;
+            b.xposX = xposX;
+            b.xposY = xposY;
+            b.xposN = xposN;
+            b.phiX = phiX;
+            b.phiY = phiY;
+            b.phiN = phiN;
+            b.outX = outX;
+            b.outY = outY;
+            b.outN = outN;
+            b.outMin = outMin;
+            b.outMax = outMax;
+            b.outPeak = outPeak;
+            b.outCentroid = outCentroid;
+            b.outCentre = outCentre;
+            b.executor = base.getExecutor(length);
+            b.combine = base.getCombine(length);
+            b.conclusion = conclusion.clone();
+            for (int i = 0; i < rows; i++)
+                for (int j = 0; j < columns; j++)
+                    if (!from.sameConclusion(base, length, i, j))
+                        b.conclusion[i * columns + j] = termIndex(base.getConclusion(length, i, j));
+            return b;
+        }
+    }
+
+    final Base docking;
+    final Base obstacle;
+    // the most points any set has
+    int stride;
+    // the rule conclusions this was compiled from
+    final RuleBase ruleBase;
+
+    private CompiledRules(Base docking, Base obstacle, RuleBase ruleBase)
+    {
+        this.docking = docking;
+        this.obstacle = obstacle;
+        this.ruleBase = ruleBase;
+    }
+
+    public static CompiledRules compile(TruckRules rules)
+    {
+        RuleBase base = rules.getRuleBase();
+        CompiledRules c = new CompiledRules(new Base(), new Base(), base);
+        c.stride = 2;
+        for (FuzzySet[] sets : new FuzzySet[][]{rules.xposFzsets, rules.phiFzSets, rules.changePhiFzSets,
+                rules.obsxposFzsets, rules.obsphiFzSets})
+            for (FuzzySet s : sets)
+                c.stride = Math.max(c.stride, s.size());
+
+        c.compile(c.docking, rules, rules.xposFzsets, rules.phiFzSets, base, FuzzyController.DOCKING);
+        c.compile(c.obstacle, rules, rules.obsxposFzsets, rules.obsphiFzSets, base, FuzzyController.OBSTACLE);
+        return c;
+    }
+
+    // these rules with the conclusions of base, this if they are the same
+    public CompiledRules withRuleBase(RuleBase base)
+    {
+        if (base == ruleBase)
+            return this;
+        CompiledRules c = new CompiledRules(docking.withConclusions(ruleBase, base, FuzzyController.DOCKING),
+                obstacle.withConclusions(ruleBase, base, FuzzyController.OBSTACLE), base);
+        c.stride = stride;
+        return c;
+    }
+
+    private void compile(Base b, TruckRules rules, FuzzySet xposSets[], FuzzySet phiSets[], RuleBase base, int length)
+    {
+        String conclusions[][] = base.getConclusions(length);
+        b.executor = base.getExecutor(length);
+        b.combine = base.getCombine(length);
+        b.rows = conclusions.length;
+        b.columns = conclusions[0].length;
+        b.xMin = rules.getMinXpos(length);
+        b.xMax = rules.getMaxXpos(length);
+        b.phiMin = rules.getMinPhi(length);
+        b.phiMax = rules.getMaxPhi(length);
+
+        b.xposN = new int[xposSets.length];
+        b.xposX = new double[xposSets.length * stride];
+        b.xposY = new double[xposSets.length * stride];
+        copyPoints(xposSets, b.xposX, b.xposY, b.xposN);
+        b.phiN = new int[phiSets.length];
+        b.phiX = new double[phiSets.length * stride];
+        b.phiY = new double[phiSets.length * stride];
+        copyPoints(phiSets, b.phiX, b.phiY, b.phiN);
+
+        FuzzySet outSets[] = rules.changePhiFzSets;
+        b.outN = new int[outSets.length];
+        b.outX = new double[outSets.length * stride];
+        b.outY = new double[outSets.length * stride];
+        copyPoints(outSets, b.outX, b.outY, b.outN);
+        b.outMin = rules.changePhi.getMinUOD();
+        b.outMax = rules.changePhi.getMaxUOD();
+        b.outPeak = new double[outSets.length];
+        b.outCentroid = new double[outSets.length];
+        b.outCentre = new double[outSets.length];
+        for (int t = 0; t < outSets.length; t++)
+        {
+            b.outPeak[t] = outSets[t].getMaxY();
+            centres(b, t, t * stride);
+        }
+
+        b.conclusion = new int[b.rows * b.columns];
+        for (int i = 0; i < b.rows; i++)
+            for (int j = 0; j < b.columns; j++)
+                b.conclusion[i * b.columns + j] = termIndex(conclusions[i][j]);
+    }
+
+    // the centroid and the centre of output set t, taken to the edges of
+    // the universe of discourse as FuzzyKernel.clip does
+    private static void centres(Base b, int t, int off)
+    {
+        int n = b.outN[t];
+        double x[] = new double[n + 2], y[] = new double[n + 2];
+        int m = 0;
+        if (b.outY[off] > 0 && b.outX[off] > b.outMin)
+        {
+            x[m] = b.outMin;
+            y[m++] = b.outY[off];
+        }
+        for (int p = 0; p < n; p++)
+        {
+            x[m] = b.outX[off + p];
+            y[m++] = b.outY[off + p];
+        }
+        if (b.outY[off + n - 1] > 0 && b.outX[off + n - 1] < b.outMax)
+        {
+            x[m] = b.outMax;
+            y[m++] = b.outY[off + n - 1];
+        }
+
+        double area = 0, moment = 0;
+        double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY;
+        for (int p = 0; p < m; p++)
+        {
+            if (p + 1 < m)
+            {
+                double xs = x[p], ys = y[p], xe = x[p + 1], ye = y[p + 1];
+                area += 0.5 * (ys + ye) * (xe - xs);
+                moment += (xe - xs) * (xs * (2 * ys + ye) + xe * (ys + 2 * ye)) / 6.0;
+            }
+            if (y[p] == b.outPeak[t])
+            {
+                lo = Math.min(lo, x[p]);
+                hi = Math.max(hi, x[p]);
+            }
+        }
+        b.outCentroid[t] = area > 0 ? moment / area : 0.5 * (lo + hi);
+        b.outCentre[t] = 0.5 * (lo + hi);
+    }
+
+    private void copyPoints(FuzzySet sets[], double x[], double y[], int n[])
+    {
+        for (int k = 0; k < sets.length; k++)
+        {
+            n[k] = sets[k].size();
+            for (int p = 0; p < n[k]; p++)
+            {
+                x[k * stride + p] = sets[k].getX(p);
+                y[k * stride + p] = sets[k].getY(p);
+            }
+        }
+    }
+
+    // index of a changePhi term, -1 for a killed rule
+    static int termIndex(String expression)
+    {
+        if (expression.equals(" "))
+            return -1;
+        int t = TruckRules.termIndex(expression);
+        if (t < 0)
+            throw new IllegalArgumentException("Not a changePhi term: " + expression);
+        return t;
+    }
+
+    public RuleBase getRuleBase()
+    {
+        return ruleBase;
+    }
+
+    public int getVersion()
+    {
+        return ruleBase.getVersion();
+    }
+}
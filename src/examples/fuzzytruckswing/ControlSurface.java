@@ -0,0 +1,119 @@
+package examples.fuzzytruckswing;
+
+// The output of one rule base sampled on a dense grid over its two inputs.
+// Between grid points the change of angle is interpolated bilinearly, so
+// a lookup costs a handful of multiplications instead of a full fuzzy
+// inference. Instances never change once built.
+
+public class ControlSurface
+{
+    final int length;
+    // version of the rules sampled, see RuleBase.getVersion
+    final int version;
+    final double xMin, xMax, phiMin, phiMax;
+    // number of grid cells along each axis; there is one more sample
+    final int resolution;
+    final double invDx, invDphi;
+    // samples, row by row: values[iphi * (resolution + 1) + ix]
+    final double values[];
+    // largest difference to the exact result found at the cell centres
+    double maxError = Double.NaN;
+
+    ControlSurface(int length, int version, double xMin, double xMax, double phiMin, double phiMax, int resolution)
+    {
+        this.length = length;
+        this.version = version;
+        this.xMin = xMin;
+        this.xMax = xMax;
+        this.phiMin = phiMin;
+        this.phiMax = phiMax;
+        this.resolution = resolution;
+        invDx = resolution / (xMax - xMin);
+        invDphi = resolution / (phiMax - phiMin);
+        values = new double[(resolution + 1) * (resolution + 1)];
+    }
+
+    // sample rule base length of source on a resolution x resolution grid
+    // over the input ranges of rules, whose version it is taken to be
+    public static ControlSurface compile(FuzzyController source, TruckRules rules, int length, int resolution)
+    {
+        ControlSurface s = new ControlSurface(length, rules.getVersion(), rules.getMinXpos(length), rules.getMaxXpos(length),
+                rules.getMinPhi(length), rules.getMaxPhi(length), resolution);
+        int n = resolution + 1;
+        for (int i = 0; i < n; i++)
+        {
+            double phi = s.phiAt(i);
+            for (int j = 0; j < n; j++)
+                s.values[i * n + j] = source.getConclusion(length, s.xAt(j), phi, null);
+        }
+        return s;
+    }
+
+    double xAt(int j)
+    {
+        return j == resolution ? xMax : xMin + j / invDx;
+    }
+
+    double phiAt(int i)
+    {
+        return i == resolution ? phiMax : phiMin + i / invDphi;
+    }
+
+    // the interpolated change of angle. Inputs outside the universe of
+    // discourse give 0, as FuzzyJ refuses them and getConclusion falls
+    // back to no change.
+    public double getValue(double x, double phi)
+    {
+        if (!(x >= xMin && x <= xMax && phi >= phiMin && phi <= phiMax))
+            return 0;
+        double fx = (x - xMin) * invDx;
+        double fphi = (phi - phiMin) * invDphi;
+        int ix = (int) fx;
+        int iphi = (int) fphi;
+        if (ix >= resolution) ix = resolution - 1;
+        if (iphi >= resolution) iphi = resolution - 1;
+        double tx = fx - ix;
+        double tphi = fphi - iphi;
+        int k = iphi * (resolution + 1) + ix;
+        double v0 = values[k] + (values[k + 1] - values[k]) * tx;
+        k += resolution + 1;
+        double v1 = values[k] + (values[k + 1] - values[k]) * tx;
+        return v0 + (v1 - v0) * tphi;
+    }
+
+    // compare the surface against exact at the centre of every cell, where
+    // bilinear interpolation is furthest from the samples, and remember the
+    // largest difference
+    public double measureMaxError(FuzzyController exact)
+    {
+        double max = 0;
+        for (int i = 0; i < resolution; i++)
+        {
+            double phi = phiMin + (i + 0.5) / invDphi;
+            for (int j = 0; j < resolution; j++)
+            {
+                double x = xMin + (j + 0.5) / invDx;
+                double e = Math.abs(getValue(x, phi) - exact.getConclusion(length, x, phi, null));
+                if (e > max)
+                    max = e;
+            }
+        }
+        maxError = max;
+        return max;
+    }
+
+    public double getMaxError()
+    {
+        return maxError;
+    }
+
+    public int getResolution()
+    {
+        return resolution;
+    }
+
+    public int getVersion()
+    {
+        return version;
+    }
+}
@@ -0,0 +1,34 @@
+package examples.fuzzytruckswing;
+
+// What each defuzzifier of the kernel costs and how well the truck parks
+// with it, to pick the cheapest one that still parks reliably:
+//
+//     java examples.fuzzytruckswing.DefuzzifierReport [episodes [obstacles]]
+//
+// The cost is the time of one evaluation of the docking and the obstacle
+// rules at random inputs. The parking is scored over the same
+// ParkingCorpus for every defuzzifier, 500 episodes unless given, with the
+// given number of obstacles.
+
+public class DefuzzifierReport
+{
+    public static void main(String args[])
+    {
+        int episodes = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int obstacles = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        TruckRules rules = new TruckRules();
+        CompiledRules compiled = CompiledRules.compile(rules);
+        ParkingCorpus corpus = new ParkingCorpus(rules, episodes, obstacles, 3);
+
+        System.out.println(episodes + " episodes, " + corpus.getObstacleCount() + " obstacles, at most "
+                + ParkingCorpus.MAX_ITERATIONS + " iterations each");
+        System.out.printf("%-18s %9s %s%n", "defuzzifier", "ns/eval", ParkingCorpus.HEADER);
+        for (int d = FuzzyController.MOMENT; d <= FuzzyController.SUGENO; d++)
+        {
+            FuzzyKernel kernel = new FuzzyKernel(compiled);
+            kernel.setDefuzzifier(d);
+            double ns = corpus.cost(kernel, 20, 30);
+            System.out.printf("%-18s %9.0f %s%n", FuzzyController.DEFUZZIFIER_NAMES[d], ns, corpus.score(kernel));
+        }
+    }
+}
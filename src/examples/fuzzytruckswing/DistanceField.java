@@ -0,0 +1,236 @@
+package examples.fuzzytruckswing;
+
+import java.util.Arrays;
+
+// The signed distance from the obstacles of an ObstacleLayout, sampled on
+// a grid of nodes cell world units apart that reaches MARGIN units past
+// the obstacles: positive outside them, negative inside. distance() and
+// direction() look a point up in constant time, however many obstacles
+// there are.
+//
+// A node is taken to be in an obstacle when it is within half a cell of
+// it along both axes, so even an obstacle thinner than a cell covers a
+// node. The distance of every node from the nearest node in an obstacle,
+// and of every node in one from the nearest node outside, is found
+// exactly by the linear time transform of Felzenszwalb and Huttenlocher:
+// a scan down each column, then the lower envelope of parabolas along
+// each row. A node outside the obstacles is then within half a cell
+// diagonal of its true distance, and lowerBound() gives a distance no
+// point can be nearer an obstacle than.
+//
+// A field is never changed after it has been built, so one can be shared
+// by any number of engines on any number of threads.
+
+public class DistanceField
+{
+    // world units between nodes, unless that would give more than
+    // MAX_NODES of them
+    public static final double CELL = 2;
+    static final int MAX_NODES = 1 << 20;
+    // world units the grid reaches past the obstacles on every side
+    static final double MARGIN = 2 * SweptFootprint.REACH;
+    static final double INF = Double.POSITIVE_INFINITY;
+
+    // the node in column i and row j is at originX + i * cell,
+    // originY + j * cell, its distance at j * columns + i
+    final double originX, originY, cell;
+    final int columns, rows;
+    final float distance[];
+
+    public DistanceField(ObstacleLayout layout)
+    {
+        int n = layout.size();
+        int b[] = layout.bounds;
+        double minX = INF, minY = INF, maxX = -INF, maxY = -INF;
+        for (int k = 0; k < n; k++)
+        {
+            minX = Math.min(minX, b[4 * k]);
+            minY = Math.min(minY, b[4 * k + 1]);
+            maxX = Math.max(maxX, b[4 * k + 2]);
+            maxY = Math.max(maxY, b[4 * k + 3]);
+        }
+        if (n == 0)
+        {
+            originX = originY = 0;
+            cell = CELL;
+            columns = rows = 0;
+            distance = new float[0];
+            return;
+        }
+        double spanX = maxX - minX + 2 * MARGIN, spanY = maxY - minY + 2 * MARGIN;
+        cell = Math.max(CELL, Math.sqrt(spanX * spanY / MAX_NODES) * 1.01);
+        originX = minX - MARGIN;
+        originY = minY - MARGIN;
+        columns = (int) Math.ceil(spanX / cell) + 1;
+        rows = (int) Math.ceil(spanY / cell) + 1;
+
+        boolean inside[] = new boolean[columns * rows];
+        for (int k = 0; k < n; k++)
+        {
+            // like TruckGeometry.quadOverlapsBox, a box of no width or
+            // height is no obstacle
+            if (b[4 * k] == b[4 * k + 2] || b[4 * k + 1] == b[4 * k + 3])
+                continue;
+            int i0 = Math.max(0, (int) Math.ceil((b[4 * k] - cell / 2 - originX) / cell));
+            int i1 = Math.min(columns - 1, (int) Math.floor((b[4 * k + 2] + cell / 2 - originX) / cell));
+            int j0 = Math.max(0, (int) Math.ceil((b[4 * k + 1] - cell / 2 - originY) / cell));
+            int j1 = Math.min(rows - 1, (int) Math.floor((b[4 * k + 3] + cell / 2 - originY) / cell));
+            for (int j = j0; j <= j1; j++)
+                for (int i = i0; i <= i1; i++)
+                    inside[j * columns + i] = true;
+        }
+
+        double toInside[] = squaredDistances(inside, true);
+        double toOutside[] = squaredDistances(inside, false);
+        distance = new float[columns * rows];
+        for (int c = 0; c < distance.length; c++)
+            distance[c] = (float) (inside[c] ? -cell * Math.sqrt(toOutside[c]) : cell * Math.sqrt(toInside[c]));
+    }
+
+    // the squared distance in cells of every node from the nearest node
+    // whose inside is to, infinite if there is none
+    double[] squaredDistances(boolean inside[], boolean to)
+    {
+        double g[] = new double[columns * rows];
+        // the distance down each column, scanning down and then up
+        for (int i = 0; i < columns; i++)
+        {
+            double d = INF;
+            for (int j = 0; j < rows; j++)
+            {
+                d = inside[j * columns + i] == to ? 0 : d + 1;
+                g[j * columns + i] = d;
+            }
+            d = INF;
+            for (int j = rows - 1; j >= 0; j--)
+            {
+                d = Math.min(d + 1, g[j * columns + i]);
+                g[j * columns + i] = d * d;
+            }
+        }
+        // then along each row
+        int n = Math.max(columns, rows);
+        double f[] = new double[n], d[] = new double[n], z[] = new double[n + 1];
+        int v[] = new int[n];
+        for (int j = 0; j < rows; j++)
+        {
+            System.arraycopy(g, j * columns, f, 0, columns);
+            transform(f, columns, d, v, z);
+            System.arraycopy(d, 0, g, j * columns, columns);
+        }
+        return g;
+    }
+
+    // The squared distance transform of the first n values of f into d:
+    // d[q] is the least (q - p)^2 + f[p]. The lower envelope of the
+    // parabolas rooted at the finite values of f is built from the left,
+    // parabola v[k] being lowest from z[k] to z[k + 1], then read off.
+    static void transform(double f[], int n, double d[], int v[], double z[])
+    {
+        int k = -1;
+        for (int q = 0; q < n; q++)
+        {
+            if (f[q] == INF)
+                continue;
+            double s = 0;
+            while (k >= 0)
+            {
+                int p = v[k];
+                s = ((f[q] + (double) q * q) - (f[p] + (double) p * p)) / (2.0 * (q - p));
+                if (s > z[k])
+                    break;
+                k--;
+            }
+            k++;
+            v[k] = q;
+            z[k] = k == 0 ? -INF : s;
+        }
+        if (k < 0)
+        {
+            Arrays.fill(d, 0, n, INF);
+            return;
+        }
+        z[k + 1] = INF;
+        int j = 0;
+        for (int q = 0; q < n; q++)
+        {
+            while (z[j + 1] < q)
+                j++;
+            double dq = q - v[j];
+            d[q] = dq * dq + f[v[j]];
+        }
+    }
+
+    public double getCell()
+    {
+        return cell;
+    }
+
+    // the distance at world point (x, y), interpolated between the four
+    // nodes around it. Off the grid every obstacle is more than MARGIN
+    // away, and this is the distance at the nearest point of the grid plus
+    // the way there, no less than the true one. Infinite if there are no
+    // obstacles.
+    public double distance(double x, double y)
+    {
+        if (columns == 0)
+            return INF;
+        double gx = (x - originX) / cell, gy = (y - originY) / cell;
+        double cx = Math.max(0, Math.min(columns - 1, gx)), cy = Math.max(0, Math.min(rows - 1, gy));
+        int i = Math.min((int) cx, columns - 2), j = Math.min((int) cy, rows - 2);
+        double fx = cx - i, fy = cy - j;
+        int c = j * columns + i;
+        double top = distance[c] + fx * (distance[c + 1] - distance[c]);
+        double bottom = distance[c + columns] + fx * (distance[c + columns + 1] - distance[c + columns]);
+        return top + fy * (bottom - top) + cell * Math.hypot(gx - cx, gy - cy);
+    }
+
+    // the way away from the nearest obstacle at world point (x, y), as a
+    // unit vector into g, which is returned; {0, 0} where the distance
+    // is flat or there are no obstacles
+    public double[] direction(double x, double y, double g[])
+    {
+        g[0] = g[1] = 0;
+        if (columns == 0)
+            return g;
+        double gx = (x - originX) / cell, gy = (y - originY) / cell;
+        double cx = Math.max(0, Math.min(columns - 1, gx)), cy = Math.max(0, Math.min(rows - 1, gy));
+        double dx, dy;
+        if (cx != gx || cy != gy)
+        {
+            // off the grid the obstacles are all behind its edge
+            dx = gx - cx;
+            dy = gy - cy;
+        }
+        else
+        {
+            int i = Math.min((int) cx, columns - 2), j = Math.min((int) cy, rows - 2);
+            double fx = cx - i, fy = cy - j;
+            int c = j * columns + i;
+            int e = c + columns;
+            dx = (1 - fy) * (distance[c + 1] - distance[c]) + fy * (distance[e + 1] - distance[e]);
+            dy = (1 - fx) * (distance[e] - distance[c]) + fx * (distance[e + 1] - distance[c + 1]);
+        }
+        double length = Math.hypot(dx, dy);
+        if (length > 0)
+        {
+            g[0] = dx / length;
+            g[1] = dy / length;
+        }
+        return g;
+    }
+
+    // a distance from the obstacles no part of them is nearer world
+    // point (x, y) than: the nearest node's, less the way to it and the
+    // most a node can be out by. Infinite if there are no obstacles.
+    public double lowerBound(double x, double y)
+    {
+        if (columns == 0)
+            return INF;
+        long i = Math.max(0, Math.min(columns - 1, Math.round((x - originX) / cell)));
+        long j = Math.max(0, Math.min(rows - 1, Math.round((y - originY) / cell)));
+        // the node's distance is rounded to a float, maybe up
+        double d = Math.nextDown(distance[(int) j * columns + (int) i]);
+        return d - Math.hypot(x - originX - i * cell, y - originY - j * cell) - cell * Math.sqrt(.5);
+    }
+}
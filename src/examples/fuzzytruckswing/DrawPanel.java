@@ -3,21 +3,45 @@ package examples.fuzzytruckswing;
 import javax.swing.*;
 import java.beans.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
+// The view of the parking lot, painted in layers: an image of the
+// background, dock and obstacles, rebuilt only when the obstacles or the
+// size change; an image the traced path is drawn onto as it grows; and
+// the trucks, drawn over the two on every paint. A new frame repaints only
+// the region the truck left and entered, so a frame costs the same however
+// many obstacles there are and however long the trace is.
+//
+// The simulation works in world units (see TruckGeometry); this panel is
+// the only place they become pixels, the world of the engine or of the
+// trajectory being replayed scaled to fill the panel.
+
 public class DrawPanel extends JPanel
 {
 	// variables for the size of the truck 
-	public static final int TRUCK_WIDTH = 16;
-	public static final int TRUCK_LENGTH = 32;
-	public static final int CAB_WIDTH = 6;
+	public static final int TRUCK_WIDTH = TruckGeometry.TRUCK_WIDTH;
+	public static final int TRUCK_LENGTH = TruckGeometry.TRUCK_LENGTH;
+	public static final int CAB_WIDTH = TruckGeometry.CAB_WIDTH;
 
 	// keep track of the truck coords for redrawing.
 	Polygon truckPoly, cabPoly;
+	// the background, dock and obstacles; null when it must be rebuilt
+	BufferedImage staticLayer;
+	// the traced path, transparent elsewhere
+	BufferedImage traceLayer;
+	// the traced path is the first traceLength values of trace, of which
+	// tracedLength have been drawn onto traceLayer
+	double trace[];
+	int traceLength, tracedLength;
+	// truck and cab polygons of the trucks of a fleet, empty if none is shown
+	Polygon fleetPolys[][] = new Polygon[0][];
 	List<int[]>list=new ArrayList<>();
 	TruckSimulation Truck;
+	// the size of the world shown, in world units
+	int worldWidth = TruckGeometry.WORLD_WIDTH, worldHeight = TruckGeometry.WORLD_HEIGHT;
 
 	public DrawPanel(TruckSimulation t)
 	{
@@ -36,11 +60,88 @@ public class DrawPanel extends JPanel
 
     public void paintComponent(Graphics g)
     {
-        if (!Truck.tracingOn) super.paintComponent( g );
 		if (Truck.recompute) computeTruckCoords();
-		drawTruck(g);
-		drawDock(g);
-		drawObs(g);
+		if (!updateLayers())
+		{
+			super.paintComponent(g);
+			return;
+		}
+		g.drawImage(staticLayer, 0, 0, null);
+		g.drawImage(traceLayer, 0, 0, null);
+		for (int i = 0; i < fleetPolys.length; i++)
+			drawTruck(g, fleetPolys[i][0], fleetPolys[i][1]);
+		drawTruck(g, truckPoly, cabPoly);
+	}
+
+	// rebuild the layers that are out of date; false while the panel has
+	// no size yet
+	boolean updateLayers()
+	{
+		int w = getWidth(), h = getHeight();
+		if (w <= 0 || h <= 0)
+			return false;
+		if (staticLayer == null || staticLayer.getWidth() != w || staticLayer.getHeight() != h)
+		{
+			staticLayer = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+			Graphics g = staticLayer.getGraphics();
+			g.setColor(getBackground());
+			g.fillRect(0, 0, w, h);
+			drawDock(g);
+			drawObs(g);
+			g.dispose();
+		}
+		if (traceLayer == null || traceLayer.getWidth() != w || traceLayer.getHeight() != h)
+		{
+			traceLayer = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+			tracedLength = 0;
+			drawTrace();
+		}
+		return true;
+	}
+
+	// draw what is not on traceLayer yet of the traced path and return
+	// the region drawn, null if nothing was
+	Rectangle drawTrace()
+	{
+		Rectangle drawn = null;
+		if (traceLayer == null)
+			return null;
+		Graphics g = traceLayer.getGraphics();
+		for (; tracedLength < traceLength; tracedLength += 3)
+		{
+			Polygon polys[] = truckPolygons(trace[tracedLength], trace[tracedLength + 1], trace[tracedLength + 2]);
+			drawTruck(g, polys[0], polys[1]);
+			drawn = union(drawn, polys[0].getBounds());
+			drawn = union(drawn, polys[1].getBounds());
+		}
+		g.dispose();
+		return drawn;
+	}
+
+	static Rectangle union(Rectangle a, Rectangle b)
+	{
+		return a == null ? b : a.union(b);
+	}
+
+	// show a world of the given size; the layers are drawn again
+	public void setWorldSize(int width, int height)
+	{
+		if (width == worldWidth && height == worldHeight)
+			return;
+		worldWidth = width;
+		worldHeight = height;
+		staticLayer = null;
+		traceLayer = null;
+		if (truckPoly != null)
+			computeTruckCoords();
+		repaint();
+	}
+
+	// the obstacles in list have been changed
+	public void obstaclesChanged()
+	{
+		staticLayer = null;
+		repaint();
 	}
 	public  void update(Graphics g)
 	{
@@ -53,92 +154,135 @@ public class DrawPanel extends JPanel
 		g.setColor(Color.black);
 		for (int i = 0; i <list.size() ; i++)
 		{
-			g.fillRect(list.get(i)[0],list.get(i)[1],list.get(i)[2],list.get(i)[3]);
+			int o[] = list.get(i);
+			int x0 = screenX(o[0]), y0 = screenY(o[1]);
+			g.fillRect(x0, y0, screenX(o[0] + o[2]) - x0, screenY(o[1] + o[3]) - y0);
+		}
+	}
+
+	// show the truck and traced path of a frame of the simulation,
+	// repainting only where the truck was and where it is now
+	public void showFrame(TruckSimulation.Frame f)
+	{
+		// a new trace, or a replay going back along the old one
+		if (f.trace != trace || f.traceLength < tracedLength)
+		{
+			clearTrace();
+			trace = f.trace;
+		}
+		traceLength = f.traceLength;
+		Rectangle dirty = drawTrace();
+		if (truckPoly != null)
+		{
+			dirty = union(dirty, truckPoly.getBounds());
+			dirty = union(dirty, cabPoly.getBounds());
+		}
+		Polygon polys[] = truckPolygons(f.xt, f.yt, f.phit);
+		truckPoly = polys[0];
+		cabPoly = polys[1];
+		dirty = union(dirty, truckPoly.getBounds());
+		dirty = union(dirty, cabPoly.getBounds());
+		// the outline is drawn one pixel beyond the bounds
+		dirty.grow(1, 1);
+		repaint(dirty);
+	}
+
+	public void clearTrace()
+	{
+		trace = null;
+		traceLength = 0;
+		tracedLength = 0;
+		if (traceLayer != null)
+		{
+			Graphics2D g = traceLayer.createGraphics();
+			g.setComposite(AlphaComposite.Clear);
+			g.fillRect(0, 0, traceLayer.getWidth(), traceLayer.getHeight());
+			g.dispose();
 		}
+		repaint();
+	}
+
+	// show the trucks of a fleet, their poses as x, y, angle at 3 * k
+	public void showFleet(double poses[])
+	{
+		Polygon polys[][] = new Polygon[poses.length / 3][];
+		for (int k = 0; k < polys.length; k++)
+			polys[k] = truckPolygons(poses[3 * k], poses[3 * k + 1], poses[3 * k + 2]);
+		fleetPolys = polys;
+		repaint();
+	}
+
+	public void clearFleet()
+	{
+		fleetPolys = new Polygon[0][];
+		repaint();
+	}
+
+	// compute the coordinates of the vertices of the truck and cab
+	// from the current state of the truck
+	public void computeTruckCoords() 
+	{
+		Polygon polys[] = truckPolygons(Truck.engine.Xt, Truck.engine.Yt, Truck.engine.Phit);
+		truckPoly = polys[0];
+		cabPoly = polys[1];
+		Truck.recompute = false;
 	}
 
 	// given the coordinates and the angle of the truck, 
 	// compute the coordinates of the vertices of the truck
 	// and cab.
-	public void computeTruckCoords() 
+	Polygon[] truckPolygons(double xt, double yt, double phit)
 	{
-		double x = getWidth()* Truck.Xt * .01;
-		double y = getHeight() * Truck.Yt * .01;
-		double theta = Truck.Phit * Math.PI / 180.0;
+		double theta = phit * Math.PI / 180.0;
+		double t[] = TruckGeometry.footprint(worldWidth * xt * .01, worldHeight * yt * .01, theta, new double[8]);
 		int tx[] = new int[5];
 		int ty[] = new int[5];
 		int cx[] = new int[4];
 		int cy[] = new int[4];
-		
-        // coords for the truck
-        double truckWidthBy2 = TRUCK_WIDTH / 2.0;
-        double truckWidthBy2TimesSine = truckWidthBy2 * Math.sin(theta);
-        double truckWidthBy2TimesCos = truckWidthBy2 * Math.cos(theta);
-        double truckLengthTimesSine = (TRUCK_LENGTH * Math.sin(theta));
-        double truckLengthTimesCos = (TRUCK_LENGTH * Math.cos(theta));
-		tx[0] = (int)Math.round(x - truckWidthBy2TimesSine);
-		ty[0] = (int)Math.round(y - truckWidthBy2TimesCos);
-		tx[1] = (int)Math.round(x + truckWidthBy2TimesSine);
-		ty[1] = (int)Math.round(y + truckWidthBy2TimesCos);
-
-		tx[2] = (int)Math.round(x + truckWidthBy2TimesSine - truckLengthTimesCos);
-		ty[2] = (int)Math.round(y + truckWidthBy2TimesCos + truckLengthTimesSine);
-
-		tx[3] = (int)Math.round(x - truckWidthBy2TimesSine - truckLengthTimesCos);
-		ty[3] = (int)Math.round(y - truckWidthBy2TimesCos + truckLengthTimesSine);
-
+		for (int i = 0; i < 4; i++)
+		{
+			tx[i] = screenX(t[2 * i]);
+			ty[i] = screenY(t[2 * i + 1]);
+		}
 		tx[4] = tx[0];
 		ty[4] = ty[0];
-        truckPoly = new Polygon(tx,ty,5);
+        Polygon truckPoly = new Polygon(tx,ty,5);
 
-        // coords for the truck cab
+        // coords for the truck cab, across the back of the truck
         double truckWidthBy4 = TRUCK_WIDTH / 4.0;
         double truckWidthBy4TimesSine = truckWidthBy4 * Math.sin(theta);
         double truckWidthBy4TimesCos = truckWidthBy4 * Math.cos(theta);
         double cabWidthTimesSine = (CAB_WIDTH * Math.sin(theta));
         double cabWidthTimesCos = (CAB_WIDTH * Math.cos(theta));
 
-		cx[0] = tx[2] - (int)Math.round(truckWidthBy4TimesSine);
-		cy[0] = ty[2] - (int)Math.round(truckWidthBy4TimesCos);
-
-		cx[1] = cx[0] - (int)Math.round(cabWidthTimesCos);
-		cy[1] = cy[0] + (int)Math.round(cabWidthTimesSine);
+		cx[0] = screenX(t[4] - truckWidthBy4TimesSine);
+		cy[0] = screenY(t[5] - truckWidthBy4TimesCos);
+		cx[1] = screenX(t[4] - truckWidthBy4TimesSine - cabWidthTimesCos);
+		cy[1] = screenY(t[5] - truckWidthBy4TimesCos + cabWidthTimesSine);
+		cx[2] = screenX(t[6] + truckWidthBy4TimesSine - cabWidthTimesCos);
+		cy[2] = screenY(t[7] + truckWidthBy4TimesCos + cabWidthTimesSine);
+		cx[3] = screenX(t[6] + truckWidthBy4TimesSine);
+		cy[3] = screenY(t[7] + truckWidthBy4TimesCos);
 
- 		cx[2] = tx[3] + (int)Math.round(truckWidthBy4TimesSine - cabWidthTimesCos);
-		cy[2] = ty[3] + (int)Math.round(truckWidthBy4TimesCos + cabWidthTimesSine);
+        Polygon cabPoly = new Polygon(cx,cy,4);
 
-		cx[3] = tx[3] + (int)Math.round(truckWidthBy4TimesSine);
- 		cy[3] = ty[3] + (int)Math.round(truckWidthBy4TimesCos);
-
-        cabPoly = new Polygon(cx,cy,4);
+		return new Polygon[]{truckPoly, cabPoly};
+	}
 
-		Truck.recompute = false;
+	// the pixel of the panel a point of the world is in
+	int screenX(double x)
+	{
+		return (int) Math.round(x * getWidth() / worldWidth);
 	}
-	public int[][] computeCoords(double xt,double yt,double phit)
+
+	int screenY(double y)
 	{
-		double x = getWidth()* xt * .01;
-		double y = getHeight() * yt * .01;
-		double theta = phit * Math.PI / 180.0;
-		int[][]ord=new int[4][2];
-		double truckWidthBy2 = TRUCK_WIDTH / 2.0;
-		double truckWidthBy2TimesSine = truckWidthBy2 * Math.sin(theta);
-		double truckWidthBy2TimesCos = truckWidthBy2 * Math.cos(theta);
-		double truckLengthTimesSine = (TRUCK_LENGTH * Math.sin(theta));
-		double truckLengthTimesCos = (TRUCK_LENGTH * Math.cos(theta));
-		ord[0][0] = (int)Math.round(x - truckWidthBy2TimesSine);
-		ord[0][1] = (int)Math.round(y - truckWidthBy2TimesCos);
-		ord[1][0] = (int)Math.round(x + truckWidthBy2TimesSine);
-		ord[1][1] = (int)Math.round(y + truckWidthBy2TimesCos);
-		ord[2][0] = (int)Math.round(x + truckWidthBy2TimesSine - truckLengthTimesCos);
-		ord[2][1] = (int)Math.round(y + truckWidthBy2TimesCos + truckLengthTimesSine);
-		ord[3][0] = (int)Math.round(x - truckWidthBy2TimesSine - truckLengthTimesCos);
-		ord[3][1] = (int)Math.round(y - truckWidthBy2TimesCos + truckLengthTimesSine);
-
-		return  ord;
+		return (int) Math.round(y * getHeight() / worldHeight);
 	}
+
 	// called from paint(), this will draw all of the old truck
 	// coords.
-	private void drawTruck(Graphics g) 
+	private void drawTruck(Graphics g, Polygon truckPoly, Polygon cabPoly) 
 	{
 		g.setColor(Color.yellow);
         g.fillPolygon(truckPoly);
@@ -154,6 +298,7 @@ public class DrawPanel extends JPanel
 	public void drawDock(Graphics g) {
 		g.setColor(Color.black);
 		g.setPaintMode();
-		g.drawLine(getSize().width/2, 0, getSize().width/2, 8);
+		int x = screenX(worldWidth / 2.0);
+		g.drawLine(x, 0, x, screenY(8));
 	}
 }
\ No newline at end of file
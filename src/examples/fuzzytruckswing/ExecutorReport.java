@@ -0,0 +1,56 @@
+package examples.fuzzytruckswing;
+
+// What each way of firing the rules costs and how well the truck parks
+// with it, to trade the accuracy of the inference against its speed:
+//
+//     java examples.fuzzytruckswing.ExecutorReport [episodes [obstacles]]
+//
+// A rule fires by the minimum or the product of its two memberships, and
+// clips its conclusion at that height (Mamdani) or scales it (Larsen).
+// Each of the four is set on both rule bases in turn. The cost is the
+// time of one evaluation of the docking and the obstacle rules at random
+// inputs, with FuzzyJ and with FuzzyKernel. The parking is scored with
+// the kernel, which agrees with FuzzyJ to within rounding, over the same
+// ParkingCorpus for every choice, 500 episodes unless given, with the
+// given number of obstacles.
+
+public class ExecutorReport
+{
+    static final String NAMES[] = {"Mamdani, minimum", "Mamdani, product", "Larsen, minimum", "Larsen, product"};
+
+    public static void main(String args[])
+    {
+        int episodes = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int obstacles = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        TruckRules rules = new TruckRules();
+        ParkingCorpus corpus = new ParkingCorpus(rules, episodes, obstacles, 3);
+
+        // warm up every way of firing before timing any of them
+        for (int choice = 0; choice < NAMES.length; choice++)
+        {
+            setInference(rules, choice);
+            corpus.cost(rules, 2, 3);
+            corpus.cost(new FuzzyKernel(CompiledRules.compile(rules)), 20, 3);
+        }
+
+        System.out.println(episodes + " episodes, " + corpus.getObstacleCount() + " obstacles, at most "
+                + ParkingCorpus.MAX_ITERATIONS + " iterations each");
+        System.out.printf("%-18s %10s %10s %s%n", "firing", "FuzzyJ ns", "kernel ns", ParkingCorpus.HEADER);
+        for (int choice = 0; choice < NAMES.length; choice++)
+        {
+            setInference(rules, choice);
+            FuzzyKernel kernel = new FuzzyKernel(CompiledRules.compile(rules));
+            double fuzzyJ = corpus.cost(rules, 2, 5);
+            double ns = corpus.cost(kernel, 20, 30);
+            System.out.printf("%-18s %10.0f %10.0f %s%n", NAMES[choice], fuzzyJ, ns, corpus.score(kernel));
+        }
+    }
+
+    // choice 2 * executor + combine, on both rule bases
+    static void setInference(TruckRules rules, int choice)
+    {
+        for (int length : new int[]{FuzzyController.DOCKING, FuzzyController.OBSTACLE})
+            rules.setInference(length, choice / 2, choice % 2);
+        rules.updateRules();
+    }
+}
@@ -0,0 +1,60 @@
+package examples.fuzzytruckswing;
+
+// A fuzzy controller maps the truck's x position and angle to a change
+// of angle. The same interface serves the docking rule base (7 x 5) and
+// the obstacle rule base (5 x 5); length selects which one, just like
+// the original getConclusion(7, ...) and getConclusion(5, ...) calls.
+
+public interface FuzzyController
+{
+    int DOCKING = 7;
+    int OBSTACLE = 5;
+
+    // the ways of turning the fired rules into a change of angle, see
+    // FuzzyKernel.defuzzify
+    int MOMENT = 0;
+    int CENTRE_OF_AREA = 1;
+    int MEAN_OF_MAXIMA = 2;
+    int WEIGHTED_AVERAGE = 3;
+    int SUGENO = 4;
+    String DEFUZZIFIER_NAMES[] = {"Moment", "Centre of area", "Mean of maxima", "Weighted average", "Sugeno"};
+
+    // how a rule fires, set per rule base in the RuleBase: the memberships
+    // of its two inputs are combined by their minimum or product into its
+    // firing strength, and its conclusion is clipped at that strength
+    // (Mamdani min-max-min) or scaled by it (Larsen product-max-min)
+    int MAMDANI = 0;
+    int LARSEN = 1;
+    int MINIMUM = 0;
+    int PRODUCT = 1;
+
+    // compute the change of angle for the given inputs. listener may be
+    // null, otherwise it is told about every rule that fires.
+    double getConclusion(int length, double xpos, double phi, RuleFiringListener listener);
+
+    // called before every step so that edits to the rule conclusions
+    // take effect; cheap when nothing has changed
+    default void updateRules()
+    {
+    }
+
+    // the version of the rules the conclusions come from, see
+    // RuleBase.getVersion; 0 for a controller whose rules never change
+    default int getVersion()
+    {
+        return 0;
+    }
+
+    // defuzzify the given way from now on. A controller that can not
+    // keeps to MOMENT and returns false.
+    default boolean setDefuzzifier(int d)
+    {
+        return d == MOMENT;
+    }
+
+    // the way the controller defuzzifies, see setDefuzzifier
+    default int getDefuzzifier()
+    {
+        return MOMENT;
+    }
+}
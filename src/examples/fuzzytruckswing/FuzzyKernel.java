@@ -0,0 +1,474 @@
+package examples.fuzzytruckswing;
+
+// Mamdani min-max inference on CompiledRules without FuzzyJ objects. The
+// inputs are singletons, so a rule fires with the smaller of its two
+// memberships; each output set is clipped at the strongest firing of its
+// term, and the union of the clipped sets is defuzzified by integrating
+// its piecewise linear upper envelope in closed form. The results agree
+// with TruckRules to within rounding. A rule base set to fire by product
+// multiplies the two memberships instead, and one set to Larsen scales
+// the output sets rather than clipping them, as FuzzyJ's executors do.
+//
+// Other ways of defuzzifying can be picked with setDefuzzifier. Centre of
+// area and mean of maxima work on the same envelope. Weighted average
+// skips the envelope and averages the centroids of the output sets,
+// weighted by the height each is clipped at; zero-order Sugeno sums the
+// firing strengths of the rules of each term and averages the centres of
+// the terms with those weights. Both cost a few multiplications.
+//
+// All working storage is allocated up front, so a call allocates nothing.
+// That also means one kernel must only be used by one thread at a time;
+// give each thread its own kernel over the same CompiledRules.
+
+public class FuzzyKernel implements FuzzyController
+{
+    // the rules to recompile from when they change, null if fixed
+    final TruckRules rules;
+    CompiledRules compiled;
+
+    // working storage
+    double mXpos[];
+    double height[];
+    // clipped output set of each term, shapeStride points each
+    int shapeStride;
+    double shapeX[], shapeY[];
+    int shapeN[];
+    double breaks[];
+    // value of each clipped set at the ends of the current interval
+    double lineA[], lineB[];
+    // the terms that fired, in ascending order, and how many there are
+    int active[];
+    // sum of the firing strengths of the rules of each term
+    double strength[];
+    // the upper envelope as pieces, from x0 to x1 going from y0 to y1;
+    // only kept for the defuzzifiers that need more than its moment
+    double pieceX0[], pieceY0[], pieceX1[], pieceY1[];
+    int pieces;
+
+    // one of FuzzyController.MOMENT to SUGENO
+    volatile int defuzzifier = MOMENT;
+
+    public FuzzyKernel(TruckRules rules)
+    {
+        this.rules = rules;
+        setCompiledRules(CompiledRules.compile(rules));
+    }
+
+    public FuzzyKernel(CompiledRules compiled)
+    {
+        rules = null;
+        setCompiledRules(compiled);
+    }
+
+    public CompiledRules getCompiledRules()
+    {
+        return compiled;
+    }
+
+    void setCompiledRules(CompiledRules c)
+    {
+        compiled = c;
+        int terms = c.docking.outN.length;
+        mXpos = new double[Math.max(c.docking.columns, c.obstacle.columns)];
+        height = new double[terms];
+        // clipping can add a point on every segment, plus the two ends
+        shapeStride = 2 * c.stride + 2;
+        shapeX = new double[terms * shapeStride];
+        shapeY = new double[terms * shapeStride];
+        shapeN = new int[terms];
+        breaks = new double[terms * shapeStride];
+        lineA = new double[terms];
+        lineB = new double[terms];
+        active = new int[terms];
+        strength = new double[terms];
+        // every interval between break points holds a piece of each set
+        int most = terms * shapeStride * terms;
+        pieceX0 = new double[most];
+        pieceY0 = new double[most];
+        pieceX1 = new double[most];
+        pieceY1 = new double[most];
+    }
+
+    public boolean setDefuzzifier(int d)
+    {
+        if (d < MOMENT || d > SUGENO)
+            throw new IllegalArgumentException("Unknown defuzzifier: " + d);
+        defuzzifier = d;
+        return true;
+    }
+
+    public int getDefuzzifier()
+    {
+        return defuzzifier;
+    }
+
+    public int getVersion()
+    {
+        return rules != null ? rules.getVersion() : compiled.getVersion();
+    }
+
+    // pick up the latest rule conclusions; only the edited ones are
+    // compiled again
+    public void updateRules()
+    {
+        if (rules != null)
+            compiled = compiled.withRuleBase(rules.getRuleBase());
+    }
+
+    public double getConclusion(int length, double xpos, double phi, RuleFiringListener listener)
+    {
+        CompiledRules.Base b = length == DOCKING ? compiled.docking : compiled.obstacle;
+        // FuzzyJ refuses inputs outside the universe of discourse
+        if (!(xpos >= b.xMin && xpos <= b.xMax && phi >= b.phiMin && phi <= b.phiMax))
+            return 0;
+
+        int stride = compiled.stride;
+        int terms = b.outN.length;
+        for (int t = 0; t < terms; t++)
+        {
+            height[t] = 0;
+            strength[t] = 0;
+        }
+        for (int j = 0; j < b.columns; j++)
+            mXpos[j] = membership(b.xposX, b.xposY, j * stride, b.xposN[j], xpos);
+
+        boolean product = b.combine == PRODUCT, larsen = b.executor == LARSEN;
+        boolean fired = false;
+        for (int i = 0; i < b.rows; i++)
+        {
+            double mPhi = membership(b.phiX, b.phiY, i * stride, b.phiN[i], phi);
+            if (mPhi <= 0)
+                continue;
+            for (int j = 0; j < b.columns; j++)
+            {
+                int t = b.conclusion[i * b.columns + j];
+                double h = product ? mXpos[j] * mPhi : Math.min(mXpos[j], mPhi);
+                if (t < 0 || h <= 0)
+                    continue;
+                if (listener != null)
+                    listener.ruleFired(length, i, j, larsen ? h * b.outPeak[t] : Math.min(h, b.outPeak[t]));
+                if (h > height[t])
+                    height[t] = h;
+                strength[t] += h;
+                fired = true;
+            }
+        }
+        if (!fired)
+            return 0;
+        return defuzzify(b);
+    }
+
+    // membership of x in the set with n points starting at off; beyond the
+    // first and last point the set keeps their membership
+    static double membership(double px[], double py[], int off, int n, double x)
+    {
+        if (x <= px[off])
+            return py[off];
+        int last = off + n - 1;
+        if (x >= px[last])
+            return py[last];
+        int k = off;
+        while (px[k + 1] < x)
+            k++;
+        double x0 = px[k], x1 = px[k + 1];
+        if (x1 == x0)
+            return py[k + 1];
+        return py[k] + (x - x0) * (py[k + 1] - py[k]) / (x1 - x0);
+    }
+
+    // the change of angle for the heights of the terms, and for SUGENO
+    // their strengths
+    double defuzzify(CompiledRules.Base b)
+    {
+        int d = defuzzifier;
+        if (d == WEIGHTED_AVERAGE)
+            return weightedAverage(b.outCentroid, height, b.outPeak);
+        if (d == SUGENO)
+            return weightedAverage(b.outCentre, strength, null);
+        return envelope(b, d);
+    }
+
+    // the values of the terms averaged with the given weights, each
+    // weight no more than its cap unless caps is null
+    static double weightedAverage(double value[], double weight[], double caps[])
+    {
+        double sum = 0, weighted = 0;
+        for (int t = 0; t < value.length; t++)
+        {
+            double w = caps == null ? weight[t] : Math.min(weight[t], caps[t]);
+            sum += w;
+            weighted += w * value[t];
+        }
+        return sum > 0 ? weighted / sum : 0;
+    }
+
+    // defuzzify the union of the output sets clipped at height[]: its
+    // centre of gravity, or for kind CENTRE_OF_AREA or MEAN_OF_MAXIMA
+    // from the pieces of its upper envelope
+    double envelope(CompiledRules.Base b, int kind)
+    {
+        boolean keep = kind != MOMENT;
+        pieces = 0;
+        int stride = compiled.stride;
+        int terms = b.outN.length;
+        int nb = 0, na = 0;
+        for (int t = 0; t < terms; t++)
+        {
+            shapeN[t] = 0;
+            if (height[t] > 0)
+            {
+                active[na++] = t;
+                if (b.executor == LARSEN)
+                    scale(b, t, t * stride, height[t]);
+                else
+                    clip(b, t, t * stride, height[t]);
+                for (int p = 0; p < shapeN[t]; p++)
+                    breaks[nb++] = shapeX[t * shapeStride + p];
+            }
+        }
+        // insertion sort, there are only a few dozen break points
+        for (int k = 1; k < nb; k++)
+        {
+            double v = breaks[k];
+            int m = k - 1;
+            while (m >= 0 && breaks[m] > v)
+            {
+                breaks[m + 1] = breaks[m];
+                m--;
+            }
+            breaks[m + 1] = v;
+        }
+
+        double area = 0, moment = 0;
+        for (int k = 0; k + 1 < nb; k++)
+        {
+            double p = breaks[k], q = breaks[k + 1];
+            if (q <= p)
+                continue;
+            // every clipped set is a straight line between two break points;
+            // the sets that did not fire are 0 throughout and never on top
+            double mid = 0.5 * (p + q);
+            for (int a = 0; a < na; a++)
+            {
+                int t = active[a];
+                lineA[t] = 0;
+                lineB[t] = 0;
+                int n = shapeN[t];
+                int off = t * shapeStride;
+                if (mid <= shapeX[off] || mid >= shapeX[off + n - 1])
+                    continue;
+                int s = off;
+                while (shapeX[s + 1] < mid)
+                    s++;
+                double x0 = shapeX[s], x1 = shapeX[s + 1];
+                double y0 = shapeY[s], y1 = shapeY[s + 1];
+                lineA[t] = y0 + (p - x0) * (y1 - y0) / (x1 - x0);
+                lineB[t] = y0 + (q - x0) * (y1 - y0) / (x1 - x0);
+            }
+
+            // walk the upper envelope of the lines from p to q, u going
+            // from 0 to 1. Start on the highest line, or on ties the one
+            // that rises fastest.
+            int cur = active[0];
+            for (int a = 1; a < na; a++)
+            {
+                int t = active[a];
+                if (lineA[t] > lineA[cur] || (lineA[t] == lineA[cur] && lineB[t] > lineB[cur]))
+                    cur = t;
+            }
+            double u = 0;
+            double xs = p, ys = lineA[cur];
+            while (true)
+            {
+                double dCur = lineB[cur] - lineA[cur];
+                int next = -1;
+                double uNext = 1;
+                for (int a = 0; a < na; a++)
+                {
+                    int t = active[a];
+                    double d = lineB[t] - lineA[t];
+                    if (t == cur || d <= dCur)
+                        continue;
+                    double uc = (lineA[t] - lineA[cur]) / (dCur - d);
+                    if (uc > u && (uc < uNext || (uc == uNext && next >= 0 && d > lineB[next] - lineA[next])))
+                    {
+                        uNext = uc;
+                        next = t;
+                    }
+                }
+                double xe, ye;
+                if (next < 0)
+                {
+                    xe = q;
+                    ye = lineB[cur];
+                }
+                else
+                {
+                    xe = p + uNext * (q - p);
+                    ye = lineA[cur] + uNext * dCur;
+                }
+                area += 0.5 * (ys + ye) * (xe - xs);
+                moment += (xe - xs) * (xs * (2 * ys + ye) + xe * (ys + 2 * ye)) / 6.0;
+                if (keep && xe > xs)
+                {
+                    pieceX0[pieces] = xs;
+                    pieceY0[pieces] = ys;
+                    pieceX1[pieces] = xe;
+                    pieceY1[pieces++] = ye;
+                }
+                if (next < 0)
+                    break;
+                cur = next;
+                u = uNext;
+                xs = xe;
+                ys = ye;
+            }
+        }
+        // an empty union cannot be defuzzified, FuzzyJ gives up with 0
+        if (area <= 0)
+            return 0;
+        if (kind == CENTRE_OF_AREA)
+            return bisector(0.5 * area);
+        if (kind == MEAN_OF_MAXIMA)
+            return meanOfMaxima();
+        return moment / area;
+    }
+
+    // where the area under the envelope up to x is half; if the envelope
+    // is 0 there for a stretch, the middle of that
+    double bisector(double half)
+    {
+        double left = xpos(half, 0, pieces, 1);
+        double right = xpos(half, pieces - 1, -1, -1);
+        return 0.5 * (left + right);
+    }
+
+    // the first x, going through the pieces from first by step, past
+    // which the area passed is half
+    double xpos(double half, int first, int end, int step)
+    {
+        double sum = 0;
+        for (int k = first; k != end; k += step)
+        {
+            double w = pieceX1[k] - pieceX0[k];
+            double a = 0.5 * (pieceY0[k] + pieceY1[k]) * w;
+            if (sum + a < half && k + step != end)
+            {
+                sum += a;
+                continue;
+            }
+            // the area u into the piece is ys u + (ye - ys) u^2 / 2w
+            double xs = step > 0 ? pieceX0[k] : pieceX1[k];
+            double ys = step > 0 ? pieceY0[k] : pieceY1[k], ye = step > 0 ? pieceY1[k] : pieceY0[k];
+            double rest = half - sum, c = 0.5 * (ye - ys) / w, u;
+            if (Math.abs(c) * w <= 1e-12 * Math.max(ys, ye))
+                u = ys > 0 ? rest / ys : 0;
+            else
+                u = (-ys + Math.sqrt(Math.max(0, ys * ys + 4 * c * rest))) / (2 * c);
+            return xs + step * Math.max(0, Math.min(w, u));
+        }
+        return 0;
+    }
+
+    // the middle of where the envelope is highest, its stretches at the
+    // top weighted by their length; if it only reaches the top at points,
+    // the mean of those
+    double meanOfMaxima()
+    {
+        double top = 0;
+        for (int k = 0; k < pieces; k++)
+            top = Math.max(top, Math.max(pieceY0[k], pieceY1[k]));
+        double at = top * (1 - 1e-12);
+        double length = 0, weighted = 0, points = 0, sum = 0;
+        for (int k = 0; k < pieces; k++)
+        {
+            double xs = pieceX0[k], xe = pieceX1[k];
+            if (pieceY0[k] >= at && pieceY1[k] >= at)
+            {
+                length += xe - xs;
+                weighted += 0.5 * (xs + xe) * (xe - xs);
+            }
+            else if (pieceY0[k] >= at)
+            {
+                points++;
+                sum += xs;
+            }
+            else if (pieceY1[k] >= at)
+            {
+                points++;
+                sum += xe;
+            }
+        }
+        if (length > 0)
+            return weighted / length;
+        return points > 0 ? sum / points : 0;
+    }
+
+    // copy output set t of b, cut off at height h, into shape t. Sets that
+    // do not fall to 0 at their ends are extended to the edge of the
+    // universe of discourse.
+    void clip(CompiledRules.Base b, int t, int off, double h)
+    {
+        int n = b.outN[t];
+        int s = t * shapeStride;
+        int m = 0;
+        if (b.outY[off] > 0 && b.outX[off] > b.outMin)
+        {
+            shapeX[s] = b.outMin;
+            shapeY[s] = Math.min(b.outY[off], h);
+            m++;
+        }
+        for (int p = 0; p < n; p++)
+        {
+            double x0 = b.outX[off + p], y0 = b.outY[off + p];
+            shapeX[s + m] = x0;
+            shapeY[s + m] = Math.min(y0, h);
+            m++;
+            if (p + 1 < n)
+            {
+                double x1 = b.outX[off + p + 1], y1 = b.outY[off + p + 1];
+                if ((y0 - h) * (y1 - h) < 0)
+                {
+                    shapeX[s + m] = x0 + (h - y0) * (x1 - x0) / (y1 - y0);
+                    shapeY[s + m] = h;
+                    m++;
+                }
+            }
+        }
+        if (b.outY[off + n - 1] > 0 && b.outX[off + n - 1] < b.outMax)
+        {
+            shapeX[s + m] = b.outMax;
+            shapeY[s + m] = Math.min(b.outY[off + n - 1], h);
+            m++;
+        }
+        shapeN[t] = m;
+    }
+
+    // copy output set t of b, scaled by h, into shape t, extended like
+    // the clipped ones
+    void scale(CompiledRules.Base b, int t, int off, double h)
+    {
+        int n = b.outN[t];
+        int s = t * shapeStride;
+        int m = 0;
+        if (b.outY[off] > 0 && b.outX[off] > b.outMin)
+        {
+            shapeX[s] = b.outMin;
+            shapeY[s] = b.outY[off] * h;
+            m++;
+        }
+        for (int p = 0; p < n; p++)
+        {
+            shapeX[s + m] = b.outX[off + p];
+            shapeY[s + m] = b.outY[off + p] * h;
+            m++;
+        }
+        if (b.outY[off + n - 1] > 0 && b.outX[off + n - 1] < b.outMax)
+        {
+            shapeX[s + m] = b.outMax;
+            shapeY[s + m] = b.outY[off + n - 1] * h;
+            m++;
+        }
+        shapeN[t] = m;
+    }
+}
@@ -2,9 +2,11 @@ package examples.fuzzytruckswing;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.io.*;
 import java.text.*;
 import java.util.*;
 import javax.swing.*;
+import javax.swing.filechooser.*;
 import javax.swing.border.Border;
 
 /**
@@ -36,6 +38,7 @@ public class FuzzyTruckJApplet extends JApplet
     JPanel JPanelUpperStatus = new JPanel();
     JLabel JLabelXPos = new JLabel();
     JLabel JLabelYPos = new JLabel();
+    JLabel JLabelTimings = new JLabel();
     JPanel JPanelLowerStatus = new JPanel();
     JLabel JLabelSimulationStatus = new JLabel();
     JSlider JSliderTruckAngle = new JSlider();
@@ -53,6 +56,31 @@ public class FuzzyTruckJApplet extends JApplet
     JCheckBox JCheckBoxTracing = new JCheckBox();
     JPanel JPanelOuter = new JPanel();
     JCheckBox JCheckBoxShowRuleFirings = new JCheckBox();
+    JPanel JPanelOptions = new JPanel();
+    JLabel JLabelInference = new JLabel();
+    JComboBox<String> JComboBoxInference = new JComboBox<>(TruckSimulation.INFERENCE_NAMES);
+    JLabel JLabelDefuzzifier = new JLabel();
+    JComboBox<String> JComboBoxDefuzzifier = new JComboBox<>(FuzzyController.DEFUZZIFIER_NAMES);
+    JLabel JLabelDockingFiring = new JLabel();
+    JComboBox<String> JComboBoxDockingFiring = new JComboBox<>(TruckSimulation.FIRING_NAMES);
+    JLabel JLabelObstacleFiring = new JLabel();
+    JComboBox<String> JComboBoxObstacleFiring = new JComboBox<>(TruckSimulation.FIRING_NAMES);
+    JLabel JLabelSweepCap = new JLabel();
+    JSpinner JSpinnerSweepCap = new JSpinner(new SpinnerNumberModel(1000, 100, 100000, 100));
+    JLabel JLabelSweep = new JLabel();
+    JButton JButtonSweep = new JButton();
+    JLabel JLabelFleetSize = new JLabel();
+    JSpinner JSpinnerFleetSize = new JSpinner(new SpinnerNumberModel(100, 1, 2000, 10));
+    JLabel JLabelFleet = new JLabel();
+    JButton JButtonFleet = new JButton();
+    JLabel JLabelRecord = new JLabel();
+    JCheckBox JCheckBoxRecord = new JCheckBox();
+    JCheckBox JCheckBoxClearance = new JCheckBox();
+    JCheckBox JCheckBoxPlanning = new JCheckBox();
+    JLabel JLabelReplay = new JLabel();
+    JButton JButtonReplay = new JButton();
+    JLabel JLabelOptimize = new JLabel();
+    JButton JButtonOptimize = new JButton();
     //}}
 
     // Custom variables
@@ -61,6 +89,14 @@ public class FuzzyTruckJApplet extends JApplet
     DrawPanel viewArea;
     JButton conclusionButtons[][];
     JLabel obsconclusionLabels[][];
+    // the rule optimizer while it runs, and how long it runs for
+    RuleOptimizer optimizer;
+    static final int OPTIMIZER_GENERATIONS = 100;
+    // the phase of a step whose timings the status bar shows
+    int timingsPhase = StepTimings.STEP;
+    // seeds of the obstacle layouts the Obstacle button makes; the seed of
+    // the last one is in the button's tool tip
+    final Random obstacleSeeds = new Random();
     //initlize the interface
     public void init()
     {
@@ -205,6 +241,11 @@ public class FuzzyTruckJApplet extends JApplet
         JPanelUpperStatus.add(JLabelYPos);
         JLabelYPos.setFont(new Font("MonoSpaced", Font.BOLD, 12));
         JLabelYPos.setBounds(204, 7, 56, 16);
+        JLabelTimings.setText(" ");
+        JLabelTimings.setToolTipText("How long a phase of a step takes; click for the next phase, right-click "
+                + "to save the timings of all phases as CSV");
+        JPanelUpperStatus.add(JLabelTimings);
+        JLabelTimings.setFont(new Font("Dialog", Font.PLAIN, 10));
 
 //set lower status bar
         JPanelLowerStatus.setBorder(etchedBorder1);
@@ -239,7 +280,7 @@ public class FuzzyTruckJApplet extends JApplet
         JSliderSimulationSpeed.setValue(1);
         JSliderSimulationSpeed.setMaximum(10);
         JSliderSimulationSpeed.setSnapToTicks(true);
-        JSliderSimulationSpeed.setToolTipText("Set Speed of Simulation");
+        JSliderSimulationSpeed.setToolTipText("Set Speed of Simulation: 1/8 to 32 times real time, or as fast as possible");
         JSliderSimulationSpeed.setPaintTicks(true);
         JSliderSimulationSpeed.setMajorTickSpacing(1);
         getContentPane().add(JSliderSimulationSpeed);
@@ -301,6 +342,89 @@ public class FuzzyTruckJApplet extends JApplet
         JCheckBoxShowRuleFirings.setText("Show Rule Firings");
         getContentPane().add(JCheckBoxShowRuleFirings);
         JCheckBoxShowRuleFirings.setBounds(415, 228, 150, 24);
+
+//options below the obstacle rules
+        JPanelOptions.setBorder(etchedBorder1);
+        JPanelOptions.setLayout(new GridLayout(12, 2, 2, 2));
+        getContentPane().add(JPanelOptions);
+        JPanelOptions.setBounds(735, 228, 235, 244);
+        JLabelInference.setText("Inference");
+        JLabelInference.setFont(new Font("Dialog", Font.BOLD, 11));
+        JPanelOptions.add(JLabelInference);
+        JComboBoxInference.setToolTipText("How the rules are evaluated");
+        JComboBoxInference.setFont(new Font("Dialog", Font.PLAIN, 11));
+        JPanelOptions.add(JComboBoxInference);
+        JLabelDefuzzifier.setText("Defuzzifier");
+        JLabelDefuzzifier.setFont(new Font("Dialog", Font.BOLD, 11));
+        JPanelOptions.add(JLabelDefuzzifier);
+        JComboBoxDefuzzifier.setToolTipText("How the fired rules are turned into a change of angle; all but "
+                + "moment need the kernel");
+        JComboBoxDefuzzifier.setFont(new Font("Dialog", Font.PLAIN, 11));
+        JPanelOptions.add(JComboBoxDefuzzifier);
+        JLabelDockingFiring.setText("Docking firing");
+        JLabelDockingFiring.setFont(new Font("Dialog", Font.BOLD, 11));
+        JPanelOptions.add(JLabelDockingFiring);
+        JComboBoxDockingFiring.setToolTipText("How a docking rule fires: the minimum or the product of its "
+                + "memberships, its conclusion clipped or scaled by that");
+        JComboBoxDockingFiring.setFont(new Font("Dialog", Font.PLAIN, 11));
+        JPanelOptions.add(JComboBoxDockingFiring);
+        JLabelObstacleFiring.setText("Obstacle firing");
+        JLabelObstacleFiring.setFont(new Font("Dialog", Font.BOLD, 11));
+        JPanelOptions.add(JLabelObstacleFiring);
+        JComboBoxObstacleFiring.setToolTipText("How an obstacle rule fires: the minimum or the product of its "
+                + "memberships, its conclusion clipped or scaled by that");
+        JComboBoxObstacleFiring.setFont(new Font("Dialog", Font.PLAIN, 11));
+        JPanelOptions.add(JComboBoxObstacleFiring);
+        JLabelSweepCap.setText("Iteration cap");
+        JLabelSweepCap.setFont(new Font("Dialog", Font.BOLD, 11));
+        JPanelOptions.add(JLabelSweepCap);
+        JSpinnerSweepCap.setToolTipText("Most iterations an episode of the sweep or the fleet may take");
+        JPanelOptions.add(JSpinnerSweepCap);
+        JLabelSweep.setText("Start states");
+        JLabelSweep.setFont(new Font("Dialog", Font.BOLD, 11));
+        JPanelOptions.add(JLabelSweep);
+        JButtonSweep.setText("Sweep");
+        JButtonSweep.setToolTipText("Park the truck from a grid of start states and show the success rates");
+        JButtonSweep.setFont(new Font("Dialog", Font.BOLD, 12));
+        JPanelOptions.add(JButtonSweep);
+        JLabelFleetSize.setText("Fleet size");
+        JLabelFleetSize.setFont(new Font("Dialog", Font.BOLD, 11));
+        JPanelOptions.add(JLabelFleetSize);
+        JSpinnerFleetSize.setToolTipText("Number of trucks parked at once by the fleet");
+        JPanelOptions.add(JSpinnerFleetSize);
+        JLabelFleet.setText("Many trucks");
+        JLabelFleet.setFont(new Font("Dialog", Font.BOLD, 11));
+        JPanelOptions.add(JLabelFleet);
+        JButtonFleet.setText("Fleet");
+        JButtonFleet.setToolTipText("Park a fleet of trucks from random start states at once");
+        JButtonFleet.setFont(new Font("Dialog", Font.BOLD, 12));
+        JPanelOptions.add(JButtonFleet);
+        JLabelRecord.setText("Trajectories");
+        JLabelRecord.setFont(new Font("Dialog", Font.BOLD, 11));
+        JPanelOptions.add(JLabelRecord);
+        JCheckBoxRecord.setText("Record");
+        JCheckBoxRecord.setToolTipText("Write every run to a trajectory file in the working directory");
+        JPanelOptions.add(JCheckBoxRecord);
+        JLabelReplay.setText("Recorded run");
+        JLabelReplay.setFont(new Font("Dialog", Font.BOLD, 11));
+        JPanelOptions.add(JLabelReplay);
+        JButtonReplay.setText("Replay");
+        JButtonReplay.setToolTipText("Play back a trajectory file");
+        JButtonReplay.setFont(new Font("Dialog", Font.BOLD, 12));
+        JPanelOptions.add(JButtonReplay);
+        JLabelOptimize.setText("Rule matrix");
+        JLabelOptimize.setFont(new Font("Dialog", Font.BOLD, 11));
+        JPanelOptions.add(JLabelOptimize);
+        JButtonOptimize.setText("Optimize");
+        JButtonOptimize.setToolTipText("Search for rule conclusions that park from more start states in fewer iterations");
+        JButtonOptimize.setFont(new Font("Dialog", Font.BOLD, 12));
+        JPanelOptions.add(JButtonOptimize);
+        JCheckBoxClearance.setText("Steer clear");
+        JCheckBoxClearance.setToolTipText("Turn away from the nearest obstacle before the obstacle rules take over");
+        JPanelOptions.add(JCheckBoxClearance);
+        JCheckBoxPlanning.setText("Plan path");
+        JCheckBoxPlanning.setToolTipText("Plan a way round the obstacles when the docking rules alone would not park");
+        JPanelOptions.add(JCheckBoxPlanning);
         //}}
 
         //{{REGISTER_LISTENERS
@@ -317,6 +441,17 @@ public class FuzzyTruckJApplet extends JApplet
         JSliderTruckSpeed.addChangeListener(lSymChange);
         JCheckBoxTracing.addChangeListener(lSymChange);
         JCheckBoxShowRuleFirings.addChangeListener(lSymChange);
+        JComboBoxInference.addActionListener(lSymAction);
+        JComboBoxDefuzzifier.addActionListener(lSymAction);
+        JComboBoxDockingFiring.addActionListener(lSymAction);
+        JComboBoxObstacleFiring.addActionListener(lSymAction);
+        JButtonSweep.addActionListener(lSymAction);
+        JButtonFleet.addActionListener(lSymAction);
+        JCheckBoxRecord.addChangeListener(lSymChange);
+        JCheckBoxClearance.addChangeListener(lSymChange);
+        JCheckBoxPlanning.addChangeListener(lSymChange);
+        JButtonReplay.addActionListener(lSymAction);
+        JButtonOptimize.addActionListener(lSymAction);
         //}}
 
         // custom code added here
@@ -329,10 +464,12 @@ public class FuzzyTruckJApplet extends JApplet
         viewArea.addMouseMotionListener(aSymMouseMotion);
         SymMouse aSymMouse = new SymMouse();
         viewArea.addMouseListener(aSymMouse);
+        JLabelTimings.addMouseListener(aSymMouse);
+        JComboBoxInference.addMouseListener(aSymMouse);
 
         // set up the values in the sliders etc. to make sure in synch
         // with initial states
-        JSliderSimulationSpeed.setValue(Truck.getSimSpeed());
+        JSliderSimulationSpeed.setValue(speedPosition(Truck.getRealTimeFactor()));
         JSliderTruckAngle.setValue((int) Truck.getTruckAngle());
         JSliderTruckSpeed.setValue((int) Truck.getTruckSpeed());
 
@@ -432,7 +569,7 @@ public class FuzzyTruckJApplet extends JApplet
         applet.init();
 
         f.setContentPane(applet.getContentPane());
-        f.setBounds(100, 100, 720, 510);
+        f.setBounds(100, 100, 990, 510);
         f.setTitle("Fuzzy Truck Parking Simulation");
         f.setVisible(true);
 
@@ -497,6 +634,12 @@ public class FuzzyTruckJApplet extends JApplet
                 JCheckBoxTracing_stateChanged(event);
             else if (object == JCheckBoxShowRuleFirings)
                 JCheckBoxShowRuleFirings_stateChanged(event);
+            else if (object == JCheckBoxRecord)
+                Truck.setRecording(JCheckBoxRecord.isSelected());
+            else if (object == JCheckBoxClearance)
+                Truck.setClearanceSteering(JCheckBoxClearance.isSelected());
+            else if (object == JCheckBoxPlanning)
+                Truck.setPathPlanning(JCheckBoxPlanning.isSelected());
         }
     }
 
@@ -526,6 +669,20 @@ public class FuzzyTruckJApplet extends JApplet
                 JButtonResetRules_actionPerformed(event);
             else if (object == JButtonObs)
                 JButton_Genobstacles(event);
+            else if (object == JComboBoxInference)
+                JComboBoxInference_actionPerformed(event);
+            else if (object == JComboBoxDefuzzifier)
+                JComboBoxDefuzzifier_actionPerformed(event);
+            else if (object == JComboBoxDockingFiring || object == JComboBoxObstacleFiring)
+                JComboBoxFiring_actionPerformed(event);
+            else if (object == JButtonSweep)
+                JButtonSweep_actionPerformed(event);
+            else if (object == JButtonFleet)
+                JButtonFleet_actionPerformed(event);
+            else if (object == JButtonReplay)
+                JButtonReplay_actionPerformed(event);
+            else if (object == JButtonOptimize)
+                JButtonOptimize_actionPerformed(event);
             else
                 // the buttons in the conclusion button group
                 conclusionButton_actionPerformed(event);
@@ -591,31 +748,161 @@ public class FuzzyTruckJApplet extends JApplet
     {
         // to do: code goes here.
         viewArea.list.clear();
+        Truck.stopFleet();
+        JButtonFleet.setText("Fleet");
         Truck.reset();
     }
 
     void JButton_Genobstacles(ActionEvent event)
     {
         viewArea.list.clear();
-        Random r = new Random();
-        int num = r.nextInt(4) + 1;
-        for (int i = 0; i < num; i++)
+        long seed = obstacleSeeds.nextLong();
+        ObstacleGenerator generator = new ObstacleGenerator(seed);
+        generator.setCount(new Random(seed).nextInt(4) + 1);
+        generator.clearStart(Truck.engine.X, Truck.engine.Y, 4);
+        viewArea.list.addAll(generator.generate());
+        JButtonObs.setToolTipText("create the Obstacles Randomly, last from seed " + seed);
+        Truck.obstaclesChanged();
+        viewArea.updateUI();
+
+    }
+
+    void JComboBoxInference_actionPerformed(ActionEvent event)
+    {
+        Truck.setInference(JComboBoxInference.getSelectedIndex());
+        // the new inference may not defuzzify the way picked
+        if (!Truck.setDefuzzifier(JComboBoxDefuzzifier.getSelectedIndex()))
+            JComboBoxDefuzzifier.setSelectedIndex(FuzzyController.MOMENT);
+    }
+
+    // the tooltip tells how far off the control surfaces are, once built
+    void JComboBoxInference_mouseEntered(MouseEvent event)
+    {
+        String errors = Truck.getSurfaceErrors();
+        JComboBoxInference.setToolTipText("How the rules are evaluated" + (errors == null ? "" : "; " + errors));
+    }
+
+    void JComboBoxDefuzzifier_actionPerformed(ActionEvent event)
+    {
+        // the kernel defuzzifies every way
+        if (!Truck.setDefuzzifier(JComboBoxDefuzzifier.getSelectedIndex()))
+            JComboBoxInference.setSelectedIndex(TruckSimulation.KERNEL);
+    }
+
+    void JComboBoxFiring_actionPerformed(ActionEvent event)
+    {
+        int length = event.getSource() == JComboBoxDockingFiring ? FuzzyController.DOCKING : FuzzyController.OBSTACLE;
+        int firing = ((JComboBox<?>) event.getSource()).getSelectedIndex();
+        Truck.setRuleFiring(length, firing / 2, firing % 2);
+    }
+
+    void JButtonSweep_actionPerformed(ActionEvent event)
+    {
+        // the sweep takes a while, keep it off the event thread
+        final StartStateSweep sweep = Truck.createSweep((Integer) JSpinnerSweepCap.getValue());
+        JButtonSweep.setEnabled(false);
+        new Thread("Start state sweep")
+        {
+            public void run()
+            {
+                final StartStateSweep.Result result = sweep.run();
+                SwingUtilities.invokeLater(() ->
+                {
+                    JButtonSweep.setEnabled(true);
+                    SweepHeatmapPanel.showFrame(result);
+                });
+            }
+        }.start();
+    }
+
+    void JButtonFleet_actionPerformed(ActionEvent event)
+    {
+        if (Truck.isFleetRunning())
         {
-            int x = r.nextInt(370);
-            int y = r.nextInt(390);
-            int width = r.nextInt(40) + 20;
-            int height = r.nextInt(5) + 5;
-            int[] e = {x, y, width, height};
-            viewArea.list.add(e);
+            Truck.stopFleet();
+            JButtonFleet.setText("Fleet");
         }
-        viewArea.updateUI();
+        else
+        {
+            Truck.startFleet((Integer) JSpinnerFleetSize.getValue(), (Integer) JSpinnerSweepCap.getValue());
+            JButtonFleet.setText("Stop");
+        }
+    }
 
+    void JButtonReplay_actionPerformed(ActionEvent event)
+    {
+        JFileChooser chooser = new JFileChooser(new File("."));
+        chooser.setFileFilter(new FileNameExtensionFilter("Trajectories", "ftr"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        try
+        {
+            Trajectory t = new Trajectory(chooser.getSelectedFile());
+            new TrajectoryReplay(this, t, chooser.getSelectedFile().getName()).setVisible(true);
+        }
+        catch (IOException e)
+        {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Replay", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    void JButtonOptimize_actionPerformed(ActionEvent event)
+    {
+        // pressed again while running, stop after the current generation
+        if (optimizer != null)
+        {
+            optimizer.cancel();
+            JButtonOptimize.setEnabled(false);
+            return;
+        }
+        final RuleOptimizer o = Truck.createOptimizer((Integer) JSpinnerSweepCap.getValue());
+        optimizer = o;
+        JButtonOptimize.setText("Stop");
+        new Thread("Rule optimizer")
+        {
+            public void run()
+            {
+                final RuleOptimizer.Candidate best = o.run(OPTIMIZER_GENERATIONS, (g, c) ->
+                        SwingUtilities.invokeLater(() -> JLabelSimulationStatus.setText(String.format(
+                                "Optimizing: generation %d of %d, best parks %d of %d in %.1f iterations",
+                                g, OPTIMIZER_GENERATIONS, c.parked, c.episodes, c.getMeanIterations()))));
+                SwingUtilities.invokeLater(() -> optimizerFinished(best));
+            }
+        }.start();
+    }
+
+    // offer the best rules found to replace the current ones
+    void optimizerFinished(RuleOptimizer.Candidate best)
+    {
+        optimizer = null;
+        JButtonOptimize.setText("Optimize");
+        JButtonOptimize.setEnabled(true);
+        String message = String.format("The best rules found park %d of %d start states in %.1f iterations each."
+                + "%nLoad them?", best.parked, best.episodes, best.getMeanIterations());
+        if (JOptionPane.showConfirmDialog(this, message, "Optimize", JOptionPane.YES_NO_OPTION)
+                != JOptionPane.YES_OPTION)
+            return;
+        Truck.setConclusions(best.rules);
+        showConclusions();
+    }
+
+    // the fleet has parked or given up, its trucks stay on the view until
+    // the next reset or fleet
+    void fleetFinished()
+    {
+        JButtonFleet.setText("Fleet");
     }
 
     void JButtonResetRules_actionPerformed(ActionEvent event)
     {
         // to do: code goes here.
         Truck.resetRules();
+        showConclusions();
+    }
+
+    // show the current conclusions on the rule buttons and labels
+    void showConclusions()
+    {
         int rows = Truck.getRows();
         int columns = Truck.getColumns();
         for (int i = 0; i < rows; i++)
@@ -623,13 +910,29 @@ public class FuzzyTruckJApplet extends JApplet
             {
                 conclusionButtons[i][j].setText(Truck.getConclusionExpression(i, j));
             }
+        for (int i = 0; i < 5; i++)
+            for (int j = 0; j < 5; j++)
+                obsconclusionLabels[i][j].setText(Truck.getobsConclusionExpression(i, j));
     }
 
     void JSliderSimulationSpeed_stateChanged(javax.swing.event.ChangeEvent event)
     {
         // to do: code goes here.
         JSlider slider = (JSlider) event.getSource();
-        Truck.setSimSpeed(slider.getValue());
+        Truck.setRealTimeFactor(speedFactor(slider.getValue()));
+    }
+
+    // the simulation speed slider doubles the real-time factor per
+    // position, from 1/8 at the left; the last position is as fast as
+    // possible
+    static double speedFactor(int position)
+    {
+        return position >= 10 ? Double.POSITIVE_INFINITY : Math.pow(2, position - 4);
+    }
+
+    static int speedPosition(double factor)
+    {
+        return Double.isInfinite(factor) ? 10 : (int) Math.round(Math.log(factor) / Math.log(2)) + 4;
     }
 
     void JSliderTruckSpeed_stateChanged(javax.swing.event.ChangeEvent event)
@@ -646,6 +949,14 @@ public class FuzzyTruckJApplet extends JApplet
             Object object = event.getSource();
             if (object == viewArea)
                 viewArea_mouseClicked(event);
+            else if (object == JLabelTimings)
+                JLabelTimings_mouseClicked(event);
+        }
+
+        public void mouseEntered(MouseEvent event)
+        {
+            if (event.getSource() == JComboBoxInference)
+                JComboBoxInference_mouseEntered(event);
         }
     }
 
@@ -659,6 +970,30 @@ public class FuzzyTruckJApplet extends JApplet
         Truck.reset();
     }
 
+    void JLabelTimings_mouseClicked(MouseEvent event)
+    {
+        if (SwingUtilities.isRightMouseButton(event))
+        {
+            try
+            {
+                JLabelSimulationStatus.setText("Step timings written to " + Truck.writeTimings().getName());
+            }
+            catch (IOException e)
+            {
+                JOptionPane.showMessageDialog(this, e.getMessage(), "Step timings", JOptionPane.ERROR_MESSAGE);
+            }
+            return;
+        }
+        timingsPhase = (timingsPhase + 1) % StepTimings.NAMES.length;
+        showTimings(Truck.getTimings());
+    }
+
+    // show the timings of the phase picked in the status bar
+    void showTimings(StepTimings timings)
+    {
+        JLabelTimings.setText(timings.summary(timingsPhase));
+    }
+
     void JCheckBoxTracing_stateChanged(javax.swing.event.ChangeEvent event)
     {
         // to do: code goes here.
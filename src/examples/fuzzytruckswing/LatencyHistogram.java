@@ -0,0 +1,131 @@
+package examples.fuzzytruckswing;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Counts of durations in nanoseconds, in a fixed number of buckets that
+// are one nanosecond wide up to 2 * SUB and then grow with the value:
+// every power of two is split into SUB buckets, so a bucket is never
+// wider than 1 / SUB of the values in it. A value is recorded by bumping
+// one bucket, without allocating, and a percentile is read to within
+// that precision. Values up to HIGHEST, over half an hour, are kept;
+// longer ones count as HIGHEST.
+//
+// One thread records, any thread may read. The recording thread writes
+// with lazySet, which costs no more than a plain store, and readers see
+// its counts a little late at worst. To look at a stretch of time, copy
+// the histogram at its start and take the copy from the histogram at its
+// end with minus().
+
+public class LatencyHistogram
+{
+    static final int SUB_BITS = 5;
+    static final int SUB = 1 << SUB_BITS;
+    static final int MAX_BITS = 41;
+    public static final long HIGHEST = (1L << MAX_BITS) - 1;
+    static final int BUCKETS = (MAX_BITS - SUB_BITS + 1) * SUB;
+
+    final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    // the sum of the values recorded at 0 and the largest of them at 1
+    final AtomicLongArray totals = new AtomicLongArray(2);
+
+    public void record(long ns)
+    {
+        long v = Math.max(0, Math.min(ns, HIGHEST));
+        int k = index(v);
+        counts.lazySet(k, counts.get(k) + 1);
+        totals.lazySet(0, totals.get(0) + v);
+        if (v > totals.get(1))
+            totals.lazySet(1, v);
+    }
+
+    // the bucket of a value from 0 to HIGHEST
+    static int index(long v)
+    {
+        if (v < 2 * SUB)
+            return (int) v;
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        return (shift + 1) * SUB + (int) (v >>> shift) - SUB;
+    }
+
+    // the smallest and the largest value of bucket k
+    static long lowest(int k)
+    {
+        if (k < 2 * SUB)
+            return k;
+        int shift = k / SUB - 1;
+        return (long) (k % SUB + SUB) << shift;
+    }
+
+    static long highest(int k)
+    {
+        return k < 2 * SUB ? k : lowest(k) + (1L << (k / SUB - 1)) - 1;
+    }
+
+    public long getCount()
+    {
+        long n = 0;
+        for (int k = 0; k < BUCKETS; k++)
+            n += counts.get(k);
+        return n;
+    }
+
+    // the mean of the values recorded, NaN if there are none
+    public double getMean()
+    {
+        long n = getCount();
+        return n == 0 ? Double.NaN : totals.get(0) / (double) n;
+    }
+
+    // the largest value recorded, 0 if there are none
+    public long getMax()
+    {
+        return totals.get(1);
+    }
+
+    // the value p percent of the values recorded are at or below, as the
+    // largest value of its bucket, but never above the largest recorded;
+    // 0 if there are none
+    public long getPercentile(double p)
+    {
+        long n = getCount();
+        if (n == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100 * n));
+        long seen = 0;
+        for (int k = 0; k < BUCKETS; k++)
+        {
+            seen += counts.get(k);
+            if (seen >= rank)
+                return Math.min(highest(k), getMax());
+        }
+        return getMax();
+    }
+
+    public LatencyHistogram copy()
+    {
+        LatencyHistogram c = new LatencyHistogram();
+        for (int k = 0; k < BUCKETS; k++)
+            c.counts.set(k, counts.get(k));
+        c.totals.set(0, totals.get(0));
+        c.totals.set(1, totals.get(1));
+        return c;
+    }
+
+    // what was recorded since earlier, a copy of this histogram. The
+    // largest value is that of the highest bucket recorded into since.
+    public LatencyHistogram minus(LatencyHistogram earlier)
+    {
+        LatencyHistogram d = new LatencyHistogram();
+        int top = -1;
+        for (int k = 0; k < BUCKETS; k++)
+        {
+            long n = counts.get(k) - earlier.counts.get(k);
+            d.counts.set(k, n);
+            if (n > 0)
+                top = k;
+        }
+        d.totals.set(0, totals.get(0) - earlier.totals.get(0));
+        d.totals.set(1, top < 0 ? 0 : Math.min(highest(top), getMax()));
+        return d;
+    }
+}
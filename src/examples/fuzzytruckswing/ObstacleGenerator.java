@@ -0,0 +1,156 @@
+package examples.fuzzytruckswing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Random obstacle layouts that are the same for the same seed and
+// settings. A layout has either a set number of obstacles or enough to
+// cover a set fraction of the world, counting overlaps twice. The
+// width and height of each are drawn from their ranges, evenly or evenly
+// in their logarithm, which gives many small obstacles and a few large
+// ones. Every obstacle lies wholly in the world, and none touches
+// the corridor the truck drives into the dock through or a clear region
+// around a start pose; one that would is drawn again, up to MAX_TRIES
+// times per obstacle on average, so a layout too dense to fit them can
+// come out short.
+//
+// The defaults are the obstacles the applet's Obstacle button has always
+// made, 20 to 59 world units wide and 5 to 9 high, in the applet's world.
+
+public class ObstacleGenerator
+{
+    // how the width and height of an obstacle are drawn from their ranges
+    public static final int UNIFORM = 0;
+    public static final int LOG_UNIFORM = 1;
+
+    static final int MAX_TRIES = 50;
+
+    final long seed;
+    int worldWidth = TruckGeometry.WORLD_WIDTH, worldHeight = TruckGeometry.WORLD_HEIGHT;
+    // a number of obstacles, or -1 to cover density of the area
+    int count = 4;
+    double density;
+    int minWidth = 20, maxWidth = 59, minHeight = 5, maxHeight = 9;
+    int sizes = UNIFORM;
+    // the dock corridor, half its width and its depth in world units,
+    // centred on the dock at the top of the world; 0 for none
+    int corridorHalfWidth = TruckGeometry.TRUCK_LENGTH, corridorDepth = 4 * TruckGeometry.TRUCK_LENGTH;
+    // clear regions around start poses, {x, y} in the units of
+    // TruckEngine and the radius in world units
+    final List<double[]> clear = new ArrayList<>();
+
+    public ObstacleGenerator(long seed)
+    {
+        this.seed = seed;
+    }
+
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    public void setWorldSize(int width, int height)
+    {
+        worldWidth = width;
+        worldHeight = height;
+    }
+
+    public void setCount(int n)
+    {
+        count = n;
+    }
+
+    // cover this fraction of the world, instead of a set number
+    public void setDensity(double d)
+    {
+        count = -1;
+        density = d;
+    }
+
+    // the range of widths and heights in world units, both ends included
+    public void setSizes(int minWidth, int maxWidth, int minHeight, int maxHeight, int distribution)
+    {
+        if (minWidth < 1 || minHeight < 1 || maxWidth < minWidth || maxHeight < minHeight)
+            throw new IllegalArgumentException("Not a size range: " + minWidth + "-" + maxWidth + " by "
+                    + minHeight + "-" + maxHeight);
+        if (distribution != UNIFORM && distribution != LOG_UNIFORM)
+            throw new IllegalArgumentException("Unknown size distribution: " + distribution);
+        this.minWidth = minWidth;
+        this.maxWidth = maxWidth;
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+        sizes = distribution;
+    }
+
+    // keep clear a corridor halfWidth units either side of the dock and
+    // depth units down from it; 0 for none
+    public void setDockCorridor(int halfWidth, int depth)
+    {
+        corridorHalfWidth = halfWidth;
+        corridorDepth = depth;
+    }
+
+    // keep clear the truck at start pose (x, y), in the units of
+    // TruckEngine, at any angle, and margin units around it
+    public void clearStart(double x, double y, double margin)
+    {
+        clear.add(new double[]{x, y, SweptFootprint.REACH + margin});
+    }
+
+    public void clearStarts()
+    {
+        clear.clear();
+    }
+
+    // obstacles as {x, y, width, height} in world units
+    public List<int[]> generate()
+    {
+        Random r = new Random(seed);
+        double target = count < 0 ? density * worldWidth * worldHeight : Double.POSITIVE_INFINITY;
+        int n = count < 0 ? Integer.MAX_VALUE : count;
+        List<int[]> list = new ArrayList<>(count < 0 ? 16 : count);
+        double area = 0;
+        // rejections left for the whole layout
+        long tries = (long) MAX_TRIES * (count < 0 ? Math.max(1, (long) (target / (minWidth * minHeight))) : count);
+        while (list.size() < n && area < target && tries > 0)
+        {
+            int w = Math.min(size(r, minWidth, maxWidth), worldWidth);
+            int h = Math.min(size(r, minHeight, maxHeight), worldHeight);
+            int x = r.nextInt(worldWidth - w + 1), y = r.nextInt(worldHeight - h + 1);
+            if (isClear(x, y, w, h))
+            {
+                list.add(new int[]{x, y, w, h});
+                area += (double) w * h;
+            }
+            else
+                tries--;
+        }
+        return list;
+    }
+
+    int size(Random r, int min, int max)
+    {
+        if (sizes == UNIFORM || min == max)
+            return min + r.nextInt(max - min + 1);
+        return (int) Math.min(max, Math.floor(min * Math.exp(r.nextDouble() * Math.log((max + 1.0) / min))));
+    }
+
+    // true if the obstacle touches neither the corridor nor a clear region
+    boolean isClear(int x, int y, int w, int h)
+    {
+        int dock = worldWidth / 2;
+        if (corridorDepth > 0 && x <= dock + corridorHalfWidth && x + w >= dock - corridorHalfWidth
+                && y <= corridorDepth)
+            return false;
+        for (double c[] : clear)
+        {
+            double cx = worldWidth * c[0] * .01, cy = worldHeight * c[1] * .01;
+            double dx = Math.max(0, Math.max(x - cx, cx - (x + w)));
+            double dy = Math.max(0, Math.max(y - cy, cy - (y + h)));
+            if (dx * dx + dy * dy <= c[2] * c[2])
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,225 @@
+package examples.fuzzytruckswing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// A set of obstacles with a uniform grid over their bounding boxes, so a
+// collision query only runs the separating axis test on the obstacles near
+// the truck. The grid has about as many cells as there are obstacles and
+// each cell lists, in ascending order, the obstacles whose bounding box
+// touches it. A layout is never changed after it has been built, so one
+// can be shared by any number of engines on any number of threads; the
+// same goes for its DistanceField and the PathPlanner of each world
+// size, built the first time they are asked for.
+
+public class ObstacleLayout
+{
+    public static final ObstacleLayout EMPTY = new ObstacleLayout(Collections.<int[]>emptyList());
+
+    // obstacles as {x, y, width, height} in world units
+    final List<int[]> obstacles;
+    // bounding box of each obstacle, at 4 * k: minX, minY, maxX, maxY
+    final int bounds[];
+
+    // the grid: cells of cellSize units from (originX, originY); the
+    // obstacles in cell c are cellItems[cellStart[c]] to cellItems[cellStart[c + 1] - 1]
+    final int originX, originY, cellSize, gridColumns, gridRows;
+    final int cellStart[], cellItems[];
+    // null until getDistanceField() builds it. Two threads asking at once
+    // may both build one; either will do, as they are the same.
+    volatile DistanceField distanceField;
+    // the planners for the world sizes asked for, by width << 32 | height;
+    // a layout is seldom shown in more than a world size or two
+    final ConcurrentHashMap<Long, PathPlanner> planners = new ConcurrentHashMap<>();
+
+    public ObstacleLayout(List<int[]> list)
+    {
+        int n = list.size();
+        obstacles = new ArrayList<>(n);
+        bounds = new int[4 * n];
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int k = 0; k < n; k++)
+        {
+            int[] o = list.get(k).clone();
+            obstacles.add(o);
+            int xa = o[0], ya = o[1], width = o[2], height = o[3];
+            bounds[4 * k] = Math.min(xa, xa + width);
+            bounds[4 * k + 1] = Math.min(ya, ya + height);
+            bounds[4 * k + 2] = Math.max(xa, xa + width);
+            bounds[4 * k + 3] = Math.max(ya, ya + height);
+            minX = Math.min(minX, bounds[4 * k]);
+            minY = Math.min(minY, bounds[4 * k + 1]);
+            maxX = Math.max(maxX, bounds[4 * k + 2]);
+            maxY = Math.max(maxY, bounds[4 * k + 3]);
+        }
+        if (n == 0)
+        {
+            originX = originY = 0;
+            cellSize = 1;
+            gridColumns = gridRows = 0;
+            cellStart = new int[1];
+            cellItems = new int[0];
+            return;
+        }
+
+        // about one cell per obstacle, but no smaller than 8 units
+        originX = minX;
+        originY = minY;
+        long spanX = (long) maxX - minX + 1, spanY = (long) maxY - minY + 1;
+        cellSize = (int) Math.max(8, Math.ceil(Math.sqrt((double) spanX * spanY / n)));
+        gridColumns = (int) ((spanX + cellSize - 1) / cellSize);
+        gridRows = (int) ((spanY + cellSize - 1) / cellSize);
+
+        // count, then fill; obstacles go in ascending order
+        cellStart = new int[gridColumns * gridRows + 1];
+        for (int k = 0; k < n; k++)
+            for (int cy = cellY(bounds[4 * k + 1]); cy <= cellY(bounds[4 * k + 3]); cy++)
+                for (int cx = cellX(bounds[4 * k]); cx <= cellX(bounds[4 * k + 2]); cx++)
+                    cellStart[cy * gridColumns + cx + 1]++;
+        for (int c = 0; c < gridColumns * gridRows; c++)
+            cellStart[c + 1] += cellStart[c];
+        cellItems = new int[cellStart[gridColumns * gridRows]];
+        int fill[] = cellStart.clone();
+        for (int k = 0; k < n; k++)
+            for (int cy = cellY(bounds[4 * k + 1]); cy <= cellY(bounds[4 * k + 3]); cy++)
+                for (int cx = cellX(bounds[4 * k]); cx <= cellX(bounds[4 * k + 2]); cx++)
+                    cellItems[fill[cy * gridColumns + cx]++] = k;
+    }
+
+    int cellX(int x)
+    {
+        return Math.max(0, Math.min(gridColumns - 1, (x - originX) / cellSize));
+    }
+
+    int cellY(int y)
+    {
+        return Math.max(0, Math.min(gridRows - 1, (y - originY) / cellSize));
+    }
+
+    public int size()
+    {
+        return obstacles.size();
+    }
+
+    public boolean isEmpty()
+    {
+        return obstacles.isEmpty();
+    }
+
+    public int[] get(int k)
+    {
+        return obstacles.get(k);
+    }
+
+    public List<int[]> getObstacles()
+    {
+        return Collections.unmodifiableList(obstacles);
+    }
+
+    public DistanceField getDistanceField()
+    {
+        DistanceField f = distanceField;
+        if (f == null)
+            distanceField = f = new DistanceField(this);
+        return f;
+    }
+
+    // the planner for a world of the given size, the same one, with the
+    // plans it has kept, every time that size is asked for
+    public PathPlanner getPlanner(int worldWidth, int worldHeight)
+    {
+        Long size = (long) worldWidth << 32 | worldHeight & 0xffffffffL;
+        PathPlanner p = planners.get(size);
+        if (p == null)
+        {
+            // built outside the map, the distance field maybe with it
+            p = new PathPlanner(this, worldWidth, worldHeight);
+            PathPlanner kept = planners.putIfAbsent(size, p);
+            if (kept != null)
+                p = kept;
+        }
+        return p;
+    }
+
+    // Index of the first obstacle the truck with the given corners
+    // collides with, -1 if none, the same one a linear scan running
+    // TruckGeometry.quadOverlapsBox on every obstacle in order would find.
+    public int firstCollision(int[][] truck)
+    {
+        if (obstacles.isEmpty())
+            return -1;
+        int minX = truck[0][0], minY = truck[0][1], maxX = minX, maxY = minY;
+        for (int i = 1; i < truck.length; i++)
+        {
+            minX = Math.min(minX, truck[i][0]);
+            minY = Math.min(minY, truck[i][1]);
+            maxX = Math.max(maxX, truck[i][0]);
+            maxY = Math.max(maxY, truck[i][1]);
+        }
+        // the narrow phase tests the x and y axes first, so it only finds
+        // obstacles whose bounding box touches the truck's
+        if ((long) maxX < originX || (long) maxY < originY
+                || (long) minX >= (long) originX + (long) gridColumns * cellSize
+                || (long) minY >= (long) originY + (long) gridRows * cellSize)
+            return -1;
+
+        int best = Integer.MAX_VALUE;
+        for (int cy = cellY(minY); cy <= cellY(maxY); cy++)
+            for (int cx = cellX(minX); cx <= cellX(maxX); cx++)
+            {
+                int c = cy * gridColumns + cx;
+                for (int p = cellStart[c]; p < cellStart[c + 1]; p++)
+                {
+                    int k = cellItems[p];
+                    // the rest of the cell can not beat what we have
+                    if (k >= best)
+                        break;
+                    if (TruckGeometry.quadOverlapsBox(truck, bounds[4 * k], bounds[4 * k + 1],
+                            bounds[4 * k + 2], bounds[4 * k + 3]))
+                        best = k;
+                }
+            }
+        return best == Integer.MAX_VALUE ? -1 : best;
+    }
+
+    // firstCollision for corners as TruckGeometry.footprint gives them
+    public int firstCollision(double c[])
+    {
+        if (obstacles.isEmpty())
+            return -1;
+        double minX = c[0], minY = c[1], maxX = minX, maxY = minY;
+        for (int i = 1; i < 4; i++)
+        {
+            minX = Math.min(minX, c[2 * i]);
+            minY = Math.min(minY, c[2 * i + 1]);
+            maxX = Math.max(maxX, c[2 * i]);
+            maxY = Math.max(maxY, c[2 * i + 1]);
+        }
+        if (maxX < originX || maxY < originY || minX >= (double) originX + (double) gridColumns * cellSize
+                || minY >= (double) originY + (double) gridRows * cellSize)
+            return -1;
+
+        int best = Integer.MAX_VALUE;
+        int cx0 = cellX((int) Math.floor(Math.max(minX, Integer.MIN_VALUE)));
+        int cy0 = cellY((int) Math.floor(Math.max(minY, Integer.MIN_VALUE)));
+        int cx1 = cellX((int) Math.ceil(Math.min(maxX, Integer.MAX_VALUE)));
+        int cy1 = cellY((int) Math.ceil(Math.min(maxY, Integer.MAX_VALUE)));
+        for (int cy = cy0; cy <= cy1; cy++)
+            for (int cx = cx0; cx <= cx1; cx++)
+            {
+                int cell = cy * gridColumns + cx;
+                for (int p = cellStart[cell]; p < cellStart[cell + 1]; p++)
+                {
+                    int k = cellItems[p];
+                    if (k >= best)
+                        break;
+                    if (TruckGeometry.quadOverlapsBox(c, bounds[4 * k], bounds[4 * k + 1], bounds[4 * k + 2],
+                            bounds[4 * k + 3]))
+                        best = k;
+                }
+            }
+        return best == Integer.MAX_VALUE ? -1 : best;
+    }
+}
@@ -0,0 +1,105 @@
+package examples.fuzzytruckswing;
+
+import java.util.List;
+import java.util.Random;
+
+// The episodes and rule inputs a report compares controllers on, the same
+// for every controller, and how the report scores them. The episodes are
+// random start states among obstacles from an ObstacleGenerator, the
+// applet's kind, all drawn from one seed. A controller is timed over the
+// rule inputs, half for the docking and half for the obstacle rules, and
+// scored over the episodes: how many park, leave the canvas or run out
+// of iterations, how many iterations a parked one takes, and how far off
+// the dock centre and the upright it stops.
+
+public class ParkingCorpus
+{
+    static final int MAX_ITERATIONS = 1000;
+    static final int INPUTS = 1 << 12;
+    // the headings of the columns score() gives
+    public static final String HEADER = String.format("%7s %7s %7s %10s %8s %8s", "parked", "left", "stuck",
+            "iterations", "|x-50|", "|phi-90|");
+    // keeps the timed results from being optimized away
+    static volatile double sink;
+
+    final List<int[]> obstacles;
+    // {x, y, angle} of each episode, and {rule base, xpos, phi} of each
+    // input
+    final double starts[][], inputs[][];
+
+    // episodes among the given number of obstacles; rules gives the
+    // ranges of the inputs
+    public ParkingCorpus(TruckRules rules, int episodes, int obstacles, long seed)
+    {
+        ObstacleGenerator generator = new ObstacleGenerator(seed);
+        generator.setCount(obstacles);
+        this.obstacles = generator.generate();
+        Random r = new Random(seed);
+        starts = new double[episodes][];
+        for (int k = 0; k < episodes; k++)
+            starts[k] = new double[]{100 * r.nextDouble(), 100 * r.nextDouble(), -90 + 360 * r.nextDouble()};
+        inputs = new double[INPUTS][];
+        for (int k = 0; k < INPUTS; k++)
+        {
+            int length = k % 2 == 0 ? FuzzyController.DOCKING : FuzzyController.OBSTACLE;
+            inputs[k] = new double[]{length,
+                    rules.getMinXpos(length) + (rules.getMaxXpos(length) - rules.getMinXpos(length)) * r.nextDouble(),
+                    rules.getMinPhi(length) + (rules.getMaxPhi(length) - rules.getMinPhi(length)) * r.nextDouble()};
+        }
+    }
+
+    public int getEpisodeCount()
+    {
+        return starts.length;
+    }
+
+    public int getObstacleCount()
+    {
+        return obstacles.size();
+    }
+
+    // nanoseconds per evaluation, the best of the rounds of repeated
+    // passes over the inputs
+    public double cost(FuzzyController controller, int repeats, int rounds)
+    {
+        double best = Double.POSITIVE_INFINITY, sum = 0;
+        for (int round = 0; round < rounds; round++)
+        {
+            long start = System.nanoTime();
+            for (int rep = 0; rep < repeats; rep++)
+                for (double in[] : inputs)
+                    sum += controller.getConclusion((int) in[0], in[1], in[2], null);
+            best = Math.min(best, (System.nanoTime() - start) / ((double) repeats * inputs.length));
+        }
+        sink = sum;
+        return best;
+    }
+
+    // the episodes run with the controller, as the columns of HEADER
+    public String score(FuzzyController controller)
+    {
+        TruckEngine engine = new TruckEngine(controller);
+        engine.setObstacles(obstacles);
+        engine.setWorldSize(TruckGeometry.WORLD_WIDTH, TruckGeometry.WORLD_HEIGHT);
+        int episodes = starts.length, parked = 0, left = 0;
+        double iterations = 0, xError = 0, phiError = 0;
+        for (double start[] : starts)
+        {
+            engine.setStart(start[0], start[1], start[2]);
+            engine.reset();
+            int n = engine.runToCompletion(MAX_ITERATIONS);
+            if (engine.isFinished())
+            {
+                parked++;
+                iterations += n;
+                xError += Math.abs(engine.getXt() - 50);
+                phiError += Math.abs(engine.getPhit() - 90);
+            }
+            else if (engine.isDisabled())
+                left++;
+        }
+        return String.format("%6.1f%% %6.1f%% %6.1f%% %10.1f %8.3f %8.3f", 100.0 * parked / episodes,
+                100.0 * left / episodes, 100.0 * (episodes - parked - left) / episodes, iterations / parked,
+                xError / parked, phiError / parked);
+    }
+}
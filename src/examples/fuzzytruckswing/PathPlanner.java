@@ -0,0 +1,334 @@
+package examples.fuzzytruckswing;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Plans a way for the truck from a start pose to the dock round the
+// obstacles of an ObstacleLayout, for the engine to follow with the
+// docking rules. The search is a hybrid A*: a pose keeps its exact
+// position and heading, but only the cheapest pose reached in each grid
+// cell of CELL world units at each of HEADINGS headings is expanded. A
+// pose is expanded by driving ARC units in STEPS steps, turning by one of
+// TURNS degrees in all, well within the 45 degrees either way the rules
+// can turn in a step, and moving as the engine does: turn, then go
+// straight. Every step is swept against the obstacles with a
+// SweptFootprint, so a plan never touches one, and its cost grows as the
+// truck closes in on one, which the layout's DistanceField gives. The
+// pose of the truck stays in the world.
+//
+// The search ends at a pose within GOAL_X units of the dock's line and
+// GOAL_PHI degrees of straight up from which the truck can drive straight
+// into the dock, and the plan is the poses on the way there and the dock,
+// less those the truck can drive straight past.
+// It gives up after MAX_EXPANSIONS poses, or at once if the truck starts
+// on an obstacle.
+//
+// A planner belongs to a layout and a world size, see
+// ObstacleLayout.getPlanner. It keeps the plans it has made by start
+// pose, and whether the docking rules alone park from a start, see
+// isClearRun, each for the MAX_PLANS starts used last, so an episode run
+// again from the same start plans once. plan() and isClearRun() may be
+// called by many threads at once; the search and the run are made
+// outside the lock of the cache, so two threads asking at once may both
+// make one, and the first kept is handed out to both.
+
+public class PathPlanner
+{
+    static final double CELL = 8;
+    static final int HEADINGS = 24;
+    static final double ARC = 12;
+    static final int STEPS = 3;
+    static final double TURNS[] = {-45, -22.5, 0, 22.5, 45};
+    static final double GOAL_X = 8, GOAL_PHI = 20;
+    // the goal is no nearer the dock than this, so the docking rules have
+    // room to line the truck up
+    static final double APPROACH = 4 * TruckGeometry.TRUCK_LENGTH;
+    // how much the straight way to the approach counts for against the
+    // cost so far; over 1 finds a plan sooner, if not the cheapest
+    static final double GREED = 2;
+    // closer than SAFE world units to an obstacle, a move costs up to
+    // CLEARANCE_COST times as much again; turning costs a little too
+    static final double SAFE = 24, CLEARANCE_COST = 2, TURN_COST = 1 / 60.0;
+    static final int MAX_EXPANSIONS = 10000;
+    static final int MAX_PLANS = 1024;
+    // the most steps a run to tell whether to plan at all takes
+    static final int CLEAR_RUN = 1000;
+    static final double NO_PLAN[] = new double[0];
+
+    final ObstacleLayout obstacles;
+    final int worldWidth, worldHeight;
+    final DistanceField field;
+    final int columns, rows;
+    final Map<String, double[]> plans = cache(MAX_PLANS);
+    final Map<List<Object>, Boolean> clearRuns = cache(MAX_PLANS);
+
+    public PathPlanner(ObstacleLayout obstacles, int worldWidth, int worldHeight)
+    {
+        this.obstacles = obstacles;
+        this.worldWidth = worldWidth;
+        this.worldHeight = worldHeight;
+        field = obstacles.getDistanceField();
+        columns = (int) Math.ceil(worldWidth / CELL) + 1;
+        rows = (int) Math.ceil(worldHeight / CELL) + 1;
+    }
+
+    // The plan from the start pose, in the units of TruckEngine, as the
+    // x and y of each pose at 2 * i, the first the start and the last the
+    // dock; null if there is none. The plan is kept and handed out again,
+    // so it must not be written to.
+    public double[] plan(double x, double y, double phi)
+    {
+        String key = x + " " + y + " " + phi;
+        double p[] = plans.get(key);
+        if (p == null)
+        {
+            p = search(x, y, phi);
+            double kept[] = plans.putIfAbsent(key, p);
+            if (kept != null)
+                p = kept;
+        }
+        return p == NO_PLAN ? null : p;
+    }
+
+    // True if the controller's docking rules alone park the truck from
+    // the start pose at the given speed without touching an obstacle, so
+    // there is nothing to plan round: a run with no obstacles, each step
+    // swept against them. The answer is kept for the controller, the
+    // version of its rules, the way it defuzzifies, the speed and the
+    // start.
+    public boolean isClearRun(FuzzyController controller, double speed, double x, double y, double phi)
+    {
+        List<Object> key = Arrays.asList(controller, controller.getVersion(), controller.getDefuzzifier(), speed, x,
+                y, phi);
+        Boolean clear = clearRuns.get(key);
+        if (clear == null)
+        {
+            clear = run(controller, speed, x, y, phi);
+            Boolean kept = clearRuns.putIfAbsent(key, clear);
+            if (kept != null)
+                clear = kept;
+        }
+        return clear;
+    }
+
+    // the run itself, every call from scratch
+    boolean run(FuzzyController controller, double speed, double x, double y, double phi)
+    {
+        TruckEngine run = new TruckEngine(controller);
+        run.setWorldSize(worldWidth, worldHeight);
+        run.setTruckSpeed(speed);
+        run.setStart(x, y, phi);
+        run.reset();
+        SweptFootprint move = new SweptFootprint();
+        while (run.Iteration < CLEAR_RUN && !run.isComplete())
+        {
+            double px = run.Xt, py = run.Yt, pPhi = run.Phit;
+            run.step();
+            move.set(px, py, pPhi, run.Xt, run.Yt, run.Phit, worldWidth, worldHeight);
+            if (move.firstContact(obstacles) >= 0)
+                return false;
+        }
+        return run.finished;
+    }
+
+    // a map that keeps the size entries used last, dropping the least
+    // recently used, with every call made under its lock
+    static <K, V> Map<K, V> cache(int size)
+    {
+        return Collections.synchronizedMap(new LinkedHashMap<K, V>(16, .75f, true)
+        {
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+            {
+                return size() > size;
+            }
+        });
+    }
+
+    // the search itself, every call from scratch; NO_PLAN if there is none
+    double[] search(double xt, double yt, double phit)
+    {
+        // the poses reached, each in world units and degrees, with the
+        // cost so far and the pose it was reached from
+        Poses poses = new Poses();
+        float best[] = new float[columns * rows * HEADINGS];
+        Arrays.fill(best, Float.POSITIVE_INFINITY);
+        PriorityQueue<Integer> open = new PriorityQueue<>((a, b) -> Double.compare(poses.f[a], poses.f[b]));
+        SweptFootprint sweep = new SweptFootprint();
+        double corners[] = new double[8];
+
+        double dockX = worldWidth / 2.0;
+        // a truck on an obstacle can not sweep anywhere; the obstacle rules
+        // see to that
+        if (obstacles.firstCollision(TruckGeometry.footprint(worldWidth * xt * .01, worldHeight * yt * .01,
+                phit * Math.PI / 180, corners)) >= 0)
+            return NO_PLAN;
+        open.add(poses.add(worldWidth * xt * .01, worldHeight * yt * .01, phit, 0, -1, dockX));
+        for (int expansions = 0; expansions < MAX_EXPANSIONS && !open.isEmpty(); expansions++)
+        {
+            int n = open.poll();
+            double x = poses.x[n], y = poses.y[n], phi = poses.phi[n], g = poses.g[n];
+            int key = key(x, y, phi);
+            if (key >= 0 && g > best[key])
+                continue;
+            if (isGoal(sweep, x, y, phi))
+                return path(sweep, poses, n, xt, yt);
+            for (double turn : TURNS)
+            {
+                double px = x, py = y, pPhi = phi;
+                boolean clear = true;
+                // a sure miss costs no sweep
+                boolean far = field.lowerBound(x, y) > SweptFootprint.REACH + SweptFootprint.CONTACT + ARC;
+                for (int s = 0; s < STEPS && clear; s++)
+                {
+                    double nPhi = pPhi + turn / STEPS, a = nPhi * Math.PI / 180;
+                    double nx = px + ARC / STEPS * Math.cos(a), ny = py - ARC / STEPS * Math.sin(a);
+                    if (nx < 0 || nx > worldWidth || ny < 0 || ny > worldHeight)
+                        clear = false;
+                    else if (!far)
+                    {
+                        sweep.set(100 * px / worldWidth, 100 * py / worldHeight, pPhi, 100 * nx / worldWidth,
+                                100 * ny / worldHeight, nPhi, worldWidth, worldHeight);
+                        clear = sweep.firstContact(obstacles) < 0;
+                    }
+                    px = nx;
+                    py = ny;
+                    pPhi = nPhi;
+                }
+                if (!clear)
+                    continue;
+                double cost = ARC * (1 + Math.abs(turn) * TURN_COST);
+                double c = clearance(px, py, pPhi, corners);
+                if (c < SAFE)
+                    cost += ARC * CLEARANCE_COST * (SAFE - c) / SAFE;
+                int k = key(px, py, pPhi);
+                if (k < 0 || g + cost >= best[k])
+                    continue;
+                best[k] = (float) (g + cost);
+                open.add(poses.add(px, py, pPhi, g + cost, n, dockX));
+            }
+        }
+        return NO_PLAN;
+    }
+
+    // the grid cell and heading of a pose, -1 off the grid
+    int key(double x, double y, double phi)
+    {
+        int i = (int) Math.floor(x / CELL), j = (int) Math.floor(y / CELL);
+        if (i < 0 || j < 0 || i >= columns || j >= rows)
+            return -1;
+        int h = Math.floorMod((int) Math.round(phi * HEADINGS / 360), HEADINGS);
+        return (j * columns + i) * HEADINGS + h;
+    }
+
+    // true if the truck at the pose is lined up with the dock and can
+    // drive straight into it
+    boolean isGoal(SweptFootprint sweep, double x, double y, double phi)
+    {
+        if (Math.abs(x - worldWidth / 2.0) > GOAL_X || Math.abs(Math.IEEEremainder(phi - 90, 360)) > GOAL_PHI
+                || y < APPROACH)
+            return false;
+        // turning the short way round to straight up
+        sweep.set(100 * x / worldWidth, 100 * y / worldHeight, 90 + Math.IEEEremainder(phi - 90, 360), 50, 0, 90,
+                worldWidth, worldHeight);
+        return sweep.firstContact(obstacles) < 0;
+    }
+
+    // the distance from the obstacles of the nearest of the truck's
+    // corners and the point of its pose
+    double clearance(double x, double y, double phi, double corners[])
+    {
+        TruckGeometry.footprint(x, y, phi * Math.PI / 180, corners);
+        double c = field.distance(x, y);
+        for (int i = 0; i < 4; i++)
+            c = Math.min(c, field.distance(corners[2 * i], corners[2 * i + 1]));
+        return c;
+    }
+
+    // The poses from the start to pose n and on to the dock, in the units
+    // of TruckEngine, with the corners cut: a pose before the goal is
+    // left out where the truck can drive straight from the pose before it
+    // to the one after.
+    double[] path(SweptFootprint sweep, Poses poses, int n, double xt, double yt)
+    {
+        int length = 1;
+        for (int p = n; p >= 0; p = poses.parent[p])
+            length++;
+        double all[] = new double[2 * length];
+        all[2 * length - 2] = 50;
+        all[2 * length - 1] = 0;
+        int i = length - 2;
+        for (int p = n; p >= 0; p = poses.parent[p], i--)
+        {
+            all[2 * i] = 100 * poses.x[p] / worldWidth;
+            all[2 * i + 1] = 100 * poses.y[p] / worldHeight;
+        }
+        // the start as given, not as it comes back from world units
+        all[0] = xt;
+        all[1] = yt;
+        double path[] = new double[2 * length];
+        int kept = 0;
+        for (i = 0; ; )
+        {
+            path[2 * kept] = all[2 * i];
+            path[2 * kept + 1] = all[2 * i + 1];
+            kept++;
+            if (i == length - 1)
+                break;
+            // the furthest pose straight on, the next one if no other, but
+            // never past the goal, where the truck is lined up
+            int j = i == length - 2 ? length - 1 : length - 2;
+            while (j > i + 1 && !isStraight(sweep, all, i, j, j == length - 2))
+                j--;
+            i = j;
+        }
+        return Arrays.copyOf(path, 2 * kept);
+    }
+
+    // true if the truck can drive straight from pose i to pose j, and,
+    // if j is the goal, arrives lined up with the dock
+    boolean isStraight(SweptFootprint sweep, double path[], int i, int j, boolean goal)
+    {
+        double phi = Math.atan2(-(path[2 * j + 1] - path[2 * i + 1]) * worldHeight,
+                (path[2 * j] - path[2 * i]) * worldWidth) * 180 / Math.PI;
+        if (goal && Math.abs(phi - 90) > GOAL_PHI)
+            return false;
+        sweep.set(path[2 * i], path[2 * i + 1], phi, path[2 * j], path[2 * j + 1], phi, worldWidth, worldHeight);
+        return sweep.firstContact(obstacles) < 0;
+    }
+
+    // The poses a search has reached, in arrays that grow as needed, and
+    // the cost of each so far plus GREED times the straight way to the
+    // approach.
+    static class Poses
+    {
+        double x[] = new double[256], y[] = new double[256], phi[] = new double[256];
+        double g[] = new double[256], f[] = new double[256];
+        int parent[] = new int[256];
+        int n;
+
+        int add(double x, double y, double phi, double g, int parent, double dockX)
+        {
+            if (n == this.x.length)
+            {
+                int size = 2 * n;
+                this.x = Arrays.copyOf(this.x, size);
+                this.y = Arrays.copyOf(this.y, size);
+                this.phi = Arrays.copyOf(this.phi, size);
+                this.g = Arrays.copyOf(this.g, size);
+                f = Arrays.copyOf(f, size);
+                this.parent = Arrays.copyOf(this.parent, size);
+            }
+            this.x[n] = x;
+            this.y[n] = y;
+            this.phi[n] = phi;
+            this.g[n] = g;
+            f[n] = g + GREED * Math.hypot(x - dockX, y - APPROACH);
+            this.parent[n] = parent;
+            return n++;
+        }
+    }
+}
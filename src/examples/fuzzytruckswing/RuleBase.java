@@ -0,0 +1,146 @@
+package examples.fuzzytruckswing;
+
+// The conclusions of the docking and obstacle rules, and how the rules of
+// each fire, as one immutable, numbered snapshot. An edit makes a new
+// snapshot with a higher version that shares every row but the one
+// changed, so readers on other threads always see a complete rule base
+// and can tell cheaply which rules moved on since the snapshot they last
+// compiled.
+
+public final class RuleBase
+{
+    public static final RuleBase DEFAULT = new RuleBase(TruckRules.DefaultConclusions, TruckRules.DefaultObsConclusions, 0);
+
+    // conclusions by row and column; the rows are shared between
+    // versions, so they must never be written to
+    private final String docking[][], obstacle[][];
+    // FuzzyController.MAMDANI or LARSEN, and MINIMUM or PRODUCT, of the
+    // docking rules at 0 and the obstacle rules at 1; never written to
+    private final int executor[], combine[];
+    private final int version;
+
+    public RuleBase(String docking[][], String obstacle[][])
+    {
+        this(docking, obstacle, 0);
+    }
+
+    // the rules as they were at the given version, read back from a
+    // recording, say
+    public RuleBase(String docking[][], String obstacle[][], int version)
+    {
+        this.docking = copy(docking);
+        this.obstacle = copy(obstacle);
+        executor = new int[]{FuzzyController.MAMDANI, FuzzyController.MAMDANI};
+        combine = new int[]{FuzzyController.MINIMUM, FuzzyController.MINIMUM};
+        this.version = version;
+    }
+
+    private RuleBase(String docking[][], String obstacle[][], int executor[], int combine[], int version)
+    {
+        this.docking = docking;
+        this.obstacle = obstacle;
+        this.executor = executor;
+        this.combine = combine;
+        this.version = version;
+    }
+
+    private static String[][] copy(String c[][])
+    {
+        String r[][] = new String[c.length][];
+        for (int i = 0; i < c.length; i++)
+            r[i] = c[i].clone();
+        return r;
+    }
+
+    public int getVersion()
+    {
+        return version;
+    }
+
+    public int getRows(int length)
+    {
+        return rows(length).length;
+    }
+
+    public String getConclusion(int length, int i, int j)
+    {
+        return rows(length)[i][j];
+    }
+
+    // a copy of the conclusions of a rule base
+    public String[][] getConclusions(int length)
+    {
+        return copy(rows(length));
+    }
+
+    private String[][] rows(int length)
+    {
+        return length == FuzzyController.DOCKING ? docking : obstacle;
+    }
+
+    private static int index(int length)
+    {
+        return length == FuzzyController.DOCKING ? 0 : 1;
+    }
+
+    // how a rule of a rule base applies its firing strength to its
+    // conclusion, FuzzyController.MAMDANI or LARSEN
+    public int getExecutor(int length)
+    {
+        return executor[index(length)];
+    }
+
+    // how a rule of a rule base combines the memberships of its inputs,
+    // FuzzyController.MINIMUM or PRODUCT
+    public int getCombine(int length)
+    {
+        return combine[index(length)];
+    }
+
+    // this rule base with the rules of one of the rule bases firing the
+    // given way, as the next version
+    public RuleBase withInference(int length, int executor, int combine)
+    {
+        int e[] = this.executor.clone(), c[] = this.combine.clone();
+        e[index(length)] = executor;
+        c[index(length)] = combine;
+        return new RuleBase(docking, obstacle, e, c, version + 1);
+    }
+
+    // true if the rules of a rule base fire the same way in both
+    public boolean sameInference(RuleBase other, int length)
+    {
+        int k = index(length);
+        return executor[k] == other.executor[k] && combine[k] == other.combine[k];
+    }
+
+    // this rule base with the conclusion of rule (i, j) of one of the
+    // rule bases replaced, as the next version
+    public RuleBase with(int length, int i, int j, String conclusion)
+    {
+        String src[][] = rows(length);
+        String c[][] = src.clone();
+        c[i] = src[i].clone();
+        c[i][j] = conclusion;
+        return length == FuzzyController.DOCKING
+                ? new RuleBase(c, obstacle, executor, combine, version + 1)
+                : new RuleBase(docking, c, executor, combine, version + 1);
+    }
+
+    // this rule base with all conclusions of one of the rule bases
+    // replaced, as the next version
+    public RuleBase with(int length, String conclusions[][])
+    {
+        String c[][] = copy(conclusions);
+        return length == FuzzyController.DOCKING
+                ? new RuleBase(c, obstacle, executor, combine, version + 1)
+                : new RuleBase(docking, c, executor, combine, version + 1);
+    }
+
+    // true if rule (i, j) of a rule base concludes the same in both
+    public boolean sameConclusion(RuleBase other, int length, int i, int j)
+    {
+        String a[] = rows(length)[i], b[] = other.rows(length)[i];
+        return a == b || a[j].equals(b[j]);
+    }
+}
@@ -0,0 +1,112 @@
+package examples.fuzzytruckswing;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+// Writes the rule firings read from a RuleFiringRing cursor to a file as
+// comma separated lines of
+//
+//     episode,iteration,rule base,row,column,strength
+//
+// where iteration is the step the rule fired in, counted from 1, and the
+// rule base is 7 for docking and 5 for obstacle rules. A new episode
+// starts after one ends or when the iteration count goes back. Runs as a
+// daemon thread that polls the ring every POLL_INTERVAL milliseconds; if it
+// falls a whole ring behind the lost records are noted in the file.
+
+public class RuleFiringDumper extends Thread implements RuleFiringRing.Handler
+{
+    public static final int POLL_INTERVAL = 50;
+
+    final RuleFiringRing.Cursor cursor;
+    final PrintWriter out;
+    long reportedLost;
+
+    // firings of the step being read, written once its end is seen
+    int count;
+    int lengths[] = new int[64], rows[] = new int[64], columns[] = new int[64];
+    double strengths[] = new double[64];
+    int episode = 1, lastIteration;
+    boolean episodeOver;
+
+    public RuleFiringDumper(RuleFiringRing.Cursor cursor, Writer out)
+    {
+        super("Rule firing dumper");
+        setDaemon(true);
+        this.cursor = cursor;
+        this.out = new PrintWriter(out);
+        this.out.println("episode,iteration,rule base,row,column,strength");
+    }
+
+    public void run()
+    {
+        try
+        {
+            while (!isInterrupted())
+            {
+                cursor.poll(this);
+                if (cursor.getLost() != reportedLost)
+                {
+                    out.println("# lost " + (cursor.getLost() - reportedLost) + " records");
+                    reportedLost = cursor.getLost();
+                    count = 0;
+                }
+                out.flush();
+                sleep(POLL_INTERVAL);
+            }
+        }
+        catch (InterruptedException e)
+        {
+        }
+        finally
+        {
+            cursor.poll(this);
+            cursor.close();
+            out.close();
+        }
+    }
+
+    public void ruleFired(int length, int i, int j, double strength)
+    {
+        if (count == lengths.length)
+        {
+            lengths = Arrays.copyOf(lengths, 2 * count);
+            rows = Arrays.copyOf(rows, 2 * count);
+            columns = Arrays.copyOf(columns, 2 * count);
+            strengths = Arrays.copyOf(strengths, 2 * count);
+        }
+        lengths[count] = length;
+        rows[count] = i;
+        columns[count] = j;
+        strengths[count] = strength;
+        count++;
+    }
+
+    public void stepEnded(int iteration, boolean finished, boolean disabled)
+    {
+        if (episodeOver || iteration <= lastIteration)
+            episode++;
+        for (int k = 0; k < count; k++)
+            out.println(episode + "," + iteration + "," + lengths[k] + "," + rows[k] + "," + columns[k] + ","
+                    + strengths[k]);
+        count = 0;
+        lastIteration = iteration;
+        episodeOver = finished || disabled;
+    }
+
+    // stop, write what is left and close the file
+    public void finish() throws IOException
+    {
+        interrupt();
+        try
+        {
+            join();
+        }
+        catch (InterruptedException e)
+        {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package examples.fuzzytruckswing;
+
+// Receives the rules that fire while a FuzzyController computes a conclusion.
+// i indexes phi and j indexes xpos, as in the rule matrices.
+
+public interface RuleFiringListener
+{
+    void ruleFired(int length, int i, int j, double strength);
+}
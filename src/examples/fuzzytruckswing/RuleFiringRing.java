@@ -0,0 +1,185 @@
+package examples.fuzzytruckswing;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Rule firings of one engine, as a ring of compact records that any number
+// of readers consume at their own pace. Register the ring with the engine
+// as its RuleFiringListener and as a TruckEngineListener, before any
+// listener that reads it: it then holds a record for every rule that
+// fired, followed by an end of step record once the step is done.
+//
+// There is a single writer, the thread that steps the engine. A record is
+// one long written into a preallocated array, after which the count of
+// published records is raised, so writing never locks, allocates or
+// waits. A reader checks the count again after reading a slot, so it
+// never takes a record the writer was overwriting; a reader that falls
+// a whole capacity behind loses the oldest records and is told how many.
+// While no reader is open the ring records nothing.
+
+public class RuleFiringRing implements RuleFiringListener, TruckEngineListener
+{
+    // record layout: the kind in the top two bits; a firing has the rule
+    // row in bits 40-47, the column in bits 32-39 and the strength as
+    // float bits in bits 0-31; an end of step has the outcome flags in
+    // bits 32-33 and the iteration count in bits 0-31
+    static final int DOCKING_FIRING = 0, OBSTACLE_FIRING = 1, STEP_END = 2;
+    static final long FINISHED = 1L << 32, DISABLED = 1L << 33;
+
+    // what a reader is handed, in the order the records were written
+    public interface Handler
+    {
+        void ruleFired(int length, int i, int j, double strength);
+
+        // the step that completed the given number of iterations is over
+        void stepEnded(int iteration, boolean finished, boolean disabled);
+    }
+
+    final AtomicLongArray slots;
+    final int size, mask;
+    // number of records written so far; record n is in slot n & mask
+    final AtomicLong published = new AtomicLong();
+    // the same, as only the writer sees it
+    long written;
+    final AtomicInteger readers = new AtomicInteger();
+
+    // capacity is rounded up to a power of two
+    public RuleFiringRing(int capacity)
+    {
+        size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new AtomicLongArray(size);
+        mask = size - 1;
+    }
+
+    public int getCapacity()
+    {
+        return size;
+    }
+
+    // number of records written so far
+    public long getPublished()
+    {
+        return published.get();
+    }
+
+    public boolean hasReaders()
+    {
+        return readers.get() > 0;
+    }
+
+    public void ruleFired(int length, int i, int j, double strength)
+    {
+        if (readers.get() == 0)
+            return;
+        long kind = length == FuzzyController.DOCKING ? DOCKING_FIRING : OBSTACLE_FIRING;
+        put(kind << 62 | (long) (i & 0xff) << 40 | (long) (j & 0xff) << 32
+                | (Float.floatToRawIntBits((float) strength) & 0xffffffffL));
+    }
+
+    public void stepCompleted(TruckEngine engine)
+    {
+        if (readers.get() == 0)
+            return;
+        put((long) STEP_END << 62 | (engine.isFinished() ? FINISHED : 0) | (engine.isDisabled() ? DISABLED : 0)
+                | (engine.getIteration() & 0xffffffffL));
+    }
+
+    void put(long record)
+    {
+        slots.lazySet((int) written & mask, record);
+        published.lazySet(++written);
+    }
+
+    // a reader that starts with the next record written
+    public Cursor newCursor()
+    {
+        readers.incrementAndGet();
+        return new Cursor(published.get());
+    }
+
+    // One reader's position in the ring. A cursor is meant for one thread.
+    public class Cursor
+    {
+        long next;
+        long lost;
+        boolean closed;
+
+        Cursor(long next)
+        {
+            this.next = next;
+        }
+
+        // records written before this cursor caught up that it never saw
+        public long getLost()
+        {
+            return lost;
+        }
+
+        public long getNext()
+        {
+            return next;
+        }
+
+        // hand the unread records before record number end, or all if end
+        // is past the last one written, to h. Returns the number handed.
+        public int poll(Handler h, long end)
+        {
+            long available = Math.min(end, published.get());
+            int count = 0;
+            while (next < available)
+            {
+                // skip what may have been overwritten already: the writer
+                // could be busy with the slot of record published - size
+                long oldest = published.get() - size + 1;
+                if (next < oldest)
+                {
+                    lost += oldest - next;
+                    next = oldest;
+                    continue;
+                }
+                long record = slots.get((int) next & mask);
+                // the writer may have reused the slot while we read it
+                if (published.get() - size + 1 > next)
+                    continue;
+                next++;
+                count++;
+                dispatch(record, h);
+            }
+            return count;
+        }
+
+        public int poll(Handler h)
+        {
+            return poll(h, Long.MAX_VALUE);
+        }
+
+        // move on to record number n without reading what is before it
+        public void skipTo(long n)
+        {
+            if (n > next)
+                next = n;
+        }
+
+        // stop reading; once no cursor is open the ring records nothing
+        public void close()
+        {
+            if (!closed)
+            {
+                closed = true;
+                readers.decrementAndGet();
+            }
+        }
+    }
+
+    static void dispatch(long record, Handler h)
+    {
+        int kind = (int) (record >>> 62);
+        if (kind == STEP_END)
+            h.stepEnded((int) record, (record & FINISHED) != 0, (record & DISABLED) != 0);
+        else
+            h.ruleFired(kind == DOCKING_FIRING ? FuzzyController.DOCKING : FuzzyController.OBSTACLE,
+                    (int) (record >>> 40) & 0xff, (int) (record >>> 32) & 0xff,
+                    Float.intBitsToFloat((int) record));
+    }
+}
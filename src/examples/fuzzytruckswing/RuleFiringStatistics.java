@@ -0,0 +1,139 @@
+package examples.fuzzytruckswing;
+
+import java.util.Random;
+
+// Counts how often and how strongly every rule fires, read from a
+// RuleFiringRing, both over all episodes and over the long ones only, to
+// see which rules keep the truck busy. An episode ends with its last step,
+// or when the iteration count goes back because the truck was reset; it
+// is long if it takes more than longEpisode iterations.
+
+public class RuleFiringStatistics implements RuleFiringRing.Handler
+{
+    final int longEpisode;
+    // conclusions of the rules, to label them with
+    final String conclusions[][][];
+
+    // per rule base (0 docking, 1 obstacle), at i * COLUMNS + j
+    final long firings[][] = new long[2][], longFirings[][] = new long[2][];
+    final double strength[][] = new double[2][], longStrength[][] = new double[2][];
+    // the same for the episode being read
+    final long episodeFirings[][] = new long[2][];
+    final double episodeStrength[][] = new double[2][];
+
+    int episodes, longEpisodes, lastIteration;
+    long iterations, longIterations;
+    boolean episodeOver;
+
+    public RuleFiringStatistics(TruckRules rules, int longEpisode)
+    {
+        this.longEpisode = longEpisode;
+        conclusions = new String[][][]{rules.getConclusions(FuzzyController.DOCKING),
+                rules.getConclusions(FuzzyController.OBSTACLE)};
+        int sizes[] = {TruckRules.ROWS * TruckRules.COLUMNS, TruckRules.DefaultObsConclusions.length * TruckRules.COLUMNS};
+        for (int b = 0; b < 2; b++)
+        {
+            firings[b] = new long[sizes[b]];
+            longFirings[b] = new long[sizes[b]];
+            strength[b] = new double[sizes[b]];
+            longStrength[b] = new double[sizes[b]];
+            episodeFirings[b] = new long[sizes[b]];
+            episodeStrength[b] = new double[sizes[b]];
+        }
+    }
+
+    public void ruleFired(int length, int i, int j, double s)
+    {
+        int b = length == FuzzyController.DOCKING ? 0 : 1;
+        episodeFirings[b][i * TruckRules.COLUMNS + j]++;
+        episodeStrength[b][i * TruckRules.COLUMNS + j] += s;
+    }
+
+    public void stepEnded(int iteration, boolean finished, boolean disabled)
+    {
+        if (!episodeOver && iteration <= lastIteration)
+            endEpisode(lastIteration);
+        lastIteration = iteration;
+        episodeOver = finished || disabled;
+        if (episodeOver)
+            endEpisode(iteration);
+    }
+
+    void endEpisode(int length)
+    {
+        boolean isLong = length > longEpisode;
+        episodes++;
+        iterations += length;
+        if (isLong)
+        {
+            longEpisodes++;
+            longIterations += length;
+        }
+        for (int b = 0; b < 2; b++)
+            for (int k = 0; k < firings[b].length; k++)
+            {
+                firings[b][k] += episodeFirings[b][k];
+                strength[b][k] += episodeStrength[b][k];
+                if (isLong)
+                {
+                    longFirings[b][k] += episodeFirings[b][k];
+                    longStrength[b][k] += episodeStrength[b][k];
+                }
+                episodeFirings[b][k] = 0;
+                episodeStrength[b][k] = 0;
+            }
+        lastIteration = 0;
+    }
+
+    // Per rule: the firings per iteration over all episodes and over the
+    // long ones, and their mean strength. Rules that fire much more often
+    // in long episodes than overall are the ones to look at.
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(episodes).append(" episodes, ").append(longEpisodes).append(" longer than ").append(longEpisode)
+                .append(" iterations\n");
+        sb.append("rule        conclusion  per iteration  in long episodes  mean strength\n");
+        for (int b = 0; b < 2; b++)
+            for (int k = 0; k < firings[b].length; k++)
+            {
+                if (firings[b][k] == 0)
+                    continue;
+                int i = k / TruckRules.COLUMNS, j = k % TruckRules.COLUMNS;
+                sb.append(String.format("%-8s %2d,%d  %-10s  %13.4f  %16s  %13.3f%n",
+                        b == 0 ? "docking" : "obstacle", i, j, conclusions[b][i][j],
+                        firings[b][k] / (double) iterations,
+                        longIterations == 0 ? "-" : String.format("%.4f", longFirings[b][k] / (double) longIterations),
+                        strength[b][k] / firings[b][k]));
+            }
+        return sb.toString();
+    }
+
+    // java examples.fuzzytruckswing.RuleFiringStatistics [episodes [long]]
+    // parks the truck with the default rules from random start states and
+    // prints the statistics, long meaning more than 100 iterations unless
+    // given
+    public static void main(String args[])
+    {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        TruckRules rules = new TruckRules();
+        RuleFiringStatistics stats = new RuleFiringStatistics(rules, args.length > 1 ? Integer.parseInt(args[1]) : 100);
+        RuleFiringRing ring = new RuleFiringRing(1 << 12);
+        RuleFiringRing.Cursor cursor = ring.newCursor();
+        TruckEngine engine = new TruckEngine(new FuzzyKernel(rules));
+        engine.setRuleFiringListener(ring);
+        engine.addListener(ring);
+        Random r = new Random(1);
+        for (int e = 0; e < n; e++)
+        {
+            engine.setStart(100 * r.nextDouble(), 100 * r.nextDouble(), -90 + 360 * r.nextDouble());
+            engine.reset();
+            while (engine.getIteration() < 2000 && engine.step())
+                cursor.poll(stats);
+            cursor.poll(stats);
+        }
+        System.out.print(stats);
+        if (cursor.getLost() > 0)
+            System.out.println(cursor.getLost() + " records lost");
+    }
+}
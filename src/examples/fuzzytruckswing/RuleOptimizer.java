@@ -0,0 +1,337 @@
+package examples.fuzzytruckswing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Searches for rule conclusions that park the truck more often and faster,
+// with a genetic algorithm over the 7 x 5 docking matrix and, if asked,
+// the 5 x 5 obstacle matrix. Every cell holds one of the seven changePhi
+// terms or is killed.
+//
+// A candidate is scored by parking the truck from a fixed corpus of random
+// start states: the more episodes park the better, and of two candidates
+// parking as many the one with fewer iterations per parked episode wins.
+// The episodes run headless on a FuzzyKernel whose CompiledRules differ
+// from the starting ones only in their conclusions, so setting up a
+// candidate costs next to nothing. The candidates of a generation are
+// evaluated in parallel, one per worker at a time.
+//
+// Each generation keeps the ELITE best candidates and fills up with
+// children of two parents picked by tournament, mixed cell by cell and
+// then mutated: a cell moves to the next term up or down, or now and then
+// to any term or killed.
+
+public class RuleOptimizer
+{
+    public static final int ELITE = 2;
+    public static final int TOURNAMENT = 3;
+
+    // cell values, the terms from NB to PB and then killed
+    static final String ALLELES[] = new String[TruckRules.changePhiTerms.length + 1];
+
+    static
+    {
+        System.arraycopy(TruckRules.changePhiTerms, 0, ALLELES, 0, TruckRules.changePhiTerms.length);
+        ALLELES[ALLELES.length - 1] = " ";
+    }
+
+    final CompiledRules base;
+    final ForkJoinPool pool;
+    ObstacleLayout obstacles = ObstacleLayout.EMPTY;
+    int worldWidth = TruckGeometry.WORLD_WIDTH, worldHeight = TruckGeometry.WORLD_HEIGHT;
+    double speed = 1;
+    int maxIterations = 300;
+    int populationSize = 48;
+    // chance of a cell to mutate in a child
+    double mutationRate = 1.0 / 35;
+    boolean optimizeObstacleRules;
+    double startX[], startY[], startPhi[];
+    final Random random;
+    volatile boolean cancelled;
+    long evaluations;
+
+    // what a caller is told after every generation
+    public interface Progress
+    {
+        void generationDone(int generation, Candidate best);
+    }
+
+    // start from the conclusions of rules
+    public RuleOptimizer(TruckRules rules, long seed)
+    {
+        this(CompiledRules.compile(rules), seed, ForkJoinPool.commonPool());
+    }
+
+    public RuleOptimizer(CompiledRules base, long seed, ForkJoinPool pool)
+    {
+        this.base = base;
+        this.pool = pool;
+        random = new Random(seed);
+        setCorpus(64, seed);
+    }
+
+    public void setObstacles(List<int[]> list, int width, int height)
+    {
+        obstacles = new ObstacleLayout(list);
+        worldWidth = width;
+        worldHeight = height;
+    }
+
+    public void setTruckSpeed(double s)
+    {
+        speed = s;
+    }
+
+    public void setMaxIterations(int n)
+    {
+        maxIterations = n;
+    }
+
+    public void setPopulationSize(int n)
+    {
+        populationSize = Math.max(ELITE + 1, n);
+    }
+
+    public void setOptimizeObstacleRules(boolean b)
+    {
+        optimizeObstacleRules = b;
+    }
+
+    // the start states every candidate is scored on: n drawn uniformly
+    // from the canvas and the angles the applet allows
+    public void setCorpus(int n, long seed)
+    {
+        Random r = new Random(seed);
+        startX = new double[n];
+        startY = new double[n];
+        startPhi = new double[n];
+        for (int k = 0; k < n; k++)
+        {
+            startX[k] = 100 * r.nextDouble();
+            startY[k] = 100 * r.nextDouble();
+            startPhi[k] = -90 + 360 * r.nextDouble();
+        }
+    }
+
+    public int getCorpusSize()
+    {
+        return startX.length;
+    }
+
+    // candidates scored so far
+    public long getEvaluations()
+    {
+        return evaluations;
+    }
+
+    // stop after the generation being evaluated
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    // run for the given number of generations, or until cancelled, and
+    // return the best candidate found
+    public Candidate run(int generations, Progress progress)
+    {
+        Candidate population[] = new Candidate[populationSize];
+        population[0] = new Candidate(base.getRuleBase());
+        for (int k = 1; k < populationSize; k++)
+            population[k] = new Candidate(mutate(base.getRuleBase(), 4 * mutationRate));
+        evaluate(population);
+        Arrays.sort(population);
+        if (progress != null)
+            progress.generationDone(0, population[0]);
+
+        for (int g = 1; g <= generations && !cancelled; g++)
+        {
+            Candidate next[] = new Candidate[populationSize];
+            for (int k = 0; k < ELITE; k++)
+                next[k] = population[k];
+            for (int k = ELITE; k < populationSize; k++)
+                next[k] = new Candidate(mutate(crossover(select(population), select(population)), mutationRate));
+            evaluate(next);
+            Arrays.sort(next);
+            population = next;
+            if (progress != null)
+                progress.generationDone(g, population[0]);
+        }
+        return population[0];
+    }
+
+    // the best of TOURNAMENT candidates picked at random; the population
+    // is sorted, so that is the one with the lowest index
+    Candidate select(Candidate population[])
+    {
+        int best = random.nextInt(population.length);
+        for (int k = 1; k < TOURNAMENT; k++)
+            best = Math.min(best, random.nextInt(population.length));
+        return population[best];
+    }
+
+    RuleBase crossover(Candidate a, Candidate b)
+    {
+        RuleBase child = a.rules;
+        for (int length : lengths())
+            for (int i = 0; i < child.getRows(length); i++)
+                for (int j = 0; j < TruckRules.COLUMNS; j++)
+                    if (random.nextBoolean() && !a.rules.sameConclusion(b.rules, length, i, j))
+                        child = child.with(length, i, j, b.rules.getConclusion(length, i, j));
+        return child;
+    }
+
+    RuleBase mutate(RuleBase rules, double rate)
+    {
+        for (int length : lengths())
+            for (int i = 0; i < rules.getRows(length); i++)
+                for (int j = 0; j < TruckRules.COLUMNS; j++)
+                {
+                    if (random.nextDouble() >= rate)
+                        continue;
+                    int a = Arrays.asList(ALLELES).indexOf(rules.getConclusion(length, i, j));
+                    // killed cells, and every fourth mutation, jump anywhere
+                    if (a < 0 || a == ALLELES.length - 1 || random.nextInt(4) == 0)
+                        a = random.nextInt(ALLELES.length);
+                    else
+                        a = Math.max(0, Math.min(ALLELES.length - 2, a + (random.nextBoolean() ? 1 : -1)));
+                    rules = rules.with(length, i, j, ALLELES[a]);
+                }
+        return rules;
+    }
+
+    int[] lengths()
+    {
+        return optimizeObstacleRules ? new int[]{FuzzyController.DOCKING, FuzzyController.OBSTACLE}
+                : new int[]{FuzzyController.DOCKING};
+    }
+
+    void evaluate(Candidate candidates[])
+    {
+        List<Candidate> todo = new ArrayList<>();
+        for (Candidate c : candidates)
+            if (!c.evaluated)
+                todo.add(c);
+        pool.invoke(new Evaluations(todo, 0, todo.size()));
+        evaluations += todo.size();
+    }
+
+    // score a candidate on the corpus
+    void evaluate(Candidate c)
+    {
+        TruckEngine engine = new TruckEngine(new FuzzyKernel(base.withRuleBase(c.rules)));
+        engine.setObstacles(obstacles);
+        engine.setWorldSize(worldWidth, worldHeight);
+        engine.setTruckSpeed(speed);
+        for (int k = 0; k < startX.length; k++)
+        {
+            engine.setStart(startX[k], startY[k], startPhi[k]);
+            engine.reset();
+            int n = engine.runToCompletion(maxIterations);
+            if (engine.isFinished())
+            {
+                c.parked++;
+                c.parkedIterations += n;
+            }
+        }
+        c.episodes = startX.length;
+        c.evaluated = true;
+    }
+
+    // candidates lo to hi - 1, split in halves down to one each
+    class Evaluations extends RecursiveAction
+    {
+        final List<Candidate> candidates;
+        final int lo, hi;
+
+        Evaluations(List<Candidate> candidates, int lo, int hi)
+        {
+            this.candidates = candidates;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected void compute()
+        {
+            if (hi - lo > 1)
+            {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Evaluations(candidates, lo, mid), new Evaluations(candidates, mid, hi));
+                return;
+            }
+            if (hi > lo)
+                evaluate(candidates.get(lo));
+        }
+    }
+
+    // A rule base and its score; sorts best first.
+    public static class Candidate implements Comparable<Candidate>
+    {
+        public final RuleBase rules;
+        int episodes, parked;
+        long parkedIterations;
+        boolean evaluated;
+
+        Candidate(RuleBase rules)
+        {
+            this.rules = rules;
+        }
+
+        public double getSuccessRate()
+        {
+            return episodes == 0 ? 0 : parked / (double) episodes;
+        }
+
+        // iterations per parked episode, NaN if none parked
+        public double getMeanIterations()
+        {
+            return parked == 0 ? Double.NaN : parkedIterations / (double) parked;
+        }
+
+        public int compareTo(Candidate o)
+        {
+            if (parked != o.parked)
+                return o.parked - parked;
+            // parkedIterations / parked against o's, without dividing
+            return Long.compare(parkedIterations * o.parked, o.parkedIterations * parked);
+        }
+
+        public String toString()
+        {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("parks %d of %d, %.1f iterations each%n", parked, episodes, getMeanIterations()));
+            for (int length : new int[]{FuzzyController.DOCKING, FuzzyController.OBSTACLE})
+            {
+                sb.append(length == FuzzyController.DOCKING ? "docking rules\n" : "obstacle rules\n");
+                for (String row[] : rules.getConclusions(length))
+                {
+                    for (String s : row)
+                        sb.append(String.format(" %-2s", s.equals(" ") ? "--" : s));
+                    sb.append('\n');
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    // java examples.fuzzytruckswing.RuleOptimizer [generations [population]]
+    // optimizes the default docking rules, 100 generations of 64 unless
+    // given, and prints the progress and the best rules found
+    public static void main(String args[])
+    {
+        int generations = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        RuleOptimizer optimizer = new RuleOptimizer(new TruckRules(), 1);
+        optimizer.setPopulationSize(args.length > 1 ? Integer.parseInt(args[1]) : 64);
+        final long start = System.nanoTime();
+        Candidate best = optimizer.run(generations, (g, c) ->
+                System.out.printf("generation %d: parks %d of %d, %.1f iterations each%n",
+                        g, c.parked, c.episodes, c.getMeanIterations()));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d candidates in %.1f s on %d worker(s), %.0f per second%n", optimizer.getEvaluations(),
+                seconds, optimizer.pool.getParallelism(), optimizer.getEvaluations() / seconds);
+        System.out.print(best);
+    }
+}
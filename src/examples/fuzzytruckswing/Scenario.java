@@ -0,0 +1,237 @@
+package examples.fuzzytruckswing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// One episode to run, as a line of text: the start pose, the truck speed,
+// the iteration cap, the world size, the conclusions of both rule bases
+// and the obstacles. The fields are separated by blanks:
+//
+//     name x y phi speed cap width height docking obstacle obstacles
+//
+// for example
+//
+//     s17 42.5 61 135 1 1000 400 400 default 66444/... 12,40,30,6;200,97,45,8
+//
+// A rule base is "default" for its default conclusions, or its rows
+// separated by '/', each a character per rule: the index of the changePhi
+// term it concludes, 0 for NB to 6 for PB, or '.' for a killed rule. The
+// obstacles are {x, y, width, height} in world units, separated by ';',
+// or '-' for none. The name holds no blanks. Lines that are blank or
+// start with '#' hold no scenario; parse() returns null for them.
+//
+// A scenario is never written to once made, so many threads may run it.
+
+public class Scenario
+{
+    public static final String DEFAULT = "default";
+
+    final String name;
+    final double startX, startY, startPhi, speed;
+    final int maxIterations, worldWidth, worldHeight;
+    // the rule bases as they are written, to tell cheaply whether two
+    // scenarios have the same rules
+    final String docking, obstacle;
+    final ObstacleLayout obstacles;
+
+    public Scenario(String name, double x, double y, double phi, double speed, int maxIterations, int width,
+                    int height, RuleBase rules, List<int[]> obstacles)
+    {
+        this(name, x, y, phi, speed, maxIterations, width, height, format(rules, FuzzyController.DOCKING),
+                format(rules, FuzzyController.OBSTACLE), obstacles);
+    }
+
+    private Scenario(String name, double x, double y, double phi, double speed, int maxIterations, int width,
+                     int height, String docking, String obstacle, List<int[]> obstacles)
+    {
+        if (name.isEmpty() || name.startsWith("#") || name.matches(".*\\s.*"))
+            throw new IllegalArgumentException("Not a scenario name: \"" + name + "\"");
+        this.name = name;
+        startX = x;
+        startY = y;
+        startPhi = phi;
+        this.speed = speed;
+        this.maxIterations = maxIterations;
+        worldWidth = width;
+        worldHeight = height;
+        this.docking = docking;
+        this.obstacle = obstacle;
+        this.obstacles = new ObstacleLayout(obstacles);
+    }
+
+    // the scenario on a line, null for a blank line or a comment
+    public static Scenario parse(String line)
+    {
+        String s = line.trim();
+        if (s.isEmpty() || s.startsWith("#"))
+            return null;
+        String f[] = s.split("\\s+");
+        if (f.length != 11)
+            throw new IllegalArgumentException("A scenario has 11 fields, not " + f.length + ": " + line);
+        List<int[]> obstacles = new ArrayList<>();
+        if (!f[10].equals("-"))
+            for (String o : f[10].split(";"))
+            {
+                String v[] = o.split(",");
+                if (v.length != 4)
+                    throw new IllegalArgumentException("Not an obstacle: " + o);
+                obstacles.add(new int[]{Integer.parseInt(v[0]), Integer.parseInt(v[1]), Integer.parseInt(v[2]),
+                        Integer.parseInt(v[3])});
+            }
+        // rejects bad conclusions here rather than when the scenario runs
+        conclusions(f[8], FuzzyController.DOCKING);
+        conclusions(f[9], FuzzyController.OBSTACLE);
+        return new Scenario(f[0], Double.parseDouble(f[1]), Double.parseDouble(f[2]), Double.parseDouble(f[3]),
+                Double.parseDouble(f[4]), Integer.parseInt(f[5]), Integer.parseInt(f[6]), Integer.parseInt(f[7]),
+                f[8], f[9], obstacles);
+    }
+
+    // the scenario as a line parse() reads back, without the line end
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(name);
+        sb.append(' ').append(startX).append(' ').append(startY).append(' ').append(startPhi).append(' ')
+                .append(speed).append(' ').append(maxIterations).append(' ').append(worldWidth).append(' ')
+                .append(worldHeight).append(' ').append(docking).append(' ').append(obstacle).append(' ');
+        if (obstacles.isEmpty())
+            sb.append('-');
+        for (int k = 0; k < obstacles.size(); k++)
+        {
+            int o[] = obstacles.get(k);
+            sb.append(k == 0 ? "" : ";").append(o[0]).append(',').append(o[1]).append(',').append(o[2])
+                    .append(',').append(o[3]);
+        }
+        return sb.toString();
+    }
+
+    // the conclusions of a rule base as a scenario holds them
+    static String format(RuleBase rules, int length)
+    {
+        String c[][] = rules.getConclusions(length);
+        String d[][] = length == FuzzyController.DOCKING ? TruckRules.DefaultConclusions
+                : TruckRules.DefaultObsConclusions;
+        if (Arrays.deepEquals(c, d))
+            return DEFAULT;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < c.length; i++)
+        {
+            if (i > 0)
+                sb.append('/');
+            for (String s : c[i])
+            {
+                int t = CompiledRules.termIndex(s);
+                sb.append(t < 0 ? '.' : (char) ('0' + t));
+            }
+        }
+        return sb.toString();
+    }
+
+    // the conclusions a scenario holds for a rule base
+    static String[][] conclusions(String s, int length)
+    {
+        String d[][] = length == FuzzyController.DOCKING ? TruckRules.DefaultConclusions
+                : TruckRules.DefaultObsConclusions;
+        if (s.equals(DEFAULT))
+            return d;
+        String rows[] = s.split("/");
+        if (rows.length != d.length)
+            throw new IllegalArgumentException("Not " + d.length + " rows of conclusions: " + s);
+        String c[][] = new String[d.length][d[0].length];
+        for (int i = 0; i < d.length; i++)
+        {
+            if (rows[i].length() != d[0].length)
+                throw new IllegalArgumentException("Not " + d[0].length + " conclusions in a row: " + s);
+            for (int j = 0; j < d[0].length; j++)
+            {
+                char ch = rows[i].charAt(j);
+                if (ch == '.')
+                    c[i][j] = " ";
+                else if (ch >= '0' && ch < '0' + TruckRules.changePhiTerms.length)
+                    c[i][j] = TruckRules.changePhiTerms[ch - '0'];
+                else
+                    throw new IllegalArgumentException("Not a conclusion: '" + ch + "' in " + s);
+            }
+        }
+        return c;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public double getStartX()
+    {
+        return startX;
+    }
+
+    public double getStartY()
+    {
+        return startY;
+    }
+
+    public double getStartPhi()
+    {
+        return startPhi;
+    }
+
+    public double getSpeed()
+    {
+        return speed;
+    }
+
+    public int getMaxIterations()
+    {
+        return maxIterations;
+    }
+
+    public int getWorldWidth()
+    {
+        return worldWidth;
+    }
+
+    public int getWorldHeight()
+    {
+        return worldHeight;
+    }
+
+    // the rule conclusions, a new RuleBase every call
+    public RuleBase getRules()
+    {
+        return new RuleBase(conclusions(docking, FuzzyController.DOCKING),
+                conclusions(obstacle, FuzzyController.OBSTACLE));
+    }
+
+    // true if both scenarios have the same rule conclusions
+    public boolean sameRules(Scenario other)
+    {
+        return docking.equals(other.docking) && obstacle.equals(other.obstacle);
+    }
+
+    // true if both scenarios have the same obstacles in the same order
+    public boolean sameObstacles(Scenario other)
+    {
+        if (obstacles.size() != other.obstacles.size())
+            return false;
+        for (int k = 0; k < obstacles.size(); k++)
+            if (!Arrays.equals(obstacles.get(k), other.obstacles.get(k)))
+                return false;
+        return true;
+    }
+
+    public ObstacleLayout getObstacles()
+    {
+        return obstacles;
+    }
+
+    // set engine up for the scenario, but for its rules, and reset it
+    public void apply(TruckEngine engine)
+    {
+        engine.setObstacles(obstacles);
+        engine.setWorldSize(worldWidth, worldHeight);
+        engine.setTruckSpeed(speed);
+        engine.setStart(startX, startY, startPhi);
+        engine.reset();
+    }
+}
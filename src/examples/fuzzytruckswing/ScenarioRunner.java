@@ -0,0 +1,236 @@
+package examples.fuzzytruckswing;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+// Runs every Scenario of a file and writes one result line per scenario,
+// in the order of the file:
+//
+//     name,outcome,iterations,x,y,phi
+//
+// the outcome being parked, left or timed_out, and x, y and phi the pose
+// the truck stopped at. The scenarios are read a chunk of CHUNK lines at a
+// time, each chunk parsed and run by a worker of a ForkJoinPool, and no
+// more than two chunks per worker are read ahead of the results written,
+// so a file of any length runs in the same memory. The results of a chunk
+// are written as soon as it and all the chunks before it are done.
+//
+// A worker compiles the rules of a scenario once for a run of scenarios
+// with the same rules, from the FuzzyJ sets compiled once per runner. It
+// likewise keeps one ObstacleLayout for a run of scenarios with the same
+// obstacles, so their DistanceField is built, and with path planning on
+// their plans are made, once for the run.
+
+public class ScenarioRunner
+{
+    static final int CHUNK = 256;
+    public static final String HEADER = "name,outcome,iterations,x,y,phi";
+    static final String OUTCOMES[] = {null, "parked", "left", "timed_out"};
+
+    final CompiledRules base;
+    final ForkJoinPool pool;
+    int chunk = CHUNK;
+    boolean pathPlanning = false;
+
+    public ScenarioRunner(CompiledRules base, ForkJoinPool pool)
+    {
+        this.base = base;
+        this.pool = pool;
+    }
+
+    public ScenarioRunner(CompiledRules base)
+    {
+        this(base, ForkJoinPool.commonPool());
+    }
+
+    // plan a way round the obstacles for every scenario, see
+    // TruckEngine.setPathPlanning
+    public void setPathPlanning(boolean b)
+    {
+        pathPlanning = b;
+    }
+
+    // run every scenario in, writing the header and a result line per
+    // scenario to out, which is flushed but not closed. A line that is
+    // not a scenario stops the run with an IllegalArgumentException that
+    // gives its line number, after the results of the lines before it.
+    public Summary run(Reader in, Writer out) throws IOException
+    {
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        Summary summary = new Summary();
+        long start = System.nanoTime();
+        out.write(HEADER);
+        out.write('\n');
+        ArrayDeque<ForkJoinTask<Chunk>> running = new ArrayDeque<>();
+        int ahead = 2 * pool.getParallelism();
+        long line = 1;
+        while (true)
+        {
+            String lines[] = new String[chunk];
+            int n = 0;
+            for (String s; n < chunk && (s = reader.readLine()) != null; )
+                lines[n++] = s;
+            if (n > 0)
+                running.add(pool.submit(new Chunk(lines, n, line)));
+            line += n;
+            while (!running.isEmpty() && (running.size() >= ahead || n < chunk))
+                running.poll().join().writeTo(out, summary);
+            if (n < chunk)
+                break;
+        }
+        out.flush();
+        summary.nanos = System.nanoTime() - start;
+        return summary;
+    }
+
+    // The scenarios on some lines of the file, parsed and run by one
+    // worker; their results as text, and how they ended.
+    class Chunk extends RecursiveTask<Chunk>
+    {
+        final String lines[];
+        final int n;
+        final long firstLine;
+        final StringBuilder results = new StringBuilder();
+        final int outcomes[] = new int[OUTCOMES.length];
+        RuntimeException failure;
+
+        Chunk(String lines[], int n, long firstLine)
+        {
+            this.lines = lines;
+            this.n = n;
+            this.firstLine = firstLine;
+        }
+
+        protected Chunk compute()
+        {
+            TruckEngine engine = null;
+            Scenario last = null;
+            ObstacleLayout layout = null;
+            for (int k = 0; k < n; k++)
+            {
+                Scenario s;
+                try
+                {
+                    s = Scenario.parse(lines[k]);
+                }
+                catch (IllegalArgumentException e)
+                {
+                    // the results before it are still written
+                    failure = new IllegalArgumentException("Line " + (firstLine + k) + ": " + e.getMessage(), e);
+                    break;
+                }
+                if (s == null)
+                    continue;
+                if (last == null || !s.sameRules(last))
+                {
+                    FuzzyKernel kernel = new FuzzyKernel(base.withRuleBase(s.getRules()));
+                    if (engine == null)
+                    {
+                        engine = new TruckEngine(kernel);
+                        engine.setPathPlanning(pathPlanning);
+                    }
+                    else
+                        engine.setController(kernel);
+                }
+                if (last == null || !s.sameObstacles(last))
+                    layout = s.getObstacles();
+                last = s;
+                s.apply(engine);
+                engine.setObstacles(layout);
+                int iterations = engine.runToCompletion(s.getMaxIterations());
+                int outcome = engine.isFinished() ? StartStateSweep.PARKED
+                        : engine.isDisabled() ? StartStateSweep.LEFT_CANVAS : StartStateSweep.TIMED_OUT;
+                outcomes[outcome]++;
+                results.append(s.getName()).append(',').append(OUTCOMES[outcome]).append(',').append(iterations)
+                        .append(',').append(engine.getXt()).append(',').append(engine.getYt()).append(',')
+                        .append(engine.getPhit()).append('\n');
+            }
+            return this;
+        }
+
+        void writeTo(Writer out, Summary summary) throws IOException
+        {
+            out.append(results);
+            for (int k = 0; k < outcomes.length; k++)
+            {
+                summary.outcomes[k] += outcomes[k];
+                summary.scenarios += outcomes[k];
+            }
+            if (failure != null)
+            {
+                out.flush();
+                throw failure;
+            }
+        }
+    }
+
+    // how many scenarios ended each way, and how long they took
+    public static class Summary
+    {
+        final long outcomes[] = new long[OUTCOMES.length];
+        long scenarios, nanos;
+
+        public long getScenarios()
+        {
+            return scenarios;
+        }
+
+        // StartStateSweep.PARKED, LEFT_CANVAS or TIMED_OUT
+        public long count(byte how)
+        {
+            return outcomes[how];
+        }
+
+        public double getSeconds()
+        {
+            return nanos / 1e9;
+        }
+
+        public String toString()
+        {
+            return scenarios + " scenarios in " + String.format("%.3f", getSeconds()) + " s: "
+                    + outcomes[StartStateSweep.PARKED] + " parked, " + outcomes[StartStateSweep.LEFT_CANVAS]
+                    + " left the canvas, " + outcomes[StartStateSweep.TIMED_OUT] + " hit their iteration cap";
+        }
+    }
+
+    // java examples.fuzzytruckswing.ScenarioRunner [-plan] scenarios [results [workers]]
+    // runs a scenario file, - for standard input, with the default FuzzyJ
+    // sets, writing the results to a file or standard output and the
+    // summary to standard error. -plan turns path planning on.
+    public static void main(String args[]) throws IOException
+    {
+        boolean plan = args.length > 0 && args[0].equals("-plan");
+        if (plan)
+            args = Arrays.copyOfRange(args, 1, args.length);
+        if (args.length < 1)
+        {
+            System.err.println("usage: ScenarioRunner [-plan] scenarios [results [workers]]");
+            System.exit(2);
+        }
+        ForkJoinPool pool = args.length > 2 ? new ForkJoinPool(Integer.parseInt(args[2]))
+                : ForkJoinPool.commonPool();
+        ScenarioRunner runner = new ScenarioRunner(CompiledRules.compile(new TruckRules()), pool);
+        runner.setPathPlanning(plan);
+        try (Reader in = new InputStreamReader(args[0].equals("-") ? System.in : new FileInputStream(args[0]),
+                StandardCharsets.UTF_8);
+             Writer out = new BufferedWriter(new OutputStreamWriter(args.length > 1 && !args[1].equals("-")
+                     ? new FileOutputStream(args[1]) : System.out, StandardCharsets.UTF_8), 1 << 16))
+        {
+            System.err.println(runner.run(in, out));
+        }
+    }
+}
@@ -0,0 +1,1298 @@
+package examples.fuzzytruckswing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// Checks that the fast paths agree with the reference implementations
+// they replace. Run it after changing any of them:
+//
+//     java examples.fuzzytruckswing.SelfCheck
+
+public class SelfCheck
+{
+    static int failures = 0;
+
+    public static void main(String args[])
+    {
+        checkEngine();
+        checkKernel();
+        checkIncrementalRules();
+        checkDefuzzifiers();
+        checkBatch();
+        checkSurface();
+        checkNarrowPhase();
+        checkBroadPhase();
+        checkRing();
+        checkTrajectory();
+        checkOptimizer();
+        checkLatencyHistogram();
+        checkSweptFootprint();
+        checkScenarios();
+        checkObstacleGenerator();
+        checkDistanceField();
+        checkPathPlanner();
+
+        System.out.println(failures == 0 ? "All checks passed" : failures + " check(s) failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    static void report(String name, boolean ok, String detail)
+    {
+        System.out.println((ok ? "ok     " : "FAILED ") + name + ": " + detail);
+        if (!ok)
+            failures++;
+    }
+
+    // TruckEngine, testing the look-ahead pose only, must drive the truck
+    // exactly as the applet's old run() loop did, step for step, and end
+    // each episode the same way by the old test(), over layouts of the
+    // applet's obstacles and starts all over the world. Both ask the same
+    // rules for their conclusions; the loop is what is checked. The
+    // engine tests the unrounded footprint where the old loop rounded it
+    // to whole units, so an episode in which the two find different
+    // obstacles may part ways from that step on; those are only counted.
+    static void checkEngine()
+    {
+        FuzzyController rules = new FuzzyKernel(new TruckRules());
+        TruckEngine engine = new TruckEngine(rules);
+        engine.setSweptCollision(false);
+        Random r = new Random(11);
+        int episodes = 0, wrong = 0, rounding = 0, parked = 0, collisions = 0;
+        for (int n : new int[]{0, 4, 12})
+        {
+            for (int layout = 0; layout < 4; layout++)
+            {
+                ObstacleGenerator generator = new ObstacleGenerator(r.nextLong());
+                generator.setCount(n);
+                List<int[]> list = generator.generate();
+                engine.setObstacles(list);
+                for (int q = 0; q < 25; q++)
+                {
+                    double x = 5 + 90 * r.nextDouble(), y = 20 + 75 * r.nextDouble(), phi = -90 + 360 * r.nextDouble();
+                    double speed = 1 + r.nextInt(3);
+                    List<double[]> expected = new ArrayList<>();
+                    int outcome[] = oldRun(rules, list, x, y, phi, speed, 1000, expected);
+                    engine.setStart(x, y, phi);
+                    engine.setTruckSpeed(speed);
+                    engine.reset();
+                    boolean same = true;
+                    for (double p[] : expected)
+                    {
+                        engine.step();
+                        if (engine.getXt() != p[0] || engine.getYt() != p[1] || engine.getPhit() != p[2])
+                        {
+                            same = false;
+                            break;
+                        }
+                    }
+                    same = same && engine.isFinished() == (outcome[0] == 1) && engine.isDisabled() == (outcome[0] == 2)
+                            && engine.getIteration() == expected.size();
+                    episodes++;
+                    if (!same && outcome[2] != 0)
+                        rounding++;
+                    else if (!same)
+                        wrong++;
+                    if (outcome[0] == 1)
+                        parked++;
+                    collisions += outcome[1];
+                }
+            }
+        }
+        report("engine vs old run loop", wrong == 0, wrong + " of " + episodes + " episodes differ, and "
+                + rounding + " that found an obstacle only rounded or only unrounded, " + parked
+                + " parked, " + collisions + " steps steered round an obstacle");
+    }
+
+    // The old run() loop and test(), but for the drawing and the messages:
+    // every pose into poses, and the outcome as {1 parked, 2 left the
+    // world or 0, steps steered by the obstacle rules, 1 if the rounded
+    // and the unrounded footprint ever found different obstacles}
+    static int[] oldRun(FuzzyController rules, List<int[]> list, double X, double Y, double Phi, double Speed,
+                        int maxIterations, List<double[]> poses)
+    {
+        double Xt = X, Yt = Y, Phit = Phi;
+        boolean isObs = false;
+        int outcome[] = new int[3];
+        double footprint[] = new double[8];
+        while (poses.size() < maxIterations)
+        {
+            double changePhiValue = rules.getConclusion(FuzzyController.DOCKING, Xt, Phit, null);
+            double angleInRadians = (Phit + changePhiValue) * TruckEngine.PIBY180;
+            double x = Speed * Math.cos(angleInRadians);
+            double y = Speed * Math.sin(angleInRadians);
+            double xb = 0;
+            double yb = 0;
+            int[][] coords = TruckGeometry.computeCoords(Xt + 4 * x, Yt - 4 * y, Phit, 400, 400);
+            TruckGeometry.footprint(4 * (Xt + 4 * x), 4 * (Yt - 4 * y), Phit * TruckEngine.PIBY180, footprint);
+            boolean flag = false;
+            for (int k = 0; k < list.size(); k++)
+            {
+                int xa = list.get(k)[0];
+                int ya = list.get(k)[1];
+                int width = list.get(k)[2];
+                int height = list.get(k)[3];
+                int[][] obs = {{xa, ya}, {xa + width, ya}, {xa + width, ya + height}, {xa, ya + height}};
+                boolean hit = TruckGeometry.SAT(coords, obs);
+                if (!isObs && hit != TruckGeometry.quadOverlapsBox(footprint, xa, ya, xa + width, ya + height))
+                    outcome[2] = 1;
+                if (isObs || hit)
+                {
+                    changePhiValue = rules.getConclusion(FuzzyController.OBSTACLE,
+                            ((Xt + 2) - (xa / 4.0)) / (width / 4.0), Phit, null);
+                    angleInRadians = (Phit + changePhiValue) * TruckEngine.PIBY180;
+                    xb = Speed * Math.cos(angleInRadians);
+                    yb = Speed * Math.sin(angleInRadians);
+                    isObs = !isObs;
+                    flag = true;
+                    outcome[1]++;
+                    break;
+                }
+            }
+            if (!flag)
+            {
+                Phit += changePhiValue;
+                Xt += x;
+                Yt -= y;
+                isObs = false;
+            }
+            else
+            {
+                Phit += changePhiValue;
+                if (isObs)
+                {
+                    Xt -= 2 * x;
+                    Yt += 2 * y;
+                }
+                Xt += xb;
+                Yt -= yb;
+            }
+            poses.add(new double[]{Xt, Yt, Phit});
+
+            if ((Yt <= 0.3) && (Math.abs(50.0 - Xt) <= 1.0) && (Math.abs(Phit - 90.0) <= 5.0))
+            {
+                outcome[0] = 1;
+                break;
+            }
+            if ((Yt < 0) || (Xt < 0) || (Xt > 100) || ((Yt > 100) && (Math.abs(Xt - 50) > 1)))
+            {
+                outcome[0] = 2;
+                break;
+            }
+        }
+        return outcome;
+    }
+
+    // FuzzyKernel must give the FuzzyJ result to within 1e-9, for the
+    // default rules and for random rule matrices with killed rules, with
+    // every rule executor and antecedent combine operator
+    static void checkKernel()
+    {
+        Random r = new Random(1);
+        String terms[] = TruckRules.changePhiTerms;
+        for (int trial = 0; trial < 5; trial++)
+        {
+            TruckRules rules = new TruckRules();
+            if (trial > 0)
+                for (int i = 0; i < TruckRules.ROWS; i++)
+                    for (int j = 0; j < TruckRules.COLUMNS; j++)
+                        rules.setConclusionExpression(r.nextInt(8) == 0 ? " " : terms[r.nextInt(terms.length)], i, j);
+            // the trials go through the rule executors and combine operators
+            int executor = trial / 2 % 2, combine = trial % 2;
+            for (int length : new int[]{FuzzyController.DOCKING, FuzzyController.OBSTACLE})
+                rules.setInference(length, executor, combine);
+            rules.updateRules();
+            FuzzyKernel kernel = new FuzzyKernel(rules);
+
+            for (int length : new int[]{FuzzyController.DOCKING, FuzzyController.OBSTACLE})
+            {
+                double xMin = rules.getMinXpos(length), xMax = rules.getMaxXpos(length);
+                double phiMin = rules.getMinPhi(length), phiMax = rules.getMaxPhi(length);
+                double maxDiff = 0;
+                for (int n = 0; n < 20000; n++)
+                {
+                    double x = xMin + (xMax - xMin) * r.nextDouble();
+                    double phi = phiMin + (phiMax - phiMin) * r.nextDouble();
+                    // also hit the break points of the sets exactly
+                    if (n % 10 == 0)
+                        x = Math.min(xMax, Math.round(x * 20) / 20.0);
+                    if (n % 7 == 0)
+                        phi = Math.min(phiMax, Math.round(phi / 5) * 5.0);
+                    double d = Math.abs(kernel.getConclusion(length, x, phi, null)
+                            - rules.getConclusion(length, x, phi, null));
+                    maxDiff = Math.max(maxDiff, d);
+                }
+                report("kernel vs FuzzyJ, rules " + trial + ", rule base " + length
+                        + (executor == FuzzyController.LARSEN ? ", Larsen" : ", Mamdani")
+                        + (combine == FuzzyController.PRODUCT ? ", product" : ", minimum"), maxDiff <= 1e-9,
+                        "max difference " + maxDiff);
+            }
+        }
+    }
+
+    // Rules brought up to date one edit at a time, by TruckRules and by
+    // FuzzyKernel, must give exactly what rules built from the final
+    // conclusions give
+    static void checkIncrementalRules()
+    {
+        Random r = new Random(5);
+        String terms[] = TruckRules.changePhiTerms;
+        TruckRules rules = new TruckRules();
+        FuzzyKernel kernel = new FuzzyKernel(rules);
+        int edits = 0, wrong = 0, n = 0;
+        for (int round = 0; round < 40; round++)
+        {
+            // a few edits between steps, some of them no change at all
+            for (int e = r.nextInt(4); e > 0; e--, edits++)
+                rules.setConclusionExpression(r.nextInt(8) == 0 ? " " : terms[r.nextInt(terms.length)],
+                        r.nextInt(TruckRules.ROWS), r.nextInt(TruckRules.COLUMNS));
+            if (round == 20)
+                rules.resetRules();
+            rules.updateRules();
+            kernel.updateRules();
+            TruckRules fresh = new TruckRules(rules.getRuleBase());
+            for (int k = 0; k < 200; k++, n++)
+            {
+                double x = 100 * r.nextDouble(), phi = -90 + 360 * r.nextDouble();
+                double expected = fresh.getConclusion(FuzzyController.DOCKING, x, phi, null);
+                if (rules.getConclusion(FuzzyController.DOCKING, x, phi, null) != expected
+                        || Math.abs(kernel.getConclusion(FuzzyController.DOCKING, x, phi, null) - expected) > 1e-9)
+                    wrong++;
+            }
+        }
+        boolean current = kernel.getCompiledRules().getRuleBase() == rules.getRuleBase();
+        report("incremental rule updates vs rebuilt rules", wrong == 0 && current,
+                edits + " edits, " + wrong + " of " + n + " conclusions differ");
+    }
+
+    // Each defuzzifier of the kernel must give what it is defined to on
+    // the union of the clipped output sets sampled at SAMPLES points, to
+    // within a few sample spacings; the firing strengths are worked out
+    // again from the sets
+    static final int SAMPLES = 20000;
+
+    static void checkDefuzzifiers()
+    {
+        Random r = new Random(17);
+        String terms[] = TruckRules.changePhiTerms;
+        for (int trial = 0; trial < 3; trial++)
+        {
+            TruckRules rules = new TruckRules();
+            if (trial > 0)
+                for (int i = 0; i < TruckRules.ROWS; i++)
+                    for (int j = 0; j < TruckRules.COLUMNS; j++)
+                        rules.setConclusionExpression(r.nextInt(8) == 0 ? " " : terms[r.nextInt(terms.length)], i, j);
+            CompiledRules compiled = CompiledRules.compile(rules);
+            FuzzyKernel kernel = new FuzzyKernel(compiled);
+            int stride = compiled.stride;
+            for (int defuzzifier = FuzzyController.CENTRE_OF_AREA; defuzzifier <= FuzzyController.SUGENO; defuzzifier++)
+            {
+                kernel.setDefuzzifier(defuzzifier);
+                double maxDiff = 0;
+                for (int length : new int[]{FuzzyController.DOCKING, FuzzyController.OBSTACLE})
+                {
+                    CompiledRules.Base b = length == FuzzyController.DOCKING ? compiled.docking : compiled.obstacle;
+                    double spacing = (b.outMax - b.outMin) / (SAMPLES - 1);
+                    for (int n = 0; n < 200; n++)
+                    {
+                        double x = b.xMin + (b.xMax - b.xMin) * r.nextDouble();
+                        double phi = b.phiMin + (b.phiMax - b.phiMin) * r.nextDouble();
+                        double height[] = new double[b.outN.length], strength[] = new double[b.outN.length];
+                        for (int i = 0; i < b.rows; i++)
+                            for (int j = 0; j < b.columns; j++)
+                            {
+                                int t = b.conclusion[i * b.columns + j];
+                                double h = Math.min(FuzzyKernel.membership(b.xposX, b.xposY, j * stride, b.xposN[j], x),
+                                        FuzzyKernel.membership(b.phiX, b.phiY, i * stride, b.phiN[i], phi));
+                                if (t < 0 || h <= 0)
+                                    continue;
+                                height[t] = Math.max(height[t], h);
+                                strength[t] += h;
+                            }
+                        double expected = sampled(b, stride, defuzzifier, height, strength);
+                        double d = Math.abs(kernel.getConclusion(length, x, phi, null) - expected) / spacing;
+                        maxDiff = Math.max(maxDiff, d);
+                    }
+                }
+                report("defuzzifier vs sampled union, " + FuzzyController.DEFUZZIFIER_NAMES[defuzzifier] + ", rules "
+                        + trial, maxDiff <= 3, "max difference " + maxDiff + " sample spacings");
+            }
+        }
+    }
+
+    // the value of output set t at v, kept up to the edges of the universe
+    // of discourse past its first and last point if it is above 0 there
+    static double outputSet(CompiledRules.Base b, int stride, int t, double v)
+    {
+        int off = t * stride, n = b.outN[t];
+        if ((v < b.outX[off] && b.outY[off] == 0) || (v > b.outX[off + n - 1] && b.outY[off + n - 1] == 0))
+            return 0;
+        return FuzzyKernel.membership(b.outX, b.outY, off, n, v);
+    }
+
+    static double sampled(CompiledRules.Base b, int stride, int defuzzifier, double height[], double strength[])
+    {
+        int terms = b.outN.length;
+        double spacing = (b.outMax - b.outMin) / (SAMPLES - 1);
+        if (defuzzifier == FuzzyController.WEIGHTED_AVERAGE || defuzzifier == FuzzyController.SUGENO)
+        {
+            double sum = 0, weighted = 0;
+            for (int t = 0; t < terms; t++)
+            {
+                // centroid, or the middle of the samples where the set is
+                // highest
+                double area = 0, moment = 0, top = 0, lo = Double.NaN, hi = 0;
+                for (int k = 0; k < SAMPLES; k++)
+                {
+                    double v = b.outMin + k * spacing, m = outputSet(b, stride, t, v);
+                    area += m;
+                    moment += m * v;
+                    top = Math.max(top, m);
+                }
+                for (int k = 0; k < SAMPLES; k++)
+                {
+                    double v = b.outMin + k * spacing;
+                    if (outputSet(b, stride, t, v) >= top * (1 - 1e-12))
+                    {
+                        lo = Double.isNaN(lo) ? v : lo;
+                        hi = v;
+                    }
+                }
+                double w = defuzzifier == FuzzyController.SUGENO ? strength[t] : Math.min(height[t], b.outPeak[t]);
+                sum += w;
+                weighted += w * (defuzzifier == FuzzyController.SUGENO ? 0.5 * (lo + hi) : moment / area);
+            }
+            return sum > 0 ? weighted / sum : 0;
+        }
+
+        double union[] = new double[SAMPLES];
+        double total = 0, top = 0;
+        for (int k = 0; k < SAMPLES; k++)
+        {
+            double v = b.outMin + k * spacing;
+            for (int t = 0; t < terms; t++)
+                union[k] = Math.max(union[k], Math.min(height[t], outputSet(b, stride, t, v)));
+            total += union[k];
+            top = Math.max(top, union[k]);
+        }
+        if (total <= 0)
+            return 0;
+        double sum = 0, count = 0;
+        if (defuzzifier == FuzzyController.MEAN_OF_MAXIMA)
+        {
+            for (int k = 0; k < SAMPLES; k++)
+                if (union[k] >= top * (1 - 1e-9))
+                {
+                    sum += b.outMin + k * spacing;
+                    count++;
+                }
+            return sum / count;
+        }
+        // the middle of the samples where the area up to them is half
+        double lo = Double.NaN, hi = 0, area = 0;
+        for (int k = 0; k < SAMPLES; k++)
+        {
+            area += union[k];
+            if (Math.abs(area - 0.5 * total) <= 1e-9 * total || (Double.isNaN(lo) && area > 0.5 * total))
+            {
+                lo = Double.isNaN(lo) ? b.outMin + k * spacing : lo;
+                hi = b.outMin + k * spacing;
+            }
+        }
+        return 0.5 * (lo + hi);
+    }
+
+    // BatchKernel must give what FuzzyKernel gives state by state, inside
+    // and outside the universe of discourse and for batches of any size
+    static void checkBatch()
+    {
+        Random r = new Random(7);
+        String terms[] = TruckRules.changePhiTerms;
+        for (int trial = 0; trial < 4; trial++)
+        {
+            TruckRules rules = new TruckRules();
+            if (trial > 0)
+                for (int i = 0; i < TruckRules.ROWS; i++)
+                    for (int j = 0; j < TruckRules.COLUMNS; j++)
+                        rules.setConclusionExpression(r.nextInt(8) == 0 ? " " : terms[r.nextInt(terms.length)], i, j);
+            int executor = trial / 2 % 2, combine = trial % 2;
+            for (int length : new int[]{FuzzyController.DOCKING, FuzzyController.OBSTACLE})
+                rules.setInference(length, executor, combine);
+            rules.updateRules();
+            CompiledRules compiled = CompiledRules.compile(rules);
+            FuzzyKernel kernel = new FuzzyKernel(compiled);
+            BatchKernel batch = new BatchKernel(compiled);
+            for (int defuzzifier = FuzzyController.MOMENT; defuzzifier <= FuzzyController.SUGENO; defuzzifier++)
+                for (int length : new int[]{FuzzyController.DOCKING, FuzzyController.OBSTACLE})
+                {
+                    kernel.setDefuzzifier(defuzzifier);
+                    batch.setDefuzzifier(defuzzifier);
+                    double xMin = rules.getMinXpos(length), xMax = rules.getMaxXpos(length);
+                    double phiMin = rules.getMinPhi(length), phiMax = rules.getMaxPhi(length);
+                    double maxDiff = 0;
+                    for (int n : new int[]{1, 7, 1000, 20000})
+                    {
+                        double xpos[] = new double[n], phi[] = new double[n], out[] = new double[n];
+                        for (int k = 0; k < n; k++)
+                        {
+                            // a little beyond the universe of discourse too
+                            xpos[k] = xMin - 0.05 * (xMax - xMin) + 1.1 * (xMax - xMin) * r.nextDouble();
+                            phi[k] = phiMin - 0.05 * (phiMax - phiMin) + 1.1 * (phiMax - phiMin) * r.nextDouble();
+                            if (k % 10 == 0)
+                                xpos[k] = Math.round(xpos[k] * 20) / 20.0;
+                            if (k % 7 == 0)
+                                phi[k] = Math.round(phi[k] / 5) * 5.0;
+                        }
+                        batch.getConclusions(length, xpos, phi, out, n);
+                        for (int k = 0; k < n; k++)
+                            maxDiff = Math.max(maxDiff,
+                                    Math.abs(out[k] - kernel.getConclusion(length, xpos[k], phi[k], null)));
+                    }
+                    // products of memberships round differently in the two,
+                    // and the bisector of a nearly flat stretch of the output
+                    // set moves far with its height
+                    double tolerance = combine == FuzzyController.PRODUCT
+                            && defuzzifier == FuzzyController.CENTRE_OF_AREA ? 1e-6 : 1e-9;
+                    report("batch vs kernel, " + FuzzyController.DEFUZZIFIER_NAMES[defuzzifier] + ", rules " + trial
+                            + ", rule base " + length + (executor == FuzzyController.LARSEN ? ", Larsen" : ", Mamdani")
+                            + (combine == FuzzyController.PRODUCT ? ", product" : ", minimum"), maxDiff <= tolerance,
+                            "max difference " + maxDiff);
+                }
+        }
+    }
+
+    // quadOverlapsBox must agree with SAT, on truck footprints placed at
+    // random, often at right angles to the box. Where the two only just
+    // touch SAT rounds its normalised projections either way, so there
+    // the exact answer (they overlap) is allowed to differ. Quads with
+    // two corners rounded onto each other, which SAT can not take, must
+    // get the answer of the unrounded test on the same corners.
+    // The control surfaces of the default resolution, once built, against
+    // FuzzyJ on both rule bases. Where the narrow sets of the obstacle
+    // rules meet, their conclusion jumps, and a surface spreads the jump
+    // over a cell, so it is the mean difference at random inputs and the
+    // share of them off by more than a degree that are limited, not the
+    // largest difference. The largest error a surface reports must be the
+    // one it has at the centres of its cells. Right after an edit, while
+    // the surfaces are of the rules before it, every answer must be
+    // FuzzyJ's own.
+    static void checkSurface()
+    {
+        Random r = new Random(37);
+        TruckRules rules = new TruckRules();
+        SurfaceController surface = new SurfaceController(rules);
+        long deadline = System.nanoTime() + 60000000000L;
+        while ((Double.isNaN(surface.getMaxError(FuzzyController.DOCKING))
+                || Double.isNaN(surface.getMaxError(FuzzyController.OBSTACLE))) && System.nanoTime() < deadline)
+            Thread.yield();
+        for (int length : new int[]{FuzzyController.DOCKING, FuzzyController.OBSTACLE})
+        {
+            double xMin = rules.getMinXpos(length), xMax = rules.getMaxXpos(length);
+            double phiMin = rules.getMinPhi(length), phiMax = rules.getMaxPhi(length);
+            double sum = 0;
+            int off = 0, inputs = 20000;
+            for (int n = 0; n < inputs; n++)
+            {
+                double x = xMin + (xMax - xMin) * r.nextDouble();
+                double phi = phiMin + (phiMax - phiMin) * r.nextDouble();
+                double d = Math.abs(surface.getConclusion(length, x, phi, null)
+                        - rules.getConclusion(length, x, phi, null));
+                sum += d;
+                off += d > 1 ? 1 : 0;
+            }
+            double reported = surface.getMaxError(length);
+            ControlSurface s = length == FuzzyController.DOCKING ? surface.docking : surface.obstacle;
+            double measured = s == null ? Double.NaN : s.measureMaxError(rules);
+            report("surface vs FuzzyJ, rule base " + length + ", " + surface.getResolution() + " x "
+                    + surface.getResolution(), sum / inputs <= .5 && off <= inputs / 20 && measured == reported,
+                    String.format("mean difference %.3f, %.1f%% off by over a degree, max error %.3f reported",
+                            sum / inputs, 100.0 * off / inputs, reported));
+        }
+
+        // an edit the surfaces are not built for yet; a surface still of
+        // the old rules after an answer was of them all through it
+        rules.setConclusionExpression("PB", 3, 2);
+        rules.updateRules();
+        int stale = 0, wrong = 0;
+        for (int n = 0; n < 20000; n++)
+        {
+            int length = n % 2 == 0 ? FuzzyController.DOCKING : FuzzyController.OBSTACLE;
+            double xMin = rules.getMinXpos(length), phiMin = rules.getMinPhi(length);
+            double x = xMin + (rules.getMaxXpos(length) - xMin) * r.nextDouble();
+            double phi = phiMin + (rules.getMaxPhi(length) - phiMin) * r.nextDouble();
+            double c = surface.getConclusion(length, x, phi, null);
+            ControlSurface s = length == FuzzyController.DOCKING ? surface.docking : surface.obstacle;
+            if (s.getVersion() == rules.getVersion())
+                continue;
+            stale++;
+            if (c != rules.getConclusion(length, x, phi, null))
+                wrong++;
+        }
+        report("surface while stale", stale > 0 && wrong == 0, stale + " answers while stale, " + wrong + " not exact");
+    }
+
+    static void checkNarrowPhase()
+    {
+        Random r = new Random(3);
+        int wrong = 0, touching = 0, hits = 0, n = 200000;
+        for (int q = 0; q < n; q++)
+        {
+            int xa = r.nextInt(100) + 150, ya = r.nextInt(100) + 150;
+            int width = r.nextInt(60) - (q % 50 == 0 ? 30 : 0), height = r.nextInt(20) - (q % 70 == 0 ? 10 : 0);
+            int[][] box = {{xa, ya}, {xa + width, ya}, {xa + width, ya + height}, {xa, ya + height}};
+            double angle = q % 3 == 0 ? 90 * r.nextInt(4) : 360 * r.nextDouble();
+            int[][] truck = TruckGeometry.computeCoords(30 + 40 * r.nextDouble(), 30 + 40 * r.nextDouble(), angle, 400, 400);
+            boolean expected = TruckGeometry.SAT(truck, box);
+            boolean got = TruckGeometry.quadOverlapsBox(truck, Math.min(xa, xa + width), Math.min(ya, ya + height),
+                    Math.max(xa, xa + width), Math.max(ya, ya + height));
+            if (expected != got)
+            {
+                if (got && touches(truck, box))
+                    touching++;
+                else
+                    wrong++;
+            }
+            if (expected)
+                hits++;
+        }
+        report("narrow phase vs SAT", wrong == 0, wrong + " of " + n + " tests differ, " + hits + " collide, "
+                + touching + " just touch");
+
+        wrong = 0;
+        hits = 0;
+        n = 20000;
+        for (int q = 0; q < n; q++)
+        {
+            int[][] quad = new int[4][2];
+            for (int i = 0; i < 4; i++)
+            {
+                quad[i][0] = 100 + r.nextInt(40);
+                quad[i][1] = 100 + r.nextInt(40);
+            }
+            // the first corner rounded onto the next, or all onto one
+            int i = r.nextInt(4);
+            for (int k = 1; k < (q % 10 == 0 ? 4 : 2); k++)
+                quad[(i + k) & 3] = quad[i].clone();
+            double c[] = new double[8];
+            for (int k = 0; k < 4; k++)
+            {
+                c[2 * k] = quad[k][0];
+                c[2 * k + 1] = quad[k][1];
+            }
+            int xa = 95 + r.nextInt(40), ya = 95 + r.nextInt(40);
+            int xb = xa + 1 + r.nextInt(20), yb = ya + 1 + r.nextInt(20);
+            boolean expected = TruckGeometry.quadOverlapsBox(c, xa, ya, xb, yb);
+            if (TruckGeometry.quadOverlapsBox(quad, xa, ya, xb, yb) != expected)
+                wrong++;
+            if (expected)
+                hits++;
+        }
+        // a triangle well inside the box
+        int[][] triangle = {{110, 110}, {110, 110}, {120, 110}, {110, 120}};
+        boolean inside = TruckGeometry.quadOverlapsBox(triangle, 100, 100, 130, 130);
+        report("narrow phase, corners rounded together", wrong == 0 && inside, wrong + " of " + n
+                + " tests differ from the unrounded test, " + hits + " collide, triangle inside the box "
+                + (inside ? "found" : "missed"));
+    }
+
+    // true if the projections of a and b onto some edge normal of a meet
+    // at a single point, in exact arithmetic
+    static boolean touches(int[][] a, int[][] b)
+    {
+        for (int i = 0; i < a.length; i++)
+        {
+            int j = (i + 1) % a.length;
+            long nx = a[j][1] - a[i][1], ny = a[i][0] - a[j][0];
+            long aMin = Long.MAX_VALUE, aMax = Long.MIN_VALUE, bMin = Long.MAX_VALUE, bMax = Long.MIN_VALUE;
+            for (int[] p : a)
+            {
+                aMin = Math.min(aMin, nx * p[0] + ny * p[1]);
+                aMax = Math.max(aMax, nx * p[0] + ny * p[1]);
+            }
+            for (int[] p : b)
+            {
+                bMin = Math.min(bMin, nx * p[0] + ny * p[1]);
+                bMax = Math.max(bMax, nx * p[0] + ny * p[1]);
+            }
+            if (aMax == bMin || bMax == aMin)
+                return true;
+        }
+        return false;
+    }
+
+    // ObstacleLayout must pick the same obstacle as running the narrow
+    // phase on every obstacle in order, for small and large random layouts,
+    // for the truck rounded to whole world units and for the unrounded
+    // footprint the engine tests
+    static void checkBroadPhase()
+    {
+        Random r = new Random(2);
+        double footprint[] = new double[8];
+        for (int n : new int[]{0, 1, 4, 50, 1000, 5000})
+        {
+            List<int[]> list = new ArrayList<>();
+            for (int k = 0; k < n; k++)
+                list.add(new int[]{r.nextInt(440) - 20, r.nextInt(440) - 20, r.nextInt(60) - 5, r.nextInt(20) - 2});
+            ObstacleLayout layout = new ObstacleLayout(list);
+            int wrong = 0, hits = 0, wrongExact = 0, rounding = 0;
+            for (int q = 0; q < 5000; q++)
+            {
+                double x = 110 * r.nextDouble() - 5, y = 110 * r.nextDouble() - 5, angle = 360 * r.nextDouble();
+                int[][] truck = TruckGeometry.computeCoords(x, y, angle, 400, 400);
+                TruckGeometry.footprint(4 * x, 4 * y, angle * Math.PI / 180, footprint);
+                int expected = -1, expectedExact = -1;
+                for (int k = 0; k < n; k++)
+                {
+                    int[] o = list.get(k);
+                    int minX = Math.min(o[0], o[0] + o[2]), minY = Math.min(o[1], o[1] + o[3]);
+                    int maxX = Math.max(o[0], o[0] + o[2]), maxY = Math.max(o[1], o[1] + o[3]);
+                    if (expected < 0 && TruckGeometry.quadOverlapsBox(truck, minX, minY, maxX, maxY))
+                        expected = k;
+                    if (expectedExact < 0 && TruckGeometry.quadOverlapsBox(footprint, minX, minY, maxX, maxY))
+                        expectedExact = k;
+                }
+                if (layout.firstCollision(truck) != expected)
+                    wrong++;
+                if (layout.firstCollision(footprint) != expectedExact)
+                    wrongExact++;
+                if (expected != expectedExact)
+                    rounding++;
+                if (expected >= 0)
+                    hits++;
+            }
+            report("broad phase vs linear scan, " + n + " obstacles", wrong == 0 && wrongExact == 0,
+                    wrong + " of 5000 queries differ rounded and " + wrongExact + " unrounded, " + hits
+                            + " collide, " + rounding + " only rounded or only unrounded");
+        }
+    }
+
+    // A reader of a small RuleFiringRing, polled while another thread
+    // writes, must see the records in order, each exactly once, with every
+    // gap counted as lost
+    static void checkRing()
+    {
+        final int n = 2000000;
+        final RuleFiringRing ring = new RuleFiringRing(256);
+        RuleFiringRing.Cursor cursor = ring.newCursor();
+        Thread writer = new Thread(() ->
+        {
+            // the strength carries the record number, floats hold it exactly
+            for (int k = 0; k < n; k++)
+                ring.ruleFired(FuzzyController.DOCKING, k % 7, k % 5, k);
+        });
+        final long seen[] = {0, -1, 0};  // records read, last number read, errors
+        RuleFiringRing.Handler check = new RuleFiringRing.Handler()
+        {
+            public void ruleFired(int length, int i, int j, double strength)
+            {
+                int k = (int) strength;
+                if (k <= seen[1] || i != k % 7 || j != k % 5 || length != FuzzyController.DOCKING)
+                    seen[2]++;
+                seen[0]++;
+                seen[1] = k;
+            }
+
+            public void stepEnded(int iteration, boolean finished, boolean disabled)
+            {
+                seen[2]++;
+            }
+        };
+        writer.start();
+        while (writer.isAlive())
+            cursor.poll(check);
+        cursor.poll(check);
+        cursor.close();
+        boolean ok = seen[2] == 0 && seen[1] == n - 1 && seen[0] + cursor.getLost() == n;
+        report("firing ring with a concurrent writer", ok, seen[0] + " records read, " + cursor.getLost()
+                + " lost, " + seen[2] + " out of order or damaged");
+    }
+
+    // A recorded episode must read back exactly as it was run, fired rules
+    // and the version of the rules included, across more than one chunk
+    // of the file
+    static void checkTrajectory()
+    {
+        TruckRules rules = new TruckRules();
+        rules.setConclusionExpression("PS", 3, 2);
+        TruckEngine engine = new TruckEngine(new FuzzyKernel(rules));
+        RuleFiringRing ring = new RuleFiringRing(1 << 10);
+        engine.setRuleFiringListener(ring);
+        engine.addListener(ring);
+        List<int[]> obstacles = new ArrayList<>();
+        obstacles.add(new int[]{150, 200, 60, 8});
+        engine.setObstacles(obstacles);
+        engine.setStart(30, 70, 40);
+        engine.reset();
+
+        // what the engine did, step by step
+        final List<double[]> poses = new ArrayList<>();
+        final List<Long> masks = new ArrayList<>();
+        final RuleFiringRing.Cursor cursor = ring.newCursor();
+        final TrajectoryRecorder.MaskCollector collector = new TrajectoryRecorder.MaskCollector();
+        engine.addListener(e ->
+        {
+            collector.mask = 0;
+            cursor.poll(collector);
+            poses.add(new double[]{e.getXt(), e.getYt(), e.getPhit(), e.getChangePhiValue(), e.getIteration()});
+            masks.add(collector.mask);
+        });
+        try
+        {
+            File f = File.createTempFile("selfcheck", ".ftr");
+            f.deleteOnExit();
+            TrajectoryRecorder recorder = new TrajectoryRecorder(f, engine, rules.getRuleBase(), ring);
+            engine.addListener(recorder);
+            int n = 0;
+            // episodes end early, so keep restarting to fill a chunk
+            while (recorder.getCount() * Trajectory.RECORD_SIZE < TrajectoryRecorder.CHUNK + 1000)
+            {
+                engine.setStart(10 + n % 80, 40 + n % 50, -60 + 37 * n % 300);
+                engine.reset();
+                engine.runToCompletion(500);
+                n++;
+            }
+            recorder.close();
+
+            Trajectory t = new Trajectory(f);
+            int wrong = 0;
+            for (int k = 0; k < t.size(); k++)
+            {
+                double p[] = poses.get(k);
+                if (t.getXt(k) != p[0] || t.getYt(k) != p[1] || t.getPhit(k) != p[2] || t.getChangePhiValue(k) != p[3]
+                        || t.getIteration(k) != (int) p[4] || t.getFiredRules(k) != masks.get(k))
+                    wrong++;
+            }
+            boolean sameRules = t.getRules().getVersion() == rules.getVersion()
+                    && t.getRules().getConclusion(FuzzyController.DOCKING, 3, 2).equals("PS");
+            report("trajectory round trip", wrong == 0 && t.size() == poses.size() && t.getObstacles().size() == 1
+                    && sameRules, t.size() + " records of " + n + " episodes, " + wrong + " differ, rules version "
+                    + t.getRules().getVersion() + " of " + rules.getVersion());
+        }
+        catch (IOException e)
+        {
+            report("trajectory round trip", false, e.toString());
+        }
+    }
+
+    // The optimizer scores candidates in parallel on conclusions patched
+    // into the starting CompiledRules; each score must be that of an
+    // engine over the candidate's rules compiled from scratch
+    static void checkOptimizer()
+    {
+        List<int[]> obstacles = new ArrayList<>();
+        obstacles.add(new int[]{150, 200, 60, 8});
+        obstacles.add(new int[]{60, 120, 40, 6});
+        ForkJoinPool pool = new ForkJoinPool(4);
+        RuleOptimizer optimizer = new RuleOptimizer(CompiledRules.compile(new TruckRules()), 3, pool);
+        optimizer.setObstacles(obstacles, 400, 400);
+        optimizer.setOptimizeObstacleRules(true);
+        optimizer.setMaxIterations(400);
+        optimizer.setCorpus(16, 3);
+        RuleOptimizer.Candidate candidates[] = new RuleOptimizer.Candidate[24];
+        for (int k = 0; k < candidates.length; k++)
+            candidates[k] = new RuleOptimizer.Candidate(optimizer.mutate(RuleBase.DEFAULT, k / 100.0));
+        optimizer.evaluate(candidates);
+        pool.shutdown();
+
+        int differ = 0;
+        for (RuleOptimizer.Candidate c : candidates)
+        {
+            TruckEngine engine = new TruckEngine(new FuzzyKernel(new TruckRules(c.rules)));
+            engine.setObstacles(obstacles);
+            engine.setWorldSize(400, 400);
+            int parked = 0;
+            long iterations = 0;
+            for (int k = 0; k < optimizer.getCorpusSize(); k++)
+            {
+                engine.setStart(optimizer.startX[k], optimizer.startY[k], optimizer.startPhi[k]);
+                engine.reset();
+                int n = engine.runToCompletion(400);
+                if (engine.isFinished())
+                {
+                    parked++;
+                    iterations += n;
+                }
+            }
+            if (parked != c.parked || iterations != c.parkedIterations)
+                differ++;
+        }
+        report("optimizer scores vs rules compiled from scratch", differ == 0,
+                differ + " of " + candidates.length + " candidates differ");
+    }
+
+    // The buckets of LatencyHistogram must tile the values without gaps,
+    // and a percentile read from it must be at or above the exact one by
+    // no more than a bucket, 1 / 32 of the value; the same for what was
+    // recorded since a copy
+    static void checkLatencyHistogram()
+    {
+        int bad = 0;
+        for (int k = 0; k < LatencyHistogram.BUCKETS; k++)
+            if (LatencyHistogram.index(LatencyHistogram.lowest(k)) != k
+                    || LatencyHistogram.index(LatencyHistogram.highest(k)) != k
+                    || (k > 0 && LatencyHistogram.lowest(k) != LatencyHistogram.highest(k - 1) + 1))
+                bad++;
+        report("latency histogram buckets", bad == 0 && LatencyHistogram.highest(LatencyHistogram.BUCKETS - 1)
+                == LatencyHistogram.HIGHEST, bad + " of " + LatencyHistogram.BUCKETS + " buckets out of place");
+
+        Random r = new Random(11);
+        LatencyHistogram h = new LatencyHistogram(), before = null;
+        long values[] = new long[200000];
+        for (int k = 0; k < values.length; k++)
+        {
+            if (k == values.length / 2)
+                before = h.copy();
+            // spread over 1 ns to about 10 s
+            values[k] = (long) Math.exp(23 * r.nextDouble());
+            h.record(values[k]);
+        }
+        for (LatencyHistogram tested : new LatencyHistogram[]{h, h.minus(before)})
+        {
+            long sorted[] = tested == h ? values.clone() : Arrays.copyOfRange(values, values.length / 2, values.length);
+            Arrays.sort(sorted);
+            double sum = 0;
+            for (long v : sorted)
+                sum += v;
+            double worst = 0;
+            for (double p : new double[]{0.1, 1, 10, 50, 90, 99, 99.9, 99.99, 100})
+            {
+                long exact = sorted[(int) Math.max(0, Math.ceil(p / 100 * sorted.length) - 1)];
+                long read = tested.getPercentile(p);
+                worst = Math.max(worst, read < exact ? Double.POSITIVE_INFINITY : (read - exact) / (double) exact);
+            }
+            long max = sorted[sorted.length - 1];
+            boolean ok = tested.getCount() == sorted.length && worst <= 1.0 / 32
+                    && tested.getMax() >= max && tested.getMax() - max <= max / 32
+                    && Math.abs(tested.getMean() - sum / sorted.length) <= 1e-9 * sum / sorted.length;
+            report(tested == h ? "latency histogram percentiles" : "latency histogram since a copy", ok,
+                    "count " + tested.getCount() + ", worst percentile " + worst + " above the exact one, max "
+                            + tested.getMax() + " for " + max);
+        }
+    }
+
+    // SweptFootprint must find the same first contact through the grid
+    // as by advancing on every obstacle in turn, and must not miss one:
+    // where the footprint overlaps an obstacle at any of many poses along
+    // the move, it must have found a contact no later, and at the time
+    // it found the footprint must be touching its obstacle. The moves are
+    // long and the obstacles thin, so many would slip between the poses
+    // at the two ends.
+    static void checkSweptFootprint()
+    {
+        Random r = new Random(13);
+        SweptFootprint sweep = new SweptFootprint();
+        double corners[] = new double[8];
+        int differ = 0, missed = 0, early = 0, contacts = 0, between = 0, moves = 0;
+        for (int trial = 0; trial < 40; trial++)
+        {
+            List<int[]> list = new ArrayList<>();
+            int n = 1 + r.nextInt(trial < 20 ? 4 : 60);
+            for (int i = 0; i < n; i++)
+                list.add(new int[]{r.nextInt(370), r.nextInt(390), r.nextInt(40) + 20, r.nextInt(5) + 5});
+            ObstacleLayout layout = new ObstacleLayout(list);
+            for (int m = 0; m < 500; m++, moves++)
+            {
+                double xt = 100 * r.nextDouble(), yt = 100 * r.nextDouble(), phit = 360 * r.nextDouble();
+                double length = 20 * r.nextDouble(), heading = 360 * r.nextDouble();
+                double turn = m % 4 == 0 ? 0 : 60 * r.nextDouble() - 30;
+                double xt1 = xt + length * Math.cos(heading * Math.PI / 180);
+                double yt1 = yt - length * Math.sin(heading * Math.PI / 180);
+                sweep.set(xt, yt, phit, xt1, yt1, phit + turn, 400, 400);
+                int k = sweep.firstContact(layout);
+                double time = sweep.getTime();
+
+                int linear = -1;
+                double linearTime = Double.POSITIVE_INFINITY;
+                for (int i = 0; i < layout.size(); i++)
+                {
+                    int b[] = layout.bounds;
+                    double t = sweep.advance(b[4 * i], b[4 * i + 1], b[4 * i + 2], b[4 * i + 3], linearTime);
+                    if (t < linearTime)
+                    {
+                        linear = i;
+                        linearTime = t;
+                    }
+                }
+                if (linear != k || (k >= 0 && linearTime != time))
+                    differ++;
+
+                // the first of many poses along the move to overlap
+                double sampled = Double.NaN;
+                for (int s = 0; s <= 1000 && Double.isNaN(sampled); s++)
+                {
+                    double t = s / 1000.0;
+                    TruckGeometry.footprint(sweep.x0 + t * sweep.dx, sweep.y0 + t * sweep.dy,
+                            sweep.theta0 + t * sweep.dTheta, corners);
+                    for (int i = 0; i < layout.size() && Double.isNaN(sampled); i++)
+                    {
+                        int b[] = layout.bounds;
+                        if (TruckGeometry.quadOverlapsBox(corners, b[4 * i], b[4 * i + 1], b[4 * i + 2], b[4 * i + 3]))
+                            sampled = t;
+                    }
+                }
+                if (!Double.isNaN(sampled) && (k < 0 || time > sampled))
+                    missed++;
+                if (k >= 0)
+                {
+                    contacts++;
+                    if (sampled > 0.001)
+                        between++;
+                    int b[] = layout.bounds;
+                    TruckGeometry.footprint(sweep.x0 + time * sweep.dx, sweep.y0 + time * sweep.dy,
+                            sweep.theta0 + time * sweep.dTheta, corners);
+                    if (TruckGeometry.quadBoxDistance(corners, b[4 * k], b[4 * k + 1], b[4 * k + 2],
+                            b[4 * k + 3]) > 0.5)
+                        early++;
+                }
+            }
+        }
+        report("swept footprint, grid vs every obstacle", differ == 0, differ + " of " + moves + " moves differ");
+        report("swept footprint vs sampled poses", missed == 0 && early == 0, contacts + " contacts of "
+                + moves + " moves, " + between + " after the start, " + missed + " missed, " + early + " too early");
+    }
+
+    // Scenarios must read back as written, and ScenarioRunner must give
+    // every scenario the result of running it alone, in the order of the
+    // file, however it is split into chunks; a bad line must stop it with
+    // its line number after the results of the lines before it
+    static void checkScenarios()
+    {
+        Random r = new Random(21);
+        String terms[] = TruckRules.changePhiTerms;
+        RuleBase bases[] = new RuleBase[3];
+        bases[0] = RuleBase.DEFAULT;
+        for (int b = 1; b < bases.length; b++)
+        {
+            RuleBase base = RuleBase.DEFAULT;
+            for (int n = 0; n < 6; n++)
+            {
+                int length = n % 2 == 0 ? FuzzyController.DOCKING : FuzzyController.OBSTACLE;
+                base = base.with(length, r.nextInt(base.getRows(length)), r.nextInt(TruckRules.COLUMNS),
+                        r.nextInt(8) == 0 ? " " : terms[r.nextInt(terms.length)]);
+            }
+            bases[b] = base;
+        }
+        StringBuilder file = new StringBuilder("# scenarios for SelfCheck\n");
+        List<Scenario> scenarios = new ArrayList<>();
+        int misread = 0;
+        for (int k = 0; k < 300; k++)
+        {
+            List<int[]> obstacles = new ArrayList<>();
+            for (int i = r.nextInt(4); i > 0; i--)
+                obstacles.add(new int[]{r.nextInt(370), r.nextInt(390), r.nextInt(40) + 20, r.nextInt(5) + 5});
+            // runs of scenarios with the same rules
+            Scenario s = new Scenario("s" + k, 100 * r.nextDouble(), 100 * r.nextDouble(),
+                    -90 + 360 * r.nextDouble(), 1 + r.nextInt(3), 200 + r.nextInt(800), 400, 400,
+                    bases[k / 20 % bases.length], obstacles);
+            Scenario back = Scenario.parse(s.toString());
+            if (!back.toString().equals(s.toString()) || !back.sameRules(s) || back.getStartX() != s.getStartX()
+                    || !Arrays.deepEquals(back.getRules().getConclusions(FuzzyController.OBSTACLE),
+                    bases[k / 20 % bases.length].getConclusions(FuzzyController.OBSTACLE)))
+                misread++;
+            scenarios.add(s);
+            file.append(s).append(k % 50 == 0 ? "\n\n" : "\n");
+        }
+        report("scenario round trip", misread == 0, misread + " of " + scenarios.size() + " read back wrong");
+
+        CompiledRules compiled = CompiledRules.compile(new TruckRules());
+        StringBuilder expected = new StringBuilder(ScenarioRunner.HEADER).append('\n');
+        for (Scenario s : scenarios)
+        {
+            TruckEngine engine = new TruckEngine(new FuzzyKernel(compiled.withRuleBase(s.getRules())));
+            s.apply(engine);
+            int n = engine.runToCompletion(s.getMaxIterations());
+            expected.append(s.getName()).append(',').append(engine.isFinished() ? "parked"
+                    : engine.isDisabled() ? "left" : "timed_out").append(',').append(n).append(',')
+                    .append(engine.getXt()).append(',').append(engine.getYt()).append(',').append(engine.getPhit())
+                    .append('\n');
+        }
+        ForkJoinPool pool = new ForkJoinPool(3);
+        for (int chunk : new int[]{7, ScenarioRunner.CHUNK})
+        {
+            ScenarioRunner runner = new ScenarioRunner(compiled, pool);
+            runner.chunk = chunk;
+            StringWriter out = new StringWriter();
+            try
+            {
+                ScenarioRunner.Summary summary = runner.run(new StringReader(file.toString()), out);
+                report("scenario runner, chunks of " + chunk, out.toString().equals(expected.toString())
+                        && summary.getScenarios() == scenarios.size(), summary.getScenarios() + " results");
+            }
+            catch (IOException e)
+            {
+                report("scenario runner, chunks of " + chunk, false, e.toString());
+            }
+        }
+
+        ScenarioRunner runner = new ScenarioRunner(compiled, pool);
+        runner.chunk = 7;
+        StringWriter out = new StringWriter();
+        String bad = scenarios.get(0) + "\n" + scenarios.get(1) + "\n" + "s2 1 2 3\n" + scenarios.get(3) + "\n";
+        String message = "";
+        try
+        {
+            runner.run(new StringReader(bad), out);
+        }
+        catch (IllegalArgumentException | IOException e)
+        {
+            message = e.getMessage();
+        }
+        pool.shutdown();
+        report("scenario runner, bad line", message.startsWith("Line 3:")
+                && out.toString().split("\n").length == 3, message);
+    }
+
+    // The same seed must give the same layout, of the number of obstacles
+    // asked for or covering the density asked for, every obstacle inside
+    // the drawing area and clear of the truck at its start pose, at any
+    // angle, and of the truck driving into the dock; and a layout of
+    // 10000 obstacles must take milliseconds
+    static void checkObstacleGenerator()
+    {
+        Random r = new Random(23);
+        double corners[] = new double[8];
+        int differ = 0, wrongSize = 0, outside = 0, blocked = 0;
+        for (int trial = 0; trial < 200; trial++)
+        {
+            long seed = r.nextLong();
+            double x = 100 * r.nextDouble(), y = 20 + 80 * r.nextDouble();
+            ObstacleGenerator g = new ObstacleGenerator(seed);
+            if (trial % 2 == 0)
+                g.setCount(1 + r.nextInt(100));
+            else
+                g.setDensity(0.3 * r.nextDouble());
+            if (trial % 4 >= 2)
+                g.setSizes(3, 80, 3, 30, ObstacleGenerator.LOG_UNIFORM);
+            g.clearStart(x, y, 0);
+            List<int[]> a = g.generate(), b = g.generate();
+            if (a.size() != b.size())
+                differ++;
+            else
+                for (int k = 0; k < a.size(); k++)
+                    if (!Arrays.equals(a.get(k), b.get(k)))
+                        differ++;
+            double area = 0;
+            for (int o[] : a)
+            {
+                area += o[2] * o[3];
+                if (o[0] < 0 || o[1] < 0 || o[0] + o[2] > 400 || o[1] + o[3] > 400)
+                    outside++;
+            }
+            if (trial % 2 == 0 ? a.size() != g.count : area < g.density * 400 * 400
+                    || area - a.get(a.size() - 1)[2] * a.get(a.size() - 1)[3] >= g.density * 400 * 400)
+                wrongSize++;
+            // the truck at the start at every angle, and driving down the
+            // middle of the corridor
+            ObstacleLayout layout = new ObstacleLayout(a);
+            for (int angle = 0; angle < 360; angle += 5)
+            {
+                TruckGeometry.footprint(4 * x, 4 * y, angle * Math.PI / 180, corners);
+                for (int k = 0; k < layout.size(); k++)
+                {
+                    int o[] = layout.get(k);
+                    if (TruckGeometry.quadOverlapsBox(corners, o[0], o[1], o[0] + o[2], o[1] + o[3]))
+                        blocked++;
+                }
+            }
+            SweptFootprint sweep = new SweptFootprint();
+            sweep.set(50, 0, 90, 50, 24, 90, 400, 400);
+            if (sweep.firstContact(layout) >= 0)
+                blocked++;
+        }
+        report("obstacle generator", differ == 0 && wrongSize == 0 && outside == 0 && blocked == 0,
+                differ + " differ, " + wrongSize + " wrong in number or area, " + outside + " outside, "
+                        + blocked + " in the way");
+
+        long best = Long.MAX_VALUE;
+        int n = 0;
+        for (int round = 0; round < 20; round++)
+        {
+            ObstacleGenerator g = new ObstacleGenerator(round);
+            g.setWorldSize(4000, 4000);
+            g.setCount(10000);
+            long start = System.nanoTime();
+            n = g.generate().size();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        report("obstacle generator, 10000 obstacles", n == 10000 && best < 50000000L,
+                n + " in " + String.format("%.2f", best / 1e6) + " ms");
+    }
+
+    // The distance field against the distance of every obstacle, at points
+    // on its grid: three cells or more off the obstacles within a cell
+    // diagonal, lowerBound() never above it, and the direction away from
+    // the nearest obstacle, where one obstacle is clearly the nearest. A
+    // move the engine skips the obstacle search for must touch nothing,
+    // and clearance steering must turn away from an obstacle ahead on
+    // either side.
+    static void checkDistanceField()
+    {
+        Random r = new Random(29);
+        double away[] = new double[2];
+        double worst = 0;
+        int above = 0, wrongWay = 0, directions = 0, skipped = 0, touched = 0;
+        SweptFootprint sweep = new SweptFootprint();
+        for (int trial = 0; trial < 100; trial++)
+        {
+            ObstacleGenerator g = new ObstacleGenerator(r.nextLong());
+            g.setCount(1 + r.nextInt(30));
+            g.setSizes(1, 60, 1, 30, ObstacleGenerator.LOG_UNIFORM);
+            ObstacleLayout layout = new ObstacleLayout(g.generate());
+            DistanceField field = layout.getDistanceField();
+            double cell = field.getCell();
+            for (int p = 0; p < 500; p++)
+            {
+                double x = field.originX + (field.columns - 1) * cell * r.nextDouble();
+                double y = field.originY + (field.rows - 1) * cell * r.nextDouble();
+                double nearest = Double.POSITIVE_INFINITY, second = nearest, qx = 0, qy = 0;
+                for (int k = 0; k < layout.size(); k++)
+                {
+                    int o[] = layout.get(k);
+                    double cx = Math.max(o[0], Math.min(o[0] + o[2], x));
+                    double cy = Math.max(o[1], Math.min(o[1] + o[3], y));
+                    double d = Math.hypot(x - cx, y - cy);
+                    if (d < nearest)
+                    {
+                        second = nearest;
+                        nearest = d;
+                        qx = cx;
+                        qy = cy;
+                    }
+                    else
+                        second = Math.min(second, d);
+                }
+                if (field.lowerBound(x, y) > nearest)
+                    above++;
+                if (nearest >= 3 * cell)
+                    worst = Math.max(worst, Math.abs(field.distance(x, y) - nearest) / cell);
+                if (nearest >= 3 * cell && second >= nearest + 8)
+                {
+                    field.direction(x, y, away);
+                    directions++;
+                    if (-(away[0] * (qx - x) + away[1] * (qy - y)) / nearest < 0.9)
+                        wrongWay++;
+                }
+            }
+            // moves as the engine makes them, skipped as it skips them
+            for (int m = 0; m < 500; m++)
+            {
+                double xt = 100 * r.nextDouble(), yt = 100 * r.nextDouble(), phi = 360 * r.nextDouble();
+                double speed = 1 + 5 * r.nextDouble(), turn = -45 + 90 * r.nextDouble();
+                double reach = TruckEngine.LOOKAHEAD * speed * 4;
+                if (field.lowerBound(4 * xt, 4 * yt) <= SweptFootprint.REACH + SweptFootprint.CONTACT + reach)
+                    continue;
+                skipped++;
+                double a = (phi + turn) * Math.PI / 180;
+                double x = speed * Math.cos(a), y = speed * Math.sin(a);
+                sweep.set(xt, yt, phi, xt + x, yt - y, phi + turn, 400, 400);
+                if (sweep.firstContact(layout) >= 0)
+                    touched++;
+                sweep.set(xt + x, yt - y, phi + turn, xt + 4 * x, yt - 4 * y, phi + turn, 400, 400);
+                if (sweep.firstContact(layout) >= 0)
+                    touched++;
+            }
+        }
+        report("distance field", worst <= Math.sqrt(2) && above == 0 && wrongWay <= directions / 100
+                        && touched == 0 && skipped > 0,
+                String.format("off by at most %.2f cells, ", worst) + above + " bounds above, " + wrongWay
+                        + " of " + directions + " directions wrong, " + touched + " of " + skipped
+                        + " skipped moves touch");
+
+        // an obstacle ahead and to the left of a truck heading up, then the
+        // same to the right
+        TruckEngine engine = new TruckEngine(new FuzzyKernel(CompiledRules.compile(new TruckRules())));
+        engine.setClearanceSteering(true);
+        engine.setObstacles(Arrays.asList(new int[][]{{170, 150, 20, 20}}));
+        engine.setStart(50, 50, 90);
+        engine.reset();
+        double left = engine.clearanceTurn(engine.getObstacles().getDistanceField());
+        engine.setObstacles(Arrays.asList(new int[][]{{210, 150, 20, 20}}));
+        double right = engine.clearanceTurn(engine.getObstacles().getDistanceField());
+        report("clearance steering", left < 0 && right > 0,
+                String.format("%.2f degrees from an obstacle on the left, %.2f on the right", left, right));
+
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++)
+        {
+            ObstacleGenerator g = new ObstacleGenerator(round);
+            g.setWorldSize(4000, 4000);
+            g.setCount(10000);
+            ObstacleLayout layout = new ObstacleLayout(g.generate());
+            long start = System.nanoTime();
+            layout.getDistanceField();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        report("distance field, 10000 obstacles", best < 500000000L,
+                "built in " + String.format("%.2f", best / 1e6) + " ms");
+    }
+
+    // Plans on random layouts of the CollisionReport kind: each from the
+    // start to the dock through a goal lined up with it APPROACH or more
+    // from it, in the world all the way, and made once per start by the
+    // one planner of the world size, as is the verdict whether to plan.
+    // Planning must park more of them than the docking rules alone.
+    static void checkPathPlanner()
+    {
+        Random r = new Random(31);
+        TruckEngine plain = new TruckEngine(new FuzzyKernel(CompiledRules.compile(new TruckRules())));
+        TruckEngine planned = new TruckEngine(new FuzzyKernel(CompiledRules.compile(new TruckRules())));
+        planned.setPathPlanning(true);
+        int plans = 0, bad = 0, uncached = 0, parkedPlain = 0, parkedPlanned = 0, episodes = 300;
+        for (int k = 0; k < episodes; k++)
+        {
+            double x = 100 * r.nextDouble(), y = 100 * r.nextDouble(), phi = -90 + 360 * r.nextDouble();
+            ObstacleLayout layout = new ObstacleLayout(CollisionReport.obstacles(r.nextLong(), x, y));
+            PathPlanner planner = layout.getPlanner(400, 400);
+            if (layout.getPlanner(200, 200) == planner || layout.getPlanner(400, 400) != planner)
+                uncached++;
+            double path[] = planner.plan(x, y, phi);
+            if (path != null)
+            {
+                plans++;
+                int n = path.length / 2;
+                double gx = path[2 * n - 4], gy = path[2 * n - 3];
+                boolean outside = false;
+                for (int i = 0; i < n; i++)
+                    outside |= path[2 * i] < 0 || path[2 * i] > 100 || path[2 * i + 1] < 0 || path[2 * i + 1] > 100;
+                if (path[0] != x || path[1] != y || path[2 * n - 2] != 50 || path[2 * n - 1] != 0
+                        || Math.abs(4 * gx - 200) > PathPlanner.GOAL_X || 4 * gy < PathPlanner.APPROACH || outside)
+                    bad++;
+                if (planner.plan(x, y, phi) != path)
+                    uncached++;
+            }
+            for (TruckEngine e : new TruckEngine[]{plain, planned})
+            {
+                e.setObstacles(layout);
+                e.setStart(x, y, phi);
+                e.reset();
+                e.runToCompletion(1000);
+            }
+            parkedPlain += plain.isFinished() ? 1 : 0;
+            parkedPlanned += planned.isFinished() ? 1 : 0;
+            // the planned engine asked once, at the start of its episode
+            int verdicts = planner.clearRuns.size();
+            planner.isClearRun(planned.controller, planned.Speed, x, y, phi);
+            if (verdicts != 1 || planner.clearRuns.size() != 1)
+                uncached++;
+            if (k == 0)
+            {
+                // defuzzified another way, the rules are asked again
+                planned.controller.setDefuzzifier(FuzzyController.CENTRE_OF_AREA);
+                planner.isClearRun(planned.controller, planned.Speed, x, y, phi);
+                if (planner.clearRuns.size() != 2)
+                    uncached++;
+                planned.controller.setDefuzzifier(FuzzyController.MOMENT);
+            }
+        }
+        report("path planner", plans > 0 && bad == 0 && uncached == 0,
+                plans + " plans for " + episodes + " starts, " + bad + " bad, " + uncached + " made again");
+        report("path planning", parkedPlanned > parkedPlain,
+                parkedPlanned + " of " + episodes + " parked with planning, " + parkedPlain + " without");
+    }
+}
@@ -0,0 +1,377 @@
+package examples.fuzzytruckswing;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Runs the truck from many start states on a ForkJoinPool and records how
+// every episode ended and how many iterations it took. The start states
+// are either a grid (every cell centre at every angle) or a random sample;
+// either way the outcomes are binned into a heatmap of columns by rows
+// cells for each start angle.
+//
+// Episodes are handed out in small batches that are split in halves, so
+// idle workers steal the remaining halves of long running batches. The
+// workers share nothing but the CompiledRules and the obstacles, which are
+// never written, and each episode writes only its own result slots.
+
+public class StartStateSweep
+{
+    // how an episode ended
+    public static final byte PARKED = 1;
+    public static final byte LEFT_CANVAS = 2;
+    public static final byte TIMED_OUT = 3;
+
+    // a batch of at most this many episodes is not split any further
+    static final int GRAIN = 4;
+
+    final CompiledRules rules;
+    ObstacleLayout obstacles = ObstacleLayout.EMPTY;
+    int worldWidth = TruckGeometry.WORLD_WIDTH, worldHeight = TruckGeometry.WORLD_HEIGHT;
+    double speed = 1;
+    int maxIterations = 2000;
+
+    // heatmap layout
+    int columns = 20, rows = 20, angleBins = 8;
+
+    // start states, set by grid() or random()
+    double startX[] = new double[0], startY[] = new double[0], startPhi[] = new double[0];
+
+    public StartStateSweep(CompiledRules rules)
+    {
+        this.rules = rules;
+    }
+
+    // obstacles as {x, y, width, height} in world units of a world width
+    // by height units
+    public void setObstacles(List<int[]> list, int width, int height)
+    {
+        obstacles = new ObstacleLayout(list);
+        worldWidth = width;
+        worldHeight = height;
+    }
+
+    public void setTruckSpeed(double s)
+    {
+        speed = s;
+    }
+
+    public void setMaxIterations(int n)
+    {
+        maxIterations = n;
+    }
+
+    public int getMaxIterations()
+    {
+        return maxIterations;
+    }
+
+    // The heatmap has columns by rows cells over the 100 by 100 canvas for
+    // each of angleBins start angles, spread evenly from -90 degrees.
+    public void setHeatmapSize(int columns, int rows, int angleBins)
+    {
+        this.columns = columns;
+        this.rows = rows;
+        this.angleBins = angleBins;
+    }
+
+    public int getAngleBins()
+    {
+        return angleBins;
+    }
+
+    // centre angle of bin a
+    public double getBinAngle(int a)
+    {
+        return binAngle(a, angleBins);
+    }
+
+    static double binAngle(int a, int angleBins)
+    {
+        return -90 + a * 360.0 / angleBins;
+    }
+
+    // bin of a start angle, angles 360 degrees apart share a bin
+    static int angleBin(double phi, int angleBins)
+    {
+        int a = (int) Math.round((phi + 90) * angleBins / 360.0) % angleBins;
+        return a < 0 ? a + angleBins : a;
+    }
+
+    // one start state at the centre of every cell at the centre angle of
+    // every bin
+    public void grid()
+    {
+        int n = columns * rows * angleBins;
+        startX = new double[n];
+        startY = new double[n];
+        startPhi = new double[n];
+        int k = 0;
+        for (int a = 0; a < angleBins; a++)
+            for (int cy = 0; cy < rows; cy++)
+                for (int cx = 0; cx < columns; cx++)
+                {
+                    startX[k] = (cx + 0.5) * 100.0 / columns;
+                    startY[k] = (cy + 0.5) * 100.0 / rows;
+                    startPhi[k] = getBinAngle(a);
+                    k++;
+                }
+    }
+
+    // n start states drawn uniformly from the canvas and the angles the
+    // applet allows, -90 to 270 degrees
+    public void random(int n, long seed)
+    {
+        Random r = new Random(seed);
+        startX = new double[n];
+        startY = new double[n];
+        startPhi = new double[n];
+        for (int k = 0; k < n; k++)
+        {
+            startX[k] = 100 * r.nextDouble();
+            startY[k] = 100 * r.nextDouble();
+            startPhi[k] = -90 + 360 * r.nextDouble();
+        }
+    }
+
+    public int getEpisodeCount()
+    {
+        return startX.length;
+    }
+
+    public Result run()
+    {
+        return run(ForkJoinPool.commonPool());
+    }
+
+    public Result run(ForkJoinPool pool)
+    {
+        Result result = new Result();
+        long start = System.nanoTime();
+        pool.invoke(new Episodes(result, 0, result.outcome.length));
+        result.nanos = System.nanoTime() - start;
+        result.summarize();
+        return result;
+    }
+
+    // a batch of episodes, split in halves until it is small enough
+    class Episodes extends RecursiveAction
+    {
+        final Result result;
+        final int lo, hi;
+
+        Episodes(Result result, int lo, int hi)
+        {
+            this.result = result;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected void compute()
+        {
+            if (hi - lo > GRAIN)
+            {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Episodes(result, lo, mid), new Episodes(result, mid, hi));
+                return;
+            }
+            TruckEngine engine = new TruckEngine(new FuzzyKernel(rules));
+            engine.setObstacles(obstacles);
+            engine.setWorldSize(worldWidth, worldHeight);
+            engine.setTruckSpeed(speed);
+            for (int k = lo; k < hi; k++)
+            {
+                engine.setStart(result.startX[k], result.startY[k], result.startPhi[k]);
+                engine.reset();
+                result.iterations[k] = engine.runToCompletion(result.maxIterations);
+                result.outcome[k] = engine.isFinished() ? PARKED
+                        : engine.isDisabled() ? LEFT_CANVAS : TIMED_OUT;
+            }
+        }
+    }
+
+    // Outcome of every episode, and per heatmap cell the number of
+    // episodes, how many of them parked and their iteration total.
+    // Cells are indexed [angle bin][row * columns + column]. The heatmap
+    // layout, start states and iteration cap are those the sweep had when
+    // it ran, whatever it is set to afterwards.
+    public class Result
+    {
+        public final byte outcome[];
+        public final int iterations[];
+        final int columns, rows, angleBins, maxIterations;
+        // grid() and random() replace these arrays, never write to them
+        final double startX[], startY[], startPhi[];
+        int runs[][], parked[][];
+        long parkedIterations[][];
+        long nanos;
+
+        Result()
+        {
+            columns = StartStateSweep.this.columns;
+            rows = StartStateSweep.this.rows;
+            angleBins = StartStateSweep.this.angleBins;
+            maxIterations = StartStateSweep.this.maxIterations;
+            startX = StartStateSweep.this.startX;
+            startY = StartStateSweep.this.startY;
+            startPhi = StartStateSweep.this.startPhi;
+            outcome = new byte[startX.length];
+            iterations = new int[startX.length];
+        }
+
+        void summarize()
+        {
+            runs = new int[angleBins][columns * rows];
+            parked = new int[angleBins][columns * rows];
+            parkedIterations = new long[angleBins][columns * rows];
+            for (int k = 0; k < outcome.length; k++)
+            {
+                int a = angleBin(startPhi[k], angleBins);
+                int cx = Math.min(columns - 1, (int) (startX[k] * columns / 100.0));
+                int cy = Math.min(rows - 1, (int) (startY[k] * rows / 100.0));
+                int c = cy * columns + cx;
+                runs[a][c]++;
+                if (outcome[k] == PARKED)
+                {
+                    parked[a][c]++;
+                    parkedIterations[a][c] += iterations[k];
+                }
+            }
+        }
+
+        public StartStateSweep getSweep()
+        {
+            return StartStateSweep.this;
+        }
+
+        public int getColumns()
+        {
+            return columns;
+        }
+
+        public int getRows()
+        {
+            return rows;
+        }
+
+        public int getAngleBins()
+        {
+            return angleBins;
+        }
+
+        // centre angle of bin a
+        public double getBinAngle(int a)
+        {
+            return binAngle(a, angleBins);
+        }
+
+        public int getMaxIterations()
+        {
+            return maxIterations;
+        }
+
+        public int getRuns(int a, int cx, int cy)
+        {
+            return runs[a][cy * columns + cx];
+        }
+
+        // fraction of the episodes in the cell that parked, NaN if none ran
+        public double getSuccessRate(int a, int cx, int cy)
+        {
+            int n = runs[a][cy * columns + cx];
+            return n == 0 ? Double.NaN : parked[a][cy * columns + cx] / (double) n;
+        }
+
+        // mean iterations to dock of the episodes in the cell that parked,
+        // NaN if none did
+        public double getMeanIterations(int a, int cx, int cy)
+        {
+            int n = parked[a][cy * columns + cx];
+            return n == 0 ? Double.NaN : parkedIterations[a][cy * columns + cx] / (double) n;
+        }
+
+        public int count(byte how)
+        {
+            int n = 0;
+            for (byte o : outcome)
+                if (o == how)
+                    n++;
+            return n;
+        }
+
+        public double getSeconds()
+        {
+            return nanos / 1e9;
+        }
+
+        // one map per angle, a digit 0-9 for the success rate in tenths
+        // (# for all parked) and a blank for cells without episodes
+        public String toString()
+        {
+            StringBuilder sb = new StringBuilder();
+            sb.append(outcome.length).append(" episodes in ").append(String.format("%.3f", getSeconds()))
+                    .append(" s: ").append(count(PARKED)).append(" parked, ").append(count(LEFT_CANVAS))
+                    .append(" left the canvas, ").append(count(TIMED_OUT)).append(" hit the cap of ")
+                    .append(maxIterations).append(" iterations\n");
+            for (int a = 0; a < angleBins; a++)
+            {
+                long sum = 0;
+                int n = 0;
+                for (int c = 0; c < columns * rows; c++)
+                {
+                    sum += parkedIterations[a][c];
+                    n += parked[a][c];
+                }
+                sb.append("start angle ").append(Math.round(getBinAngle(a)))
+                        .append(", mean iterations to dock ")
+                        .append(n == 0 ? "-" : String.valueOf(Math.round(sum / (double) n))).append('\n');
+                for (int cy = 0; cy < rows; cy++)
+                {
+                    for (int cx = 0; cx < columns; cx++)
+                    {
+                        double rate = getSuccessRate(a, cx, cy);
+                        sb.append(Double.isNaN(rate) ? ' ' : rate == 1 ? '#' : (char) ('0' + (int) (rate * 10)));
+                    }
+                    sb.append('\n');
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    // java examples.fuzzytruckswing.StartStateSweep [samples [cap]]
+    // sweeps the default rules without obstacles: the grid when samples
+    // is 0 or missing, otherwise that many random start states. Prints the
+    // time taken with 1, 2, 4 ... workers and the heatmap.
+    public static void main(String args[])
+    {
+        int samples = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        StartStateSweep sweep = new StartStateSweep(CompiledRules.compile(new TruckRules()));
+        if (args.length > 1)
+            sweep.setMaxIterations(Integer.parseInt(args[1]));
+        if (samples > 0)
+            sweep.random(samples, 1);
+        else
+            sweep.grid();
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        Result result = null;
+        double single = 0;
+        for (int p = 1; ; p = Math.min(2 * p, cores))
+        {
+            ForkJoinPool pool = new ForkJoinPool(p);
+            // once to warm up, then timed
+            sweep.run(pool);
+            result = sweep.run(pool);
+            pool.shutdown();
+            if (p == 1)
+                single = result.getSeconds();
+            System.out.println(p + " worker(s): " + String.format("%.3f", result.getSeconds())
+                    + " s, speedup " + String.format("%.2f", single / result.getSeconds()));
+            if (p == cores)
+                break;
+        }
+        System.out.print(result);
+    }
+}
@@ -0,0 +1,120 @@
+package examples.fuzzytruckswing;
+
+// Decides when a simulation thread takes its next step. The controls set
+// the state, PAUSE, STEP or RUN, from any thread, and the simulation
+// thread blocks in awaitStep() until a step is due. Every change of state
+// or rate wakes it at once, and while paused it waits without a timeout,
+// so a paused simulation uses no CPU.
+//
+// While running, steps are due at a fixed rate of REAL_TIME_RATE times
+// the real-time factor, one iteration per frame shown at factor 1. The
+// due times are kept on a grid rather than counted from the last step, so
+// steps taken late are caught up with and the rate holds on average even
+// where a wait can not be shorter than a millisecond. After falling
+// behind by more than MAX_LAG, say while the machine was busy, the grid
+// starts anew instead of rushing through the missed steps. A factor of
+// infinity runs as fast as possible; how often the result is shown is up
+// to the display, which takes the latest frame at its own rate.
+
+public class StepClock
+{
+    public static final int PAUSE = 0;
+    public static final int STEP = 1;
+    public static final int RUN = 2;
+
+    // iterations per second at real-time factor 1
+    public static final double REAL_TIME_RATE = 1000.0 / TruckSimulation.FRAME_INTERVAL;
+    // nanoseconds behind the grid after which it is started anew
+    static final long MAX_LAG = 100000000L;
+
+    int state = PAUSE;
+    double factor = 1;
+    // nanoseconds between steps, 0 as fast as possible
+    long period = period(1);
+    // System.nanoTime() the next step is due at, if scheduled
+    long next;
+    boolean scheduled;
+
+    public StepClock()
+    {
+    }
+
+    public StepClock(int state, double factor)
+    {
+        this.state = state;
+        setRealTimeFactor(factor);
+    }
+
+    static long period(double factor)
+    {
+        return Double.isInfinite(factor) ? 0 : (long) (1e9 / (REAL_TIME_RATE * factor));
+    }
+
+    public synchronized void setState(int s)
+    {
+        state = s;
+        scheduled = false;
+        notifyAll();
+    }
+
+    public synchronized int getState()
+    {
+        return state;
+    }
+
+    public synchronized boolean isPaused()
+    {
+        return state == PAUSE;
+    }
+
+    // Double.POSITIVE_INFINITY for as fast as possible
+    public synchronized void setRealTimeFactor(double f)
+    {
+        if (!(f > 0))
+            throw new IllegalArgumentException("real-time factor " + f);
+        factor = f;
+        period = period(f);
+        scheduled = false;
+        notifyAll();
+    }
+
+    public synchronized double getRealTimeFactor()
+    {
+        return factor;
+    }
+
+    // Block until a step is due and return STEP or RUN. A STEP is taken
+    // once, the clock is paused again as it is returned.
+    public synchronized int awaitStep() throws InterruptedException
+    {
+        while (true)
+        {
+            if (state == PAUSE)
+            {
+                wait();
+                continue;
+            }
+            if (state == STEP)
+            {
+                state = PAUSE;
+                return STEP;
+            }
+            if (period == 0)
+                return RUN;
+
+            long now = System.nanoTime();
+            if (!scheduled || now - next > MAX_LAG)
+            {
+                next = now;
+                scheduled = true;
+            }
+            long delay = next - now;
+            if (delay <= 0)
+            {
+                next += period;
+                return RUN;
+            }
+            wait(delay / 1000000, (int) (delay % 1000000));
+        }
+    }
+}
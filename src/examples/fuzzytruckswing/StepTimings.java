@@ -0,0 +1,124 @@
+package examples.fuzzytruckswing;
+
+import java.io.IOException;
+import java.util.Locale;
+
+// How long each phase of a step of the TruckEngine takes, one
+// LatencyHistogram per phase. The engine times the phases it is given a
+// StepTimings for; the simulation times the hand-off of its frames to the
+// event thread, from being published to being taken up to be shown, into
+// HAND_OFF, which grows long when the event thread stalls.
+//
+// A phase is timed by mark(), which records the time since the end of the
+// phase before and returns the time it is called at, so that every phase
+// boundary costs one call of System.nanoTime().
+
+public class StepTimings
+{
+    // picking up edited rules and evaluating the docking rules, and the
+    // clearance rules if the engine steers by them
+    public static final int DOCKING = 0;
+    // the truck footprint one look ahead, if only that pose is tested
+    public static final int COORDS = 1;
+    // the obstacle search, broad and narrow phase, and the sweep of the
+    // footprint if it is swept
+    public static final int COLLISION = 2;
+    // evaluating the obstacle rules, only in steps near an obstacle
+    public static final int OBSTACLE = 3;
+    // moving the truck and testing whether the episode is over
+    public static final int TEST = 4;
+    // the engine listeners, rule firing ring and frame publishing
+    public static final int LISTENERS = 5;
+    // the whole step
+    public static final int STEP = 6;
+    // from publishing a frame to the event thread taking it up
+    public static final int HAND_OFF = 7;
+    // deciding whether to plan and planning, at the start of an episode
+    // with path planning on; not part of the step
+    public static final int PLANNING = 8;
+
+    public static final String NAMES[] = {"Docking rules", "Look-ahead", "Obstacle search", "Obstacle rules",
+            "Move and test", "Listeners", "Step", "Frame hand-off", "Path planning"};
+
+    // the percentiles written to CSV, under CSV_HEADER
+    static final double PERCENTILES[] = {50, 90, 99, 99.9};
+    public static final String CSV_HEADER = "label,phase,count,mean_ns,p50_ns,p90_ns,p99_ns,p99_9_ns,max_ns";
+
+    final LatencyHistogram phases[] = new LatencyHistogram[NAMES.length];
+
+    public StepTimings()
+    {
+        for (int k = 0; k < phases.length; k++)
+            phases[k] = new LatencyHistogram();
+    }
+
+    // record the time since the given System.nanoTime() for a phase and
+    // return the time now
+    public long mark(int phase, long since)
+    {
+        long now = System.nanoTime();
+        phases[phase].record(now - since);
+        return now;
+    }
+
+    public void record(int phase, long ns)
+    {
+        phases[phase].record(ns);
+    }
+
+    public LatencyHistogram get(int phase)
+    {
+        return phases[phase];
+    }
+
+    public StepTimings copy()
+    {
+        StepTimings c = new StepTimings();
+        for (int k = 0; k < phases.length; k++)
+            c.phases[k] = phases[k].copy();
+        return c;
+    }
+
+    // what was recorded since earlier, a copy of these timings
+    public StepTimings minus(StepTimings earlier)
+    {
+        StepTimings d = new StepTimings();
+        for (int k = 0; k < phases.length; k++)
+            d.phases[k] = phases[k].minus(earlier.phases[k]);
+        return d;
+    }
+
+    // a line for a status bar: the median, 99th percentile and maximum
+    public String summary(int phase)
+    {
+        LatencyHistogram h = phases[phase];
+        if (h.getCount() == 0)
+            return NAMES[phase] + " not timed yet";
+        return NAMES[phase] + " p50 " + format(h.getPercentile(50)) + " p99 " + format(h.getPercentile(99))
+                + " max " + format(h.getMax());
+    }
+
+    // a duration in the unit that shows it best
+    static String format(long ns)
+    {
+        if (ns < 10000)
+            return ns + " ns";
+        if (ns < 10000000)
+            return String.format("%.1f \u00b5s", ns / 1e3);
+        return String.format("%.1f ms", ns / 1e6);
+    }
+
+    // one row per phase, all durations in nanoseconds
+    public void writeCsv(Appendable out, String label) throws IOException
+    {
+        for (int k = 0; k < phases.length; k++)
+        {
+            LatencyHistogram h = phases[k];
+            out.append(label).append(',').append(NAMES[k]).append(',').append(String.valueOf(h.getCount()))
+                    .append(',').append(String.format(Locale.ROOT, "%.1f", h.getCount() == 0 ? 0 : h.getMean()));
+            for (double p : PERCENTILES)
+                out.append(',').append(String.valueOf(h.getPercentile(p)));
+            out.append(',').append(String.valueOf(h.getMax())).append('\n');
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package examples.fuzzytruckswing;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// A FuzzyController that answers from precompiled control surfaces for
+// the docking and obstacle rule bases. Whenever a rule conclusion changes
+// the surfaces are rebuilt on a background thread from a private copy of
+// the rules; until surfaces of the current rules are ready the exact
+// rules are used, so an edit takes effect at once. The surfaces carry no
+// rule firing information, so listeners are only told about firings
+// while the exact rules are in use.
+
+public class SurfaceController implements FuzzyController
+{
+    public static final int DEFAULT_RESOLUTION = 128;
+
+    private static final ExecutorService builder = Executors.newSingleThreadExecutor(r ->
+    {
+        Thread t = new Thread(r, "ControlSurface builder");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    final TruckRules rules;
+    volatile int resolution;
+
+    volatile ControlSurface docking, obstacle;
+    // version of the rules the last build was started for
+    volatile int requestedVersion;
+
+    public SurfaceController(TruckRules rules)
+    {
+        this(rules, DEFAULT_RESOLUTION);
+    }
+
+    public SurfaceController(TruckRules rules, int resolution)
+    {
+        this.rules = rules;
+        this.resolution = resolution;
+        rebuild();
+    }
+
+    public int getResolution()
+    {
+        return resolution;
+    }
+
+    public void setResolution(int r)
+    {
+        resolution = r;
+        rebuild();
+    }
+
+    // largest error of the current surfaces against FuzzyJ, NaN until known
+    public double getMaxError(int length)
+    {
+        ControlSurface s = length == DOCKING ? docking : obstacle;
+        return s == null ? Double.NaN : s.getMaxError();
+    }
+
+    // start compiling surfaces for the current rule conclusions
+    public void rebuild()
+    {
+        final RuleBase base = rules.getRuleBase();
+        final int version = base.getVersion();
+        final int res = resolution;
+        requestedVersion = version;
+        builder.execute(() ->
+        {
+            // a newer build has been asked for
+            if (version != requestedVersion || res != resolution)
+                return;
+            TruckRules snapshot = new TruckRules(base);
+            ControlSurface d = ControlSurface.compile(snapshot, snapshot, DOCKING, res);
+            ControlSurface o = ControlSurface.compile(snapshot, snapshot, OBSTACLE, res);
+            d.measureMaxError(snapshot);
+            o.measureMaxError(snapshot);
+            docking = d;
+            obstacle = o;
+        });
+    }
+
+    public void updateRules()
+    {
+        rules.updateRules();
+    }
+
+    public int getVersion()
+    {
+        return rules.getVersion();
+    }
+
+    public double getConclusion(int length, double xpos, double phi, RuleFiringListener listener)
+    {
+        int version = rules.getVersion();
+        if (version != requestedVersion)
+            rebuild();
+        ControlSurface s = length == DOCKING ? docking : obstacle;
+        // none yet, or built from rules edited since
+        if (s == null || s.getVersion() != version)
+            return rules.getConclusion(length, xpos, phi, listener);
+        return s.getValue(xpos, phi);
+    }
+}
@@ -0,0 +1,85 @@
+package examples.fuzzytruckswing;
+
+import javax.swing.*;
+import java.awt.*;
+
+// Draws the result of a StartStateSweep: for every start angle one map of
+// the success rate (red none parked, green all parked) above one map of
+// the mean iterations to dock (darker is longer, the darkest being the
+// longest mean of the sweep). Cells without episodes, or without a parked
+// episode for the iteration map, are left white.
+
+public class SweepHeatmapPanel extends JPanel
+{
+    static final int TILE = 160, GAP = 10, LABEL = 16;
+
+    final StartStateSweep.Result result;
+    double longest = 1;
+
+    public SweepHeatmapPanel(StartStateSweep.Result result)
+    {
+        this.result = result;
+        int bins = result.getAngleBins();
+        for (int a = 0; a < bins; a++)
+            for (int cy = 0; cy < result.getRows(); cy++)
+                for (int cx = 0; cx < result.getColumns(); cx++)
+                {
+                    double v = result.getMeanIterations(a, cx, cy);
+                    if (v > longest)
+                        longest = v;
+                }
+        setBackground(Color.white);
+        setPreferredSize(new Dimension(bins * (TILE + GAP) + GAP, 2 * (TILE + LABEL + GAP) + GAP));
+    }
+
+    public void paintComponent(Graphics g)
+    {
+        super.paintComponent(g);
+        int columns = result.getColumns(), rows = result.getRows();
+        g.setFont(new Font("Dialog", Font.PLAIN, 11));
+        for (int a = 0; a < result.getAngleBins(); a++)
+        {
+            int left = GAP + a * (TILE + GAP);
+            for (int map = 0; map < 2; map++)
+            {
+                int top = GAP + map * (TILE + LABEL + GAP);
+                g.setColor(Color.black);
+                g.drawString((map == 0 ? "parked, " : "iterations, ") + Math.round(result.getBinAngle(a)) + "\u00b0",
+                        left, top + LABEL - 4);
+                top += LABEL;
+                for (int cy = 0; cy < rows; cy++)
+                    for (int cx = 0; cx < columns; cx++)
+                    {
+                        double v = map == 0 ? result.getSuccessRate(a, cx, cy) : result.getMeanIterations(a, cx, cy);
+                        if (Double.isNaN(v))
+                            continue;
+                        if (map == 0)
+                            g.setColor(new Color((float) (1 - v), (float) v, 0f));
+                        else
+                        {
+                            float shade = 1 - (float) (v / longest);
+                            g.setColor(new Color(shade, shade, 1f));
+                        }
+                        int x0 = left + cx * TILE / columns, x1 = left + (cx + 1) * TILE / columns;
+                        int y0 = top + cy * TILE / rows, y1 = top + (cy + 1) * TILE / rows;
+                        g.fillRect(x0, y0, x1 - x0, y1 - y0);
+                    }
+                g.setColor(Color.gray);
+                g.drawRect(left, top, TILE, TILE);
+                // the dock
+                g.setColor(Color.black);
+                g.fillRect(left + TILE / 2 - 2, top, 4, 3);
+            }
+        }
+    }
+
+    // show the result in a frame of its own
+    public static void showFrame(StartStateSweep.Result result)
+    {
+        JFrame frame = new JFrame("Start state sweep: " + result.count(StartStateSweep.PARKED) + " of "
+                + result.outcome.length + " parked");
+        frame.getContentPane().add(new JScrollPane(new SweepHeatmapPanel(result)));
+        frame.pack();
+        frame.setVisible(true);
+    }
+}
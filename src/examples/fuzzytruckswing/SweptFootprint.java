@@ -0,0 +1,130 @@
+package examples.fuzzytruckswing;
+
+// Continuous collision detection of the truck footprint against the
+// obstacles of an ObstacleLayout. set() gives a move from one pose to
+// another: the point the pose gives goes in a straight line and the
+// heading turns evenly. firstContact() finds the obstacle the footprint
+// touches first on the way and the time it does, from 0 at the start of
+// the move to 1 at its end, however thin the obstacle and however long
+// the move.
+//
+// The time is found by conservative advancement. No point of the
+// footprint moves faster than the point of the pose plus REACH times the
+// turn rate, so when the footprint is d units from an obstacle nothing
+// can touch it before the time advances by d over that bound. The time is
+// advanced so until the footprint is within CONTACT of the obstacle or
+// the move is over. A footprint that grazes an obstacle, staying close
+// for long, counts as touching it after MAX_ADVANCES advances.
+//
+// The broad phase takes the obstacles in the layout's grid cells around
+// the whole move, each once. An instance keeps working storage and must
+// only be used by one thread at a time.
+
+public class SweptFootprint
+{
+    // world units from an obstacle within which the footprint touches it
+    public static final double CONTACT = 1e-3;
+    public static final int MAX_ADVANCES = 100;
+    // the furthest corner from the point of the pose
+    static final double REACH = Math.hypot(TruckGeometry.TRUCK_LENGTH, TruckGeometry.TRUCK_WIDTH / 2.0);
+
+    // the move in world units and radians, and how fast the fastest point of
+    // the footprint moves
+    double x0, y0, theta0, dx, dy, dTheta, speed;
+    final double corners[] = new double[8];
+    // the time of the contact found last, NaN if there was none
+    double time = Double.NaN;
+
+    // the move from pose (xt0, yt0, phit0) to (xt1, yt1, phit1), in the
+    // units of TruckEngine, in a world width by height units
+    public void set(double xt0, double yt0, double phit0, double xt1, double yt1, double phit1, int width,
+                    int height)
+    {
+        x0 = width * xt0 * .01;
+        y0 = height * yt0 * .01;
+        theta0 = phit0 * Math.PI / 180;
+        dx = width * xt1 * .01 - x0;
+        dy = height * yt1 * .01 - y0;
+        dTheta = (phit1 - phit0) * Math.PI / 180;
+        speed = Math.hypot(dx, dy) + REACH * Math.abs(dTheta);
+    }
+
+    // the time of the contact found by the last firstContact(), NaN if
+    // there was none
+    public double getTime()
+    {
+        return time;
+    }
+
+    // the index of the obstacle the footprint touches first on the move,
+    // the lowest of those touched at the same time, -1 if it touches none
+    public int firstContact(ObstacleLayout layout)
+    {
+        time = Double.NaN;
+        if (layout.isEmpty())
+            return -1;
+        // the footprint stays within REACH of the point of the pose
+        double minX = Math.min(x0, x0 + dx) - REACH, maxX = Math.max(x0, x0 + dx) + REACH;
+        double minY = Math.min(y0, y0 + dy) - REACH, maxY = Math.max(y0, y0 + dy) + REACH;
+        if (maxX < layout.originX || maxY < layout.originY
+                || minX >= (double) layout.originX + (double) layout.gridColumns * layout.cellSize
+                || minY >= (double) layout.originY + (double) layout.gridRows * layout.cellSize)
+            return -1;
+
+        int cx0 = layout.cellX((int) Math.floor(Math.max(minX, Integer.MIN_VALUE)));
+        int cy0 = layout.cellY((int) Math.floor(Math.max(minY, Integer.MIN_VALUE)));
+        int cx1 = layout.cellX((int) Math.ceil(Math.min(maxX, Integer.MAX_VALUE)));
+        int cy1 = layout.cellY((int) Math.ceil(Math.min(maxY, Integer.MAX_VALUE)));
+        int best = -1;
+        double bestTime = Double.POSITIVE_INFINITY;
+        int b[] = layout.bounds;
+        for (int cy = cy0; cy <= cy1; cy++)
+            for (int cx = cx0; cx <= cx1; cx++)
+            {
+                int c = cy * layout.gridColumns + cx;
+                for (int p = layout.cellStart[c]; p < layout.cellStart[c + 1]; p++)
+                {
+                    int k = layout.cellItems[p];
+                    // take an obstacle in the first of its cells around
+                    // the move only
+                    if (cx != Math.max(cx0, layout.cellX(b[4 * k])) || cy != Math.max(cy0, layout.cellY(b[4 * k + 1])))
+                        continue;
+                    if (b[4 * k + 2] < minX || b[4 * k] > maxX || b[4 * k + 3] < minY || b[4 * k + 1] > maxY)
+                        continue;
+                    double t = advance(b[4 * k], b[4 * k + 1], b[4 * k + 2], b[4 * k + 3], bestTime);
+                    if (t < bestTime || (t == bestTime && k < best))
+                    {
+                        best = k;
+                        bestTime = t;
+                    }
+                }
+            }
+        if (best >= 0)
+            time = bestTime;
+        return best;
+    }
+
+    // the time the footprint first touches the box, if it does no later
+    // than limit and within the move, else infinity. Like
+    // TruckGeometry.quadOverlapsBox it never touches a box of no width or
+    // height.
+    double advance(double minX, double minY, double maxX, double maxY, double limit)
+    {
+        if (minX == maxX || minY == maxY)
+            return Double.POSITIVE_INFINITY;
+        double t = 0;
+        for (int n = 0; n < MAX_ADVANCES; n++)
+        {
+            if (t > limit || t > 1)
+                return Double.POSITIVE_INFINITY;
+            TruckGeometry.footprint(x0 + t * dx, y0 + t * dy, theta0 + t * dTheta, corners);
+            double d = TruckGeometry.quadBoxDistance(corners, minX, minY, maxX, maxY);
+            if (d <= CONTACT)
+                return t;
+            if (speed == 0)
+                return Double.POSITIVE_INFINITY;
+            t += d / speed;
+        }
+        return t <= limit && t <= 1 ? t : Double.POSITIVE_INFINITY;
+    }
+}
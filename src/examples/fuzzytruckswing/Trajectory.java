@@ -0,0 +1,179 @@
+package examples.fuzzytruckswing;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+// An episode recorded by TrajectoryRecorder, read through a memory map so
+// that any iteration can be looked at without reading the ones before it.
+//
+// The header, in DataOutput format, holds: magic, format, header size,
+// record count (a long), start X, Y and angle, truck speed, world width
+// and height, rule base version, then for the docking and the obstacle
+// rules the rows, the columns and every conclusion, and last the number
+// of obstacles and their {x, y, width, height}. Each record is
+// RECORD_SIZE bytes:
+//
+//     0  int     iteration, counted from 1
+//     4  int     flags: COLLISION, FINISHED, DISABLED
+//     8  double  Xt
+//    16  double  Yt
+//    24  double  Phit
+//    32  double  change of angle
+//    40  long    fired rules, bit maskBit(length, i, j) per rule
+
+public class Trajectory
+{
+    static final int MAGIC = 0x46545243;    // "FTRC"
+    static final int FORMAT = 1;
+    static final int COUNT_OFFSET = 12;
+    static final int RECORD_SIZE = 48;
+
+    public static final int COLLISION = 1, FINISHED = 2, DISABLED = 4;
+
+    final double startX, startY, startPhi, speed;
+    final int worldWidth, worldHeight;
+    final RuleBase rules;
+    final List<int[]> obstacles = new ArrayList<>();
+    final long count;
+    final int headerSize;
+    final MappedByteBuffer records;
+
+    public Trajectory(File f) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(f)))
+        {
+            if (in.readInt() != MAGIC)
+                throw new IOException(f + " is not a trajectory");
+            int format = in.readInt();
+            if (format != FORMAT)
+                throw new IOException(f + " has trajectory format " + format + ", not " + FORMAT);
+            headerSize = in.readInt();
+            count = in.readLong();
+            startX = in.readDouble();
+            startY = in.readDouble();
+            startPhi = in.readDouble();
+            speed = in.readDouble();
+            worldWidth = in.readInt();
+            worldHeight = in.readInt();
+            int version = in.readInt();
+            String conclusions[][][] = new String[2][][];
+            for (int b = 0; b < 2; b++)
+            {
+                conclusions[b] = new String[in.readInt()][in.readInt()];
+                for (String row[] : conclusions[b])
+                    for (int j = 0; j < row.length; j++)
+                        row[j] = in.readUTF();
+            }
+            rules = new RuleBase(conclusions[0], conclusions[1], version);
+            for (int k = in.readInt(); k > 0; k--)
+                obstacles.add(new int[]{in.readInt(), in.readInt(), in.readInt(), in.readInt()});
+        }
+        try (RandomAccessFile file = new RandomAccessFile(f, "r"))
+        {
+            long size = count * RECORD_SIZE;
+            if (file.length() - headerSize < size)
+                throw new IOException(f + " is shorter than its " + count + " records");
+            records = file.getChannel().map(FileChannel.MapMode.READ_ONLY, headerSize, size);
+        }
+    }
+
+    // bit of rule (i, j) of a rule base in the fired rule mask
+    static int maskBit(int length, int i, int j)
+    {
+        int bit = i * TruckRules.COLUMNS + j;
+        return length == FuzzyController.DOCKING ? bit : TruckRules.ROWS * TruckRules.COLUMNS + bit;
+    }
+
+    public int size()
+    {
+        return (int) count;
+    }
+
+    public double getStartX()
+    {
+        return startX;
+    }
+
+    public double getStartY()
+    {
+        return startY;
+    }
+
+    public double getStartPhi()
+    {
+        return startPhi;
+    }
+
+    public double getSpeed()
+    {
+        return speed;
+    }
+
+    public int getWorldWidth()
+    {
+        return worldWidth;
+    }
+
+    public int getWorldHeight()
+    {
+        return worldHeight;
+    }
+
+    // the rule conclusions at the start of the episode
+    public RuleBase getRules()
+    {
+        return rules;
+    }
+
+    public List<int[]> getObstacles()
+    {
+        return obstacles;
+    }
+
+    public int getIteration(int k)
+    {
+        return records.getInt(k * RECORD_SIZE);
+    }
+
+    public int getFlags(int k)
+    {
+        return records.getInt(k * RECORD_SIZE + 4);
+    }
+
+    public double getXt(int k)
+    {
+        return records.getDouble(k * RECORD_SIZE + 8);
+    }
+
+    public double getYt(int k)
+    {
+        return records.getDouble(k * RECORD_SIZE + 16);
+    }
+
+    public double getPhit(int k)
+    {
+        return records.getDouble(k * RECORD_SIZE + 24);
+    }
+
+    public double getChangePhiValue(int k)
+    {
+        return records.getDouble(k * RECORD_SIZE + 32);
+    }
+
+    public long getFiredRules(int k)
+    {
+        return records.getLong(k * RECORD_SIZE + 40);
+    }
+
+    public boolean isFired(int k, int length, int i, int j)
+    {
+        return (getFiredRules(k) & 1L << maskBit(length, i, j)) != 0;
+    }
+}
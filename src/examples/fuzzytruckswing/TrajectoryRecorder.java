@@ -0,0 +1,144 @@
+package examples.fuzzytruckswing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Writes an episode of a TruckEngine to a file that Trajectory reads back:
+// a header with the start state, the world size, the rule conclusions and
+// the obstacles, then one fixed width record per iteration (see
+// Trajectory for the layout). The file is memory mapped and grown a chunk
+// at a time; the record count in the header is raised after each record,
+// so a recording cut short by a crash is still readable.
+//
+// Register the recorder with the engine after the RuleFiringRing it reads
+// the fired rules from. It is meant for the thread stepping the engine.
+
+public class TrajectoryRecorder implements TruckEngineListener
+{
+    // the file grows by this many bytes at a time
+    static final int CHUNK = 1 << 20;
+
+    final RandomAccessFile file;
+    final FileChannel channel;
+    MappedByteBuffer buffer;
+    final int headerSize;
+    long count;
+    final RuleFiringRing.Cursor cursor;
+    final MaskCollector collector = new MaskCollector();
+
+    // record the episode about to start on engine, with the given rules
+    public TrajectoryRecorder(File f, TruckEngine engine, RuleBase rules, RuleFiringRing firings) throws IOException
+    {
+        byte header[] = header(engine, rules);
+        headerSize = header.length;
+        file = new RandomAccessFile(f, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, headerSize + CHUNK);
+        buffer.put(header);
+        cursor = firings.newCursor();
+    }
+
+    static byte[] header(TruckEngine engine, RuleBase rules) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(Trajectory.MAGIC);
+        out.writeInt(Trajectory.FORMAT);
+        // header size, filled in below, and the record count
+        out.writeInt(0);
+        out.writeLong(0);
+        out.writeDouble(engine.X);
+        out.writeDouble(engine.Y);
+        out.writeDouble(engine.Phi);
+        out.writeDouble(engine.Speed);
+        out.writeInt(engine.worldWidth);
+        out.writeInt(engine.worldHeight);
+        out.writeInt(rules.getVersion());
+        for (int length : new int[]{FuzzyController.DOCKING, FuzzyController.OBSTACLE})
+        {
+            String c[][] = rules.getConclusions(length);
+            out.writeInt(c.length);
+            out.writeInt(c[0].length);
+            for (String row[] : c)
+                for (String s : row)
+                    out.writeUTF(s);
+        }
+        ObstacleLayout obstacles = engine.getObstacles();
+        out.writeInt(obstacles.size());
+        for (int k = 0; k < obstacles.size(); k++)
+            for (int v : obstacles.get(k))
+                out.writeInt(v);
+        out.close();
+        byte b[] = bytes.toByteArray();
+        int size = b.length;
+        b[8] = (byte) (size >>> 24);
+        b[9] = (byte) (size >>> 16);
+        b[10] = (byte) (size >>> 8);
+        b[11] = (byte) size;
+        return b;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    public void stepCompleted(TruckEngine engine)
+    {
+        collector.mask = 0;
+        cursor.poll(collector);
+        int position = (int) (headerSize + count * Trajectory.RECORD_SIZE);
+        if (position + Trajectory.RECORD_SIZE > buffer.capacity())
+        {
+            try
+            {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, buffer.capacity() + CHUNK);
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException("Can not grow the trajectory file", e);
+            }
+        }
+        buffer.putInt(position, engine.getIteration());
+        buffer.putInt(position + 4, (engine.isColliding() ? Trajectory.COLLISION : 0)
+                | (engine.isFinished() ? Trajectory.FINISHED : 0) | (engine.isDisabled() ? Trajectory.DISABLED : 0));
+        buffer.putDouble(position + 8, engine.getXt());
+        buffer.putDouble(position + 16, engine.getYt());
+        buffer.putDouble(position + 24, engine.getPhit());
+        buffer.putDouble(position + 32, engine.getChangePhiValue());
+        buffer.putLong(position + 40, collector.mask);
+        buffer.putLong(Trajectory.COUNT_OFFSET, ++count);
+    }
+
+    // stop recording and close the file; the file may run on past the
+    // last record, the count in the header says where they end
+    public void close() throws IOException
+    {
+        cursor.close();
+        buffer.force();
+        buffer = null;
+        channel.close();
+        file.close();
+    }
+
+    // the rules fired in a step as a bit mask
+    static class MaskCollector implements RuleFiringRing.Handler
+    {
+        long mask;
+
+        public void ruleFired(int length, int i, int j, double strength)
+        {
+            mask |= 1L << Trajectory.maskBit(length, i, j);
+        }
+
+        public void stepEnded(int iteration, boolean finished, boolean disabled)
+        {
+        }
+    }
+}
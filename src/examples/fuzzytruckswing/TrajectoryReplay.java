@@ -0,0 +1,142 @@
+package examples.fuzzytruckswing;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
+// Plays a Trajectory back in the applet's view, at any number of
+// iterations per second, and seeks to any iteration with the slider. The
+// poses and fired rules come from the recording, so no rule is evaluated.
+// The rule buttons of the fired rules are colored as if they fired at
+// full strength, since the recording holds no strengths. The recorded
+// obstacles replace those of the view while the replay window is open.
+
+public class TrajectoryReplay extends JFrame
+{
+    // the colors of a rule firing at full strength in TruckSimulation
+    static final Color FIRED_COLOR = new Color(255, 0, 0);
+    static final Color OBS_FIRED_COLOR = new Color(0, 255, 0);
+
+    final FuzzyTruckJApplet parent;
+    final Trajectory trajectory;
+    // all poses of the recording, shown as the trace up to the position
+    final double poses[];
+
+    final JSlider slider;
+    final JSpinner speed = new JSpinner(new SpinnerNumberModel(30.0, 0.5, 100000.0, 10.0));
+    final JButton play = new JButton("Play");
+    final JCheckBox tracing = new JCheckBox("Trace");
+    final Timer timer = new Timer(TruckSimulation.FRAME_INTERVAL, e -> advance());
+    // iterations to move on by at the next timer tick, below 1
+    double pending;
+
+    public TrajectoryReplay(FuzzyTruckJApplet parent, Trajectory trajectory, String name)
+    {
+        super("Replay " + name + ": " + trajectory.size() + " iterations");
+        this.parent = parent;
+        this.trajectory = trajectory;
+        poses = new double[3 * trajectory.size()];
+        for (int k = 0; k < trajectory.size(); k++)
+        {
+            poses[3 * k] = trajectory.getXt(k);
+            poses[3 * k + 1] = trajectory.getYt(k);
+            poses[3 * k + 2] = trajectory.getPhit(k);
+        }
+
+        slider = new JSlider(0, Math.max(0, trajectory.size() - 1), 0);
+        slider.setPreferredSize(new Dimension(400, slider.getPreferredSize().height));
+        slider.addChangeListener(e -> show(slider.getValue()));
+        speed.setToolTipText("Iterations per second");
+        play.addActionListener(this::playPressed);
+        tracing.addActionListener(e -> show(slider.getValue()));
+
+        JPanel controls = new JPanel();
+        controls.add(play);
+        controls.add(new JLabel("Iterations/s"));
+        controls.add(speed);
+        controls.add(tracing);
+        getContentPane().add(slider, BorderLayout.NORTH);
+        getContentPane().add(controls, BorderLayout.SOUTH);
+        pack();
+
+        setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        addWindowListener(new WindowAdapter()
+        {
+            public void windowClosed(WindowEvent e)
+            {
+                timer.stop();
+                parent.viewArea.clearTrace();
+                parent.viewArea.setWorldSize(parent.Truck.engine.getWorldWidth(),
+                        parent.Truck.engine.getWorldHeight());
+                parent.resetConclusionButtonsBackground(TruckSimulation.OFF_COLOR);
+            }
+        });
+
+        parent.Truck.putMsg(TruckSimulation.PAUSE);
+        parent.viewArea.list.clear();
+        parent.viewArea.list.addAll(trajectory.getObstacles());
+        parent.Truck.obstaclesChanged();
+        // the poses and obstacles are in the world they were recorded in
+        parent.viewArea.setWorldSize(trajectory.getWorldWidth(), trajectory.getWorldHeight());
+        show(0);
+    }
+
+    void playPressed(ActionEvent e)
+    {
+        if (timer.isRunning())
+        {
+            timer.stop();
+            play.setText("Play");
+        }
+        else
+        {
+            if (slider.getValue() == slider.getMaximum())
+                slider.setValue(0);
+            pending = 0;
+            timer.start();
+            play.setText("Pause");
+        }
+    }
+
+    void advance()
+    {
+        pending += ((Number) speed.getValue()).doubleValue() * TruckSimulation.FRAME_INTERVAL / 1000.0;
+        int steps = (int) pending;
+        pending -= steps;
+        int k = Math.min(slider.getMaximum(), slider.getValue() + steps);
+        if (k == slider.getMaximum())
+        {
+            timer.stop();
+            play.setText("Play");
+        }
+        slider.setValue(k);
+    }
+
+    // show iteration k of the recording
+    void show(int k)
+    {
+        if (trajectory.size() == 0)
+            return;
+        int flags = trajectory.getFlags(k);
+        String status = "Replay: angle change = " + TruckSimulation.nf.format(trajectory.getChangePhiValue(k))
+                + ", Iteration = " + trajectory.getIteration(k)
+                + ((flags & Trajectory.COLLISION) != 0 ? ", avoiding an obstacle" : "")
+                + ((flags & Trajectory.FINISHED) != 0 ? " - parking successful" : "")
+                + ((flags & Trajectory.DISABLED) != 0 ? " - parking unsuccessful" : "");
+        parent.viewArea.showFrame(new TruckSimulation.Frame(poses[3 * k], poses[3 * k + 1], poses[3 * k + 2], status, 0,
+                poses, tracing.isSelected() ? 3 * k + 3 : 0));
+        parent.JLabelSimulationStatus.setText(status);
+
+        parent.resetConclusionButtonsBackground(TruckSimulation.OFF_COLOR);
+        for (int i = 0; i < TruckRules.ROWS; i++)
+            for (int j = 0; j < TruckRules.COLUMNS; j++)
+                if (trajectory.isFired(k, FuzzyController.DOCKING, i, j))
+                    parent.setConclusionButtonBackground(i, j, FIRED_COLOR, FuzzyController.DOCKING);
+        for (int i = 0; i < TruckRules.DefaultObsConclusions.length; i++)
+            for (int j = 0; j < TruckRules.COLUMNS; j++)
+                if (trajectory.isFired(k, FuzzyController.OBSTACLE, i, j))
+                    parent.setConclusionButtonBackground(i, j, OBS_FIRED_COLOR, FuzzyController.OBSTACLE);
+    }
+}
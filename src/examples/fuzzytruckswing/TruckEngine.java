@@ -0,0 +1,556 @@
+package examples.fuzzytruckswing;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// The truck parking algorithm without any user interface. The engine holds
+// the state of one truck; step() does one iteration and runToCompletion()
+// drives a whole episode. Anything that wants to show the progress (the
+// applet, for one) registers as a TruckEngineListener. Given a StepTimings
+// the engine also times the phases of every step.
+//
+// With clearance steering on, the engine looks the truck up in the
+// DistanceField of its obstacles every step: ClearanceRules turn it away
+// from the nearest obstacle as it closes in, and a step whose look-ahead
+// can not reach any obstacle skips the obstacle search.
+//
+// With path planning on, the engine asks the PathPlanner of its obstacles
+// for a way round them at the start of an episode in which the docking
+// rules alone would not get past them, and the docking rules steer the
+// truck along it until the dock is near.
+
+public class TruckEngine
+{
+    public static final double PIBY180 = Math.PI / 180;   //1degree ==
+    // steps ahead the truck looks for obstacles
+    public static final int LOOKAHEAD = 4;
+    // the largest change of angle clearance steering leaves the truck
+    // with, the ends of the changePhi universe
+    static final double MAX_TURN = 45;
+    // world units ahead along a planned path the truck steers for
+    static final double TRACK = 48;
+
+    volatile FuzzyController controller;
+
+    // obstacles in world units, in a world worldWidth by worldHeight
+    // units, see TruckGeometry; set from any thread, a step reads the
+    // layout once
+    volatile ObstacleLayout obstacles = ObstacleLayout.EMPTY;
+    volatile int worldWidth = TruckGeometry.WORLD_WIDTH, worldHeight = TruckGeometry.WORLD_HEIGHT;
+
+    // X, Y and Phi hold the starting state for the truck
+    double X = 50, Y = 50, Phi = 90;
+    // Xt, Yt, Phit hold state of truck as simulation progresses
+    double Xt = 50, Yt = 50, Phit = 90;
+    // speed of truck
+    double Speed = 1;
+    // iteration count during simulation
+    int Iteration = 0;
+    boolean finished = false, truck_disabled = false;
+    // true while the truck is backing away from an obstacle
+    boolean isObs = false;
+    // true if the last step steered by the obstacle rules
+    boolean collided = false;
+    // angle change applied in the last step
+    double changePhiValue;
+    // truck corners one look ahead, as TruckGeometry.footprint gives
+    // them, reused every step
+    final double lookahead[] = new double[8];
+    // true to look for obstacles all the way to the look-ahead pose,
+    // false to test the look-ahead pose only
+    boolean sweptCollision = true;
+    // the moves of the footprint swept, reused every step
+    final SweptFootprint sweep = new SweptFootprint();
+    // steps ahead the footprint touches the obstacle found in the last
+    // step, NaN if none was
+    double contactTime = Double.NaN;
+    // true to steer by the clearance too, see setClearanceSteering; set
+    // from the applet while the simulation thread steps
+    volatile boolean clearanceSteering = false;
+    final ClearanceRules clearanceRules = new ClearanceRules();
+    // distance in world units from the truck to the nearest obstacle in
+    // the last step, infinite if it was not looked up
+    double clearance = Double.POSITIVE_INFINITY;
+    // truck corners and the way away from an obstacle, reused every step
+    final double corners[] = new double[8], away[] = new double[2];
+    // true to follow a planned path, see setPathPlanning
+    volatile boolean pathPlanning = false;
+    // the path being followed, x and y at 2 * i in the units of Xt and
+    // Yt, null if there is none; and the waypoint the truck last passed
+    double path[];
+    int waypoint;
+    // the docking rule inputs track() sets
+    double trackX, trackPhi;
+
+    RuleFiringListener firingListener;
+    final List<TruckEngineListener> listeners = new CopyOnWriteArrayList<>();
+    // where the phases of every step are timed, null if they are not
+    StepTimings timings;
+
+    public TruckEngine(FuzzyController controller)
+    {
+        this.controller = controller;
+    }
+
+    public void setController(FuzzyController c)
+    {
+        controller = c;
+    }
+
+    public FuzzyController getController()
+    {
+        return controller;
+    }
+
+    public void setStart(double x, double y, double angle)
+    {
+        X = x;
+        Y = y;
+        Phi = angle;
+    }
+
+    public void setTruckSpeed(double s)
+    {
+        Speed = s;
+    }
+
+    // obstacles as {x, y, width, height}; the list is copied, so call
+    // this again after changing it
+    public void setObstacles(List<int[]> list)
+    {
+        obstacles = new ObstacleLayout(list);
+    }
+
+    public void setObstacles(ObstacleLayout layout)
+    {
+        obstacles = layout;
+    }
+
+    public ObstacleLayout getObstacles()
+    {
+        return obstacles;
+    }
+
+    public void setWorldSize(int width, int height)
+    {
+        worldWidth = width;
+        worldHeight = height;
+    }
+
+    public int getWorldWidth()
+    {
+        return worldWidth;
+    }
+
+    public int getWorldHeight()
+    {
+        return worldHeight;
+    }
+
+    // Look for obstacles along the whole way to the look-ahead pose: the
+    // footprint swept through the next step, turning as the truck does,
+    // and then straight on to the look-ahead pose. No obstacle is missed
+    // however thin it is and however fast the truck goes. false tests
+    // the look-ahead pose only, with the old heading, as the truck always
+    // has.
+    public void setSweptCollision(boolean b)
+    {
+        sweptCollision = b;
+    }
+
+    public boolean isSweptCollision()
+    {
+        return sweptCollision;
+    }
+
+    // steps ahead the footprint touches the obstacle that steered the
+    // last step, from 0 to LOOKAHEAD; NaN if no obstacle did or the truck
+    // was backing away
+    public double getContactTime()
+    {
+        return contactTime;
+    }
+
+    // Steer by the clearance of the truck from the obstacles as well as by
+    // the docking rules, and skip the obstacle search when the layout's
+    // DistanceField shows nothing within reach of the look-ahead. The
+    // field is built for a layout the first time a step needs it. false
+    // steers by the docking and obstacle rules only, as the truck always
+    // has.
+    public void setClearanceSteering(boolean b)
+    {
+        clearanceSteering = b;
+    }
+
+    public boolean isClearanceSteering()
+    {
+        return clearanceSteering;
+    }
+
+    // distance in world units from the truck to the nearest obstacle at
+    // the start of the last step, infinite if clearance steering is off,
+    // there are no obstacles or the truck was backing away from one
+    public double getClearance()
+    {
+        return clearance;
+    }
+
+    // Plan a way to the dock round the obstacles at the start of every
+    // episode in which the docking rules alone, run first with no
+    // obstacles, touch one or do not park, see PathPlanner; and steer
+    // along it. The docking rules are given the truck's offset from, and
+    // angle to, the line from the waypoint it last passed to the first
+    // one TRACK world units on, as if that line led up to the dock. Once
+    // that is the dock itself they steer for the dock as always. With no
+    // plan found, or false, the truck steers for the dock from the start,
+    // as it always has.
+    public void setPathPlanning(boolean b)
+    {
+        pathPlanning = b;
+    }
+
+    public boolean isPathPlanning()
+    {
+        return pathPlanning;
+    }
+
+    // the path followed in this episode, as PathPlanner.plan gives it,
+    // null if there is none
+    public double[] getPath()
+    {
+        return path;
+    }
+
+    public void setRuleFiringListener(RuleFiringListener l)
+    {
+        firingListener = l;
+    }
+
+    // time the phases of every step from now on, null to stop
+    public void setTimings(StepTimings t)
+    {
+        timings = t;
+    }
+
+    public StepTimings getTimings()
+    {
+        return timings;
+    }
+
+    public void addListener(TruckEngineListener l)
+    {
+        listeners.add(l);
+    }
+
+    public void removeListener(TruckEngineListener l)
+    {
+        listeners.remove(l);
+    }
+
+    // Set the truck to its initial state before any computations
+    public void reset()
+    {
+        Xt = X;
+        Yt = Y;
+        Phit = Phi;
+
+        finished = false;
+        truck_disabled = false;
+        isObs = false;
+        contactTime = Double.NaN;
+        clearance = Double.POSITIVE_INFINITY;
+        path = null;
+        waypoint = 0;
+        collided = false;
+        changePhiValue = 0;
+        Iteration = 0;
+    }
+
+    // true once the truck has parked or left the canvas
+    public boolean isComplete()
+    {
+        return finished || truck_disabled;
+    }
+
+    public boolean isFinished()
+    {
+        return finished;
+    }
+
+    public boolean isDisabled()
+    {
+        return truck_disabled;
+    }
+
+    public boolean isColliding()
+    {
+        return collided;
+    }
+
+    public int getIteration()
+    {
+        return Iteration;
+    }
+
+    public double getXt()
+    {
+        return Xt;
+    }
+
+    public double getYt()
+    {
+        return Yt;
+    }
+
+    public double getPhit()
+    {
+        return Phit;
+    }
+
+    public double getChangePhiValue()
+    {
+        return changePhiValue;
+    }
+
+    // Core of the fuzzy truck algorithm: one iteration. Returns false
+    // once the episode is over.
+    public boolean step()
+    {
+        if (isComplete())
+            return false;
+        ObstacleLayout obstacles = this.obstacles;
+
+        // if this is the first time we run the alg.
+        // then start from the initial state.
+        if (Iteration == 0)
+        {
+            Xt = X;
+            Yt = Y;
+            Phit = Phi;
+        }
+        StepTimings t = timings;
+        // planning is timed on its own, outside the step
+        if (Iteration == 0)
+        {
+            long planning = t == null ? 0 : System.nanoTime();
+            path = null;
+            if (pathPlanning && !obstacles.isEmpty())
+            {
+                PathPlanner planner = obstacles.getPlanner(worldWidth, worldHeight);
+                if (!planner.isClearRun(controller, Speed, X, Y, Phi))
+                    path = planner.plan(X, Y, Phi);
+                if (t != null)
+                    t.mark(StepTimings.PLANNING, planning);
+            }
+        }
+        long start = t == null ? 0 : System.nanoTime(), mark = start;
+        // pick up any rules edited since the last step
+        controller.updateRules();
+        // compute the results of the rule firing for the current xpos and phi values.
+        double xpos = Xt, phi = Phit;
+        if (path != null)
+        {
+            track();
+            xpos = trackX;
+            phi = trackPhi;
+        }
+        changePhiValue = controller.getConclusion(FuzzyController.DOCKING, xpos, phi, firingListener);
+        DistanceField field = clearanceSteering && !obstacles.isEmpty() ? obstacles.getDistanceField() : null;
+        clearance = Double.POSITIVE_INFINITY;
+        if (field != null && !isObs)
+            changePhiValue = Math.max(-MAX_TURN, Math.min(MAX_TURN, changePhiValue + clearanceTurn(field)));
+        if (t != null)
+            mark = t.mark(StepTimings.DOCKING, mark);
+
+        // the move the docking rules want, unless an obstacle is in the way
+        double angleInRadians = (Phit + changePhiValue) * PIBY180;
+
+        double x = Speed * Math.cos(angleInRadians);
+        double y = Speed * Math.sin(angleInRadians);
+        double xb = 0;
+        double yb = 0;
+        if (!sweptCollision)
+            TruckGeometry.footprint(worldWidth * (Xt + LOOKAHEAD * x) * .01, worldHeight * (Yt - LOOKAHEAD * y) * .01,
+                    Phit * PIBY180, lookahead);
+        if (t != null)
+            mark = t.mark(StepTimings.COORDS, mark);
+        boolean flag = false;
+        int k;
+        contactTime = Double.NaN;
+        if (isObs)
+            // while backing away the first obstacle steers, as it always has
+            k = obstacles.isEmpty() ? -1 : 0;
+        else if (field != null && field.lowerBound(worldWidth * Xt * .01, worldHeight * Yt * .01)
+                > SweptFootprint.REACH + SweptFootprint.CONTACT
+                + LOOKAHEAD * Math.abs(Speed) * Math.max(worldWidth, worldHeight) * .01)
+            // the footprint stays within REACH of the point of the pose,
+            // which goes no further than the look-ahead
+            k = -1;
+        else if (sweptCollision)
+        {
+            sweep.set(Xt, Yt, Phit, Xt + x, Yt - y, Phit + changePhiValue, worldWidth, worldHeight);
+            k = sweep.firstContact(obstacles);
+            if (k >= 0)
+                contactTime = sweep.getTime();
+            else
+            {
+                sweep.set(Xt + x, Yt - y, Phit + changePhiValue, Xt + LOOKAHEAD * x, Yt - LOOKAHEAD * y,
+                        Phit + changePhiValue, worldWidth, worldHeight);
+                k = sweep.firstContact(obstacles);
+                if (k >= 0)
+                    contactTime = 1 + (LOOKAHEAD - 1) * sweep.getTime();
+            }
+        }
+        else
+        {
+            k = obstacles.firstCollision(lookahead);
+            if (k >= 0)
+                contactTime = LOOKAHEAD;
+        }
+        if (t != null)
+            mark = t.mark(StepTimings.COLLISION, mark);
+        if (k >= 0)
+        {
+            int[] o = obstacles.get(k);
+            // the obstacle in percent of the world's width, as Xt is
+            double xa = o[0] * 100.0 / worldWidth;
+            double width = o[2] * 100.0 / worldWidth;
+            changePhiValue = controller.getConclusion(FuzzyController.OBSTACLE,
+                    ((Xt + 2) - xa) / width, Phit, firingListener);
+            if (t != null)
+                mark = t.mark(StepTimings.OBSTACLE, mark);
+            angleInRadians = (Phit + changePhiValue) * PIBY180;
+            xb = Speed * Math.cos(angleInRadians);
+            yb = Speed * Math.sin(angleInRadians);
+            isObs = !isObs;
+            flag = true;
+        }
+        if (!flag)
+        {
+            Phit += changePhiValue;
+            Xt += x;
+            Yt -= y;
+            isObs = false;
+        }
+        else
+        {
+            // the way round the obstacle: turn as the obstacle rules say,
+            // and on first meeting it back off twice the move first
+            Phit += changePhiValue;
+            if (isObs)
+            {
+                Xt -= 2 * x;
+                Yt += 2 * y;
+            }
+            Xt += xb;
+            Yt -= yb;
+        }
+
+        collided = flag;
+
+        // test if the simulation is complete
+        test(Xt, Yt, Phit);
+        Iteration++;
+        if (t != null)
+            mark = t.mark(StepTimings.TEST, mark);
+
+        for (TruckEngineListener l : listeners)
+            l.stepCompleted(this);
+        if (t != null)
+            t.record(StepTimings.STEP, t.mark(StepTimings.LISTENERS, mark) - start);
+
+        return !isComplete();
+    }
+
+    // Set trackX and trackPhi, the docking rule inputs that steer along
+    // the path, passing the waypoints the truck has gone by.
+    void track()
+    {
+        int last = path.length / 2 - 1;
+        double px = worldWidth * Xt * .01, py = worldHeight * Yt * .01;
+        // gone by the end of the segment from the waypoint
+        while (waypoint < last)
+        {
+            double ax = worldWidth * path[2 * waypoint] * .01, ay = worldHeight * path[2 * waypoint + 1] * .01;
+            double ex = worldWidth * path[2 * waypoint + 2] * .01 - ax;
+            double ey = worldHeight * path[2 * waypoint + 3] * .01 - ay;
+            if ((px - ax) * ex + (py - ay) * ey < ex * ex + ey * ey)
+                break;
+            waypoint++;
+        }
+        int j = waypoint + 1;
+        double ax = worldWidth * path[2 * waypoint] * .01, ay = worldHeight * path[2 * waypoint + 1] * .01;
+        while (j < last && Math.hypot(worldWidth * path[2 * j] * .01 - ax, worldHeight * path[2 * j + 1] * .01 - ay)
+                < TRACK)
+            j++;
+        if (j >= last)
+        {
+            trackX = Xt;
+            trackPhi = Phit;
+            return;
+        }
+        // the line's heading with y growing upwards, and the truck's offset
+        // to its right
+        double theta = Math.atan2(-(worldHeight * path[2 * j + 1] * .01 - ay), worldWidth * path[2 * j] * .01 - ax);
+        double offset = (px - ax) * Math.sin(theta) + (py - ay) * Math.cos(theta);
+        trackX = 50 + offset * 100 / worldWidth;
+        trackPhi = 90 + Math.IEEEremainder(Phit - theta / PIBY180, 360);
+    }
+
+    // the change of angle ClearanceRules give for the truck's clearance:
+    // the distance of the nearest of its front corners and the point of
+    // its pose, and the bearing of the obstacle from there. The truck
+    // turns about the point of its pose, so turning away from an obstacle
+    // beside or behind it swings its back into it; the rules only turn
+    // away from obstacles ahead.
+    double clearanceTurn(DistanceField field)
+    {
+        double px = worldWidth * Xt * .01, py = worldHeight * Yt * .01;
+        TruckGeometry.footprint(px, py, Phit * PIBY180, corners);
+        double nearest = field.distance(px, py), nx = px, ny = py;
+        for (int i = 0; i < 2; i++)
+        {
+            double d = field.distance(corners[2 * i], corners[2 * i + 1]);
+            if (d < nearest)
+            {
+                nearest = d;
+                nx = corners[2 * i];
+                ny = corners[2 * i + 1];
+            }
+        }
+        clearance = nearest;
+        field.direction(nx, ny, away);
+        if (away[0] == 0 && away[1] == 0)
+            return 0;
+        // towards the obstacle, with y growing upwards as the heading does
+        double bearing = Math.IEEEremainder(Math.atan2(away[1], -away[0]) / PIBY180 - Phit, 360);
+        return clearanceRules.getConclusion(clearance, bearing);
+    }
+
+    // run the episode until the truck parks, leaves the canvas or
+    // maxIterations steps have been done. Returns the iteration count.
+    public int runToCompletion(int maxIterations)
+    {
+        while (Iteration < maxIterations && step())
+        {
+        }
+        return Iteration;
+    }
+
+    // test if the sim. is complete or if the truck left the
+    // canvas.
+    private void test(double x, double y, double angle)
+    {
+        if ((y <= 0.3) &&
+                (Math.abs(50.0 - x) <= 1.0) &&
+                (Math.abs(angle - 90.0) <= 5.0)
+        )
+        {
+            finished = true;
+            return;
+        }
+        if ((y < 0) || (x < 0) || (x > 100) || ((y > 100) &&
+                (Math.abs(x - 50) > 1)))
+            truck_disabled = true;
+    }
+}
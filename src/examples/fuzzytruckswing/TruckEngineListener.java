@@ -0,0 +1,9 @@
+package examples.fuzzytruckswing;
+
+// Observers of a TruckEngine are called on the simulation thread after
+// every step.
+
+public interface TruckEngineListener
+{
+    void stepCompleted(TruckEngine engine);
+}
@@ -0,0 +1,188 @@
+package examples.fuzzytruckswing;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Many trucks parking at once, each a TruckEngine of its own with its own
+// pose and iteration count, all driven by the same CompiledRules. The rules
+// and the obstacle layout are never written, so the only state a truck has
+// to itself is its engine and its FuzzyKernel's working storage. step()
+// moves every truck still under way by one iteration, spread over the
+// workers of a ForkJoinPool. The trucks do not see each other.
+
+public class TruckFleet
+{
+    // a batch of at most this many trucks is stepped by one worker
+    static final int GRAIN = 16;
+
+    final TruckEngine engines[];
+    final ForkJoinPool pool;
+    int steps;
+
+    public TruckFleet(CompiledRules rules, int size)
+    {
+        this(rules, size, ForkJoinPool.commonPool());
+    }
+
+    public TruckFleet(CompiledRules rules, int size, ForkJoinPool pool)
+    {
+        this.pool = pool;
+        engines = new TruckEngine[size];
+        for (int k = 0; k < size; k++)
+            engines[k] = new TruckEngine(new FuzzyKernel(rules));
+    }
+
+    public int size()
+    {
+        return engines.length;
+    }
+
+    public TruckEngine getEngine(int k)
+    {
+        return engines[k];
+    }
+
+    public void setObstacles(List<int[]> list, int width, int height)
+    {
+        ObstacleLayout layout = new ObstacleLayout(list);
+        for (TruckEngine e : engines)
+        {
+            e.setObstacles(layout);
+            e.setWorldSize(width, height);
+        }
+    }
+
+    public void setTruckSpeed(double s)
+    {
+        for (TruckEngine e : engines)
+            e.setTruckSpeed(s);
+    }
+
+    // put the trucks at start states drawn at random from the canvas and
+    // the angles the applet allows, -90 to 270 degrees
+    public void randomStarts(long seed)
+    {
+        Random r = new Random(seed);
+        for (TruckEngine e : engines)
+        {
+            e.setStart(100 * r.nextDouble(), 100 * r.nextDouble(), -90 + 360 * r.nextDouble());
+            e.reset();
+        }
+        steps = 0;
+    }
+
+    // one iteration for every truck still under way; returns the number
+    // of trucks that are
+    public int step()
+    {
+        pool.invoke(new Steps(0, engines.length));
+        steps++;
+        return countActive();
+    }
+
+    // step until every truck has parked or left the canvas, or maxSteps
+    // steps have been done
+    public int runToCompletion(int maxSteps)
+    {
+        while (steps < maxSteps && step() > 0)
+        {
+        }
+        return steps;
+    }
+
+    public int getSteps()
+    {
+        return steps;
+    }
+
+    public int countActive()
+    {
+        int n = 0;
+        for (TruckEngine e : engines)
+            if (!e.isComplete())
+                n++;
+        return n;
+    }
+
+    public int countParked()
+    {
+        int n = 0;
+        for (TruckEngine e : engines)
+            if (e.isFinished())
+                n++;
+        return n;
+    }
+
+    // the pose of every truck as x, y, angle at 3 * k, into poses, which
+    // is returned; a new array if poses is too small
+    public double[] getPoses(double poses[])
+    {
+        if (poses == null || poses.length < 3 * engines.length)
+            poses = new double[3 * engines.length];
+        for (int k = 0; k < engines.length; k++)
+        {
+            poses[3 * k] = engines[k].getXt();
+            poses[3 * k + 1] = engines[k].getYt();
+            poses[3 * k + 2] = engines[k].getPhit();
+        }
+        return poses;
+    }
+
+    class Steps extends RecursiveAction
+    {
+        final int lo, hi;
+
+        Steps(int lo, int hi)
+        {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected void compute()
+        {
+            if (hi - lo > GRAIN)
+            {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Steps(lo, mid), new Steps(mid, hi));
+                return;
+            }
+            for (int k = lo; k < hi; k++)
+                engines[k].step();
+        }
+    }
+
+    // java examples.fuzzytruckswing.TruckFleet [trucks [obstacles]]
+    // load test: parks a fleet of trucks, 500 unless given, from random
+    // start states among random obstacles and prints how fast it went
+    public static void main(String args[])
+    {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int obstacles = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        TruckFleet fleet = new TruckFleet(CompiledRules.compile(new TruckRules()), size);
+        ObstacleGenerator generator = new ObstacleGenerator(2);
+        generator.setCount(obstacles);
+        fleet.setObstacles(generator.generate(), TruckGeometry.WORLD_WIDTH, TruckGeometry.WORLD_HEIGHT);
+
+        for (int round = 0; round < 3; round++)
+        {
+            fleet.randomStarts(round);
+            long iterations = 0;
+            long start = System.nanoTime();
+            while (fleet.getSteps() < 2000)
+            {
+                int active = fleet.countActive();
+                if (active == 0)
+                    break;
+                iterations += active;
+                fleet.step();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(size + " trucks on " + fleet.pool.getParallelism() + " worker(s): " + fleet.getSteps()
+                    + " steps in " + String.format("%.3f", seconds) + " s, "
+                    + String.format("%.0f", iterations / seconds) + " truck iterations/s, "
+                    + fleet.countParked() + " parked");
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package examples.fuzzytruckswing;
+
+// Geometry of the truck footprint and the separating axis collision test.
+// Nothing in here touches AWT, so the simulation can run headless.
+//
+// The simulation works in world units, in doubles: the truck is
+// TRUCK_LENGTH by TRUCK_WIDTH of them, obstacles are given in them, and
+// the world is WORLD_WIDTH by WORLD_HEIGHT unless an engine is given
+// another size. A pose's Xt and Yt are percentages of the world's width
+// and height, Yt growing downwards, with the dock at the middle of the
+// top edge. Only DrawPanel turns world units into pixels, so a run gives
+// the same results however large the window is, or with no window.
+
+public class TruckGeometry
+{
+    // variables for the size of the truck
+    public static final int TRUCK_WIDTH = 16;
+    public static final int TRUCK_LENGTH = 32;
+    public static final int CAB_WIDTH = 6;
+    // the world the applet shows, in world units
+    public static final int WORLD_WIDTH = 400;
+    public static final int WORLD_HEIGHT = 400;
+
+    // given the coordinates and the angle of the truck and the size of
+    // the world, compute the vertices of the truck rounded to whole world
+    // units; the engine uses the unrounded footprint
+    public static int[][] computeCoords(double xt, double yt, double phit, int width, int height)
+    {
+        return computeCoords(xt, yt, phit, width, height, new int[4][2]);
+    }
+
+    // the same, into ord, which is returned
+    public static int[][] computeCoords(double xt, double yt, double phit, int width, int height, int[][] ord)
+    {
+        double x = width * xt * .01;
+        double y = height * yt * .01;
+        double theta = phit * Math.PI / 180.0;
+        double truckWidthBy2 = TRUCK_WIDTH / 2.0;
+        double truckWidthBy2TimesSine = truckWidthBy2 * Math.sin(theta);
+        double truckWidthBy2TimesCos = truckWidthBy2 * Math.cos(theta);
+        double truckLengthTimesSine = (TRUCK_LENGTH * Math.sin(theta));
+        double truckLengthTimesCos = (TRUCK_LENGTH * Math.cos(theta));
+        ord[0][0] = (int) Math.round(x - truckWidthBy2TimesSine);
+        ord[0][1] = (int) Math.round(y - truckWidthBy2TimesCos);
+        ord[1][0] = (int) Math.round(x + truckWidthBy2TimesSine);
+        ord[1][1] = (int) Math.round(y + truckWidthBy2TimesCos);
+        ord[2][0] = (int) Math.round(x + truckWidthBy2TimesSine - truckLengthTimesCos);
+        ord[2][1] = (int) Math.round(y + truckWidthBy2TimesCos + truckLengthTimesSine);
+        ord[3][0] = (int) Math.round(x - truckWidthBy2TimesSine - truckLengthTimesCos);
+        ord[3][1] = (int) Math.round(y - truckWidthBy2TimesCos + truckLengthTimesSine);
+
+        return ord;
+    }
+
+    public static double dot(int[] a, double[] b)
+    {
+        return a[0] * b[0] + a[1] * b[1];
+    }
+
+    public static double[] normalize(int[] a)
+    {
+        double d = Math.sqrt(a[0] * a[0] + a[1] * a[1]);
+        return new double[]{a[0] / d, a[1] / d};
+    }
+
+    public static int[] perp(int[] a)
+    {
+        return new int[]{a[1], -a[0]};
+    }
+
+    public static double[] project(int[][] a, int[] axis)
+    {
+        double[] tem = normalize(axis);
+        double min = dot(a[0], tem);
+        double max = min;
+        for (int i = 0; i < a.length; i++)
+        {
+            double proj = dot(a[i], tem);
+            if (proj < min)
+                min = proj;
+            if (proj > max)
+                max = proj;
+        }
+        return new double[]{min, max};
+    }
+
+    static boolean contains(double n, double[] range)
+    {
+        double a = range[0];
+        double b = range[1];
+        if (b < a)
+        {
+            a = b;
+            b = range[0];
+        }
+        return (n >= a && n <= b);
+    }
+
+    static boolean overlap(double[] a, double[] b)
+    {
+        if (contains(a[0], b))
+            return true;
+        if (contains(a[1], b))
+            return true;
+        if (contains(b[0], a))
+            return true;
+        if (contains(b[1], a))
+            return true;
+        return false;
+    }
+
+    public static boolean SAT(int[][] a, int[][] b)
+    {
+        for (int i = 0; i < a.length; i++)
+        {
+            int[] axis;
+            if (i != a.length - 1)
+            {
+                axis = new int[]{a[i + 1][0] - a[i][0], a[i + 1][1] - a[i][1]};
+            }
+            else
+            {
+                axis = new int[]{a[0][0] - a[a.length - 1][0], a[0][1] - a[a.length - 1][1]};
+            }
+            axis = perp(axis);
+            double[] qa = project(a, axis);
+            double[] qb = project(b, axis);
+            if (!overlap(qa, qb))
+                return false;
+        }
+        for (int i = 0; i < b.length; i++)
+        {
+            int[] axis;
+            if (i != a.length - 1)
+            {
+                axis = new int[]{b[i + 1][0] - b[i][0], b[i + 1][1] - b[i][1]};
+            }
+            else
+            {
+                axis = new int[]{b[0][0] - b[b.length - 1][0], b[0][1] - b[b.length - 1][1]};
+            }
+            axis = perp(axis);
+            double[] qa = project(a, axis);
+            double[] qb = project(b, axis);
+            if (!overlap(qa, qb))
+                return false;
+        }
+        return true;
+    }
+
+    // Separating axis test of the truck corners q, a convex quadrilateral
+    // in order, against the box from (minX, minY) to (maxX, maxY); touching
+    // counts as overlapping. Gives the same answer as SAT against the box
+    // corners, but needs only the two box axes and the four edge normals of
+    // q, works in exact integer arithmetic and allocates nothing. Where the
+    // two just touch SAT goes either way on rounding; this says they
+    // overlap. Like SAT it never finds a collision with a box of no width
+    // or height.
+    public static boolean quadOverlapsBox(int[][] q, int minX, int minY, int maxX, int maxY)
+    {
+        if (minX == maxX || minY == maxY)
+            return false;
+        // the box axes
+        int qMinX = q[0][0], qMaxX = qMinX, qMinY = q[0][1], qMaxY = qMinY;
+        for (int i = 1; i < 4; i++)
+        {
+            qMinX = Math.min(qMinX, q[i][0]);
+            qMaxX = Math.max(qMaxX, q[i][0]);
+            qMinY = Math.min(qMinY, q[i][1]);
+            qMaxY = Math.max(qMaxY, q[i][1]);
+        }
+        if (qMaxX < minX || qMinX > maxX || qMaxY < minY || qMinY > maxY)
+            return false;
+        // the edge normals of q
+        for (int i = 0; i < 4; i++)
+        {
+            int j = (i + 1) & 3;
+            long nx = q[j][1] - q[i][1];
+            long ny = q[i][0] - q[j][0];
+            // corners rounded onto each other make an edge with no normal,
+            // which separates nothing
+            if (nx == 0 && ny == 0)
+                continue;
+            long min = nx * q[0][0] + ny * q[0][1], max = min;
+            for (int k = 1; k < 4; k++)
+            {
+                long p = nx * q[k][0] + ny * q[k][1];
+                if (p < min)
+                    min = p;
+                else if (p > max)
+                    max = p;
+            }
+            // the box corners nearest and furthest along the normal
+            long boxMin = nx * (nx >= 0 ? minX : maxX) + ny * (ny >= 0 ? minY : maxY);
+            long boxMax = nx * (nx >= 0 ? maxX : minX) + ny * (ny >= 0 ? maxY : minY);
+            if (max < boxMin || boxMax < min)
+                return false;
+        }
+        return true;
+    }
+
+    // the corners of the truck with the point a pose gives at (x, y)
+    // world units and the heading at theta radians, in the order of
+    // computeCoords but not rounded, as x and y at 2 * i of c, which is
+    // returned
+    public static double[] footprint(double x, double y, double theta, double c[])
+    {
+        double sin = Math.sin(theta), cos = Math.cos(theta);
+        double halfWidth = TRUCK_WIDTH / 2.0;
+        c[0] = x - halfWidth * sin;
+        c[1] = y - halfWidth * cos;
+        c[2] = x + halfWidth * sin;
+        c[3] = y + halfWidth * cos;
+        c[4] = c[2] - TRUCK_LENGTH * cos;
+        c[5] = c[3] + TRUCK_LENGTH * sin;
+        c[6] = c[0] - TRUCK_LENGTH * cos;
+        c[7] = c[1] + TRUCK_LENGTH * sin;
+        return c;
+    }
+
+    // quadOverlapsBox for corners as footprint gives them
+    public static boolean quadOverlapsBox(double c[], double minX, double minY, double maxX, double maxY)
+    {
+        if (minX == maxX || minY == maxY)
+            return false;
+        double qMinX = c[0], qMaxX = qMinX, qMinY = c[1], qMaxY = qMinY;
+        for (int i = 1; i < 4; i++)
+        {
+            qMinX = Math.min(qMinX, c[2 * i]);
+            qMaxX = Math.max(qMaxX, c[2 * i]);
+            qMinY = Math.min(qMinY, c[2 * i + 1]);
+            qMaxY = Math.max(qMaxY, c[2 * i + 1]);
+        }
+        if (qMaxX < minX || qMinX > maxX || qMaxY < minY || qMinY > maxY)
+            return false;
+        for (int i = 0; i < 4; i++)
+        {
+            int j = (i + 1) & 3;
+            double nx = c[2 * j + 1] - c[2 * i + 1];
+            double ny = c[2 * i] - c[2 * j];
+            double min = nx * c[0] + ny * c[1], max = min;
+            for (int k = 1; k < 4; k++)
+            {
+                double p = nx * c[2 * k] + ny * c[2 * k + 1];
+                if (p < min)
+                    min = p;
+                else if (p > max)
+                    max = p;
+            }
+            double boxMin = nx * (nx >= 0 ? minX : maxX) + ny * (ny >= 0 ? minY : maxY);
+            double boxMax = nx * (nx >= 0 ? maxX : minX) + ny * (ny >= 0 ? maxY : minY);
+            if (max < boxMin || boxMax < min)
+                return false;
+        }
+        return true;
+    }
+
+    // The distance between the corners c, as footprint gives them, and
+    // the box from (minX, minY) to (maxX, maxY), 0 if they overlap. Two
+    // convex shapes apart are closest at a corner of one of them, so it
+    // is the least distance of a corner of either from the other.
+    public static double quadBoxDistance(double c[], double minX, double minY, double maxX, double maxY)
+    {
+        if (quadOverlapsBox(c, minX, minY, maxX, maxY))
+            return 0;
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < 4; i++)
+        {
+            double dx = Math.max(0, Math.max(minX - c[2 * i], c[2 * i] - maxX));
+            double dy = Math.max(0, Math.max(minY - c[2 * i + 1], c[2 * i + 1] - maxY));
+            best = Math.min(best, dx * dx + dy * dy);
+        }
+        for (int i = 0; i < 4; i++)
+        {
+            int j = (i + 1) & 3;
+            double ax = c[2 * i], ay = c[2 * i + 1], ex = c[2 * j] - ax, ey = c[2 * j + 1] - ay;
+            double length2 = ex * ex + ey * ey;
+            for (int k = 0; k < 4; k++)
+            {
+                double px = (k & 1) == 0 ? minX : maxX, py = k < 2 ? minY : maxY;
+                // the point of the edge nearest the box corner
+                double t = length2 == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * ex + (py - ay) * ey) / length2));
+                double dx = ax + t * ex - px, dy = ay + t * ey - py;
+                best = Math.min(best, dx * dx + dy * dy);
+            }
+        }
+        return Math.sqrt(best);
+    }
+}
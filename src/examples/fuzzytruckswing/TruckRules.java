@@ -0,0 +1,417 @@
+package examples.fuzzytruckswing;
+
+import nrc.fuzzy.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+// The fuzzy variables, terms and rule matrices of the truck controller,
+// evaluated with FuzzyJ. Each instance owns its own FuzzyJ objects, so
+// two simulations never share mutable rule state.
+//
+// The rule conclusions are a RuleBase snapshot, replaced atomically on
+// every edit, so they can be edited from any thread. The FuzzyJ rules are
+// brought up to date with the latest snapshot by updateRules(), on the
+// thread that evaluates them, and only the rules whose conclusion changed
+// are touched; a conclusion is parsed once and its FuzzyValue reused.
+
+public class TruckRules implements FuzzyController
+{
+    public static final int ROWS = 7;
+    public static final int COLUMNS = 5;
+
+    // The fuzzy definitions,terms correspond to sets
+    static String xposTerms[] = {"LeftBig", "LeftMedium", "Centred", "RightMedium", "RightBig"};
+    static String phiTerms[] = {"LargeBelow90", "MediumBelow90", "SmallBelow90", "At90", "SmallAbove90", "MediumAbove90", "LargeAbove90"};
+    static String obsphiTerms[] = {"MediumBelow90", "SmallBelow90", "At90", "SmallAbove90", "MediumAbove90"};
+    static String changePhiTerms[] = {"NB", "NM", "NS", "ZE", "PS", "PM", "PB"};
+
+    // default values for the rule conclusions matrix (Reset Rules button
+    // resets to these values)
+    public static final String DefaultConclusions[][] =
+            {{"PS", "PM", "PM", "PB", "PB"},
+                    {"NS", "PS", "PM", "PB", "PB"},
+                    {"NM", "NS", "PS", "PM", "PB"},
+                    {"NM", "NM", "ZE", "PM", "PM"},
+                    {"NB", "NM", "NS", "PS", "PM"},
+                    {"NB", "NB", "NM", "NS", "PS"},
+                    {"NB", "NB", "NM", "NM", "NS"}};
+
+    public static final String DefaultObsConclusions[][] =
+            {
+                    {"PB", "PB", "NS", "NS", "NS"},
+                    {"PM", "PM", "NM", "NS", "NS"},
+                    {"PS", "PM", "PB", "NM", "NS"},
+                    {"PS", "PS", "PM", "NM", "NM"},
+                    {"PS", "PS", "PS", "NB", "NB"},
+            };
+
+    FuzzyVariable xpos;
+    FuzzyVariable obsxpos;
+    FuzzySet xposFzsets[] = new FuzzySet[COLUMNS];
+    FuzzySet obsxposFzsets[] = new FuzzySet[COLUMNS];
+
+    FuzzyVariable phi;
+    FuzzyVariable obsphi;
+    FuzzySet phiFzSets[] = new FuzzySet[ROWS];
+    FuzzySet obsphiFzSets[] = new FuzzySet[5];
+
+    FuzzyVariable changePhi;
+    FuzzyVariable obschangePhi;
+    FuzzySet changePhiFzSets[] = new FuzzySet[ROWS];
+
+    FuzzyRule theRules[][] = new FuzzyRule[ROWS][COLUMNS]; // 1st index is phi, 2nd is xpos
+    FuzzyRule obstheRules[][] = new FuzzyRule[5][COLUMNS]; // 1st index is phi, 2nd is xpos
+    // index into changePhiTerms of each rule's conclusion, -1 if it has none
+    int conclusionTerms[][] = new int[ROWS][COLUMNS];
+    int obsConclusionTerms[][] = new int[5][COLUMNS];
+
+    // current values for the rule conclusions
+    final AtomicReference<RuleBase> ruleBase = new AtomicReference<>();
+    // the snapshot theRules and obstheRules were last brought up to date with
+    RuleBase applied;
+    // conclusion of each expression used so far, of changePhi for the
+    // docking and of obschangePhi for the obstacle rules
+    final Map<String, FuzzyValue> conclusionValues = new HashMap<>();
+    final Map<String, FuzzyValue> obsConclusionValues = new HashMap<>();
+    // the rule executors and antecedent combine operators, by
+    // FuzzyController.MAMDANI or LARSEN and MINIMUM or PRODUCT
+    final FuzzyRuleExecutor executors[] = {new MamdaniMinMaxMinRuleExecutor(), new LarsenProductMaxMinRuleExecutor()};
+    final AntecedentCombineOperator combines[] = {new MinimumAntecedentCombineOperator(),
+            new ProductAntecedentCombineOperator()};
+
+    public TruckRules()
+    {
+        this(RuleBase.DEFAULT);
+    }
+
+    public TruckRules(String conclusions[][], String obsConclusions[][])
+    {
+        this(new RuleBase(conclusions, obsConclusions));
+    }
+
+    // Set up the fuzzy variables and rules, starting from the given
+    // docking and obstacle rule conclusions
+    public TruckRules(RuleBase base)
+    {
+        int i, j;
+
+        ruleBase.set(base);
+
+        // define the fuzzyVariables and terms
+        // define the fuzzy input values (curentXpos and currentPhi)
+        // define the fuzzy output value (changePhi)
+        try
+        {
+            // data from Kosko's book.
+            phiFzSets[0] = new RFuzzySet(-45.0, 10.0, new RightLinearFunction());
+            phiFzSets[1] = new TriangleFuzzySet(-10.0, 25.0, 60.0);
+            phiFzSets[2] = new TriangleFuzzySet(50.0, 70.0, 90.0);
+            phiFzSets[3] = new TriangleFuzzySet(80.0, 90.0, 100.0);
+            phiFzSets[4] = new TriangleFuzzySet(90.0, 110.0, 130.0);
+            phiFzSets[5] = new TriangleFuzzySet(120.0, 155.0, 190.0);
+            phiFzSets[6] = new LFuzzySet(170.0, 225.0, new LeftLinearFunction());
+            obsphiFzSets[0] = new TriangleFuzzySet(0, 25.0, 60.0);
+            obsphiFzSets[1] = new TriangleFuzzySet(50.0, 70.0, 90.0);
+            obsphiFzSets[2] = new TriangleFuzzySet(80.0, 90.0, 100.0);
+            obsphiFzSets[3] = new TriangleFuzzySet(90.0, 110.0, 130.0);
+            obsphiFzSets[4] = new TriangleFuzzySet(120.0, 155.0, 180.0);
+
+            changePhiFzSets[0] = new TriangleFuzzySet(-45.0, -30.0, -15.0);
+            changePhiFzSets[1] = new TriangleFuzzySet(-25.0, -15.0, -5.0);
+            changePhiFzSets[2] = new TriangleFuzzySet(-10.0, -5.0, 0.0);
+            changePhiFzSets[3] = new TriangleFuzzySet(-5.0, 0.0, 5.0);
+            changePhiFzSets[4] = new TriangleFuzzySet(0.0, 5.0, 10.0);
+            changePhiFzSets[5] = new TriangleFuzzySet(5.0, 15.0, 25.0);
+            changePhiFzSets[6] = new TriangleFuzzySet(15.0, 30.0, 45.0);
+
+            xposFzsets[0] = new RFuzzySet(10.0, 35.0, new RightLinearFunction());
+            xposFzsets[1] = new TriangleFuzzySet(30.0, 40.0, 50.0);
+            xposFzsets[2] = new TriangleFuzzySet(45.0, 50.0, 55.0);
+            xposFzsets[3] = new TriangleFuzzySet(50.0, 60.0, 70.0);
+            xposFzsets[4] = new LFuzzySet(65.0, 90.0, new LeftLinearFunction());
+
+            obsxposFzsets[0] = new TriangleFuzzySet(-0.50, -0.15, 0.10);
+            obsxposFzsets[1] = new TriangleFuzzySet(0.10, 0.25, 0.40);
+            obsxposFzsets[2] = new TriangleFuzzySet(0.40, 0.50, 0.65);
+            obsxposFzsets[3] = new TriangleFuzzySet(0.65, 0.80, 0.95);
+            obsxposFzsets[4] = new TriangleFuzzySet(0.95, 1.30, 1.60);
+            // Input fuzzy variable for the truck's x coordinate position
+            xpos = new FuzzyVariable("Xpos", 0, 100, "");
+            for (i = 0; i < xposTerms.length; i++)
+                xpos.addTerm(xposTerms[i], xposFzsets[i]);
+            // Input fuzzy variable for the truck's angular position
+            phi = new FuzzyVariable("Phi", -90, 270, "Degrees");
+            for (i = 0; i < phiTerms.length; i++)
+                phi.addTerm(phiTerms[i], phiFzSets[i]);
+            // Output fuzzy variable for changing the truck's angular position
+            changePhi = new FuzzyVariable("changePhi", -45.0, 45.0, "Degrees");
+            for (i = 0; i < changePhiTerms.length; i++)
+                changePhi.addTerm(changePhiTerms[i], changePhiFzSets[i]);
+
+            // the sets of the obstacle rules
+            obsxpos = new FuzzyVariable("obsXpos", -0.65, 1.80, "");
+            for (i = 0; i < xposTerms.length; i++)
+                obsxpos.addTerm(xposTerms[i], obsxposFzsets[i]);
+            // Input fuzzy variable for the truck's angular position
+            obsphi = new FuzzyVariable("obsPhi", 0, 180, "Degrees");
+            for (i = 0; i < obsphiTerms.length; i++)
+                obsphi.addTerm(obsphiTerms[i], obsphiFzSets[i]);
+            // Output fuzzy variable for changing the truck's angular position
+            obschangePhi = new FuzzyVariable("obschangePhi", -45.0, 45.0, "Degrees");
+            for (i = 0; i < changePhiTerms.length; i++)
+                obschangePhi.addTerm(changePhiTerms[i], changePhiFzSets[i]);
+
+
+            //define the fuzzy rules
+            for (i = 0; i < phiTerms.length; i++)
+            {
+                for (j = 0; j < xposTerms.length; j++)
+                {
+                    theRules[i][j] = new FuzzyRule();
+                    theRules[i][j].addAntecedent(new FuzzyValue(xpos, xposTerms[j]));
+                    theRules[i][j].addAntecedent(new FuzzyValue(phi, phiTerms[i]));
+                }
+            }
+
+            for (i = 0; i < obsphiTerms.length; i++)
+            {
+                for (j = 0; j < xposTerms.length; j++)
+                {
+                    obstheRules[i][j] = new FuzzyRule();
+                    obstheRules[i][j].addAntecedent(new FuzzyValue(obsxpos, xposTerms[j]));
+                    obstheRules[i][j].addAntecedent(new FuzzyValue(obsphi, obsphiTerms[i]));
+                }
+            }
+            updateRules();
+        }
+        catch (FuzzyException fe)
+        {
+            System.out.println(fe);
+        }
+    }
+
+    // Set the rules to their initial set of conclusions
+    public void resetRules()
+    {
+        ruleBase.updateAndGet(b -> b.with(DOCKING, DefaultConclusions));
+    }
+
+    public String getConclusionExpression(int i, int j)
+    {
+        return ruleBase.get().getConclusion(DOCKING, i, j);
+    }
+
+    public String getobsConclusionExpression(int i, int j)
+    {
+        return ruleBase.get().getConclusion(OBSTACLE, i, j);
+    }
+
+    public void setConclusionExpression(String s, int i, int j)
+    {
+        ruleBase.updateAndGet(b -> b.with(DOCKING, i, j, s));
+    }
+
+    // fire the rules of a rule base the given way from the next step on
+    public void setInference(int length, int executor, int combine)
+    {
+        ruleBase.updateAndGet(b -> b.withInference(length, executor, combine));
+    }
+
+    // take over all conclusions of another rule base, as the next version
+    public void setConclusions(RuleBase from)
+    {
+        ruleBase.updateAndGet(b -> b.with(DOCKING, from.getConclusions(DOCKING))
+                .with(OBSTACLE, from.getConclusions(OBSTACLE)));
+    }
+
+    // the latest snapshot of the rule conclusions
+    public RuleBase getRuleBase()
+    {
+        return ruleBase.get();
+    }
+
+    public int getVersion()
+    {
+        return ruleBase.get().getVersion();
+    }
+
+    // a copy of the current conclusions of a rule base
+    public String[][] getConclusions(int length)
+    {
+        return ruleBase.get().getConclusions(length);
+    }
+
+    // range of the x position input of a rule base
+    public double getMinXpos(int length)
+    {
+        return length == DOCKING ? xpos.getMinUOD() : obsxpos.getMinUOD();
+    }
+
+    public double getMaxXpos(int length)
+    {
+        return length == DOCKING ? xpos.getMaxUOD() : obsxpos.getMaxUOD();
+    }
+
+    // range of the angle input of a rule base
+    public double getMinPhi(int length)
+    {
+        return length == DOCKING ? phi.getMinUOD() : obsphi.getMinUOD();
+    }
+
+    public double getMaxPhi(int length)
+    {
+        return length == DOCKING ? phi.getMaxUOD() : obsphi.getMaxUOD();
+    }
+
+    // get the correct conclusions for each rule from the latest snapshot,
+    // changing only the rules it concludes differently
+    public void updateRules()
+    {
+        RuleBase base = ruleBase.get();
+        if (base == applied)
+            return;
+        updateRules(base, DOCKING, theRules, conclusionTerms, changePhi, conclusionValues);
+        updateRules(base, OBSTACLE, obstheRules, obsConclusionTerms, obschangePhi, obsConclusionValues);
+        updateInference(base, DOCKING, theRules);
+        updateInference(base, OBSTACLE, obstheRules);
+        applied = base;
+    }
+
+    private void updateInference(RuleBase base, int length, FuzzyRule rules[][])
+    {
+        if (applied != null && applied.sameInference(base, length))
+            return;
+        for (FuzzyRule row[] : rules)
+            for (FuzzyRule rule : row)
+            {
+                rule.setRuleExecutor(executors[base.getExecutor(length)]);
+                rule.setAntecedentCombineOperator(combines[base.getCombine(length)]);
+            }
+    }
+
+    private void updateRules(RuleBase base, int length, FuzzyRule rules[][], int terms[][],
+                             FuzzyVariable variable, Map<String, FuzzyValue> values)
+    {
+        int i = 0, j = 0;
+        try
+        {
+            for (i = 0; i < rules.length; i++)
+                for (j = 0; j < xposTerms.length; j++)
+                {
+                    if (applied != null && applied.sameConclusion(base, length, i, j))
+                        continue;
+                    String fzExpression = base.getConclusion(length, i, j);
+                    rules[i][j].removeAllConclusions();
+                    if (!fzExpression.equals(" "))
+                    {
+                        FuzzyValue fv = values.get(fzExpression);
+                        if (fv == null)
+                        {
+                            fv = new FuzzyValue(variable, fzExpression);
+                            values.put(fzExpression, fv);
+                        }
+                        rules[i][j].addConclusion(fv);
+                    }
+                    terms[i][j] = termIndex(fzExpression);
+                }
+        }
+        catch (FuzzyException fe)
+        {
+            System.out.println(fe + "\n" + i + ", " + j);
+        }
+    }
+
+    // index of a changePhi term, -1 for a killed rule or an expression
+    // that is not a single term
+    static int termIndex(String expression)
+    {
+        for (int t = 0; t < changePhiTerms.length; t++)
+            if (changePhiTerms[t].equals(expression))
+                return t;
+        return -1;
+    }
+
+    public double getConclusion(int length, double xposValue, double phiValue, RuleFiringListener listener)
+    {
+        if (length == DOCKING)
+            return getConclusion(length, xposValue, phiValue, xpos, phi, theRules, conclusionTerms, listener);
+        else
+            return getConclusion(length, xposValue, phiValue, obsxpos, obsphi, obstheRules, obsConclusionTerms, listener);
+    }
+
+    // Rules with the same conclusion term only contribute the strongest of
+    // their clipped sets to the union. That is the same max aggregation,
+    // but FuzzyJ's fuzzyUnion loses a corner when it merges two clips of
+    // one set, whose edges lie on the same line, so they are not unioned.
+    public double getConclusion(int length, double Xt, double Phit, FuzzyVariable xpos, FuzzyVariable phi,
+                                FuzzyRule[][] theRules, int[][] terms, RuleFiringListener listener)
+    {
+        FuzzyValueVector fvvInputs = new FuzzyValueVector(2);
+        FuzzyValueVector result = null;
+        FuzzyValue globalResult = null;
+        FuzzyValue strongest[] = new FuzzyValue[changePhiTerms.length];
+        double changePhiValue = 0;
+        try
+        {
+            fvvInputs.addFuzzyValue(new FuzzyValue(xpos, new TriangleFuzzySet(Xt, Xt, Xt)));
+            fvvInputs.addFuzzyValue(new FuzzyValue(phi, new TriangleFuzzySet(Phit, Phit, Phit)));
+            for (int i = 0; i < length; i++)
+            {
+                for (int j = 0; j < xposTerms.length; j++)
+                {
+                    FuzzyValueVector concFvv = theRules[i][j].getConclusions();
+                    if (concFvv != null &&
+                            concFvv.size() > 0 &&
+                            theRules[i][j].testRuleMatching(fvvInputs))
+                    {
+                        // execute rule with required input values; they are
+                        // set on the rule, as execute(fvvInputs) would combine
+                        // the antecedents with the default operator instead of
+                        // the rule's
+                        FuzzyRule rule = theRules[i][j];
+                        rule.removeAllInputs();
+                        rule.addInput(fvvInputs.fuzzyValueAt(0));
+                        rule.addInput(fvvInputs.fuzzyValueAt(1));
+                        result = rule.execute();
+                        FuzzyValue fv = result.fuzzyValueAt(0);
+                        // tell the listener the degree of matching
+                        if (listener != null)
+                            listener.ruleFired(length, i, j, fv.getMaxY());
+
+                        // add to global result for all rules
+                        int t = terms[i][j];
+                        if (t < 0)
+                        {
+                            if (globalResult == null)
+                                globalResult = fv;
+                            else
+                                globalResult = globalResult.fuzzyUnion(fv);
+                        }
+                        else if (strongest[t] == null || fv.getMaxY() > strongest[t].getMaxY())
+                            strongest[t] = fv;
+                    }
+                }
+            }
+            for (FuzzyValue fv : strongest)
+            {
+                if (fv == null)
+                    continue;
+                if (globalResult == null)
+                    globalResult = fv;
+                else
+                    globalResult = globalResult.fuzzyUnion(fv);
+            }
+            if (globalResult != null)
+            {
+                changePhiValue = globalResult.momentDefuzzify();
+            }
+        }
+        catch (FuzzyException e)
+        {
+            System.out.println(e + "\n");
+        }
+        return changePhiValue;
+    }
+}
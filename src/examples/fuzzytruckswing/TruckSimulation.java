@@ -1,90 +1,135 @@
 package examples.fuzzytruckswing;
 
-import nrc.fuzzy.*;
-
 import java.awt.*;
+import java.awt.event.*;
 import javax.swing.*;
-import java.lang.reflect.InvocationTargetException;
 import java.text.*;
+import java.util.Date;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Arrays;
-
-// This is the base class for truck simulator. It handles setting up
-// the initial data and running the algorithm.
-
-public class TruckSimulation extends Thread
+import java.util.concurrent.atomic.AtomicReference;
+
+// This is the base class for truck simulator. It runs the TruckEngine on
+// its own thread and keeps the applet up to date as an observer of it.
+//
+// The simulation thread never waits for the event thread. After every
+// step it puts what the applet shows (truck pose, status text, traced
+// path) into one Frame and publishes it in a single slot, replacing any
+// frame not shown yet. A Swing timer takes the latest frame every
+// FRAME_INTERVAL milliseconds and shows it, so frames the display can not
+// keep up with are dropped. The rule firings go through a RuleFiringRing;
+// a frame holds the position in the ring after its step, so the rules
+// highlighted are always those of the step whose pose is shown.
+//
+// A fleet of trucks parking at once runs on a thread of its own, a
+// FleetRunner, over a copy of the rules compiled when it starts, and
+// publishes its poses the same way in a slot of its own.
+//
+// While recording is on, every episode is written by a TrajectoryRecorder
+// to a file of its own in the working directory, for TrajectoryReplay.
+//
+// The phases of every step and the hand-off of every frame shown are
+// timed into a StepTimings for the whole run, shown in the status bar and
+// written to CSV on demand. -Dfuzzytruck.latency=file appends the timings
+// of every episode to file as it ends.
+
+public class TruckSimulation extends Thread implements TruckEngineListener
 {
     FuzzyTruckJApplet parent;
 
-    public static final int PAUSE = 0;
-    public static final int STEP = 1;
-    public static final int RUN = 2;
-
-    public static final int ROWS = 7;
-    public static final int COLUMNS = 5;
+    public static final int PAUSE = StepClock.PAUSE;
+    public static final int STEP = StepClock.STEP;
+    public static final int RUN = StepClock.RUN;
 
-    public static final double PIBY180 = Math.PI / 180;   //1degree ==
+    public static final int ROWS = TruckRules.ROWS;
+    public static final int COLUMNS = TruckRules.COLUMNS;
 
-    boolean pause = true, finished = false, truck_disabled = false;
-    // initial state of simulation is paused
-    int msg = PAUSE;
+    public static final double DEFAULT_REAL_TIME_FACTOR = 8;
+    // when the simulation thread steps; initial state of simulation is
+    // paused
+    final StepClock clock = new StepClock(PAUSE, DEFAULT_REAL_TIME_FACTOR);
 
     static final NumberFormat nf = NumberFormat.getNumberInstance();
 
-    // some things to support threads for updating GUI
-    String statusText = "";
-    SetStatusTextThread sstThread = new SetStatusTextThread();
-    Color conclusionColor;         // color of the conclusion button background
-    int conclusionI, conclusionJ;  // index values into the conclusion button matrix
-
-
-    // X, Y and Phi hold the starting state for the truck
-    double X = 50, Y = 50, Phi = 90;
-    // Xt, Yt, Phit hold state of truck as simulation progresses
-    double Xt = 50, Yt = 50, Phit = 90;
-    double beforex = 0;
-    double beforey = 0;
-    // speed of truck
-    double Speed = 1;
-    // speed of simulation
-    int SimSpeed = 1;
+    // milliseconds between frames shown by the applet
+    public static final int FRAME_INTERVAL = 33;
+
+    // the latest frame not shown yet, null if there is none
+    final AtomicReference<Frame> latestFrame = new AtomicReference<>();
+    // the last frame published, to carry its pose into status only frames
+    Frame lastFrame;
+    final Timer frameTimer = new Timer(FRAME_INTERVAL, new FrameDrainer());
+
+    // rule firings of the engine, and the cursor the rule buttons are
+    // colored from while rule firings are shown
+    final RuleFiringRing firings = new RuleFiringRing(1 << 14);
+    RuleFiringRing.Cursor firingDisplay;
+    final FiringHighlighter highlighter = new FiringHighlighter();
+
+    // poses {x, y, angle} along the traced path, appended to by the
+    // simulation thread only; a reset starts a new array
+    double trace[] = new double[3 * 256];
+    int traceLength;
+    // bumped by reset() so the simulation thread starts a new trace
+    volatile int traceGeneration;
+    int tracedGeneration;
+
+    // the rules and the headless simulation they drive
+    TruckRules rules = new TruckRules();
+    TruckEngine engine = new TruckEngine(rules);
+
+    // the ways of evaluating the rules that can be picked in the applet
+    public static final String INFERENCE_NAMES[] = {"FuzzyJ", "Control surface", "Kernel"};
+    public static final int FUZZYJ = 0;
+    public static final int SURFACE = 1;
+    public static final int KERNEL = 2;
+
+    // how the rules of a rule base fire, by 2 * executor + combine
+    public static final String FIRING_NAMES[] = {"Min, clip", "Product, clip", "Min, scale", "Product, scale"};
+
+    int inference = FUZZYJ;
+    SurfaceController surface;
+    FuzzyKernel kernel;
+    // the defuzzifier picked in the applet, FuzzyController.MOMENT to SUGENO
+    int defuzzifier = FuzzyController.MOMENT;
+
+    // the fleet being run, null if there is none
+    FleetRunner fleetRunner;
+    // the latest fleet frame not shown yet, null if there is none
+    final AtomicReference<FleetFrame> latestFleetFrame = new AtomicReference<>();
+
+    // the timings of every step since the simulation was created
+    final StepTimings timings = new StepTimings();
+    // the timings when the episode being run started, and the number of
+    // episodes run; used by the simulation thread only
+    StepTimings episodeTimings;
+    int episodes;
+    // where the timings of every episode are written, null if nowhere
+    Writer latencyLog;
+    // frame timer ticks between updates of the timings shown
+    static final int LATENCY_REFRESH = 15;
+    int latencyTicks;
+
+    // true while episodes are to be recorded
+    volatile boolean recordingWanted;
+    // the recorder of the episode being run, used by the simulation
+    // thread only; null if it is not recorded
+    TrajectoryRecorder recorder;
+    // the status text naming the file recorded to, empty if none
+    String recordingStatus = "";
 
     // true when need to re-evaluate truck position
     boolean recompute = true;
     // true when tracing check box is set
     boolean tracingWanted = false;
-    // true when tracing to be done during update of graphics (only set
-    // to true when tracing check box is on and simulation is under way)
-    boolean tracingOn = false;
-    // iteration count during simulation
-    int Iteration = 0;
     // true when we are to show the rule firings as the simulation proceeds
     boolean showRuleFirings;
 
-    // The fuzzy definitions,terms correspond to sets
-    static FuzzyVariable xpos;
-    static FuzzyVariable obsxpos;
-    static String xposTerms[] = {"LeftBig", "LeftMedium", "Centred", "RightMedium", "RightBig"};
-    static FuzzySet xposFzsets[] = new FuzzySet[COLUMNS];
-    static FuzzySet obsxposFzsets[] = new FuzzySet[COLUMNS];
-
-    static FuzzyVariable phi;
-    static FuzzyVariable obsphi;
-    static String phiTerms[] = {"LargeBelow90", "MediumBelow90", "SmallBelow90", "At90", "SmallAbove90", "MediumAbove90", "LargeAbove90"};
-    static String obsphiTerms[] = {"MediumBelow90", "SmallBelow90", "At90", "SmallAbove90", "MediumAbove90"};
-    static FuzzySet phiFzSets[] = new FuzzySet[ROWS];
-    static FuzzySet obsphiFzSets[] = new FuzzySet[5];
-
-    static FuzzyVariable changePhi;
-    static FuzzyVariable obschangePhi;
-    static String changePhiTerms[] = {"NB", "NM", "NS", "ZE", "PS", "PM", "PB"};
-    static FuzzySet changePhiFzSets[] = new FuzzySet[ROWS];
-//    static FuzzySet obschangePhiFzSets[] = new FuzzySet[7];
-
-    static FuzzyRule theRules[][] = new FuzzyRule[ROWS][COLUMNS]; // 1st index is phi, 2nd is xpos
-    static FuzzyRule obstheRules[][] = new FuzzyRule[5][COLUMNS]; // 1st index is phi, 2nd is xpos
-
     // OFF_COLOR is normal color for rule matrix buttons
-    private static final Color OFF_COLOR = new Color(204, 204, 204);
+    static final Color OFF_COLOR = new Color(204, 204, 204);
     // matrix of colors that show degreee of matching for a rule that fires
     private static final Color matchColors[] = new Color[256];
     private static final Color obsmatchColors[] = new Color[256];
@@ -103,191 +148,112 @@ public class TruckSimulation extends Thread
         nf.setMinimumFractionDigits(4);
     }
 
-    // default values for the rule conclusions matrix (Reset Rules button
-    // resets to these values)
-    public static final String DefaultConclusions[][] =
-            {{"PS", "PM", "PM", "PB", "PB"},
-                    {"NS", "PS", "PM", "PB", "PB"},
-                    {"NM", "NS", "PS", "PM", "PB"},
-                    {"NM", "NM", "ZE", "PM", "PM"},
-                    {"NB", "NM", "NS", "PS", "PM"},
-                    {"NB", "NB", "NM", "NS", "PS"},
-                    {"NB", "NB", "NM", "NM", "NS"}};
-
-    // current values for the rule conclusions
-    public static String CurrentConclusions[][] =
-            {{"PS", "PM", "PM", "PB", "PB"},
-                    {"NS", "PS", "PM", "PB", "PB"},
-                    {"NM", "NS", "PS", "PM", "PB"},
-                    {"NM", "NM", "ZE", "PM", "PM"},
-                    {"NB", "NM", "NS", "PS", "PM"},
-                    {"NB", "NB", "NM", "NS", "PS"},
-                    {"NB", "NB", "NM", "NM", "NS"}};
-
-    public static String obsCurrentConclusions[][] =
-            {
-                    {"PB", "PB", "NS", "NS", "NS"},
-                    {"PM", "PM", "NM", "NS", "NS"},
-                    {"PS", "PM", "PB", "NM", "NS"},
-                    {"PS", "PS", "PM", "NM", "NM"},
-                    {"PS", "PS", "PS", "NB", "NB"},
-            };
-
-    // Set up the data in a constructor
     public TruckSimulation(FuzzyTruckJApplet p)
     {
         parent = p;
-        int i, j;
-
-        // define the fuzzyVariables and terms
-        // define the fuzzy input values (curentXpos and currentPhi)
-        // define the fuzzy output value (changePhi)
-        try
+        // the ring must hear of the end of a step before the frame for it
+        // is published
+        engine.setRuleFiringListener(firings);
+        engine.addListener(firings);
+        engine.addListener(this);
+        engine.setTimings(timings);
+        frameTimer.start();
+
+        // -Dfuzzytruck.firings=file writes every rule firing to file
+        String dump = System.getProperty("fuzzytruck.firings");
+        if (dump != null)
         {
-            // data from Kosko's book.
-            phiFzSets[0] = new RFuzzySet(-45.0, 10.0, new RightLinearFunction());
-            phiFzSets[1] = new TriangleFuzzySet(-10.0, 25.0, 60.0);
-            phiFzSets[2] = new TriangleFuzzySet(50.0, 70.0, 90.0);
-            phiFzSets[3] = new TriangleFuzzySet(80.0, 90.0, 100.0);
-            phiFzSets[4] = new TriangleFuzzySet(90.0, 110.0, 130.0);
-            phiFzSets[5] = new TriangleFuzzySet(120.0, 155.0, 190.0);
-            phiFzSets[6] = new LFuzzySet(170.0, 225.0, new LeftLinearFunction());
-            obsphiFzSets[0] = new TriangleFuzzySet(0, 25.0, 60.0);
-            obsphiFzSets[1] = new TriangleFuzzySet(50.0, 70.0, 90.0);
-            obsphiFzSets[2] = new TriangleFuzzySet(80.0, 90.0, 100.0);
-            obsphiFzSets[3] = new TriangleFuzzySet(90.0, 110.0, 130.0);
-            obsphiFzSets[4] = new TriangleFuzzySet(120.0, 155.0, 180.0);
-
-            changePhiFzSets[0] = new TriangleFuzzySet(-45.0, -30.0, -15.0);
-            changePhiFzSets[1] = new TriangleFuzzySet(-25.0, -15.0, -5.0);
-            changePhiFzSets[2] = new TriangleFuzzySet(-10.0, -5.0, 0.0);
-            changePhiFzSets[3] = new TriangleFuzzySet(-5.0, 0.0, 5.0);
-            changePhiFzSets[4] = new TriangleFuzzySet(0.0, 5.0, 10.0);
-            changePhiFzSets[5] = new TriangleFuzzySet(5.0, 15.0, 25.0);
-            changePhiFzSets[6] = new TriangleFuzzySet(15.0, 30.0, 45.0);
-
-            xposFzsets[0] = new RFuzzySet(10.0, 35.0, new RightLinearFunction());
-            xposFzsets[1] = new TriangleFuzzySet(30.0, 40.0, 50.0);
-            xposFzsets[2] = new TriangleFuzzySet(45.0, 50.0, 55.0);
-            xposFzsets[3] = new TriangleFuzzySet(50.0, 60.0, 70.0);
-            xposFzsets[4] = new LFuzzySet(65.0, 90.0, new LeftLinearFunction());
-
-            obsxposFzsets[0] = new TriangleFuzzySet(-0.50, -0.15, 0.10);
-            obsxposFzsets[1] = new TriangleFuzzySet(0.10, 0.25, 0.40);
-            obsxposFzsets[2] = new TriangleFuzzySet(0.40, 0.50, 0.65);
-            obsxposFzsets[3] = new TriangleFuzzySet(0.65, 0.80, 0.95);
-            obsxposFzsets[4] = new TriangleFuzzySet(0.95, 1.30, 1.60);
-            // Input fuzzy variable for the truck's x coordinate position
-            xpos = new FuzzyVariable("Xpos", 0, 100, "");
-            for (i = 0; i < xposTerms.length; i++)
-                xpos.addTerm(xposTerms[i], xposFzsets[i]);
-            // Input fuzzy variable for the truck's angular position
-            phi = new FuzzyVariable("Phi", -90, 270, "Degrees");
-            for (i = 0; i < phiTerms.length; i++)
-                phi.addTerm(phiTerms[i], phiFzSets[i]);
-            // Output fuzzy variable for changing the truck's angular position
-            changePhi = new FuzzyVariable("changePhi", -45.0, 45.0, "Degrees");
-            for (i = 0; i < changePhiTerms.length; i++)
-                changePhi.addTerm(changePhiTerms[i], changePhiFzSets[i]);
-
-            //设置obs的set
-            obsxpos = new FuzzyVariable("obsXpos", -0.65, 1.80, "");
-            for (i = 0; i < xposTerms.length; i++)
-                obsxpos.addTerm(xposTerms[i], obsxposFzsets[i]);
-            // Input fuzzy variable for the truck's angular position
-            obsphi = new FuzzyVariable("obsPhi", 0, 180, "Degrees");
-            for (i = 0; i < obsphiTerms.length; i++)
-                obsphi.addTerm(obsphiTerms[i], obsphiFzSets[i]);
-            // Output fuzzy variable for changing the truck's angular position
-            obschangePhi = new FuzzyVariable("obschangePhi", -45.0, 45.0, "Degrees");
-            for (i = 0; i < changePhiTerms.length; i++)
-                obschangePhi.addTerm(changePhiTerms[i], changePhiFzSets[i]);
-
-
-            //define the fuzzy rules
-            for (i = 0; i < phiTerms.length; i++)
+            try
             {
-                for (j = 0; j < xposTerms.length; j++)
-                {
-                    theRules[i][j] = new FuzzyRule();
-                    theRules[i][j].addAntecedent(new FuzzyValue(xpos, xposTerms[j]));
-                    theRules[i][j].addAntecedent(new FuzzyValue(phi, phiTerms[i]));
-                    theRules[i][j].addConclusion(new FuzzyValue(changePhi, CurrentConclusions[i][j]));
-                }
+                new RuleFiringDumper(firings.newCursor(), new FileWriter(dump)).start();
             }
-
-            for (i = 0; i < obsphiTerms.length; i++)
+            catch (IOException e)
             {
-                for (j = 0; j < xposTerms.length; j++)
-                {
-                    obstheRules[i][j] = new FuzzyRule();
-                    obstheRules[i][j].addAntecedent(new FuzzyValue(obsxpos, xposTerms[j]));
-                    obstheRules[i][j].addAntecedent(new FuzzyValue(obsphi, obsphiTerms[i]));
-                    obstheRules[i][j].addConclusion(new FuzzyValue(obschangePhi, obsCurrentConclusions[i][j]));
-                }
+                e.printStackTrace();
             }
         }
-        catch (FuzzyException fe)
+
+        // -Dfuzzytruck.latency=file appends the timings of every episode
+        String latency = System.getProperty("fuzzytruck.latency");
+        if (latency != null)
         {
-            System.out.println(fe);
+            try
+            {
+                latencyLog = new FileWriter(latency, true);
+                latencyLog.write(StepTimings.CSV_HEADER + "\n");
+                latencyLog.flush();
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
         }
-
     }
 
     // Set the truck to its initial set of Rule conclusions
     public void resetRules()
     {
-        for (int i = 0; i < ROWS; i++)
-            for (int j = 0; j < COLUMNS; j++)
-            {
-                CurrentConclusions[i][j] = DefaultConclusions[i][j];
-            }
+        rules.resetRules();
     }
 
     // Set the truck to its initial state before any computations
     public void reset()
     {
-        Xt = X;
-        Yt = Y;
-        Phit = Phi;
-
+        // the engine works in the world, whatever the size of the panel
+        engine.setObstacles(parent.viewArea.list);
+        engine.reset();
+        parent.viewArea.setWorldSize(engine.getWorldWidth(), engine.getWorldHeight());
         recompute = true;
-        finished = false;
-        truck_disabled = false;
-        Iteration = 0;
-
-        if (parent.viewArea.getGraphics() != null)
-            parent.viewArea.paintComponent(parent.viewArea.getGraphics());
+        // drop the frame of the old run, its trace and rule firings
+        latestFrame.set(null);
+        highlighter.clear();
+        traceGeneration++;
+        parent.viewArea.clearTrace();
+        parent.viewArea.obstaclesChanged();
         parent.JLabelSimulationStatus.setText(" ");
 
         // reset background color of rule matrix buttons
         parent.resetConclusionButtonsBackground(OFF_COLOR);
-        parent.resetConclusionButtonsBackground(OFF_COLOR);
     }
 
     public void setX(double x)
     {
-        X = x;
+        engine.X = x;
     }
 
     public void setY(double y)
     {
-        Y = y;
+        engine.Y = y;
     }
 
     public void setTruckAngle(double a)
     {
-        Phi = a;
+        engine.Phi = a;
     }
 
-    public void setSimSpeed(int s)
+    // iterations per second as a multiple of StepClock.REAL_TIME_RATE,
+    // Double.POSITIVE_INFINITY for as fast as possible
+    public void setRealTimeFactor(double f)
     {
-        SimSpeed = s;
+        clock.setRealTimeFactor(f);
+        FleetRunner runner = fleetRunner;
+        if (runner != null)
+            runner.clock.setRealTimeFactor(f);
     }
 
     public void setTruckSpeed(double s)
     {
-        Speed = s;
+        engine.setTruckSpeed(s);
+    }
+
+    public void setClearanceSteering(boolean b)
+    {
+        engine.setClearanceSteering(b);
+    }
+
+    public void setPathPlanning(boolean b)
+    {
+        engine.setPathPlanning(b);
     }
 
     public void setTracing(boolean b)
@@ -303,6 +269,24 @@ public class TruckSimulation extends Thread
     public void setShowRuleFirings(boolean b)
     {
         showRuleFirings = b;
+        if (b && firingDisplay == null)
+            firingDisplay = firings.newCursor();
+        else if (!b && firingDisplay != null)
+        {
+            firingDisplay.close();
+            firingDisplay = null;
+            highlighter.clear();
+        }
+    }
+
+    public void setRecording(boolean b)
+    {
+        recordingWanted = b;
+    }
+
+    public boolean getRecording()
+    {
+        return recordingWanted;
     }
 
     public boolean getShowRuleFirings()
@@ -312,17 +296,160 @@ public class TruckSimulation extends Thread
 
     public double getTruckAngle()
     {
-        return Phi;
+        return engine.Phi;
     }
 
-    public int getSimSpeed()
+    public double getRealTimeFactor()
     {
-        return SimSpeed;
+        return clock.getRealTimeFactor();
     }
 
     public double getTruckSpeed()
     {
-        return Speed;
+        return engine.Speed;
+    }
+
+    // the obstacles in the view have been changed
+    public void obstaclesChanged()
+    {
+        engine.setObstacles(parent.viewArea.list);
+        parent.viewArea.obstaclesChanged();
+    }
+
+    // a grid sweep of start states over the current rules, obstacles
+    // and truck speed
+    public StartStateSweep createSweep(int maxIterations)
+    {
+        StartStateSweep sweep = new StartStateSweep(CompiledRules.compile(rules));
+        sweep.setObstacles(parent.viewArea.list, engine.getWorldWidth(), engine.getWorldHeight());
+        sweep.setTruckSpeed(engine.Speed);
+        sweep.setMaxIterations(maxIterations);
+        sweep.grid();
+        return sweep;
+    }
+
+    // a rule optimizer starting from the current rules, scored with the
+    // current obstacles and truck speed; the obstacle rules are only
+    // optimized if there are obstacles
+    public RuleOptimizer createOptimizer(int maxIterations)
+    {
+        RuleOptimizer optimizer = new RuleOptimizer(rules, System.nanoTime());
+        optimizer.setObstacles(parent.viewArea.list, engine.getWorldWidth(), engine.getWorldHeight());
+        optimizer.setTruckSpeed(engine.Speed);
+        optimizer.setMaxIterations(maxIterations);
+        optimizer.setOptimizeObstacleRules(!parent.viewArea.list.isEmpty());
+        return optimizer;
+    }
+
+    // use the conclusions of rules from now on
+    public void setConclusions(RuleBase rules)
+    {
+        this.rules.setConclusions(rules);
+    }
+
+    // park a fleet of trucks from random start states with the current
+    // rules, obstacles and truck speed, for at most maxIterations steps
+    public void startFleet(int size, int maxIterations)
+    {
+        stopFleet();
+        TruckFleet fleet = new TruckFleet(CompiledRules.compile(rules), size);
+        fleet.setObstacles(parent.viewArea.list, engine.getWorldWidth(), engine.getWorldHeight());
+        fleet.setTruckSpeed(engine.Speed);
+        fleet.randomStarts(System.nanoTime());
+        fleetRunner = new FleetRunner(fleet, maxIterations);
+        fleetRunner.start();
+    }
+
+    // stop the fleet, if one is running, and take it off the view
+    public void stopFleet()
+    {
+        if (fleetRunner != null)
+        {
+            fleetRunner.interrupt();
+            try
+            {
+                fleetRunner.join();
+            }
+            catch (InterruptedException e)
+            {
+            }
+            fleetRunner = null;
+        }
+        latestFleetFrame.set(null);
+        parent.viewArea.clearFleet();
+    }
+
+    // the size of the control surfaces and how far each is off the exact
+    // rules at most, null unless the engine answers from them
+    public String getSurfaceErrors()
+    {
+        SurfaceController s = surface;
+        if (inference != SURFACE || s == null)
+            return null;
+        String text = "control surfaces " + s.getResolution() + " x " + s.getResolution();
+        double docking = s.getMaxError(FuzzyController.DOCKING), obstacle = s.getMaxError(FuzzyController.OBSTACLE);
+        if (Double.isNaN(docking) || Double.isNaN(obstacle))
+            return text + ", being built";
+        return text + ", off the exact rules by at most " + nf.format(docking) + " (docking) and "
+                + nf.format(obstacle) + " (obstacle) degrees";
+    }
+
+    public boolean isFleetRunning()
+    {
+        return fleetRunner != null;
+    }
+
+    // switch the engine to another way of evaluating the rules; takes
+    // effect with the next step
+    public void setInference(int i)
+    {
+        inference = i;
+        if (i == SURFACE)
+        {
+            // -Dfuzzytruck.surface=n builds the control surfaces n by n
+            if (surface == null)
+                surface = new SurfaceController(rules,
+                        Math.max(1, Integer.getInteger("fuzzytruck.surface", SurfaceController.DEFAULT_RESOLUTION)));
+            engine.setController(surface);
+        }
+        else if (i == KERNEL)
+        {
+            if (kernel == null)
+            {
+                kernel = new FuzzyKernel(rules);
+                kernel.setDefuzzifier(defuzzifier);
+            }
+            engine.setController(kernel);
+        }
+        else
+            engine.setController(rules);
+    }
+
+    public int getInference()
+    {
+        return inference;
+    }
+
+    // defuzzify the given way from now on; false if the current inference
+    // can not, only the kernel defuzzifies other than by moment
+    public boolean setDefuzzifier(int d)
+    {
+        defuzzifier = d;
+        if (kernel != null)
+            kernel.setDefuzzifier(d);
+        return d == FuzzyController.MOMENT || inference == KERNEL;
+    }
+
+    public int getDefuzzifier()
+    {
+        return defuzzifier;
+    }
+
+    // fire the rules of one rule base the given way from now on; every
+    // inference picks it up with the next step
+    public void setRuleFiring(int length, int executor, int combine)
+    {
+        rules.setInference(length, executor, combine);
     }
 
     public int getRows()
@@ -337,387 +464,187 @@ public class TruckSimulation extends Thread
 
     public String getConclusionExpression(int i, int j)
     {
-        return CurrentConclusions[i][j];
+        return rules.getConclusionExpression(i, j);
     }
 
     public String getobsConclusionExpression(int i, int j)
     {
-        return obsCurrentConclusions[i][j];
+        return rules.getobsConclusionExpression(i, j);
     }
 
     public void setConclusionExpression(String s, int i, int j)
     {
-        CurrentConclusions[i][j] = s;
+        rules.setConclusionExpression(s, i, j);
     }
 
 
-    // Core of the fuzzy truck algorithm
+    // Drive the engine one step per message
     public void run()
     {
-        int m, i = 0, j = 0;
-        double angleInRadians;
-        double changePhiValue;
-        boolean isObs = false;
-        ResetConclusionButtonsThread rcbThread = new ResetConclusionButtonsThread();
-        SetConclusionButtonColorThread scbcThread = new SetConclusionButtonColorThread(7);
-        ViewAreaPaintComponentThread vapcThread = new ViewAreaPaintComponentThread();
-
         while (true)
         { // need sync. for button presses. when a msg.
             // comes in, we start the simulation.
-            m = getMsg();
+            try
+            {
+                getMsg();
+            }
+            catch (InterruptedException e)
+            {
+                continue;
+            }
 
             if (!simulationFinished())
             {
-                FuzzyValue globalResult = null;
-                changePhiValue = 0.0;
-                try
-                {
-                    // if this is the first time we run the alg.
-                    // then get the rules from the matrix.
-                    if (Iteration == 0)
-                    {
-                        Xt = X;
-                        Yt = Y;
-                        Phit = Phi;
-                        // get the correct conclusions for each rule
-                        for (i = 0; i < phiTerms.length; i++)
-                            for (j = 0; j < xposTerms.length; j++)
-                            {
-                                String fzExpression = CurrentConclusions[i][j];
-                                theRules[i][j].removeAllConclusions();
-                                if (!fzExpression.equals(" "))
-                                    theRules[i][j].addConclusion(new FuzzyValue(changePhi, fzExpression));
-                            }
-                    }
-                    // reset the conclusion buttons backgrounds
-                    SwingUtilities.invokeAndWait(rcbThread);
-                    changePhiValue = getConclusion(7, Xt, Phit, xpos, phi, theRules);
-                    // compute the results of the rule firing for the current xpos and phi values.
-
-//                    // new values based on the alogorithm for finding the new
-//                    // angle (see Kosko's book).
-//                    // globalResult could be null if we take out some rules
-//                    // that and no rules now match ...
-
-                    //要在这里判断是否有障碍物
-                    angleInRadians = (Phit + changePhiValue) * PIBY180;
-
-                    double x = Speed * Math.cos(angleInRadians);
-                    double y = Speed * Math.sin(angleInRadians);
-                    double xb = 0;
-                    double yb = 0;
-                    int[][] coords = parent.viewArea.computeCoords(Xt + 4 * x, Yt - 4 * y, Phit);
-                    boolean flag = false;
-                    for (int k = 0; k < parent.viewArea.list.size(); k++)
-                    {
-                        int xa = parent.viewArea.list.get(k)[0];
-                        int ya = parent.viewArea.list.get(k)[1];
-                        int width = parent.viewArea.list.get(k)[2];
-                        int height = parent.viewArea.list.get(k)[3];
-                        int[][] obs = {{xa, ya}, {xa + width, ya}, {xa + width, ya + height}, {xa, ya + height}};
-//                        System.out.println(Arrays.deepToString(obs));
-                        if (isObs || SAT(coords, obs))
-                        {
-                            System.out.println("碰撞");
-                            //TODO: 可以写判断算法了,还是有一点问题
-                            changePhiValue = getConclusion(5, ((Xt + 2) - (xa / 4.0)) / (width / 4.0), Phit, obsxpos, obsphi, obstheRules);
-                            System.out.println("改变角度" + changePhiValue);
-                            angleInRadians = (Phit + changePhiValue) * PIBY180;
-                            xb = Speed * Math.cos(angleInRadians);
-                            yb = Speed * Math.sin(angleInRadians);
-                            if(isObs)
-                            {
-                                isObs=false;
-                            }
-                            else
-                            {
-                                isObs = true;
-                            }
-                            flag = true;
-                            break;
-                        }
-                    }
-                    if (!flag)
-                    {
-                        Phit += changePhiValue;
-                        Xt += x;
-                        Yt -= y;
-                        isObs=false;
-                    }
-                    else
-                    {
-                        System.out.println("避障专用路线");
-                        Phit += changePhiValue;
-                        //TODO:这里是有效的,不过系数是否2需要改进
-                        if(isObs)
-                        {
-                            Xt -= 2 * x;
-                            Yt += 2 * y;
-                        }
-                        Xt += xb;
-                        Yt -= yb;
-                    }
-
-                }
-                catch (FuzzyException fe)
-                {
-                    System.out.println(fe + "\n" + i + ", " + j);
-                }
-                catch (Throwable t)
-                {
-                    t.printStackTrace();
-                    //Ensure the application exits with an error condition.
-                    System.exit(1);
-                }
-
-                // compute the new coords for display
-                parent.viewArea.computeTruckCoords();
-
-                // test if the simulation is complete
-                test(Xt, Yt, Phit);
-
-                // update the applet
-                Iteration++;
-                tracingOn = tracingWanted;
-
-                statusText = "Angle change = " + nf.format(changePhiValue) + ", Iteration = " + Iteration;
-                try
-                {
-                    SwingUtilities.invokeLater(vapcThread);
-                    SwingUtilities.invokeAndWait(sstThread);
-                }
-                catch (Throwable t)
-                {
-                    t.printStackTrace();
-                    //Ensure the application exits with an error condition.
-                    System.exit(1);
-                }
-
-                tracingOn = false;
-
-                // if someone hit the pause button, we have to
-                // stop running temporarily
-                if (m == STEP) pause = true;
+                // a new episode, or recording switched on or off
+                if (recorder != null && (engine.getIteration() == 0 || !recordingWanted))
+                    stopRecording();
+                if (recorder == null && recordingWanted && engine.getIteration() == 0)
+                    startRecording();
+                if (engine.getIteration() == 0)
+                    episodeTimings = timings.copy();
+                engine.step();
+                if (recorder != null && engine.isComplete())
+                    stopRecording();
+                if (engine.isComplete())
+                    logEpisodeTimings();
             }
         }
     }
 
-    public double getConclusion(int length, double Xt, double Phit, FuzzyVariable xpos, FuzzyVariable phi, FuzzyRule[][] theRules)
+    void startRecording()
     {
-        FuzzyValueVector fvvInputs = new FuzzyValueVector(2);
-        FuzzyValueVector result = null;
-        FuzzyValue globalResult = null;
-        double changePhiValue = 0;
-        SetConclusionButtonColorThread scbcThread = new SetConclusionButtonColorThread(length);
+        File f = new File(new SimpleDateFormat("'trajectory-'yyyyMMdd-HHmmss-SSS'.ftr'").format(new Date()));
         try
         {
-            fvvInputs.addFuzzyValue(new FuzzyValue(xpos, new TriangleFuzzySet(Xt, Xt, Xt)));
-            fvvInputs.addFuzzyValue(new FuzzyValue(phi, new TriangleFuzzySet(Phit, Phit, Phit)));
-            for (int i = 0; i < length; i++)
-            {
-                for (int j = 0; j < xposTerms.length; j++)
-                {
-                    FuzzyValueVector concFvv = theRules[i][j].getConclusions();
-                    if (concFvv != null &&
-                            concFvv.size() > 0 &&
-                            theRules[i][j].testRuleMatching(fvvInputs))
-                    {
-                        // execute rule with required input values
-                        result = theRules[i][j].execute(fvvInputs);
-                        FuzzyValue fv = result.fuzzyValueAt(0);
-                        // set color of rule button background to indicate degree of matching
-                        if (showRuleFirings)
-                        {
-                            double maxY = fv.getMaxY();
-                            int colorDegree = (int) (255.0 * (1.0 - maxY));
-                            if(length==7)
-                            {
-                                conclusionColor = matchColors[colorDegree];
-                            }
-                            else{
-                                conclusionColor=obsmatchColors[colorDegree];
-                            }
-                            conclusionI = i;
-                            conclusionJ = j;
-                            SwingUtilities.invokeAndWait(scbcThread);
-                        }
-
-                        // add to global result for all rules
-                        if (globalResult == null)
-                            globalResult = fv;
-                        else
-                            globalResult = globalResult.fuzzyUnion(fv);
-                    }
-                }
-            }
-            if (globalResult != null)
-            {
-                changePhiValue = globalResult.momentDefuzzify();
-            }
+            rules.updateRules();
+            recorder = new TrajectoryRecorder(f, engine, rules.getRuleBase(), firings);
+            engine.addListener(recorder);
+            recordingStatus = ", recording to " + f.getName();
         }
-        catch (FuzzyException e)
+        catch (IOException e)
         {
-            System.out.println(e + "\n");
+            System.out.println("Can not record to " + f + ": " + e);
         }
-        catch (Throwable e)
-        {
-            e.printStackTrace();
-            System.exit(1);
-        }
-        return changePhiValue;
     }
 
-    public double dot(int[] a, double[] b)
+    // append the timings of the episode just over to the latency log
+    void logEpisodeTimings()
     {
-        return a[0] * b[0] + a[1] * b[1];
+        episodes++;
+        if (latencyLog == null || episodeTimings == null)
+            return;
+        try
+        {
+            timings.minus(episodeTimings).writeCsv(latencyLog, "episode " + episodes
+                    + (engine.isFinished() ? " parked" : " left"));
+            latencyLog.flush();
+        }
+        catch (IOException e)
+        {
+            System.out.println("Can not write the step timings: " + e);
+            latencyLog = null;
+        }
     }
 
-    public double[] normalize(int[] a)
+    // write the timings of the whole run to a new CSV file in the working
+    // directory and return it
+    public File writeTimings() throws IOException
     {
-        double d = Math.sqrt(a[0] * a[0] + a[1] * a[1]);
-        return new double[]{a[0] / d, a[1] / d};
+        File f = new File(new SimpleDateFormat("'latency-'yyyyMMdd-HHmmss-SSS'.csv'").format(new Date()));
+        try (Writer out = new FileWriter(f))
+        {
+            out.write(StepTimings.CSV_HEADER + "\n");
+            timings.writeCsv(out, "all");
+        }
+        return f;
     }
 
-    public int[] perp(int[] a)
+    public StepTimings getTimings()
     {
-        return new int[]{a[1], -a[0]};
+        return timings;
     }
 
-    public double[] project(int[][] a, int[] axis)
+    void stopRecording()
     {
-        double[] tem = normalize(axis);
-        double min = dot(a[0], tem);
-        double max = min;
-        for (int i = 0; i < a.length; i++)
+        engine.removeListener(recorder);
+        try
         {
-            double proj = dot(a[i], tem);
-            if (proj < min)
-                min = proj;
-            if (proj > max)
-                max = proj;
+            recorder.close();
         }
-        return new double[]{min, max};
-    }
-
-    boolean contains(double n, double[] range)
-    {
-        double a = range[0];
-        double b = range[1];
-        if (b < a)
+        catch (IOException e)
         {
-            a = b;
-            b = range[0];
+            System.out.println(e);
         }
-        return (n >= a && n <= b);
+        recorder = null;
+        recordingStatus = "";
     }
 
-    boolean overlap(double[] a, double[] b)
+    // publish a frame for the applet after each step of the engine
+    public void stepCompleted(TruckEngine e)
     {
-        if (contains(a[0], b))
-            return true;
-        if (contains(a[1], b))
-            return true;
-        if (contains(b[0], a))
-            return true;
-        if (contains(b[1], a))
-            return true;
-        return false;
-    }
-
-    public boolean SAT(int[][] a, int[][] b)
-    {
-        for (int i = 0; i < a.length; i++)
+        if (tracedGeneration != traceGeneration)
         {
-            int[] axis;
-            if (i != a.length - 1)
-            {
-                axis = new int[]{a[i + 1][0] - a[i][0], a[i + 1][1] - a[i][1]};
-            }
-            else
-            {
-                axis = new int[]{a[0][0] - a[a.length - 1][0], a[0][1] - a[a.length - 1][1]};
-            }
-            axis = perp(axis);
-            double[] qa = project(a, axis);
-            double[] qb = project(b, axis);
-            if (!overlap(qa, qb))
-                return false;
+            tracedGeneration = traceGeneration;
+            trace = new double[trace.length];
+            traceLength = 0;
         }
-        for (int i = 0; i < b.length; i++)
+        if (tracingWanted)
         {
-            int[] axis;
-            if (i != a.length - 1)
-            {
-                axis = new int[]{b[i + 1][0] - b[i][0], b[i + 1][1] - b[i][1]};
-            }
-            else
-            {
-                axis = new int[]{b[0][0] - b[b.length - 1][0], b[0][1] - b[b.length - 1][1]};
-            }
-            axis = perp(axis);
-            double[] qa = project(a, axis);
-            double[] qb = project(b, axis);
-            if (!overlap(qa, qb))
-                return false;
+            if (traceLength + 3 > trace.length)
+                trace = Arrays.copyOf(trace, 2 * trace.length);
+            trace[traceLength++] = e.getXt();
+            trace[traceLength++] = e.getYt();
+            trace[traceLength++] = e.getPhit();
         }
-        return true;
+
+        publish(new Frame(e.getXt(), e.getYt(), e.getPhit(),
+                "Angle change = " + nf.format(e.getChangePhiValue()) + ", Iteration = " + e.getIteration()
+                        + recordingStatus,
+                firings.getPublished(), trace, traceLength));
     }
 
-    // test if the sim. is complete or if the truck left the
-    // canvas.
-    private void test(double x, double y, double angle)
+    void publish(Frame f)
     {
-        if ((y <= 0.3) &&
-                (Math.abs(50.0 - x) <= 1.0) &&
-                (Math.abs(angle - 90.0) <= 5.0)
-        )
-        {
-            finished = true;
-            return;
-        }
-        if ((y < 0) || (x < 0) || (x > 100) || ((y > 100) &&
-                (Math.abs(x - 50) > 1)))
-            truck_disabled = true;
+        lastFrame = f;
+        latestFrame.set(f);
     }
 
     // print the information if the sim. is complete or
     // if the truck has left the canvas.
     public boolean simulationFinished()
     {
-        try
+        if (engine.isFinished())
         {
-            if (finished)
-            {
-                statusText = "Simulation Complete - parking successful, Iterations = " + Iteration;
-                SwingUtilities.invokeLater(sstThread);
-                pause = true;
-                return true;
-            }
-            if (truck_disabled)
-            {
-                statusText = "Simulation Complete - parking unsuccessful, Iterations = " + Iteration;
-                SwingUtilities.invokeLater(sstThread);
-                pause = true;
-                return true;
-            }
+            publishStatus("Simulation Complete - parking successful, Iterations = " + engine.getIteration());
+            clock.setState(PAUSE);
+            return true;
         }
-        catch (Throwable t)
+        if (engine.isDisabled())
         {
-            t.printStackTrace();
-            //Ensure the application exits with an error condition.
-            System.exit(1);
+            publishStatus("Simulation Complete - parking unsuccessful, Iterations = " + engine.getIteration());
+            clock.setState(PAUSE);
+            return true;
         }
 
         return false;
     }
 
-    // check for any button presses
-    public synchronized int getMsg()
+    // publish a new status text with the pose and firings of the last frame
+    void publishStatus(String status)
+    {
+        Frame f = lastFrame;
+        if (f == null)
+            publish(new Frame(engine.getXt(), engine.getYt(), engine.getPhit(), status, firings.getPublished(), trace, 0));
+        else
+            publish(new Frame(f.xt, f.yt, f.phit, status, f.firingsEnd, f.trace, f.traceLength));
+    }
+
+    // wait for the next step the controls ask for, STEP or RUN
+    public int getMsg() throws InterruptedException
     {
         // disable tooltips while simulation running ... they appear to cause 
         // problems with painting .... sometimes???
-        if (pause)
+        if (clock.isPaused())
         {
             if (!(ToolTipManager.sharedInstance().isEnabled()))
                 ToolTipManager.sharedInstance().setEnabled(true);
@@ -728,80 +655,208 @@ public class TruckSimulation extends Thread
                 ToolTipManager.sharedInstance().setEnabled(false);
         }
 
-        while (pause)
+        return clock.awaitStep();
+    }
+
+    // external classes send messages to this class to
+    // execute or stop iterating
+    public void putMsg(int m)
+    {
+        clock.setState(m);
+    }
+
+
+    // Steps a fleet until all its trucks are done or maxIterations steps
+    // are over, at the real-time factor of the simulation, and publishes
+    // a FleetFrame after each step.
+    class FleetRunner extends Thread
+    {
+        final TruckFleet fleet;
+        final int maxIterations;
+        final StepClock clock = new StepClock(RUN, getRealTimeFactor());
+
+        FleetRunner(TruckFleet fleet, int maxIterations)
+        {
+            super("Truck fleet");
+            setDaemon(true);
+            this.fleet = fleet;
+            this.maxIterations = maxIterations;
+        }
+
+        public void run()
         {
             try
             {
-                wait(500);
+                boolean done = false;
+                while (!done && !isInterrupted())
+                {
+                    clock.awaitStep();
+                    int active = fleet.step();
+                    done = active == 0 || fleet.getSteps() >= maxIterations;
+                    latestFleetFrame.set(new FleetFrame(fleet.getPoses(null),
+                            "Fleet of " + fleet.size() + ", step " + fleet.getSteps() + ": " + fleet.countParked()
+                                    + " parked, " + active + " under way", done));
+                }
             }
             catch (InterruptedException e)
             {
             }
         }
+    }
 
-        try
-        {
-            if (SimSpeed > 1)
-                sleep(10 * (SimSpeed - 1));
-            else
-                yield();
-        }
-        catch (InterruptedException e)
+    // The poses of a fleet after a step, as x, y, angle at 3 * k. Never
+    // changed once published.
+    static class FleetFrame
+    {
+        final double poses[];
+        final String status;
+        // true for the last frame of the fleet
+        final boolean done;
+
+        FleetFrame(double poses[], String status, boolean done)
         {
+            this.poses = poses;
+            this.status = status;
+            this.done = done;
         }
-        return msg;
     }
 
-    // external classes send messages to this class to
-    // execute or stop iterating
-    public synchronized void putMsg(int m)
+    // What the applet shows after a step. Never changed once published.
+    static class Frame
     {
-        msg = m;
-        pause = (msg != RUN) && (msg != STEP);
-//		notify();
-    }
+        final double xt, yt, phit;
+        final String status;
+        // records in the firing ring once this frame's step was over
+        final long firingsEnd;
+        // the traced path is the first traceLength values of trace
+        final double trace[];
+        final int traceLength;
+        // System.nanoTime() when it was made, just before it is published
+        final long published = System.nanoTime();
 
+        Frame(double xt, double yt, double phit, String status, long firingsEnd, double trace[], int traceLength)
+        {
+            this.xt = xt;
+            this.yt = yt;
+            this.phit = phit;
+            this.status = status;
+            this.firingsEnd = firingsEnd;
+            this.trace = trace;
+            this.traceLength = traceLength;
+        }
+    }
 
-    class ResetConclusionButtonsThread implements Runnable
+    // runs on the event thread: show the latest frames, if there are any
+    class FrameDrainer implements ActionListener
     {
-        public void run()
+        public void actionPerformed(ActionEvent event)
         {
-            // reset background color of rule matrix buttons
+            FleetFrame ff = latestFleetFrame.getAndSet(null);
+            if (ff != null)
+            {
+                parent.JLabelSimulationStatus.setText(ff.status);
+                parent.viewArea.showFleet(ff.poses);
+                if (ff.done)
+                {
+                    fleetRunner = null;
+                    parent.fleetFinished();
+                }
+            }
+
+            if (++latencyTicks % LATENCY_REFRESH == 0)
+                parent.showTimings(timings);
+
+            Frame f = latestFrame.getAndSet(null);
+            if (f == null)
+                return;
+            timings.record(StepTimings.HAND_OFF, System.nanoTime() - f.published);
+
+            // reset background color of rule matrix buttons, then color
+            // the ones that fired in the frame's step to indicate their
+            // degree of matching
             parent.resetConclusionButtonsBackground(OFF_COLOR);
+            if (firingDisplay != null)
+            {
+                // only the last step before the frame is shown, so skip
+                // anything older than a few steps
+                if (f.firingsEnd - firingDisplay.getNext() > FiringHighlighter.LOOKBACK)
+                {
+                    firingDisplay.skipTo(f.firingsEnd - FiringHighlighter.LOOKBACK);
+                    highlighter.started = false;
+                }
+                firingDisplay.poll(highlighter, f.firingsEnd);
+                if (highlighter.shown)
+                {
+                    for (int k = 0; k < highlighter.shownDocking.length; k++)
+                        if (highlighter.shownDocking[k] >= 0)
+                            parent.setConclusionButtonBackground(k / COLUMNS, k % COLUMNS,
+                                    matchColors[(int) (255.0 * (1.0 - highlighter.shownDocking[k]))],
+                                    FuzzyController.DOCKING);
+                    for (int k = 0; k < highlighter.shownObstacle.length; k++)
+                        if (highlighter.shownObstacle[k] >= 0)
+                            parent.setConclusionButtonBackground(k / COLUMNS, k % COLUMNS,
+                                    obsmatchColors[(int) (255.0 * (1.0 - highlighter.shownObstacle[k]))],
+                                    FuzzyController.OBSTACLE);
+                }
+            }
+
+            parent.JLabelSimulationStatus.setText(f.status);
+            parent.viewArea.showFrame(f);
         }
     }
 
-    class SetConclusionButtonColorThread implements Runnable
+    // Collects the firings of each step from the ring, on the event thread.
+    // shownDocking and shownObstacle hold the strengths of the rules fired
+    // in the last complete step read, at i * COLUMNS + j, -1 for the rules
+    // that did not fire.
+    static class FiringHighlighter implements RuleFiringRing.Handler
     {
-        int type;
+        // more records than one step can write
+        static final int LOOKBACK = 4 * (TruckRules.ROWS + TruckRules.DefaultObsConclusions.length) * TruckRules.COLUMNS;
+
+        double docking[] = new double[TruckRules.ROWS * TruckRules.COLUMNS];
+        double obstacle[] = new double[TruckRules.DefaultObsConclusions.length * TruckRules.COLUMNS];
+        double shownDocking[] = new double[docking.length];
+        double shownObstacle[] = new double[obstacle.length];
+        // true once the start of the step being read has been seen
+        boolean started;
+        // true if shownDocking and shownObstacle hold a step
+        boolean shown;
 
-        public SetConclusionButtonColorThread(int type)
+        FiringHighlighter()
         {
-            this.type = type;
+            Arrays.fill(docking, -1);
+            Arrays.fill(obstacle, -1);
         }
 
-        public void run()
+        void clear()
         {
-            // set background color of a rule matrix conclusion button
-            parent.setConclusionButtonBackground(conclusionI, conclusionJ, conclusionColor, type);
+            shown = false;
         }
-    }
 
-    class SetStatusTextThread implements Runnable
-    {
-        public void run()
+        public void ruleFired(int length, int i, int j, double strength)
         {
-            // set text in status area
-            parent.JLabelSimulationStatus.setText(statusText);
+            if (length == FuzzyController.DOCKING)
+                docking[i * COLUMNS + j] = strength;
+            else
+                obstacle[i * COLUMNS + j] = strength;
         }
-    }
 
-    class ViewAreaPaintComponentThread implements Runnable
-    {
-        public void run()
+        public void stepEnded(int iteration, boolean finished, boolean disabled)
         {
-            // paint the truck driving area
-            parent.viewArea.paintComponent(parent.viewArea.getGraphics());
+            if (started)
+            {
+                double swap[] = shownDocking;
+                shownDocking = docking;
+                docking = swap;
+                swap = shownObstacle;
+                shownObstacle = obstacle;
+                obstacle = swap;
+                shown = true;
+            }
+            Arrays.fill(docking, -1);
+            Arrays.fill(obstacle, -1);
+            started = true;
         }
     }
 }